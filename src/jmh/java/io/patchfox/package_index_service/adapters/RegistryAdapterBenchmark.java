@@ -0,0 +1,153 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.connector.Response;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_index_service.stub.RegistryResponses;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * throughput of each RegistryAdapter's parseVersionHistory plus the sort the engine does after it, which is where the 
+ * cpu goes for big packages. 
+ * 
+ * "small" responses are the samples in src/jmh/resources/corpus, one per package index, in the same format the index 
+ * returns. swap in a real capture by overwriting the file. any other corpus value is a generated history with that 
+ * many versions (see RegistryResponses) - the maven search api caps out at 200 of them. 
+ * 
+ * go needs one request per version to get its timestamps. those are answered from memory so only parsing is measured.
+ * 
+ * always run with -prof gc, allocation rate is the number most parser changes actually move 
+ *
+ * mvn -P benchmarks compile exec:exec -Djmh.args="RegistryAdapterBenchmark -prof gc"
+ * mvn -P benchmarks compile exec:exec -Djmh.args="RegistryAdapterBenchmark -prof gc -p packageType=npm -p corpus=20000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryAdapterBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"maven", "npm", "pypi", "gem", "golang", "composer", "cargo", "nuget"})
+    public String packageType;
+
+    @Param({"small", "5000"})
+    public String corpus;
+
+    private RegistryAdapter adapter;
+    private RegistryAdapter.RegistryClient client;
+    private ApiResponse apiResponse;
+    private IndexQueryContext queryContext;
+
+    // go version -> .info body
+    private final Map<String, String> golangInfo = new HashMap<>();
+
+    @Setup
+    public void setup() throws Exception {
+        String namespace;
+        String name;
+        switch (packageType) {
+            case PackageIndexService.MAVEN_PACKAGE_TYPE -> { namespace = "com.fasterxml.jackson.core"; name = "jackson-databind"; }
+            case PackageIndexService.GOLANG_PACKAGE_TYPE -> { namespace = "github.com/spf13"; name = "cobra"; }
+            case PackageIndexService.PHP_PACKAGE_TYPE -> { namespace = "symfony"; name = "console"; }
+            default -> { namespace = null; name = "bench"; }
+        }
+
+        String body;
+        if (corpus.equals("small")) {
+            if (packageType.equals(PackageIndexService.GOLANG_PACKAGE_TYPE)) {
+                body = readCorpus("golang.list");
+                var infos = new JSONObject(readCorpus("golang.info.json"));
+                for (var version : infos.keySet()) { golangInfo.put(version, infos.getJSONObject(version).toString()); }
+            } else {
+                body = readCorpus(packageType + ".json");
+            }
+        } else {
+            var history = RegistryResponses.history(Integer.parseInt(corpus), SEED);
+            body = RegistryResponses.body(packageType, namespace, name, history);
+            for (var v : history) { golangInfo.put("v" + v.version(), RegistryResponses.golangInfo("v" + v.version(), v.publishedAt())); }
+        }
+
+        apiResponse = ok(body);
+        queryContext = new IndexQueryContext(UUID.randomUUID(), namespace, name, URI.create("http://localhost/bench"));
+
+        client = (txid, type, uri) -> {
+            var path = uri.getPath();
+            var version = path.substring(path.lastIndexOf('/') + 1, path.length() - ".info".length());
+            return ok(golangInfo.get(version));
+        };
+
+        adapter = switch (packageType) {
+            case PackageIndexService.MAVEN_PACKAGE_TYPE -> new MavenCentralAdapter();
+            case PackageIndexService.NPM_PACKAGE_TYPE -> new NpmRegistryAdapter();
+            case PackageIndexService.PYPI_PACKAGE_TYPE -> new PypiAdapter();
+            case PackageIndexService.RUBY_PACKAGE_TYPE -> new RubyGemsAdapter();
+            case PackageIndexService.GOLANG_PACKAGE_TYPE -> new GolangProxyAdapter();
+            case PackageIndexService.PHP_PACKAGE_TYPE -> new PackagistAdapter();
+            case PackageIndexService.RUST_PACKAGE_TYPE -> new CratesIoAdapter();
+            case PackageIndexService.DOTNET_PACKAGE_TYPE -> new NugetAdapter();
+            default -> throw new IllegalArgumentException("unsupported package type: " + packageType);
+        };
+    }
+
+    @Benchmark
+    public List<VersionMetadata> parseVersionHistory() throws Exception {
+        var history = adapter.parseVersionHistory(apiResponse, queryContext, client);
+        PackageIndexService.sortNewestFirst(history);
+        return history;
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private static ApiResponse ok(String body) {
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(Map.of("response", body))
+                          .build();
+    }
+
+    private static String readCorpus(String fileName) {
+        try (var in = RegistryAdapterBenchmark.class.getResourceAsStream("/corpus/" + fileName)) {
+            if (in == null) { throw new IllegalStateException("missing corpus file: " + fileName); }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package io.patchfox.package_index_service.kafka;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.catalina.connector.Response;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * compares the JSON+gzip path we've always used on the request/response topics against the SMILE codec. gzip here is 
+ * applied per record which is the worst case for Kafka - in production the producer compresses whole batches. 
+ *
+ * the message is an enrichment response built the way PackageIndexService builds it, so JSON carries the ids as one 
+ * string inside the data map and SMILE carries them as numbers. see EnrichmentResponseBody 
+ *
+ * mvn -P benchmarks compile exec:exec -Djmh.args="ApiMessageCodecBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiMessageCodecBenchmark {
+
+    private static final String TOPIC = "package-index-service_RESPONSE";
+
+    // size of the updatedRecordIds payload. 0 is roughly a ping response, the rest are enrichment responses 
+    @Param({"0", "1000", "50000"})
+    public int updatedRecordCount;
+
+    @Param({"JSON", "SMILE"})
+    public ApiMessageCodec codec;
+
+    @Param({"none", "gzip"})
+    public String compression;
+
+    private ApiMessageSerializer serializer;
+    private ApiMessageDeserializer deserializer;
+    private ApiResponse message;
+    private RecordHeaders encodedHeaders;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        serializer = new ApiMessageSerializer();
+        serializer.configure(Map.of(ApiMessageCodec.CODEC_CONFIG, codec.name()), false);
+
+        deserializer = new ApiMessageDeserializer();
+        deserializer.configure(
+            Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, ApiResponse.class.getName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "*"
+            ), 
+            false
+        );
+
+        List<Long> updatedIds = new ArrayList<>(updatedRecordCount);
+        for (long i = 0; i < updatedRecordCount; i++) { updatedIds.add(1_000_000L + i); }
+        message = ApiResponse.builder()
+                             .responderName("package-index-service")
+                             .responderResourceSignature("POST_/api/v1/enrichPackages")
+                             .code(Response.SC_OK)
+                             .txid(UUID.randomUUID())
+                             .requestReceivedAt(ZonedDateTime.now(ZoneOffset.UTC).toString())
+                             .data(Map.of("response", new EnrichmentResponseBody(updatedIds, null)))
+                             .build();
+
+        encodedHeaders = new RecordHeaders();
+        encoded = compress(serializer.serialize(TOPIC, encodedHeaders, message));
+        System.out.printf(
+            "%n%s/%s with %d record ids is %d bytes on the wire%n", 
+            codec, 
+            compression, 
+            updatedRecordCount, 
+            encoded.length
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+        deserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return compress(serializer.serialize(TOPIC, new RecordHeaders(), message));
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserializer.deserialize(TOPIC, encodedHeaders, decompress(encoded));
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        var headers = new RecordHeaders();
+        var bytes = compress(serializer.serialize(TOPIC, headers, message));
+        return deserializer.deserialize(TOPIC, headers, decompress(bytes));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private byte[] compress(byte[] bytes) {
+        if ( !"gzip".equals(compression) ) { return bytes; }
+        var out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        if ( !"gzip".equals(compression) ) { return bytes; }
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+package io.patchfox.package_index_service.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.github.packageurl.PackageURL;
+
+import io.patchfox.db_entities.entities.DatasourceEvent;
+import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_index_service.App;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.controllers.PackageIndexController;
+import io.patchfox.package_index_service.kafka.KafkaBeans;
+import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.repositories.PackageRepository;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.stub.RegistryResponses;
+import io.patchfox.package_index_service.stub.StubRegistryServer;
+import io.patchfox.package_utils.json.ApiRequest;
+
+
+/*
+ * end to end enrichment throughput on one box. boots the whole service against a StubRegistryServer, seeds synthetic
+ * datasource events into the database, pushes them through the REST controller or the kafka listener and reports
+ * packages/sec, event latency percentiles and the heap high water mark.
+ *
+ * needs the postgres (and, for the kafka driver or the boot time smoke test message, kafka) from docker-compose.yml.
+ * seeded rows are left behind so point it at a throwaway database. coordinates are unique per run so nothing comes
+ * out of package_version_history from a previous run.
+ *
+ * mvn -P benchmarks compile exec:exec@loadtest
+ * mvn -P benchmarks compile exec:exec@loadtest -Dloadtest.args="events=500 purlsPerEvent=100 concurrency=16 latencyMs=200"
+ * mvn -P benchmarks compile exec:exec@loadtest -Dloadtest.args="driver=kafka throttleRate=0.05 --spring.datasource.url=jdbc:postgresql://db:5432/mrs_db"
+ *
+ * options (key=value, anything starting with -- goes to spring):
+ *   driver          rest | kafka. kafka calls KafkaBeans.listenToRequestTopic directly, the broker only sees responses
+ *   events          datasource events to enrich
+ *   purlsPerEvent   package records per event
+ *   sharedRatio     fraction of each event's purls drawn from a pool shared by every event, the way popular packages
+ *                   show up in most datasets
+ *   concurrency     events in flight at once
+ *   types           comma separated package types, defaults to all eight
+ *   versions, latencyMs, jitterMs, throttleRate, paddingBytes
+ *                   handed to the stub registry, see StubRegistryServer
+ */
+public class EnrichmentLoadTest {
+
+    private static final long SEED = 42;
+
+    private final Map<String, String> options;
+    private final int versions;
+
+    private final Map<Long, Long> eventLatencyNanos = new ConcurrentHashMap<>();
+    private final AtomicLong heapHighWater = new AtomicLong();
+    private volatile boolean sampling = true;
+
+
+    public static void main(String[] args) throws Exception {
+        var options = new HashMap<String, String>();
+        var springArgs = new ArrayList<String>();
+        for (var arg : args) {
+            if (arg.startsWith("--")) { springArgs.add(arg); continue; }
+            var eq = arg.indexOf('=');
+            if (eq < 0) { throw new IllegalArgumentException("expected key=value but got: " + arg); }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new EnrichmentLoadTest(options).run(springArgs.toArray(String[]::new));
+        // kafka clients and the like keep the jvm up otherwise
+        System.exit(0);
+    }
+
+    EnrichmentLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.versions = intOption("versions", 200);
+    }
+
+    void run(String[] springArgs) throws Exception {
+        var stubConfig = new StubRegistryServer.Config(
+            versions,
+            Duration.ofMillis(intOption("latencyMs", 50)),
+            Duration.ofMillis(intOption("jitterMs", 25)),
+            Double.parseDouble(options.getOrDefault("throttleRate", "0")),
+            intOption("paddingBytes", 0)
+        );
+
+        try (var stub = new StubRegistryServer(0, stubConfig).start()) {
+            var context = new SpringApplicationBuilder(App.class)
+                .properties(
+                    "server.port=0",
+                    "package-index.registry-base-url=" + stub.baseUrl(),
+                    "package-index.refresh-ahead.enabled=false",
+                    "package-index.tracing.exporter=none"
+                )
+                .run(springArgs);
+
+            try (context) {
+                var eventPurls = seed(context);
+                var purlCount = eventPurls.values().stream().mapToInt(List::size).sum();
+
+                System.gc();
+                var heapSampler = Thread.ofPlatform().daemon().start(this::sampleHeap);
+                var gcBefore = gcMillis();
+                var stubRequestsBefore = stub.requests();
+
+                var startNanos = System.nanoTime();
+                drive(context, new ArrayList<>(eventPurls.keySet()));
+                var wallNanos = System.nanoTime() - startNanos;
+
+                sampling = false;
+                heapSampler.join();
+
+                report(context, eventPurls.keySet(), purlCount, wallNanos, gcMillis() - gcBefore, stub, stubRequestsBefore);
+            }
+        }
+    }
+
+
+    //
+    // seeding
+    //
+
+
+    /**
+     * creates the datasource events and their package records the same way the rest of the pipeline would have left
+     * them for us - un-enriched package rows joined to an event through datasource_event_package
+     *
+     * @param context
+     * @return event id -> purls
+     */
+    private Map<Long, List<String>> seed(ConfigurableApplicationContext context) throws Exception {
+        var datasourceEventRepository = context.getBean(DatasourceEventRepository.class);
+        var packageRepository = context.getBean(PackageRepository.class);
+        var jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        var events = intOption("events", 200);
+        var purlsPerEvent = intOption("purlsPerEvent", 50);
+        var sharedRatio = Double.parseDouble(options.getOrDefault("sharedRatio", "0.3"));
+        var types = options.containsKey("types")
+                ? List.of(options.get("types").split(","))
+                : RegistryResponses.PACKAGE_TYPES;
+
+        var random = new Random(SEED);
+        var runId = Long.toString(Instant.now().toEpochMilli(), 36);
+        var sharedPool = new ArrayList<String>();
+        for (int i = 0; i < Math.max(1, purlsPerEvent); i++) {
+            sharedPool.add(purl(types.get(i % types.size()), runId + "-shared-" + i, random));
+        }
+
+        Map<Long, List<String>> rv = new HashMap<>();
+        int unique = 0;
+        for (int e = 0; e < events; e++) {
+            var purls = new ArrayList<String>(purlsPerEvent);
+            for (int p = 0; p < purlsPerEvent; p++) {
+                if (random.nextDouble() < sharedRatio) {
+                    var shared = sharedPool.get(random.nextInt(sharedPool.size()));
+                    if (!purls.contains(shared)) { purls.add(shared); continue; }
+                }
+                purls.add(purl(types.get(unique % types.size()), runId + "-" + unique, random));
+                unique++;
+            }
+
+            var event = datasourceEventRepository.save(new DatasourceEvent());
+            var packages = new ArrayList<Package>();
+            for (var purlString : purls) {
+                var purl = new PackageURL(purlString);
+                packages.add(Package.builder()
+                                    .purl(purlString)
+                                    .type(purl.getType())
+                                    .namespace(purl.getNamespace())
+                                    .name(purl.getName())
+                                    .version(purl.getVersion())
+                                    .build());
+            }
+            var packageIds = packageRepository.saveAll(packages).stream().map(Package::getId).toList();
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO datasource_event_package (datasource_event_id, package_id) VALUES (?, ?)",
+                packageIds,
+                500,
+                (ps, packageId) -> {
+                    ps.setLong(1, event.getId());
+                    ps.setLong(2, packageId);
+                }
+            );
+            rv.put(event.getId(), purls);
+        }
+
+        System.out.printf("seeded %d events, %d purls per event, run id %s%n", events, purlsPerEvent, runId);
+        return rv;
+    }
+
+    /**
+     * a purl at a random version out of the history the stub registry will hand out for it
+     *
+     * @param packageType
+     * @param suffix
+     * @param random
+     * @return
+     */
+    private String purl(String packageType, String suffix, Random random) {
+        var name = "lt-" + suffix;
+        String namespace = switch (packageType) {
+            case PackageIndexService.MAVEN_PACKAGE_TYPE -> "io.patchfox.loadtest";
+            case PackageIndexService.GOLANG_PACKAGE_TYPE -> "github.com/loadtest";
+            case PackageIndexService.PHP_PACKAGE_TYPE -> "loadtest";
+            default -> null;
+        };
+        var history = StubRegistryServer.historyFor(versions, packageType, namespace, name);
+        var version = history.get(random.nextInt(history.size())).version();
+        if (packageType.equals(PackageIndexService.GOLANG_PACKAGE_TYPE)) { version = "v" + version; }
+        return "pkg:" + packageType + "/" + (namespace == null ? "" : namespace + "/") + name + "@" + version;
+    }
+
+
+    //
+    // driving
+    //
+
+
+    private void drive(ConfigurableApplicationContext context, List<Long> eventIds) throws Exception {
+        var driver = options.getOrDefault("driver", "rest");
+        var concurrency = new Semaphore(intOption("concurrency", 8));
+        var port = context.getEnvironment().getProperty("local.server.port");
+        var kafkaBeans = context.getBean(KafkaBeans.class);
+        var env = context.getBean(EnvironmentComponent.class);
+        var httpClient = HttpClient.newHttpClient();
+
+        Collections.shuffle(eventIds, new Random(SEED));
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var eventId : eventIds) {
+                concurrency.acquire();
+                executor.submit(() -> {
+                    var startNanos = System.nanoTime();
+                    try {
+                        if (driver.equals("kafka")) {
+                            var apiRequest = ApiRequest.builder()
+                                                       .txid(UUID.randomUUID())
+                                                       .verb(ApiRequest.httpVerb.POST)
+                                                       .uri(URI.create(PackageIndexController.ENRICH_PACKAGES_PATH))
+                                                       .queryStringParameters(Map.of(
+                                                           "datasourceEventRecordId",
+                                                           String.valueOf(eventId)
+                                                       ))
+                                                       .responseTopicName(env.getKafkaResponseTopicName())
+                                                       .build();
+                            kafkaBeans.listenToRequestTopic(apiRequest);
+                        } else {
+                            var request = HttpRequest.newBuilder()
+                                                     .uri(URI.create(
+                                                         "http://localhost:" + port
+                                                         + PackageIndexController.ENRICH_PACKAGES_PATH
+                                                         + "?datasourceEventRecordId=" + eventId
+                                                     ))
+                                                     .POST(HttpRequest.BodyPublishers.noBody())
+                                                     .build();
+                            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        }
+                    } catch (Exception e) {
+                        System.err.printf("event %d failed: %s%n", eventId, e);
+                    } finally {
+                        eventLatencyNanos.put(eventId, System.nanoTime() - startNanos);
+                        concurrency.release();
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+
+    //
+    // measuring
+    //
+
+
+    private void sampleHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        while (sampling) {
+            heapHighWater.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans()
+                                .stream()
+                                .mapToLong(gc -> Math.max(0, gc.getCollectionTime()))
+                                .sum();
+    }
+
+    private void report(
+            ConfigurableApplicationContext context,
+            Iterable<Long> eventIds,
+            int purlCount,
+            long wallNanos,
+            long gcMillis,
+            StubRegistryServer stub,
+            long stubRequestsBefore
+    ) {
+        var latencies = new ArrayList<>(eventLatencyNanos.values());
+        Collections.sort(latencies);
+        var seconds = wallNanos / 1e9;
+
+        // status is what EnrichmentJobService left on the event, that's the only outcome both drivers can see
+        var ids = new ArrayList<Long>();
+        eventIds.forEach(ids::add);
+        var statuses = context.getBean(JdbcTemplate.class).queryForList(
+            "SELECT status, count(*) AS events FROM datasource_event WHERE id = ANY (?) GROUP BY status",
+            (Object) ids.toArray(Long[]::new)
+        );
+
+        System.out.println();
+        System.out.println("driver            " + options.getOrDefault("driver", "rest"));
+        System.out.printf("events            %d%n", latencies.size());
+        System.out.printf("purls             %d%n", purlCount);
+        System.out.printf("wall time         %.1f s%n", seconds);
+        System.out.printf("packages/sec      %.1f%n", purlCount / seconds);
+        System.out.printf("event latency     p50 %s  p95 %s  p99 %s  max %s%n",
+            millis(percentile(latencies, 0.50)),
+            millis(percentile(latencies, 0.95)),
+            millis(percentile(latencies, 0.99)),
+            millis(latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1))
+        );
+        System.out.printf("heap high water   %d MiB of %d MiB max%n",
+            heapHighWater.get() >> 20,
+            Runtime.getRuntime().maxMemory() >> 20
+        );
+        System.out.printf("gc time           %d ms%n", gcMillis);
+        System.out.printf("registry requests %d (%d throttled, %d not found, %d MiB served in total)%n",
+            stub.requests() - stubRequestsBefore,
+            stub.throttled(),
+            stub.notFound(),
+            stub.bytesServed() >> 20
+        );
+        for (var row : statuses) { System.out.printf("status            %s: %s%n", row.get("status"), row.get("events")); }
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) { return 0; }
+        var index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static String millis(long nanos) { return (nanos / 1_000_000) + " ms"; }
+
+    private int intOption(String key, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(key, String.valueOf(defaultValue)));
+    }
+
+}
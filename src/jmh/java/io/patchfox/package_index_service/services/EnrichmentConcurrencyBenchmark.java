@@ -0,0 +1,142 @@
+package io.patchfox.package_index_service.services;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/*
+ * models how many datasource events a single pod gets through when every purl blocks on a package index and then on 
+ * the database. 
+ * 
+ * platform - what we had: one listener thread per kafka partition, each enriching its event's purls one at a time 
+ * virtual  - what we have now: one virtual thread per event, purls fanned out on virtual threads behind the 
+ *            package-index.enrichment.concurrency semaphore, database calls bounded by the connection pool
+ * 
+ * the latencies are sleeps so this measures the execution model, not our parsing. run the real thing against the stub 
+ * registry for end to end numbers. 
+ *
+ * mvn -P benchmarks compile exec:exec -Djmh.args="EnrichmentConcurrencyBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EnrichmentConcurrencyBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String model;
+
+    // events waiting on the request topic
+    @Param({"40"})
+    public int events;
+
+    @Param({"50"})
+    public int purlsPerEvent;
+
+    @Param({"20"})
+    public int registryLatencyMillis;
+
+    @Param({"2"})
+    public int databaseLatencyMillis;
+
+    // spring.kafka.listener.concurrency 
+    @Param({"10"})
+    public int listenerThreads;
+
+    // package-index.enrichment.concurrency
+    @Param({"16"})
+    public int enrichmentConcurrency;
+
+    // spring.datasource.hikari.maximum-pool-size 
+    @Param({"20"})
+    public int connectionPoolSize;
+
+    private ExecutorService eventExecutor;
+    private Semaphore connections;
+
+    @Setup
+    public void setup() {
+        eventExecutor = model.equals("platform") 
+            ? Executors.newFixedThreadPool(listenerThreads) 
+            : Executors.newVirtualThreadPerTaskExecutor();
+        connections = new Semaphore(connectionPoolSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventExecutor.shutdownNow();
+    }
+
+    // time to drain the backlog of events
+    @Benchmark
+    public void drainEvents() throws Exception {
+        var futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < events; i++) {
+            futures.add(eventExecutor.submit(() -> {
+                if (model.equals("platform")) {
+                    for (int p = 0; p < purlsPerEvent; p++) { enrichPurl(); }
+                } else {
+                    fanOut();
+                }
+                return null;
+            }));
+        }
+        for (var future : futures) { future.get(); }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private void fanOut() throws InterruptedException, ExecutionException {
+        var permits = new Semaphore(enrichmentConcurrency);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<?>>();
+            for (int p = 0; p < purlsPerEvent; p++) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        enrichPurl();
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) { future.get(); }
+        }
+    }
+
+    private void enrichPurl() throws InterruptedException {
+        Thread.sleep(registryLatencyMillis);
+        connections.acquire();
+        try {
+            Thread.sleep(databaseLatencyMillis);
+        } finally {
+            connections.release();
+        }
+    }
+
+}
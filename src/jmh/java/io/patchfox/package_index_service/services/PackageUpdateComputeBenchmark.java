@@ -0,0 +1,147 @@
+package io.patchfox.package_index_service.services;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.repositories.PackageRepository.PackageRow;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageMetadata;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageUpdateResult;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_index_service.stub.RegistryResponses;
+
+
+/*
+ * the version arithmetic we do for every package record of a coordinate once its history is in hand: the newest first
+ * sort every operator does, then computePackageUpdates' per row history scans and getVersionDifferences/parseVersion.
+ * none of it touches the database or a package index.
+ *
+ * histories are generated (see RegistryResponses), rows are package records pinned to random versions out of that
+ * history the way a coordinate used by many datasets ends up with many rows. freshness is ignored so every row is
+ * recomputed on every invocation.
+ *
+ * this is the regression guard for that code. run it before and after touching anything it calls and compare.
+ *
+ * mvn -P benchmarks compile exec:exec -Djmh.args="PackageUpdateComputeBenchmark -prof gc"
+ * mvn -P benchmarks compile exec:exec -Djmh.args="PackageUpdateComputeBenchmark.computeUpdates -p historySize=20000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackageUpdateComputeBenchmark {
+
+    private static final long SEED = 42;
+
+    // stands in for the projection spring data would hand back 
+    private record BenchmarkRow(Long id, String purl, String version, ZonedDateTime updatedAt) implements PackageRow {
+        public Long getId() { return id; }
+        public String getPurl() { return purl; }
+        public String getType() { return PackageIndexService.NPM_PACKAGE_TYPE; }
+        public String getNamespace() { return null; }
+        public String getName() { return "bench"; }
+        public String getVersion() { return version; }
+        public String getMostRecentVersion() { return null; }
+        public ZonedDateTime getUpdatedAt() { return updatedAt; }
+    }
+
+    @Param({"100", "1000", "5000", "20000"})
+    public int historySize;
+
+    @Param({"1", "10", "100"})
+    public int rowsPerCoordinate;
+
+    private PackageIndexService service;
+
+    // newest first, the way the operators hand it over
+    private PackageMetadata metadata;
+
+    // same versions in the order a package index might return them
+    private List<VersionMetadata> unsortedHistory;
+
+    private List<PackageRow> rows;
+
+    @Setup
+    public void setup() {
+        var random = new Random(SEED);
+
+        List<VersionMetadata> history = new ArrayList<>(historySize);
+        for (var v : RegistryResponses.history(historySize, SEED)) {
+            history.add(new VersionMetadata(v.version(), ZonedDateTime.ofInstant(v.publishedAt(), ZoneOffset.UTC)));
+        }
+        unsortedHistory = new ArrayList<>(history);
+        Collections.shuffle(unsortedHistory, random);
+
+        Collections.reverse(history);
+        metadata = new PackageMetadata(history.get(0), history);
+
+        rows = new ArrayList<>(rowsPerCoordinate);
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC).minusDays(30);
+        for (int i = 0; i < rowsPerCoordinate; i++) {
+            var version = history.get(random.nextInt(history.size())).version;
+            rows.add(new BenchmarkRow((long) i, "pkg:npm/bench@" + version, version, enrichedAt));
+        }
+
+        service = new PackageIndexService();
+        service.env = new EnvironmentComponent() {
+            @Override
+            public Duration getFreshnessWindow() { return Duration.ofHours(24); }
+        };
+        service.changeFeedService = new ChangeFeedService();
+    }
+
+    /**
+     * the whole per coordinate step: sort what the index gave us, then work out every row's new values
+     */
+    @Benchmark
+    public PackageUpdateResult sortAndComputeUpdates() {
+        var packageHistory = new ArrayList<>(unsortedHistory);
+        PackageIndexService.sortNewestFirst(packageHistory);
+        var packageMetadata = new PackageMetadata(packageHistory.get(0), packageHistory);
+        return service.computePackageUpdates(rows, packageMetadata, null, true);
+    }
+
+    @Benchmark
+    public PackageUpdateResult computeUpdates() {
+        return service.computePackageUpdates(rows, metadata, null, true);
+    }
+
+    @Benchmark
+    public void versionDifferences(Blackhole blackhole) {
+        var latestVersion = metadata.latestVersion.version;
+        for (var row : rows) {
+            blackhole.consume(PackageIndexService.getVersionDifferences(
+                row.getVersion(),
+                latestVersion,
+                metadata.packageHistory
+            ));
+        }
+    }
+
+    @Benchmark
+    public void parseVersion(Blackhole blackhole) {
+        for (var row : rows) { blackhole.consume(PackageIndexService.parseVersion(row.getVersion())); }
+    }
+
+}
@@ -0,0 +1,382 @@
+package io.patchfox.package_index_service.stub;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+
+
+/*
+ * generates package index responses in the same shape the real ones come in - including the fields we don't read, 
+ * because parsing past them is most of the cost. histories are deterministic for a given seed so runs are comparable. 
+ * 
+ * shared by the operator benchmarks and the stub registry server. 
+ */
+public class RegistryResponses {
+
+    public static final List<String> PACKAGE_TYPES = List.of(
+        PackageIndexService.MAVEN_PACKAGE_TYPE,
+        PackageIndexService.NPM_PACKAGE_TYPE,
+        PackageIndexService.PYPI_PACKAGE_TYPE,
+        PackageIndexService.RUBY_PACKAGE_TYPE,
+        PackageIndexService.GOLANG_PACKAGE_TYPE,
+        PackageIndexService.PHP_PACKAGE_TYPE,
+        PackageIndexService.RUST_PACKAGE_TYPE,
+        PackageIndexService.DOTNET_PACKAGE_TYPE
+    );
+
+    // the maven search api never returns more than this many rows 
+    public static final int MAVEN_MAX_ROWS = 200;
+
+    public record SyntheticVersion(String version, Instant publishedAt) {}
+
+    private static final DateTimeFormatter ISO_MICROS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'")
+                                                                         .withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter ISO_OFFSET = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneOffset.UTC);
+
+
+    /**
+     * oldest first. mostly patch bumps with the odd minor and major bump, roughly how real packages age. 
+     * 
+     * @param versionCount
+     * @param seed
+     * @return
+     */
+    public static List<SyntheticVersion> history(int versionCount, long seed) {
+        var random = new Random(seed);
+        var rv = new ArrayList<SyntheticVersion>(versionCount);
+        int major = 0, minor = 1, patch = 0;
+        var publishedAt = Instant.parse("2012-01-01T00:00:00Z");
+        for (int i = 0; i < versionCount; i++) {
+            rv.add(new SyntheticVersion(major + "." + minor + "." + patch, publishedAt));
+            var bump = random.nextInt(100);
+            if (bump < 3) { major++; minor = 0; patch = 0; } 
+            else if (bump < 20) { minor++; patch = 0; } 
+            else { patch++; }
+            publishedAt = publishedAt.plus(Duration.ofMinutes(30 + random.nextInt(60 * 24 * 7)));
+        }
+        return rv;
+    }
+
+    /**
+     * the body of the first (for go, only the version list) request we make for a package 
+     * 
+     * @param packageType
+     * @param namespace
+     * @param name
+     * @param history
+     * @return
+     */
+    public static String body(String packageType, String namespace, String name, List<SyntheticVersion> history) {
+        return switch (packageType) {
+            case PackageIndexService.MAVEN_PACKAGE_TYPE -> maven(namespace, name, history);
+            case PackageIndexService.NPM_PACKAGE_TYPE -> npm(name, history);
+            case PackageIndexService.PYPI_PACKAGE_TYPE -> pypi(name, history);
+            case PackageIndexService.RUBY_PACKAGE_TYPE -> rubygems(name, history);
+            case PackageIndexService.GOLANG_PACKAGE_TYPE -> golangList(history);
+            case PackageIndexService.PHP_PACKAGE_TYPE -> packagist(namespace, name, history);
+            case PackageIndexService.RUST_PACKAGE_TYPE -> crates(name, history);
+            case PackageIndexService.DOTNET_PACKAGE_TYPE -> nuget(name, history);
+            default -> throw new IllegalArgumentException("unsupported package type: " + packageType);
+        };
+    }
+
+    public static String maven(String groupId, String artifactId, List<SyntheticVersion> history) {
+        var docs = new JSONArray();
+        // newest first, capped like the real thing 
+        for (int i = history.size() - 1; i >= 0 && docs.length() < MAVEN_MAX_ROWS; i--) {
+            var v = history.get(i);
+            docs.put(new JSONObject()
+                .put("id", groupId + ":" + artifactId + ":" + v.version())
+                .put("g", groupId)
+                .put("a", artifactId)
+                .put("v", v.version())
+                .put("p", "jar")
+                .put("timestamp", v.publishedAt().toEpochMilli())
+                .put("ec", new JSONArray(List.of("-sources.jar", ".pom", "-javadoc.jar", ".jar")))
+                .put("tags", new JSONArray(List.of(artifactId, "library"))));
+        }
+        return new JSONObject()
+            .put("responseHeader", new JSONObject()
+                .put("status", 0)
+                .put("QTime", 3)
+                .put("params", new JSONObject()
+                    .put("q", "g:" + groupId + " AND a:" + artifactId)
+                    .put("core", "gav")
+                    .put("rows", String.valueOf(MAVEN_MAX_ROWS))
+                    .put("wt", "json")))
+            .put("response", new JSONObject()
+                .put("numFound", history.size())
+                .put("start", 0)
+                .put("docs", docs))
+            .toString();
+    }
+
+    public static String npm(String name, List<SyntheticVersion> history) {
+        var versions = new JSONObject();
+        var time = new JSONObject();
+        time.put("created", ISO_MICROS.format(history.get(0).publishedAt()));
+        time.put("modified", ISO_MICROS.format(history.get(history.size() - 1).publishedAt()));
+        for (var v : history) {
+            time.put(v.version(), ISO_MICROS.format(v.publishedAt()));
+            versions.put(v.version(), new JSONObject()
+                .put("name", name)
+                .put("version", v.version())
+                .put("description", "synthetic package used for benchmarking")
+                .put("main", "index.js")
+                .put("scripts", new JSONObject().put("test", "node test.js"))
+                .put("license", "MIT")
+                .put("dependencies", new JSONObject().put("lodash", "^4.17.21").put("debug", "^4.3.4"))
+                .put("gitHead", Long.toHexString(v.publishedAt().toEpochMilli()) + "0000000000000000")
+                .put("_id", name + "@" + v.version())
+                .put("_nodeVersion", "18.17.0")
+                .put("_npmVersion", "9.6.7")
+                .put("dist", new JSONObject()
+                    .put("integrity", "sha512-" + "A".repeat(86) + "==")
+                    .put("shasum", "0".repeat(40))
+                    .put("tarball", "https://registry.npmjs.org/" + name + "/-/" + name + "-" + v.version() + ".tgz")
+                    .put("fileCount", 12)
+                    .put("unpackedSize", 48211))
+                .put("maintainers", new JSONArray().put(new JSONObject().put("name", "bench").put("email", "bench@example.com"))));
+        }
+        var latest = history.get(history.size() - 1).version();
+        return new JSONObject()
+            .put("_id", name)
+            .put("_rev", history.size() + "-" + "0".repeat(32))
+            .put("name", name)
+            .put("dist-tags", new JSONObject().put("latest", latest))
+            .put("versions", versions)
+            .put("time", time)
+            .put("maintainers", new JSONArray().put(new JSONObject().put("name", "bench").put("email", "bench@example.com")))
+            .put("description", "synthetic package used for benchmarking")
+            .put("readme", "# " + name + "\n\n" + "lorem ipsum dolor sit amet. ".repeat(40))
+            .put("license", "MIT")
+            .toString();
+    }
+
+    public static String pypi(String name, List<SyntheticVersion> history) {
+        var releases = new JSONObject();
+        for (var v : history) {
+            var files = new JSONArray();
+            for (var packagetype : List.of("sdist", "bdist_wheel")) {
+                var filename = packagetype.equals("sdist") 
+                        ? name + "-" + v.version() + ".tar.gz" 
+                        : name + "-" + v.version() + "-py3-none-any.whl";
+                files.put(new JSONObject()
+                    .put("comment_text", "")
+                    .put("digests", new JSONObject()
+                        .put("blake2b_256", "0".repeat(64))
+                        .put("md5", "0".repeat(32))
+                        .put("sha256", "0".repeat(64)))
+                    .put("downloads", -1)
+                    .put("filename", filename)
+                    .put("has_sig", false)
+                    .put("md5_digest", "0".repeat(32))
+                    .put("packagetype", packagetype)
+                    .put("python_version", packagetype.equals("sdist") ? "source" : "py3")
+                    .put("requires_python", ">=3.8")
+                    .put("size", 40213)
+                    .put("upload_time", ISO_MICROS.format(v.publishedAt()).substring(0, 19))
+                    .put("upload_time_iso_8601", ISO_MICROS.format(v.publishedAt()))
+                    .put("url", "https://files.pythonhosted.org/packages/00/00/" + filename)
+                    .put("yanked", false)
+                    .put("yanked_reason", JSONObject.NULL));
+            }
+            releases.put(v.version(), files);
+        }
+        var latest = history.get(history.size() - 1).version();
+        return new JSONObject()
+            .put("info", new JSONObject()
+                .put("name", name)
+                .put("version", latest)
+                .put("summary", "synthetic package used for benchmarking")
+                .put("description", "lorem ipsum dolor sit amet. ".repeat(80))
+                .put("license", "MIT")
+                .put("requires_python", ">=3.8")
+                .put("project_urls", new JSONObject().put("Homepage", "https://example.com/" + name)))
+            .put("last_serial", 20000000 + history.size())
+            .put("releases", releases)
+            .put("urls", new JSONArray())
+            .put("vulnerabilities", new JSONArray())
+            .toString();
+    }
+
+    public static String rubygems(String name, List<SyntheticVersion> history) {
+        var rv = new JSONArray();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            var v = history.get(i);
+            rv.put(new JSONObject()
+                .put("authors", "bench")
+                .put("built_at", ISO_MICROS.format(v.publishedAt()).substring(0, 23) + "Z")
+                .put("created_at", ISO_MICROS.format(v.publishedAt()).substring(0, 23) + "Z")
+                .put("description", "synthetic gem used for benchmarking")
+                .put("downloads_count", 1000 + i)
+                .put("metadata", new JSONObject().put("source_code_uri", "https://example.com/" + name))
+                .put("number", v.version())
+                .put("summary", "synthetic gem")
+                .put("platform", "ruby")
+                .put("rubygems_version", ">= 0")
+                .put("ruby_version", ">= 2.7.0")
+                .put("prerelease", false)
+                .put("licenses", new JSONArray().put("MIT"))
+                .put("requirements", new JSONArray())
+                .put("sha", "0".repeat(64)));
+        }
+        return rv.toString();
+    }
+
+    public static String golangList(List<SyntheticVersion> history) {
+        var sb = new StringBuilder();
+        for (var v : history) { sb.append('v').append(v.version()).append('\n'); }
+        return sb.toString();
+    }
+
+    public static String golangInfo(String version, Instant publishedAt) {
+        return new JSONObject()
+            .put("Version", version)
+            .put("Time", ISO_OFFSET.format(publishedAt))
+            .put("Origin", new JSONObject()
+                .put("VCS", "git")
+                .put("URL", "https://github.com/example/module")
+                .put("Ref", "refs/tags/" + version)
+                .put("Hash", "0".repeat(40)))
+            .toString();
+    }
+
+    public static String packagist(String vendor, String name, List<SyntheticVersion> history) {
+        var versions = new JSONArray();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            var v = history.get(i);
+            versions.put(new JSONObject()
+                .put("name", vendor + "/" + name)
+                .put("description", "synthetic package used for benchmarking")
+                .put("keywords", new JSONArray().put("bench"))
+                .put("homepage", "https://example.com/" + name)
+                .put("version", "v" + v.version())
+                .put("version_normalized", v.version() + ".0")
+                .put("license", new JSONArray().put("MIT"))
+                .put("authors", new JSONArray().put(new JSONObject().put("name", "bench")))
+                .put("source", new JSONObject()
+                    .put("url", "https://github.com/" + vendor + "/" + name + ".git")
+                    .put("type", "git")
+                    .put("reference", "0".repeat(40)))
+                .put("dist", new JSONObject()
+                    .put("url", "https://api.github.com/repos/" + vendor + "/" + name + "/zipball/" + "0".repeat(40))
+                    .put("type", "zip")
+                    .put("shasum", "")
+                    .put("reference", "0".repeat(40)))
+                .put("type", "library")
+                .put("time", ISO_OFFSET.format(v.publishedAt()))
+                .put("autoload", new JSONObject().put("psr-4", new JSONObject().put("Bench\\", "src/")))
+                .put("require", new JSONObject().put("php", ">=8.1")));
+        }
+        return new JSONObject()
+            .put("packages", new JSONObject().put(vendor + "/" + name, versions))
+            .put("minified", "composer/2.0")
+            .toString();
+    }
+
+    public static String crates(String name, List<SyntheticVersion> history) {
+        var versions = new JSONArray();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            var v = history.get(i);
+            var createdAt = ISO_MICROS.format(v.publishedAt()).replace("Z", "+00:00");
+            versions.put(new JSONObject()
+                .put("id", 100000 + i)
+                .put("crate", name)
+                .put("num", v.version())
+                .put("dl_path", "/api/v1/crates/" + name + "/" + v.version() + "/download")
+                .put("readme_path", "/api/v1/crates/" + name + "/" + v.version() + "/readme")
+                .put("updated_at", createdAt)
+                .put("created_at", createdAt)
+                .put("downloads", 1000 + i)
+                .put("features", new JSONObject().put("default", new JSONArray().put("std")).put("std", new JSONArray()))
+                .put("yanked", false)
+                .put("license", "MIT OR Apache-2.0")
+                .put("links", new JSONObject()
+                    .put("dependencies", "/api/v1/crates/" + name + "/" + v.version() + "/dependencies")
+                    .put("version_downloads", "/api/v1/crates/" + name + "/" + v.version() + "/downloads"))
+                .put("crate_size", 51234)
+                .put("published_by", new JSONObject().put("id", 1).put("login", "bench"))
+                .put("audit_actions", new JSONArray())
+                .put("checksum", "0".repeat(64)));
+        }
+        return new JSONObject()
+            .put("crate", new JSONObject()
+                .put("id", name)
+                .put("name", name)
+                .put("max_version", history.get(history.size() - 1).version())
+                .put("description", "synthetic crate used for benchmarking")
+                .put("downloads", 123456))
+            .put("versions", versions)
+            .put("keywords", new JSONArray())
+            .put("categories", new JSONArray())
+            .toString();
+    }
+
+    // real registrations with more than 128 versions page their items out to separate documents. the operator only 
+    // understands inlined pages so that's what we generate 
+    public static String nuget(String name, List<SyntheticVersion> history) {
+        var base = "https://api.nuget.org/v3/registration5-gz-semver2/" + name.toLowerCase() + "/";
+        var pages = new JSONArray();
+        for (int start = 0; start < history.size(); start += 64) {
+            var items = new JSONArray();
+            var end = Math.min(start + 64, history.size());
+            for (int i = start; i < end; i++) {
+                var v = history.get(i);
+                items.put(new JSONObject()
+                    .put("@id", base + v.version() + ".json")
+                    .put("@type", "Package")
+                    .put("commitId", "00000000-0000-0000-0000-000000000000")
+                    .put("commitTimeStamp", ISO_OFFSET.format(v.publishedAt()))
+                    .put("catalogEntry", new JSONObject()
+                        .put("@id", "https://api.nuget.org/v3/catalog0/data/" + name.toLowerCase() + "." + v.version() + ".json")
+                        .put("@type", "PackageDetails")
+                        .put("authors", "bench")
+                        .put("description", "synthetic package used for benchmarking")
+                        .put("id", name)
+                        .put("language", "")
+                        .put("listed", true)
+                        .put("packageContent", "https://api.nuget.org/v3-flatcontainer/" + name.toLowerCase() + "/" + v.version() + "/" + name.toLowerCase() + "." + v.version() + ".nupkg")
+                        .put("published", ISO_OFFSET.format(v.publishedAt()))
+                        .put("requireLicenseAcceptance", false)
+                        .put("summary", "")
+                        .put("tags", new JSONArray().put("bench"))
+                        .put("title", "")
+                        .put("version", v.version())
+                        .put("dependencyGroups", new JSONArray().put(new JSONObject()
+                            .put("targetFramework", "net6.0")
+                            .put("dependencies", new JSONArray()))))
+                    .put("packageContent", "https://api.nuget.org/v3-flatcontainer/" + name.toLowerCase() + "/" + v.version() + "/" + name.toLowerCase() + "." + v.version() + ".nupkg")
+                    .put("registration", base + "index.json"));
+            }
+            pages.put(new JSONObject()
+                .put("@id", base + "index.json#page/" + history.get(start).version() + "/" + history.get(end - 1).version())
+                .put("@type", "catalog:CatalogPage")
+                .put("commitId", "00000000-0000-0000-0000-000000000000")
+                .put("commitTimeStamp", ISO_OFFSET.format(history.get(end - 1).publishedAt()))
+                .put("count", end - start)
+                .put("items", items)
+                .put("parent", base + "index.json")
+                .put("lower", history.get(start).version())
+                .put("upper", history.get(end - 1).version()));
+        }
+        return new JSONObject()
+            .put("@id", base + "index.json")
+            .put("@type", new JSONArray().put("catalog:CatalogRoot").put("PackageRegistration").put("catalog:Permalink"))
+            .put("commitId", "00000000-0000-0000-0000-000000000000")
+            .put("commitTimeStamp", ISO_OFFSET.format(history.get(history.size() - 1).publishedAt()))
+            .put("count", pages.length())
+            .put("items", pages)
+            .toString();
+    }
+
+}
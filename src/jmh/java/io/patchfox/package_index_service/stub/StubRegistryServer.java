@@ -0,0 +1,236 @@
+package io.patchfox.package_index_service.stub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.stub.RegistryResponses.SyntheticVersion;
+
+
+/*
+ * a local http server that answers for all eight package indexes so enrichment can be load tested without going
+ * anywhere near the real ones. point the service at it with package-index.registry-base-url - requests come in as
+ * /<real host>/<real path>, eg: /registry.npmjs.org/left-pad
+ *
+ * every coordinate gets a deterministic generated history (see historyFor) so whoever seeds package records can pick
+ * versions that actually exist. responses are built with RegistryResponses, the same generators the operator
+ * benchmarks parse.
+ *
+ * knobs:
+ *   versions      - versions per package. go costs one request per version on top of the list, so keep this sane
+ *   latency       - added to every response, plus up to latencyJitter on top
+ *   throttleRate  - fraction of requests answered with a 429 instead
+ *   paddingBytes  - filler added to every json body, the way readmes and descriptions bloat real responses
+ */
+public class StubRegistryServer implements AutoCloseable {
+
+    public record Config(int versions, Duration latency, Duration latencyJitter, double throttleRate, int paddingBytes) {}
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // histories are regenerated on demand otherwise. go asks for one per version
+    private final Map<String, List<SyntheticVersion>> histories = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+
+    public StubRegistryServer(int port, Config config) throws IOException {
+        this.config = config;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public StubRegistryServer start() {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    public String baseUrl() { return "http://localhost:" + server.getAddress().getPort(); }
+
+    public long requests() { return requests.get(); }
+    public long throttled() { return throttled.get(); }
+    public long notFound() { return notFound.get(); }
+    public long bytesServed() { return bytesServed.get(); }
+
+    /**
+     * the history the server will hand out for a coordinate, oldest first
+     *
+     * @param versions
+     * @param packageType
+     * @param namespace or null
+     * @param name
+     * @return
+     */
+    public static List<SyntheticVersion> historyFor(int versions, String packageType, String namespace, String name) {
+        return RegistryResponses.history(versions, (packageType + "/" + namespace + "/" + name).hashCode());
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            sleep();
+
+            if (config.throttleRate() > 0 && ThreadLocalRandom.current().nextDouble() < config.throttleRate()) {
+                throttled.incrementAndGet();
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+
+            var body = route(exchange.getRequestURI().getRawPath(), exchange.getRequestURI().getRawQuery());
+            if (body == null) {
+                notFound.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            var bytes = pad(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", body.startsWith("{") ? "application/json" : "text/plain");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            bytesServed.addAndGet(bytes.length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * works out which package index and coordinate a request is for from the paths in PackageIndexService's api
+     * templates
+     *
+     * @param rawPath /<host>/<path>
+     * @param rawQuery
+     * @return the body to answer with or null for a 404
+     */
+    private String route(String rawPath, String rawQuery) {
+        var segments = rawPath.substring(1).split("/");
+        var path = segments.length == 0 ? List.<String>of() : List.of(segments).subList(1, segments.length);
+        return switch (segments[0]) {
+            case "search.maven.org" -> {
+                // q=g:<group>+AND+a:<artifact>
+                var q = queryParam(rawQuery, "q");
+                if (q == null || !q.startsWith("g:") || !q.contains(" AND a:")) { yield null; }
+                var groupId = q.substring(2, q.indexOf(" AND a:"));
+                var artifactId = q.substring(q.indexOf(" AND a:") + " AND a:".length());
+                yield body(PackageIndexService.MAVEN_PACKAGE_TYPE, groupId, artifactId);
+            }
+            case "registry.npmjs.org" -> path.size() == 1
+                    ? body(PackageIndexService.NPM_PACKAGE_TYPE, null, decode(path.get(0)))
+                    : null;
+            case "pypi.org" -> path.size() == 3
+                    ? body(PackageIndexService.PYPI_PACKAGE_TYPE, null, path.get(1))
+                    : null;
+            case "rubygems.org" -> path.size() == 4
+                    ? body(PackageIndexService.RUBY_PACKAGE_TYPE, null, stripSuffix(path.get(3), ".json"))
+                    : null;
+            case "proxy.golang.org" -> golang(path);
+            case "repo.packagist.org" -> path.size() == 3
+                    ? body(PackageIndexService.PHP_PACKAGE_TYPE, path.get(1), stripSuffix(path.get(2), ".json"))
+                    : null;
+            case "crates.io" -> path.size() == 4
+                    ? body(PackageIndexService.RUST_PACKAGE_TYPE, null, path.get(3))
+                    : null;
+            case "api.nuget.org" -> path.size() == 4
+                    ? body(PackageIndexService.DOTNET_PACKAGE_TYPE, null, path.get(2))
+                    : null;
+            default -> null;
+        };
+    }
+
+    /**
+     * <module namespace>/<module name>/@v/list and <module namespace>/<module name>/@v/<version>.info where the
+     * namespace can be any number of segments
+     *
+     * @param path
+     * @return
+     */
+    private String golang(List<String> path) {
+        if (path.size() < 4 || !path.get(path.size() - 2).equals("@v")) { return null; }
+        var namespace = String.join("/", path.subList(0, path.size() - 3));
+        var name = path.get(path.size() - 3);
+        var last = path.get(path.size() - 1);
+        var history = history(PackageIndexService.GOLANG_PACKAGE_TYPE, namespace, name);
+        if (last.equals("list")) { return RegistryResponses.golangList(history); }
+
+        var version = stripSuffix(last, ".info");
+        for (var v : history) {
+            if (("v" + v.version()).equals(version)) { return RegistryResponses.golangInfo(version, v.publishedAt()); }
+        }
+        return null;
+    }
+
+    private String body(String packageType, String namespace, String name) {
+        return RegistryResponses.body(packageType, namespace, name, history(packageType, namespace, name));
+    }
+
+    private List<SyntheticVersion> history(String packageType, String namespace, String name) {
+        return histories.computeIfAbsent(
+            packageType + "/" + namespace + "/" + name,
+            k -> historyFor(config.versions(), packageType, namespace, name)
+        );
+    }
+
+    private String pad(String body) {
+        if (config.paddingBytes() <= 0 || !body.startsWith("{")) { return body; }
+        return "{\"_padding\":\"" + "x".repeat(config.paddingBytes()) + "\"," + body.substring(1);
+    }
+
+    private void sleep() {
+        var millis = config.latency().toMillis();
+        if (config.latencyJitter().toMillis() > 0) {
+            millis += ThreadLocalRandom.current().nextLong(config.latencyJitter().toMillis());
+        }
+        if (millis <= 0) { return; }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String queryParam(String rawQuery, String key) {
+        if (rawQuery == null) { return null; }
+        for (var pair : rawQuery.split("&")) {
+            var eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(key)) { return decode(pair.substring(eq + 1)); }
+        }
+        return null;
+    }
+
+    private static String decode(String s) { return URLDecoder.decode(s, StandardCharsets.UTF_8); }
+
+    private static String stripSuffix(String s, String suffix) {
+        return s.endsWith(suffix) ? s.substring(0, s.length() - suffix.length()) : s;
+    }
+
+}
@@ -10,11 +10,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.core.KafkaTemplate;
 
 import io.patchfox.package_index_service.components.EnvironmentComponent;
 import io.patchfox.package_index_service.controllers.RestInfoController;
 import io.patchfox.package_index_service.helpers.RestHelper;
+import io.patchfox.package_index_service.importers.RegistryDumpImportRunner;
 import io.patchfox.package_utils.json.ApiRequest;
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,8 +41,9 @@ public class App {
     // this is how you send a message on the Kafka queue
     //
     // leave this uncommented - it not only smoke tests kafka on boot, it prints a list of available resource signatures 
-    // to the log.
+    // to the log. an import process doesn't talk to kafka so it's skipped there 
     @Bean
+    @Profile("!" + RegistryDumpImportRunner.IMPORT_PROFILE)
     public ApplicationRunner runner(KafkaTemplate<String, ApiRequest> template) {
         log.info("*!* SENDING TEST KAFKA MESSAGE *!*");
 
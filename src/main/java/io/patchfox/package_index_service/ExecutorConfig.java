@@ -0,0 +1,43 @@
+package io.patchfox.package_index_service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+
+
+@Configuration
+public class ExecutorConfig {
+
+    public static final String ENRICHMENT_JOB_EXECUTOR = "enrichmentJobExecutor";
+
+    @Autowired
+    EnvironmentComponent env;
+
+    /**
+     * pool that async enrichment jobs run on. spring owns the lifecycle so in-flight jobs get a chance to finish when 
+     * the pod is shut down. 
+     */
+    @Bean(name = ENRICHMENT_JOB_EXECUTOR)
+    public ThreadPoolTaskExecutor enrichmentJobExecutor() {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(env.getJobWorkers());
+        executor.setMaxPoolSize(env.getJobWorkers());
+        executor.setQueueCapacity(env.getJobQueueCapacity());
+        executor.setThreadNamePrefix("enrichment-job-");
+        // the pool still bounds how many jobs run at once, the workers just don't tie up platform threads while they 
+        // wait on package indexes
+        if (env.isVirtualThreadsEnabled()) { 
+            executor.setThreadFactory(Thread.ofVirtual().name("enrichment-job-", 0).factory()); 
+        }
+        // carry the submitting request's trace over so the job's spans hang off it 
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+}
@@ -0,0 +1,17 @@
+package io.patchfox.package_index_service;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import io.patchfox.package_index_service.importers.RegistryDumpImportRunner;
+
+
+/**
+ * @Scheduled methods only run in a service replica. an import process (see RegistryDumpImportRunner) has no business 
+ * polling change feeds or refreshing ahead, and the scheduler's threads would keep it from exiting. 
+ */
+@Configuration
+@EnableScheduling
+@Profile("!" + RegistryDumpImportRunner.IMPORT_PROFILE)
+public class SchedulingConfig {}
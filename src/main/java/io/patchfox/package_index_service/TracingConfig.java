@@ -0,0 +1,24 @@
+package io.patchfox.package_index_service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+
+@Configuration
+public class TracingConfig {
+
+    /**
+     * writes finished spans as OTLP json to the log so slow events can be pulled apart offline without standing up a 
+     * collector. spring picks up every SpanExporter bean and feeds it from a batch span processor. 
+     */
+    @Bean
+    @ConditionalOnProperty(name = "package-index.tracing.exporter", havingValue = "log")
+    public SpanExporter otlpJsonLoggingSpanExporter() {
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+
+}
@@ -0,0 +1,69 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * the crates.io api. its crawler policy asks for no more than one request a second, so this one starts out with a 
+ * single request in flight and isn't allowed many more 
+ */
+@Component
+public class CratesIoAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://crates.io/api/v1/crates/%s";
+
+    @Override
+    public String packageType() { return PackageIndexService.RUST_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "Rust Crates registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public RateLimit rateLimit() { return new RateLimit(1, 4); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONArray versionList = responseData.getJSONArray("versions");
+
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (int i = 0; i < versionList.length(); i++) {
+            JSONObject versionMetadata = versionList.getJSONObject(i);
+            if (versionMetadata.has("num") && versionMetadata.has("created_at")) {
+                String version = versionMetadata.getString("num");
+                // timestamp string is already in ISO 8601 UTC format
+                ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("created_at"));
+                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+            }
+        }
+        return packageHistory;
+    }
+
+}
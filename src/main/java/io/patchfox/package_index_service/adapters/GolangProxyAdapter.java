@@ -0,0 +1,115 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * the go module proxy. the version list has no timestamps so every version costs another request for its .info, 
+ * which makes a full history the most expensive fetch we do. the list on its own is one request though, and it's 
+ * what the head check compares against the stored history. @latest isn't good enough for that, it's the highest 
+ * semver rather than the newest release so a backport to an older major doesn't move it
+ */
+@Slf4j
+@Component
+public class GolangProxyAdapter implements HeadOnlyRegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://proxy.golang.org/%s/%s/@v/list";
+    public static final String VERSION_INFO_TEMPLATE = "https://proxy.golang.org/%s/%s/@v/%s.info";
+
+    @Override
+    public String packageType() { return PackageIndexService.GOLANG_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "Golang module proxy"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.noneOf(Capability.class); }
+
+    @Override
+    public RateLimit rateLimit() { return new RateLimit(16, 128); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, namespace, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) throws Exception {
+        // retrieve individual version metadata for each version
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (String version : versionList(apiResponse)) {
+            URI versionInfoURI = new URI(String.format(
+                    VERSION_INFO_TEMPLATE,
+                    queryContext.packageNamespace,
+                    queryContext.packageName,
+                    version
+            ));
+            ApiResponse versionInfoResponse = client.get(
+                    queryContext.txid, 
+                    PackageIndexService.GOLANG_PACKAGE_TYPE, 
+                    versionInfoURI
+            );
+            if ( !HttpStatusCode.valueOf(versionInfoResponse.getCode()).is2xxSuccessful()) {
+                log.debug("no .info for version: {} code: {}", version, versionInfoResponse.getCode());
+                continue;
+            }
+
+            var versionInfo = versionInfoResponse.getData();
+            log.debug("versionInfo is: {}", versionInfo);
+            JSONObject versionMetadata = new JSONObject(versionInfo.get("response").toString());
+            // timestamp string is already in ISO 8601 UTC format
+            ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("Time"));
+            packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+        }
+        return packageHistory;
+    }
+
+    @Override
+    public URI headUri(String namespace, String name) throws URISyntaxException {
+        return lookupUri(namespace, name);
+    }
+
+    @Override
+    public boolean isUnchanged(ApiResponse apiResponse, List<VersionMetadata> storedHistory) {
+        var listed = versionList(apiResponse);
+        if (listed.isEmpty()) { return false; }
+        Set<String> stored = new HashSet<>();
+        for (var v : storedHistory) { stored.add(v.version); }
+        return stored.containsAll(listed);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static List<String> versionList(ApiResponse apiResponse) {
+        List<String> rv = new ArrayList<>();
+        for (var version : apiResponse.getData().get("response").toString().split("\\R")) {
+            if ( !version.isBlank()) { rv.add(version.trim()); }
+        }
+        return rv;
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * an index that sends no validators but can say cheaply whether anything was published for a coordinate. an expired
+ * stored history is kept without fetching the full history when it says nothing was.
+ *
+ * the answer has to change whenever any version is published, not just when the latest one moves. go and maven both
+ * call the highest version the latest, so a 1.2.10 published after 2.0.0 leaves the latest where it was and a history
+ * checked against it would never pick up the backport
+ */
+public interface HeadOnlyRegistryAdapter extends RegistryAdapter {
+
+    /**
+     *
+     * @param namespace
+     * @param name
+     * @return the cheap request. when it's the same as lookupUri the engine reuses the response for the full fetch
+     * @throws URISyntaxException
+     */
+    URI headUri(String namespace, String name) throws URISyntaxException;
+
+    /**
+     *
+     * @param apiResponse a 2xx response from headUri
+     * @param storedHistory the history we already have, newest first
+     * @return true only if the response shows nothing was published that storedHistory doesn't have. false when unsure
+     */
+    boolean isUnchanged(ApiResponse apiResponse, List<VersionMetadata> storedHistory);
+
+}
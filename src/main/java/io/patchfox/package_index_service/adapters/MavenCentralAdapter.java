@@ -0,0 +1,112 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * the maven central search api. it sends no validators, but the same query without core=gav returns one doc per 
+ * artifact with its latest version and version count, which is a lot cheaper than the 200 row version list. the 
+ * head check goes by the count, the latest version is the highest one rather than the newest so a backport doesn't 
+ * move it 
+ */
+@Component
+public class MavenCentralAdapter implements HeadOnlyRegistryAdapter {
+
+    // rows=200 is max for that argument. any higher and it reverts to default of 20
+    public static final String LOOKUP_TEMPLATE = 
+            "https://search.maven.org/solrsearch/select?q=g:%s+AND+a:%s&rows=200&wt=json&core=gav";
+    public static final String SUMMARY_TEMPLATE = 
+            "https://search.maven.org/solrsearch/select?q=g:%s+AND+a:%s&rows=1&wt=json";
+
+    @Override
+    public String packageType() { return PackageIndexService.MAVEN_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "Maven Central"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.noneOf(Capability.class); }
+
+    @Override
+    public RateLimit rateLimit() { return new RateLimit(16, 128); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, namespace, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONObject responseObj = responseData.getJSONObject("response");
+        JSONArray metadataArray = responseObj.getJSONArray("docs");
+
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (int i = 0; i < metadataArray.length(); i ++) {
+            JSONObject versionMetadata = metadataArray.getJSONObject(i);
+            if (versionMetadata.has("v") && versionMetadata.has("timestamp")) {
+                String version = versionMetadata.getString("v");
+                ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getLong("timestamp"));
+                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+            }
+        }
+        return packageHistory;
+    }
+
+    @Override
+    public URI headUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(SUMMARY_TEMPLATE, namespace, name));
+    }
+
+    /*
+     * a history can only be vouched for if it has every version. one that hit the 200 row cap or had versions 
+     * without a timestamp never matches the count and is always fetched in full, same as without a head check 
+     */
+    @Override
+    public boolean isUnchanged(ApiResponse apiResponse, List<VersionMetadata> storedHistory) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONArray docs = responseData.getJSONObject("response").getJSONArray("docs");
+        if (docs.isEmpty()) { return false; }
+        var doc = docs.getJSONObject(0);
+        var versionCount = doc.optInt("versionCount", -1);
+        var latestVersion = doc.optString("latestVersion", null);
+        if (versionCount != storedHistory.size() || latestVersion == null) { return false; }
+        return storedHistory.stream().anyMatch(v -> v.version.equals(latestVersion));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static ZonedDateTime constructTimestamp(Long timestamp) {
+        return ZonedDateTime.ofInstant(
+                (timestamp > 100000000000L)
+                        ? Instant.ofEpochMilli(timestamp)  // Likely milliseconds
+                        : Instant.ofEpochSecond(timestamp), // Likely seconds
+                ZoneOffset.UTC
+        );
+    }
+
+}
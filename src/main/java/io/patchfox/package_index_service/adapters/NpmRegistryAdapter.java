@@ -0,0 +1,65 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+@Component
+public class NpmRegistryAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://registry.npmjs.org/%s";
+
+    private static final Pattern VALID_VERSION_PATTERN = Pattern.compile(PackageIndexService.SEMVER_REGEX);
+
+    @Override
+    public String packageType() { return PackageIndexService.NPM_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "npm registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public RateLimit rateLimit() { return new RateLimit(16, 128); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONObject versionDict = responseData.getJSONObject("time");
+
+        // the "time" object also carries "created" and "modified" keys. only keep the ones that look like versions
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (String version : versionDict.keySet()) {
+            if ( !VALID_VERSION_PATTERN.matcher(version).matches()) { continue; }
+            // timestamp string is already in ISO 8601 UTC format
+            ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionDict.getString(version));
+            packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+        }
+        return packageHistory;
+    }
+
+}
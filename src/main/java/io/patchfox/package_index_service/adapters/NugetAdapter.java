@@ -0,0 +1,70 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * nuget registration pages, served out of blob storage with an ETag 
+ */
+@Component
+public class NugetAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://api.nuget.org/v3/registration5-gz-semver2/%s/index.json";
+
+    @Override
+    public String packageType() { return PackageIndexService.DOTNET_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "NuGet registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, name.toLowerCase()));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONArray versionDictBlocks = responseData.getJSONArray("items");
+
+        // iterate over partitioned list of versions
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (int i = 0; i < versionDictBlocks.length(); i++) {
+            JSONObject versionDictBlock = versionDictBlocks.getJSONObject(i);
+            JSONArray versionDictList = versionDictBlock.getJSONArray("items");
+            // iterate through version dictionaries within the selected block
+            for (int j = 0; j < versionDictList.length(); j++) {
+                JSONObject versionDict = versionDictList.getJSONObject(j);
+                JSONObject versionMetadata = versionDict.getJSONObject("catalogEntry");
+                String version = versionMetadata.getString("version");
+                // timestamp string is already in ISO 8601 UTC format
+                ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("published"));
+                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+            }
+        }
+        return packageHistory;
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * packagist's composer v2 metadata. they ask for If-Modified-Since on every request so a conditional get is the norm 
+ */
+@Component
+public class PackagistAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://repo.packagist.org/p2/%s/%s.json";
+
+    @Override
+    public String packageType() { return PackageIndexService.PHP_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "PHP Composer registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, namespace, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONObject packageObject = responseData.getJSONObject("packages");
+        JSONArray versionList = packageObject.getJSONArray(queryContext.packageNamespace + "/" + queryContext.packageName);
+
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (int i = 0; i < versionList.length(); i++) {
+            JSONObject versionMetadata = versionList.getJSONObject(i);
+            String version = versionMetadata.getString("version");
+            // timestamp string is already in ISO 8601 UTC format
+            ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("time"));
+            packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+        }
+        return packageHistory;
+    }
+
+}
@@ -0,0 +1,63 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+@Component
+public class PypiAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://pypi.org/pypi/%s/json";
+
+    @Override
+    public String packageType() { return PackageIndexService.PYPI_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "pypi registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONObject responseData = new JSONObject(apiResponse.getData().get("response").toString());
+        JSONObject versionDict = responseData.getJSONObject("releases");
+
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (String version : versionDict.keySet()) {
+            JSONArray metadataArr = versionDict.getJSONArray(version);
+            // releases with no files uploaded have no upload time
+            if ( !metadataArr.isEmpty()) {
+                JSONObject versionMetadata = metadataArr.getJSONObject(0);
+                // timestamp string is already in ISO 8601 UTC format
+                ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("upload_time_iso_8601"));
+                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+            }
+        }
+        return packageHistory;
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * everything PackageIndexService needs to know about one package index. to support a new ecosystem add a @Component
+ * that implements this, nothing else has to change.
+ *
+ * adapters only build uris and parse responses. the engine owns the requests (mirrors, retries, concurrency limits),
+ * the version history store, sorting and what happens when a package index hands back nothing. it also picks the
+ * cheapest way to get a history out of each adapter:
+ *
+ * * CONDITIONAL_GET - the index honours If-None-Match / If-Modified-Since, so a stored history with validators is
+ *   revalidated for the cost of a 304
+ * * HeadOnlyRegistryAdapter - the index has no validators but a cheap request that changes whenever a version is
+ *   published. an expired stored history is kept if that request says nothing was
+ *
+ * none of the public indexes we talk to answers many coordinates in one request, so there's no capability for that.
+ * add one along with the engine side when an index that can shows up
+ */
+public interface RegistryAdapter {
+
+    enum Capability { CONDITIONAL_GET }
+
+    /*
+     * what the index can bear, as a starting point and a ceiling for RegistryConcurrencyLimiter. 0 means use the
+     * package-index.registry-limits defaults
+     */
+    record RateLimit(int initialConcurrency, int maxConcurrency) {
+        public static final RateLimit DEFAULT = new RateLimit(0, 0);
+    }
+
+    /*
+     * how adapters make any follow up requests they need, eg: go's per version .info lookups. goes through the same
+     * mirrors, retries and limits as everything else
+     */
+    @FunctionalInterface
+    interface RegistryClient {
+        ApiResponse get(UUID txid, String packageType, URI uri) throws URISyntaxException, InterruptedException;
+    }
+
+
+    /**
+     *
+     * @return one of the *_PACKAGE_TYPE constants in PackageIndexService, ie: the purl type
+     */
+    String packageType();
+
+    /**
+     *
+     * @return human readable name for log lines
+     */
+    String indexName();
+
+    Set<Capability> capabilities();
+
+    default RateLimit rateLimit() { return RateLimit.DEFAULT; }
+
+    /**
+     *
+     * @param namespace
+     * @param name
+     * @return where the full version history for the coordinate lives
+     * @throws URISyntaxException
+     */
+    URI lookupUri(String namespace, String name) throws URISyntaxException;
+
+    /**
+     *
+     * @param apiResponse a 2xx response from lookupUri
+     * @param queryContext
+     * @param client
+     * @return every version the index knows about, in any order. empty if there's nothing usable
+     * @throws Exception
+     */
+    List<VersionMetadata> parseVersionHistory(
+        ApiResponse apiResponse,
+        IndexQueryContext queryContext,
+        RegistryClient client
+    ) throws Exception;
+
+}
@@ -0,0 +1,67 @@
+package io.patchfox.package_index_service.adapters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * rubygems.org asks api clients to stay under 10 requests a second so we never let it go past that many in flight 
+ */
+@Component
+public class RubyGemsAdapter implements RegistryAdapter {
+
+    public static final String LOOKUP_TEMPLATE = "https://rubygems.org/api/v1/versions/%s.json";
+
+    @Override
+    public String packageType() { return PackageIndexService.RUBY_PACKAGE_TYPE; }
+
+    @Override
+    public String indexName() { return "Ruby Gem registry"; }
+
+    @Override
+    public Set<Capability> capabilities() { return EnumSet.of(Capability.CONDITIONAL_GET); }
+
+    @Override
+    public RateLimit rateLimit() { return new RateLimit(4, 10); }
+
+    @Override
+    public URI lookupUri(String namespace, String name) throws URISyntaxException {
+        return new URI(String.format(LOOKUP_TEMPLATE, name));
+    }
+
+    @Override
+    public List<VersionMetadata> parseVersionHistory(
+            ApiResponse apiResponse, 
+            IndexQueryContext queryContext, 
+            RegistryClient client
+    ) {
+        JSONArray responseData = new JSONArray(apiResponse.getData().get("response").toString());
+
+        List<VersionMetadata> packageHistory = new ArrayList<>();
+        for (int i = 0; i < responseData.length(); i++) {
+            JSONObject versionMetadata = responseData.getJSONObject(i);
+            if (versionMetadata.has("number") && versionMetadata.has("created_at")) {
+                String version = versionMetadata.getString("number");
+                // timestamp string is already in ISO 8601 UTC format
+                ZonedDateTime releaseTimestamp = ZonedDateTime.parse(versionMetadata.getString("created_at"));
+                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+            }
+        }
+        return packageHistory;
+    }
+
+}
@@ -0,0 +1,208 @@
+package io.patchfox.package_index_service.components;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+
+/*
+ * micrometer meters for package index i/o, parsing and persistence. everything that can be attributed to a package 
+ * index is tagged with the package type as "ecosystem" so slow or throttling registries stand out. scraped from 
+ * /actuator/prometheus 
+ */
+@Component
+public class EnrichmentMetrics {
+
+    public static final String ECOSYSTEM_TAG = "ecosystem";
+
+    // where a package's version history came from 
+    public static final String SOURCE_STORE = "store";
+    public static final String SOURCE_REGISTRY = "registry";
+    public static final String SOURCE_FAILED = "failed";
+
+    public static final String TABLE_PACKAGE = "package";
+    public static final String TABLE_PACKAGE_VERSION_HISTORY = "package_version_history";
+
+    private final MeterRegistry registry;
+
+    private final AtomicInteger kafkaListenerInFlight = new AtomicInteger();
+
+    public EnrichmentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        registry.gauge("patchfox.kafka.listener.inflight", kafkaListenerInFlight);
+    }
+
+
+    /**
+     * one request to a package index, retries included 
+     * 
+     * @param ecosystem
+     * @param statusCode
+     * @param nanos
+     * @param responseBytes
+     */
+    public void registryRequest(String ecosystem, int statusCode, long nanos, long responseBytes) {
+        Timer.builder("patchfox.registry.requests")
+             .description("package index request latency")
+             .tag(ECOSYSTEM_TAG, ecosystem)
+             .tag("status", statusClass(statusCode))
+             .publishPercentileHistogram()
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+
+        DistributionSummary.builder("patchfox.registry.response.size")
+                           .description("package index response body size")
+                           .baseUnit("bytes")
+                           .tag(ECOSYSTEM_TAG, ecosystem)
+                           .register(registry)
+                           .record(responseBytes);
+    }
+
+    public void registryRetry(String ecosystem) {
+        Counter.builder("patchfox.registry.retries")
+               .description("package index requests retried after being throttled")
+               .tag(ECOSYSTEM_TAG, ecosystem)
+               .register(registry)
+               .increment();
+    }
+
+    public void registryHedge(String ecosystem) {
+        Counter.builder("patchfox.registry.hedges")
+               .description("package index requests also sent to a second endpoint because the first was slow")
+               .tag(ECOSYSTEM_TAG, ecosystem)
+               .register(registry)
+               .increment();
+    }
+
+    public void operatorParse(String ecosystem, long nanos) {
+        Timer.builder("patchfox.operator.parse")
+             .description("time to turn a package index response into version history")
+             .tag(ECOSYSTEM_TAG, ecosystem)
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 
+     * @param table
+     * @param ecosystem
+     * @param rows rows in the batch
+     * @param nanos
+     */
+    public void databaseWrite(String table, String ecosystem, int rows, long nanos) {
+        Timer.builder("patchfox.db.write")
+             .description("time to write a batch of rows")
+             .tag("table", table)
+             .tag(ECOSYSTEM_TAG, ecosystem)
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+
+        DistributionSummary.builder("patchfox.db.write.batch.size")
+                           .description("rows per write batch")
+                           .baseUnit("rows")
+                           .tag("table", table)
+                           .tag(ECOSYSTEM_TAG, ecosystem)
+                           .register(registry)
+                           .record(rows);
+    }
+
+    /**
+     * counts packages enriched. rate() of this is packages/sec 
+     * 
+     * @param ecosystem
+     * @param source one of SOURCE_STORE, SOURCE_REGISTRY or SOURCE_FAILED 
+     */
+    public void packageEnriched(String ecosystem, String source) {
+        Counter.builder("patchfox.enrichment.packages")
+               .description("packages enriched")
+               .tag(ECOSYSTEM_TAG, ecosystem)
+               .tag("source", source)
+               .register(registry)
+               .increment();
+    }
+
+    /**
+     * counts coordinates not looked up because of the NegativeCache 
+     * 
+     * @param ecosystem
+     * @param reason one of the NegativeCache REASON_* constants
+     */
+    public void negativeCacheHit(String ecosystem, String reason) {
+        Counter.builder("patchfox.negative_cache.hits")
+               .description("coordinates not looked up because we know the package index doesn't have them")
+               .tag(ECOSYSTEM_TAG, ecosystem)
+               .tag("reason", reason)
+               .register(registry)
+               .increment();
+    }
+
+    /**
+     * counts purls answered by the lookup api 
+     * 
+     * @param ecosystem
+     * @param status one of the PackageLookupService STATUS_* constants
+     */
+    public void packageLookedUp(String ecosystem, String status) {
+        Counter.builder("patchfox.lookup.packages")
+               .description("purls answered by the lookup api")
+               .tag(ECOSYSTEM_TAG, ecosystem)
+               .tag("status", status)
+               .register(registry)
+               .increment();
+    }
+
+    public void eventEnriched(String outcome, long nanos) {
+        Timer.builder("patchfox.enrichment.event.duration")
+             .description("end to end time to enrich a datasource event")
+             .tag("outcome", outcome)
+             .publishPercentileHistogram()
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * time an enrichment waited for its turn in the EnrichmentScheduler
+     * 
+     * @param lane
+     * @param nanos
+     */
+    public void schedulerWait(String lane, long nanos) {
+        Timer.builder("patchfox.scheduler.wait")
+             .description("time a datasource event waited to be enriched")
+             .tag("lane", lane)
+             .publishPercentileHistogram()
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void schedulerQueued(String lane, Supplier<Number> queued) {
+        Gauge.builder("patchfox.scheduler.queued", queued)
+             .description("datasource events waiting to be enriched")
+             .tag("lane", lane)
+             .register(registry);
+    }
+
+    public void kafkaListenerStarted() { kafkaListenerInFlight.incrementAndGet(); }
+
+    public void kafkaListenerFinished() { kafkaListenerInFlight.decrementAndGet(); }
+
+
+    //
+    // helpers 
+    //
+
+    // keep status cardinality down to what we act on 
+    public static String statusClass(int statusCode) {
+        if (statusCode == 304 || statusCode == 429) { return String.valueOf(statusCode); }
+        return (statusCode / 100) + "xx";
+    }
+
+}
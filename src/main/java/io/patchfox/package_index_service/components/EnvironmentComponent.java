@@ -1,5 +1,8 @@
 package io.patchfox.package_index_service.components;
 
+import java.time.Duration;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -28,4 +31,238 @@ public class EnvironmentComponent {
     @Value("${spring.kafka.group-name}")
     String kafkaGroupName;
 
+    @Value("${package-index.freshness-window}")
+    Duration freshnessWindow;
+
+    @Value("${package-index.refresh-ahead.enabled}")
+    boolean refreshAheadEnabled;
+
+    @Value("${package-index.refresh-ahead.lead-time}")
+    Duration refreshAheadLeadTime;
+
+    @Value("${package-index.refresh-ahead.half-life}")
+    Duration refreshAheadHalfLife;
+
+    @Value("${package-index.refresh-ahead.min-score}")
+    double refreshAheadMinScore;
+
+    @Value("${package-index.refresh-ahead.registry-budget}")
+    int refreshAheadRegistryBudget;
+
+    @Value("${package-index.refresh-ahead.registry-share}")
+    double refreshAheadRegistryShare;
+
+    @Value("${package-index.refresh-ahead.max-tracked-coordinates}")
+    int refreshAheadMaxTrackedCoordinates;
+
+    @Value("${package-index.change-feeds.max-lag}")
+    Duration changeFeedMaxLag;
+
+    @Value("${package-index.change-feeds.change-retention}")
+    Duration changeFeedChangeRetention;
+
+    @Value("${package-index.change-feeds.max-pages}")
+    int changeFeedMaxPages;
+
+    @Value("${package-index.change-feeds.npm.enabled}")
+    boolean npmChangeFeedEnabled;
+
+    @Value("${package-index.change-feeds.npm.base-url}")
+    String npmChangeFeedBaseUrl;
+
+    @Value("${package-index.change-feeds.golang.enabled}")
+    boolean golangChangeFeedEnabled;
+
+    @Value("${package-index.change-feeds.golang.base-url}")
+    String golangChangeFeedBaseUrl;
+
+    @Value("${package-index.change-feeds.pypi.enabled}")
+    boolean pypiChangeFeedEnabled;
+
+    @Value("${package-index.change-feeds.pypi.base-url}")
+    String pypiChangeFeedBaseUrl;
+
+    @Value("${package-index.change-feeds.cargo.enabled}")
+    boolean cargoChangeFeedEnabled;
+
+    @Value("${package-index.change-feeds.cargo.base-url}")
+    String cargoChangeFeedBaseUrl;
+
+    @Value("${package-index.change-feeds.cargo.repository}")
+    String cargoChangeFeedRepository;
+
+    @Value("${package-index.change-feeds.cargo.token:}")
+    String cargoChangeFeedToken;
+
+    @Value("${package-index.import.format:}")
+    String importFormat;
+
+    @Value("${package-index.import.path:}")
+    String importPath;
+
+    @Value("${package-index.import.parallelism}")
+    int importParallelism;
+
+    @Value("${package-index.import.batch-size}")
+    int importBatchSize;
+
+    @Value("${package-index.import.sort-buffer-versions}")
+    int importSortBufferVersions;
+
+    @Value("${package-index.import.spill-directory:}")
+    String importSpillDirectory;
+
+    @Value("${package-index.scheduler.workers}")
+    int schedulerWorkers;
+
+    @Value("${package-index.scheduler.fast-lane.max-purls}")
+    int schedulerFastLaneMaxPurls;
+
+    @Value("${package-index.scheduler.fast-lane.reserved-workers}")
+    int schedulerFastLaneReservedWorkers;
+
+    @Value("${package-index.jobs.workers}")
+    int jobWorkers;
+
+    @Value("${package-index.jobs.queue-capacity}")
+    int jobQueueCapacity;
+
+    @Value("${package-index.jobs.retention}")
+    Duration jobRetention;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    boolean virtualThreadsEnabled;
+
+    @Value("${package-index.enrichment.concurrency}")
+    int enrichmentConcurrency;
+
+    @Value("${package-index.registry-limits.enabled}")
+    boolean registryLimitsEnabled;
+
+    @Value("${package-index.registry-limits.initial}")
+    int registryLimitInitial;
+
+    @Value("${package-index.registry-limits.min}")
+    int registryLimitMin;
+
+    @Value("${package-index.registry-limits.max}")
+    int registryLimitMax;
+
+    @Value("${package-index.registry-limits.backoff-ratio}")
+    double registryLimitBackoffRatio;
+
+    @Value("${package-index.registry-limits.latency-tolerance}")
+    double registryLimitLatencyTolerance;
+
+    @Value("${package-index.mirrors.maven:}")
+    List<String> mavenMirrors;
+
+    @Value("${package-index.mirrors.npm:}")
+    List<String> npmMirrors;
+
+    @Value("${package-index.mirrors.pypi:}")
+    List<String> pypiMirrors;
+
+    @Value("${package-index.mirrors.gem:}")
+    List<String> gemMirrors;
+
+    @Value("${package-index.mirrors.golang:}")
+    List<String> golangMirrors;
+
+    @Value("${package-index.mirrors.composer:}")
+    List<String> composerMirrors;
+
+    @Value("${package-index.mirrors.cargo:}")
+    List<String> cargoMirrors;
+
+    @Value("${package-index.mirrors.nuget:}")
+    List<String> nugetMirrors;
+
+    @Value("${package-index.mirrors.failure-threshold}")
+    int mirrorFailureThreshold;
+
+    @Value("${package-index.mirrors.cooldown}")
+    Duration mirrorCooldown;
+
+    @Value("${package-index.hedging.enabled}")
+    boolean hedgingEnabled;
+
+    @Value("${package-index.hedging.min-delay}")
+    Duration hedgingMinDelay;
+
+    @Value("${package-index.registry-base-url:}")
+    String registryBaseUrl;
+
+    @Value("${package-index.registry-traffic.mode}")
+    String registryTrafficMode;
+
+    @Value("${package-index.registry-traffic.path}")
+    String registryTrafficPath;
+
+    @Value("${package-index.registry-traffic.time-scale}")
+    double registryTrafficTimeScale;
+
+    @Value("${package-index.logging.sample-interval}")
+    Duration logSampleInterval;
+
+    @Value("${package-index.logging.sample-burst}")
+    int logSampleBurst;
+
+    @Value("${package-index.checkpoint.chunk-size}")
+    int checkpointChunkSize;
+
+    @Value("${package-index.checkpoint.retention}")
+    Duration checkpointRetention;
+
+    @Value("${package-index.progress.retention}")
+    Duration progressRetention;
+
+    @Value("${package-index.progress.emitter-timeout}")
+    Duration progressEmitterTimeout;
+
+    @Value("${package-index.negative-cache.enabled}")
+    boolean negativeCacheEnabled;
+
+    @Value("${package-index.negative-cache.skip-patterns:}")
+    List<String> negativeCacheSkipPatterns;
+
+    @Value("${package-index.negative-cache.ttl}")
+    Duration negativeCacheTtl;
+
+    @Value("${package-index.negative-cache.max-entries}")
+    int negativeCacheMaxEntries;
+
+    @Value("${package-index.negative-cache.false-positive-rate}")
+    double negativeCacheFalsePositiveRate;
+
+    @Value("${package-index.lookup.max-purls}")
+    int lookupMaxPurls;
+
+    @Value("${package-index.lookup.concurrency}")
+    int lookupConcurrency;
+
+    @Value("${package-index.lookup-indexes.enabled}")
+    boolean lookupIndexesEnabled;
+
+
+    /**
+     * 
+     * @param packageType one of the *_PACKAGE_TYPE constants in PackageIndexService
+     * @return mirrors configured for the package type, in the order they should be tried
+     */
+    public List<String> getMirrorsFor(String packageType) {
+        var rv = switch (packageType) {
+            case "maven" -> mavenMirrors;
+            case "npm" -> npmMirrors;
+            case "pypi" -> pypiMirrors;
+            case "gem" -> gemMirrors;
+            case "golang" -> golangMirrors;
+            case "composer" -> composerMirrors;
+            case "cargo" -> cargoMirrors;
+            case "nuget" -> nugetMirrors;
+            default -> List.<String>of();
+        };
+        return rv == null ? List.of() : rv;
+    }
+
 }
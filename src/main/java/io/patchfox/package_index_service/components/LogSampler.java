@@ -0,0 +1,64 @@
+package io.patchfox.package_index_service.components;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+
+/*
+ * rate limits log lines that can fire once per purl or once per request. each key gets a burst of lines per interval,
+ * everything past that is counted and reported on the next line that makes it through.
+ */
+@Component
+public class LogSampler {
+
+    // handed back when a line should be dropped
+    public static final long SUPPRESSED = -1;
+
+    // a lock rather than synchronized so a virtual thread logging from here never pins its carrier
+    static class Window {
+        final ReentrantLock lock = new ReentrantLock();
+        long startedAtNanos;
+        int logged;
+        long suppressed;
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+
+    /**
+     *
+     * @param key what's being logged, eg: "empty-history:npm"
+     * @return SUPPRESSED if the line should be dropped, otherwise how many were dropped since the last one logged
+     */
+    public long sample(String key) {
+        var window = windows.computeIfAbsent(key, k -> new Window());
+        var now = System.nanoTime();
+        window.lock.lock();
+        try {
+            if (now - window.startedAtNanos > env.getLogSampleInterval().toNanos()) {
+                window.startedAtNanos = now;
+                window.logged = 0;
+            }
+
+            if (window.logged >= env.getLogSampleBurst()) {
+                window.suppressed++;
+                return SUPPRESSED;
+            }
+
+            window.logged++;
+            var rv = window.suppressed;
+            window.suppressed = 0;
+            return rv;
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+}
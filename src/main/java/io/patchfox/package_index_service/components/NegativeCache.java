@@ -0,0 +1,242 @@
+package io.patchfox.package_index_service.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * package coordinates we know the public package indexes don't have, eg: internal @ourco/* npm packages or in house
+ * maven groupIds. without this every event that has one pays a round trip (and a 404 or an empty search result) for
+ * it every single time.
+ *
+ * coordinates matching package-index.negative-cache.skip-patterns are never looked up at all. a coordinate a package
+ * index says is missing is remembered for package-index.negative-cache.ttl after which it gets asked about again, in
+ * case it's been published since.
+ *
+ * remembered coordinates are kept as 64 bit fingerprints with their expiry, behind a bloom filter. nearly every
+ * coordinate an event asks about is not missing and the bloom filter answers those without touching the map. the
+ * filter can't forget, so it's rebuilt from whatever hasn't expired on each sweep
+ */
+@Slf4j
+@Component
+public class NegativeCache {
+
+    public static final String REASON_PATTERN = "pattern";
+    public static final String REASON_MISSING = "missing";
+
+    /*
+     * plain bloom filter over 64 bit fingerprints. k probes are derived from the two halves of the fingerprint
+     * (Kirsch-Mitzenmacher), so adding and checking never allocates
+     */
+    static class BloomFilter {
+        private final AtomicLongArray words;
+        private final int bitCount;
+        private final int probes;
+
+        BloomFilter(int expectedEntries, double falsePositiveRate) {
+            var expected = Math.max(1, expectedEntries);
+            var bits = Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.max(64, Math.min(bits, Integer.MAX_VALUE - 64));
+            this.probes = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+            this.words = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        void put(long fingerprint) {
+            for (int i = 1; i <= probes; i++) {
+                var bit = bitFor(fingerprint, i);
+                words.getAndAccumulate(bit >>> 6, 1L << bit, (a, b) -> a | b);
+            }
+        }
+
+        boolean mightContain(long fingerprint) {
+            for (int i = 1; i <= probes; i++) {
+                var bit = bitFor(fingerprint, i);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) { return false; }
+            }
+            return true;
+        }
+
+        private int bitFor(long fingerprint, int probe) {
+            var combined = (int) fingerprint + probe * (int) (fingerprint >>> 32);
+            if (combined < 0) { combined = ~combined; }
+            return combined % bitCount;
+        }
+    }
+
+    record SkipPattern(String packageType, Pattern pattern) {}
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    LogSampler logSampler;
+
+    // fingerprint -> System.nanoTime() the entry stops counting
+    private final Map<Long, Long> confirmed = new ConcurrentHashMap<>();
+
+    volatile BloomFilter filter;
+
+    private final List<SkipPattern> skipPatterns = new ArrayList<>();
+
+
+    @PostConstruct
+    void init() {
+        filter = newFilter();
+        for (var skipPattern : env.getNegativeCacheSkipPatterns()) {
+            if (skipPattern.isBlank()) { continue; }
+            var separator = skipPattern.indexOf(':');
+            if (separator < 1) {
+                throw new IllegalStateException(
+                    "package-index.negative-cache.skip-patterns entries look like <purl type>:<glob>, got: " + 
+                    skipPattern
+                );
+            }
+            skipPatterns.add(new SkipPattern(
+                skipPattern.substring(0, separator).trim(),
+                globToPattern(skipPattern.substring(separator + 1).trim())
+            ));
+        }
+        if ( !skipPatterns.isEmpty()) { log.info("never looking up coordinates matching: {}", skipPatterns); }
+        Gauge.builder("patchfox.negative_cache.entries", confirmed, Map::size)
+             .description("coordinates currently remembered as missing from their package index")
+             .register(meterRegistry);
+    }
+
+
+    /**
+     *
+     * @param coordinate
+     * @return REASON_PATTERN or REASON_MISSING if the coordinate shouldn't be looked up, otherwise null
+     */
+    public String skipReason(PackageCoordinate coordinate) {
+        if ( !env.isNegativeCacheEnabled()) { return null; }
+        if ( !skipPatterns.isEmpty()) {
+            var path = pathOf(coordinate);
+            for (var skipPattern : skipPatterns) {
+                var typeMatches = skipPattern.packageType().equals(coordinate.type());
+                if (typeMatches && skipPattern.pattern().matcher(path).matches()) { return REASON_PATTERN; }
+            }
+        }
+
+        var fingerprint = fingerprint(coordinate);
+        if ( !filter.mightContain(fingerprint)) { return null; }
+        var expiresAt = confirmed.get(fingerprint);
+        if (expiresAt == null) { return null; }
+        if (System.nanoTime() - expiresAt > 0) {
+            confirmed.remove(fingerprint, expiresAt);
+            return null;
+        }
+        return REASON_MISSING;
+    }
+
+
+    /**
+     * remember that the package index has nothing for the coordinate
+     *
+     * @param coordinate
+     */
+    public void recordMissing(PackageCoordinate coordinate) {
+        if ( !env.isNegativeCacheEnabled()) { return; }
+        var fingerprint = fingerprint(coordinate);
+        if (confirmed.size() >= env.getNegativeCacheMaxEntries() && !confirmed.containsKey(fingerprint)) {
+            var suppressed = logSampler.sample("negative-cache-full");
+            if (suppressed != LogSampler.SUPPRESSED) {
+                log.atWarn()
+                   .addKeyValue("maxEntries", env.getNegativeCacheMaxEntries())
+                   .addKeyValue("suppressed", suppressed)
+                   .log("negative cache is full, missing coordinates are being looked up again");
+            }
+            return;
+        }
+        confirmed.put(fingerprint, System.nanoTime() + env.getNegativeCacheTtl().toNanos());
+        filter.put(fingerprint);
+    }
+
+
+    /*
+     * drops expired entries and rebuilds the bloom filter without them. a coordinate recorded while the new filter is
+     * being built can miss it, which only costs one more request to the package index before it's recorded again
+     */
+    @Scheduled(
+        initialDelayString = "${package-index.negative-cache.sweep-interval}",
+        fixedDelayString = "${package-index.negative-cache.sweep-interval}"
+    )
+    public void sweep() {
+        var now = System.nanoTime();
+        var before = confirmed.size();
+        confirmed.entrySet().removeIf(e -> now - e.getValue() > 0);
+        if (confirmed.size() == before) { return; }
+
+        var rebuilt = newFilter();
+        for (var fingerprint : confirmed.keySet()) { rebuilt.put(fingerprint); }
+        filter = rebuilt;
+        log.debug("negative cache swept from {} to {} entries", before, confirmed.size());
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private BloomFilter newFilter() {
+        return new BloomFilter(env.getNegativeCacheMaxEntries(), env.getNegativeCacheFalsePositiveRate());
+    }
+
+
+    private static String pathOf(PackageCoordinate coordinate) {
+        return coordinate.namespace() == null || coordinate.namespace().isEmpty()
+                ? coordinate.name()
+                : coordinate.namespace() + "/" + coordinate.name();
+    }
+
+
+    /*
+     * FNV-1a over the coordinate, finished with the murmur3 mixer so both halves are usable as bloom filter probes
+     */
+    static long fingerprint(PackageCoordinate coordinate) {
+        var key = coordinate.type() + ":" + pathOf(coordinate);
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    private static Pattern globToPattern(String glob) {
+        var rv = new StringBuilder();
+        for (var c : glob.toCharArray()) {
+            switch (c) {
+                case '*' -> rv.append(".*");
+                case '?' -> rv.append('.');
+                default -> rv.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(rv.toString());
+    }
+
+}
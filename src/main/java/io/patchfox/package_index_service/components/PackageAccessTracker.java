@@ -0,0 +1,94 @@
+package io.patchfox.package_index_service.components;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+/*
+ * keeps track of how often each package coordinate is asked after by live events and how many live events are in 
+ * flight right now. background work (eg: refresh-ahead) uses this to decide what is worth doing and when to back off. 
+ */
+@Component
+public class PackageAccessTracker {
+
+    // scores below this are considered forgotten and dropped from the table 
+    private static final double FORGET_SCORE = 0.05;
+
+    static class AccessStats {
+        final LongAdder hits = new LongAdder();
+        volatile double score = 0;
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    private final Map<PackageCoordinate, AccessStats> stats = new ConcurrentHashMap<>();
+
+    private final AtomicInteger liveEventsInFlight = new AtomicInteger();
+
+    private volatile long lastDecayNanos = System.nanoTime();
+
+
+    public void recordAccess(PackageCoordinate coordinate) {
+        var coordinateStats = stats.get(coordinate);
+        if (coordinateStats == null) {
+            // once the table is full new coordinates have to wait for cold ones to decay out of it 
+            if (stats.size() >= env.getRefreshAheadMaxTrackedCoordinates()) { return; }
+            coordinateStats = stats.computeIfAbsent(coordinate, k -> new AccessStats());
+        }
+        coordinateStats.hits.increment();
+    }
+
+    public void liveEventStarted() { liveEventsInFlight.incrementAndGet(); }
+
+    public void liveEventFinished() { liveEventsInFlight.decrementAndGet(); }
+
+    public int getLiveEventsInFlight() { return liveEventsInFlight.get(); }
+
+    public int getTrackedCoordinateCount() { return stats.size(); }
+
+
+    /**
+     * folds the hits recorded since the last call into an exponentially decayed score per coordinate and returns the 
+     * coordinates whose score is at least minScore, hottest first. meant to be called from a single scheduler thread.
+     * 
+     * @param halfLife time it takes for a coordinate that is no longer accessed to lose half its score 
+     * @param minScore
+     * @return
+     */
+    public List<PackageCoordinate> decayAndRank(Duration halfLife, double minScore) {
+        var now = System.nanoTime();
+        var elapsedNanos = now - lastDecayNanos;
+        lastDecayNanos = now;
+        var decayFactor = Math.pow(0.5, (double) elapsedNanos / halfLife.toNanos());
+
+        var hot = new ArrayList<Map.Entry<PackageCoordinate, AccessStats>>();
+        var iterator = stats.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            var coordinateStats = entry.getValue();
+            coordinateStats.score = coordinateStats.score * decayFactor + coordinateStats.hits.sumThenReset();
+            if (coordinateStats.score < FORGET_SCORE) { 
+                iterator.remove(); 
+            } else if (coordinateStats.score >= minScore) {
+                hot.add(entry);
+            }
+        }
+
+        hot.sort(Comparator.comparingDouble((Map.Entry<PackageCoordinate, AccessStats> e) -> e.getValue().score)
+                           .reversed());
+        return hot.stream().map(Map.Entry::getKey).toList();
+    }
+
+}
@@ -0,0 +1,140 @@
+package io.patchfox.package_index_service.components;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * creates the indexes our lookups need on tables we don't own. package and datasource_event_package belong to
+ * db-entities and hibernate creates them after flyway has run, so a migration can't index them on a new database.
+ * runners start after hibernate is done, and before the import runner, so it gets the indexes too.
+ *
+ * CREATE INDEX CONCURRENTLY doesn't lock out writes to the table while it builds but can't run inside a transaction,
+ * so each statement runs on its own autocommit connection. a build that was interrupted leaves an invalid index
+ * behind that IF NOT EXISTS would happily skip, those are dropped and built again. replicas starting together take a
+ * postgres advisory lock so only one of them builds, the others carry on without waiting.
+ *
+ * plans these are for, check them with EXPLAIN (see the README):
+ * - PackageRepository.findByCoordinate(s) - Index Scan using package_type_namespace_name_idx
+ * - PackageRepository.getPackagesByDatasourceEventId - Nested Loop: Index Only Scan using
+ *   datasource_event_package_event_idx, then Index Scan using the package primary key
+ * - PackageRepository.countPackagesByDatasourceEventId - Index Only Scan using datasource_event_package_event_idx
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class PackageLookupIndexRunner implements ApplicationRunner {
+
+    record LookupIndex(String name, String table, String columns) {}
+
+    static final List<LookupIndex> LOOKUP_INDEXES = List.of(
+        new LookupIndex("package_type_namespace_name_idx", "package", "type, namespace, name"),
+        new LookupIndex(
+            "datasource_event_package_event_idx",
+            "datasource_event_package",
+            "datasource_event_id, package_id"
+        )
+    );
+
+    // arbitrary, only has to be the same on every replica
+    static final long ADVISORY_LOCK_KEY = 0x7061636b69647800L;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if ( !env.isLookupIndexesEnabled()) { return; }
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                createIndexes(connection);
+                return null;
+            });
+        } catch (Exception e) {
+            // lookups still work without the indexes, just slower. not worth refusing to start over
+            log.error("failed to create package lookup indexes", e);
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void createIndexes(Connection connection) throws SQLException {
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(true);
+        try {
+            if ( !tryLock(connection)) {
+                log.info("another instance is creating the package lookup indexes, not waiting for it");
+                return;
+            }
+            try {
+                for (var index : LOOKUP_INDEXES) { createIndex(connection, index); }
+            } finally {
+                execute(connection, "SELECT pg_advisory_unlock(" + ADVISORY_LOCK_KEY + ")");
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void createIndex(Connection connection, LookupIndex index) throws SQLException {
+        if (queryBoolean(connection, "SELECT to_regclass('" + index.table() + "') IS NULL")) {
+            log.warn("{} table does not exist, not creating: {}", index.table(), index.name());
+            return;
+        }
+
+        var invalid = queryBoolean(
+            connection,
+            "SELECT EXISTS (SELECT 1 FROM pg_index WHERE indexrelid = to_regclass('" + index.name() + "') " +
+            "AND NOT indisvalid)"
+        );
+        if (invalid) {
+            log.warn("dropping invalid index left by an interrupted build: {}", index.name());
+            execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS " + index.name());
+        }
+
+        var exists = queryBoolean(connection, "SELECT to_regclass('" + index.name() + "') IS NOT NULL");
+        if (exists) { return; }
+
+        log.info("creating index: {} on {} ({})", index.name(), index.table(), index.columns());
+        var startedAt = System.nanoTime();
+        execute(
+            connection,
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index.name() + " ON " + index.table() +
+            " (" + index.columns() + ")"
+        );
+        log.info("created index: {} in {} ms", index.name(), (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private static boolean tryLock(Connection connection) throws SQLException {
+        return queryBoolean(connection, "SELECT pg_try_advisory_lock(" + ADVISORY_LOCK_KEY + ")");
+    }
+
+    private static boolean queryBoolean(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.createStatement(); var rs = statement.executeQuery(sql)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.createStatement()) { statement.execute(sql); }
+    }
+
+}
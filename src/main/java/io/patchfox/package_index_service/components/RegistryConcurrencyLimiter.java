@@ -0,0 +1,312 @@
+package io.patchfox.package_index_service.components;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.patchfox.package_index_service.adapters.RegistryAdapter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * caps how many requests are in flight to each package index, and finds that cap at runtime instead of us guessing it.
+ *
+ * the limit for each package index moves AIMD style:
+ * * it grows by one for every limit's worth of requests that came back fine while we were using at least half of it
+ * * it's multiplied by package-index.registry-limits.backoff-ratio on a 429, a 503 or a request that never got an
+ *   answer, at most once per round trip so one burst of 429s doesn't take it straight to the floor
+ * * it shrinks by a tenth when latency runs past package-index.registry-limits.latency-tolerance times the fastest
+ *   we've seen recently, which is the index queueing us before it starts throttling us
+ *
+ * each package index starts at, and never grows past, what its RegistryAdapter declares in rateLimit(). indexes that
+ * don't say use package-index.registry-limits.initial and package-index.registry-limits.max
+ *
+ * the current limit and in flight count per package index are published as patchfox.registry.concurrency.limit and
+ * patchfox.registry.concurrency.inflight, tagged with ecosystem
+ *
+ * requests made from inside runInBackground (eg: refresh-ahead) are background requests. they get at most 
+ * package-index.refresh-ahead.registry-share of a package index's limit, never take a slot while a live request is 
+ * waiting for one, and each one is charged to the BackgroundBudget they run under. live traffic never has to wait for 
+ * more than the background share to drain, and background work keeps going while live events are being enriched
+ */
+@Slf4j
+@Component
+public class RegistryConcurrencyLimiter {
+
+    // latency decrease step. gentler than a throttle
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+
+    // how quickly the no-load latency estimate forgets a fast sample, so it can climb back up if the index slows down
+    private static final double MIN_LATENCY_DRIFT = 0.01;
+
+    // how quickly the smoothed latency follows new samples
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    // key background budgets are carried across threads under, eg: to hedged requests. see ContextSnapshotFactory
+    private static final String BACKGROUND_CONTEXT_KEY = "patchfox.registry.background-budget";
+
+    private static final ThreadLocal<BackgroundBudget> BACKGROUND = new ThreadLocal<>();
+
+    /*
+     * requests a run of background work is allowed to send to each package index. every request counts, including 
+     * retries, hedges, head only queries and any follow up requests an adapter makes 
+     */
+    public static class BackgroundBudget {
+        private final int requestsPerRegistry;
+        private final Map<String, AtomicInteger> spent = new ConcurrentHashMap<>();
+
+        public BackgroundBudget(int requestsPerRegistry) { this.requestsPerRegistry = requestsPerRegistry; }
+
+        public boolean isExhausted(String ecosystem) { return spent(ecosystem) >= requestsPerRegistry; }
+
+        public int spent(String ecosystem) { 
+            var counter = spent.get(ecosystem);
+            return counter == null ? 0 : counter.get(); 
+        }
+
+        public Map<String, Integer> toMap() {
+            var rv = new TreeMap<String, Integer>();
+            spent.forEach((ecosystem, counter) -> rv.put(ecosystem, counter.get()));
+            return rv;
+        }
+
+        boolean tryCharge(String ecosystem) {
+            var counter = spent.computeIfAbsent(ecosystem, e -> new AtomicInteger());
+            if (counter.incrementAndGet() <= requestsPerRegistry) { return true; }
+            counter.decrementAndGet();
+            return false;
+        }
+    }
+
+    /*
+     * a background request that would go over its budget. thrown before the request is sent 
+     */
+    public static class BackgroundBudgetExhaustedException extends RuntimeException {
+        public BackgroundBudgetExhaustedException(String ecosystem) {
+            super("background request budget for " + ecosystem + " is spent");
+        }
+    }
+
+    class Registry {
+        final String ecosystem;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition slotFreed = lock.newCondition();
+        final int maxLimit;
+        double limit;
+        int inFlight;
+        int backgroundInFlight;
+        int liveWaiting;
+        double minLatencyNanos = Double.MAX_VALUE;
+        double smoothedLatencyNanos;
+        long lastDecreaseNanos;
+
+        Registry(String ecosystem, RegistryAdapter.RateLimit rateLimit) {
+            this.ecosystem = ecosystem;
+            this.maxLimit = rateLimit.maxConcurrency() > 0 ? rateLimit.maxConcurrency() : env.getRegistryLimitMax();
+            var initial = rateLimit.initialConcurrency() > 0 
+                    ? rateLimit.initialConcurrency() 
+                    : env.getRegistryLimitInitial();
+            this.limit = Math.min(initial, maxLimit);
+        }
+
+        int currentLimit() { return (int) limit; }
+
+        int backgroundLimit() { 
+            return Math.max(1, (int) (currentLimit() * env.getRefreshAheadRegistryShare())); 
+        }
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    List<RegistryAdapter> registryAdapters;
+
+    private final Map<String, Registry> registries = new ConcurrentHashMap<>();
+
+
+    @PostConstruct
+    void registerBackgroundContext() {
+        // so the budget follows requests onto the threads hedging runs them on 
+        ContextRegistry.getInstance().registerThreadLocalAccessor(BACKGROUND_CONTEXT_KEY, BACKGROUND);
+    }
+
+
+    /**
+     * runs work with every package index request it makes treated as a background request
+     *
+     * @param <T>
+     * @param budget
+     * @param work
+     * @return whatever work returns
+     * @throws Exception including BackgroundBudgetExhaustedException if the work needed more requests than were left
+     */
+    public <T> T runInBackground(BackgroundBudget budget, Callable<T> work) throws Exception {
+        var previous = BACKGROUND.get();
+        BACKGROUND.set(budget);
+        try {
+            return work.call();
+        } finally {
+            if (previous == null) { BACKGROUND.remove(); } else { BACKGROUND.set(previous); }
+        }
+    }
+
+
+    /**
+     * blocks until a request to the package index fits under its limit. every acquire has to be paired with a release
+     * or an abandon on the same thread
+     *
+     * @param ecosystem package type
+     * @throws InterruptedException
+     */
+    public void acquire(String ecosystem) throws InterruptedException {
+        var budget = BACKGROUND.get();
+        if (budget != null && !budget.tryCharge(ecosystem)) { throw new BackgroundBudgetExhaustedException(ecosystem); }
+        if ( !env.isRegistryLimitsEnabled()) { return; }
+        var registry = registryFor(ecosystem);
+        registry.lock.lock();
+        try {
+            if (budget == null) {
+                registry.liveWaiting++;
+                try {
+                    while (registry.inFlight >= registry.currentLimit()) { registry.slotFreed.await(); }
+                } finally {
+                    registry.liveWaiting--;
+                }
+            } else {
+                while (registry.inFlight >= registry.currentLimit() 
+                        || registry.backgroundInFlight >= registry.backgroundLimit()
+                        || registry.liveWaiting > 0) { 
+                    registry.slotFreed.await(); 
+                }
+                registry.backgroundInFlight++;
+            }
+            registry.inFlight++;
+        } finally {
+            registry.lock.unlock();
+        }
+    }
+
+
+    /**
+     *
+     * @param ecosystem package type
+     * @param statusCode what the package index answered, or 0 if it never did
+     * @param elapsedNanos
+     */
+    public void release(String ecosystem, int statusCode, long elapsedNanos) {
+        if ( !env.isRegistryLimitsEnabled()) { return; }
+        var registry = registryFor(ecosystem);
+        registry.lock.lock();
+        try {
+            var inFlightBefore = registry.inFlight;
+            registry.inFlight--;
+            if (BACKGROUND.get() != null) { registry.backgroundInFlight--; }
+            adjust(registry, statusCode, elapsedNanos, inFlightBefore);
+            registry.slotFreed.signalAll();
+        } finally {
+            registry.lock.unlock();
+        }
+    }
+
+
+    /**
+     * frees the slot of a request we stopped waiting for, eg: the slower half of a hedge. it says nothing about the 
+     * package index so the limit stays where it is
+     *
+     * @param ecosystem package type
+     */
+    public void abandon(String ecosystem) {
+        if ( !env.isRegistryLimitsEnabled()) { return; }
+        var registry = registryFor(ecosystem);
+        registry.lock.lock();
+        try {
+            registry.inFlight--;
+            if (BACKGROUND.get() != null) { registry.backgroundInFlight--; }
+            registry.slotFreed.signalAll();
+        } finally {
+            registry.lock.unlock();
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private Registry registryFor(String ecosystem) {
+        return registries.computeIfAbsent(ecosystem, e -> {
+            var rateLimit = registryAdapters.stream()
+                                            .filter(a -> a.packageType().equals(e))
+                                            .map(RegistryAdapter::rateLimit)
+                                            .findFirst()
+                                            .orElse(RegistryAdapter.RateLimit.DEFAULT);
+            var registry = new Registry(e, rateLimit);
+            Gauge.builder("patchfox.registry.concurrency.limit", registry, Registry::currentLimit)
+                 .description("requests allowed in flight to a package index right now")
+                 .tag(EnrichmentMetrics.ECOSYSTEM_TAG, e)
+                 .register(meterRegistry);
+            Gauge.builder("patchfox.registry.concurrency.inflight", registry, r -> r.inFlight)
+                 .description("requests in flight to a package index")
+                 .tag(EnrichmentMetrics.ECOSYSTEM_TAG, e)
+                 .register(meterRegistry);
+            return registry;
+        });
+    }
+
+
+    private void adjust(Registry registry, int statusCode, long elapsedNanos, int inFlightBefore) {
+        var now = System.nanoTime();
+        var previousLimit = registry.currentLimit();
+
+        if (statusCode == 429 || statusCode == 503 || statusCode == 0) {
+            // one decrease per round trip. the rest of the burst was sent at the old limit and tells us nothing new
+            if (now - registry.lastDecreaseNanos > registry.smoothedLatencyNanos) {
+                registry.limit = Math.max(env.getRegistryLimitMin(), registry.limit * env.getRegistryLimitBackoffRatio());
+                registry.lastDecreaseNanos = now;
+            }
+        } else {
+            registry.smoothedLatencyNanos = registry.smoothedLatencyNanos == 0
+                    ? elapsedNanos
+                    : registry.smoothedLatencyNanos + LATENCY_SMOOTHING * (elapsedNanos - registry.smoothedLatencyNanos);
+            registry.minLatencyNanos = elapsedNanos < registry.minLatencyNanos
+                    ? elapsedNanos
+                    : registry.minLatencyNanos + MIN_LATENCY_DRIFT * (elapsedNanos - registry.minLatencyNanos);
+
+            var congested = registry.smoothedLatencyNanos > registry.minLatencyNanos * env.getRegistryLimitLatencyTolerance();
+            if (congested && now - registry.lastDecreaseNanos > registry.smoothedLatencyNanos) {
+                registry.limit = Math.max(env.getRegistryLimitMin(), registry.limit * LATENCY_BACKOFF_RATIO);
+                registry.lastDecreaseNanos = now;
+            } else if ( !congested && inFlightBefore * 2 >= registry.currentLimit()) {
+                // only grow while we're actually using the limit, otherwise an idle index drifts up to the max
+                registry.limit = Math.min(registry.maxLimit, registry.limit + 1.0 / registry.limit);
+            }
+        }
+
+        if (registry.currentLimit() != previousLimit) {
+            log.atDebug()
+               .addKeyValue("ecosystem", registry.ecosystem)
+               .addKeyValue("limit", registry.currentLimit())
+               .addKeyValue("statusCode", statusCode)
+               .addKeyValue("latencyMs", elapsedNanos / 1_000_000)
+               .log("package index concurrency limit changed");
+        }
+    }
+
+}
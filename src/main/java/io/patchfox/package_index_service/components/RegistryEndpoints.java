@@ -0,0 +1,181 @@
+package io.patchfox.package_index_service.components;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * the endpoints a package index can be reached at. configured mirrors come first, in the order they're listed, and the
+ * public endpoint the adapters' *_TEMPLATE constants point at is always last. a mirror has to answer the same paths as the
+ * public endpoint, eg: an Artifactory npm remote at https://artifactory.example.com/api/npm/npm-remote turns
+ * https://registry.npmjs.org/left-pad into https://artifactory.example.com/api/npm/npm-remote/left-pad
+ *
+ * an endpoint that fails package-index.mirrors.failure-threshold times in a row (no answer, 429 or 5xx) is skipped for
+ * package-index.mirrors.cooldown, then tried again. if every endpoint is cooling down the one that's been out longest
+ * goes first
+ *
+ * also keeps the recent latencies per package type that the hedge delay is worked out from
+ */
+@Slf4j
+@Component
+public class RegistryEndpoints {
+
+    // latencies kept per package type to work out the hedge delay from
+    private static final int LATENCY_SAMPLES = 256;
+
+    // how often (in samples) the hedge delay is recomputed
+    private static final int HEDGE_DELAY_REFRESH = 32;
+
+    @Getter
+    public static class Endpoint {
+        private final String baseUrl;
+        private final boolean mirror;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long unhealthyUntilNanos;
+
+        Endpoint(String baseUrl, boolean mirror) {
+            this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+            this.mirror = mirror;
+        }
+
+        /**
+         *
+         * @param publicUri a uri built from one of the adapters' *_TEMPLATE constants
+         * @return the same request against this endpoint
+         */
+        public URI rewrite(URI publicUri) {
+            if ( !mirror) { return publicUri; }
+            var query = publicUri.getRawQuery() == null ? "" : "?" + publicUri.getRawQuery();
+            return URI.create(baseUrl + publicUri.getRawPath() + query);
+        }
+
+        boolean isHealthy(long now) { return unhealthyUntilNanos == 0 || now >= unhealthyUntilNanos; }
+    }
+
+    static class LatencyWindow {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[] samples = new long[LATENCY_SAMPLES];
+        int count;
+        int next;
+        volatile long p95Nanos;
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    private final Map<String, List<Endpoint>> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+
+    /**
+     *
+     * @param packageType
+     * @param publicUri a uri built from one of the adapters' *_TEMPLATE constants
+     * @return endpoints to try, best first
+     */
+    public List<Endpoint> candidates(String packageType, URI publicUri) {
+        var all = endpoints.computeIfAbsent(packageType, type -> {
+            var rv = new ArrayList<Endpoint>();
+            for (var mirror : env.getMirrorsFor(type)) {
+                if ( !mirror.isBlank()) { rv.add(new Endpoint(mirror.trim(), true)); }
+            }
+            rv.add(new Endpoint(publicUri.getScheme() + "://" + publicUri.getRawAuthority(), false));
+            log.info("endpoints for package type: {} are: {}", type, rv.stream().map(Endpoint::getBaseUrl).toList());
+            return List.copyOf(rv);
+        });
+        if (all.size() == 1) { return all; }
+
+        var now = System.nanoTime();
+        var healthy = all.stream().filter(e -> e.isHealthy(now)).toList();
+        if ( !healthy.isEmpty()) { return healthy; }
+        return all.stream().sorted(Comparator.comparingLong(Endpoint::getUnhealthyUntilNanos)).toList();
+    }
+
+
+    /**
+     *
+     * @param packageType
+     * @param endpoint
+     * @param statusCode what came back, or 0 if nothing did
+     * @param elapsedNanos
+     */
+    public void report(String packageType, Endpoint endpoint, int statusCode, long elapsedNanos) {
+        if ( !isFailure(statusCode)) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.unhealthyUntilNanos = 0;
+            recordLatency(packageType, elapsedNanos);
+            return;
+        }
+
+        var failures = endpoint.consecutiveFailures.incrementAndGet();
+        if (failures >= env.getMirrorFailureThreshold() && endpoint.unhealthyUntilNanos == 0) {
+            endpoint.unhealthyUntilNanos = System.nanoTime() + env.getMirrorCooldown().toNanos();
+            log.atWarn()
+               .addKeyValue("packageType", packageType)
+               .addKeyValue("endpoint", endpoint.getBaseUrl())
+               .addKeyValue("statusCode", statusCode)
+               .addKeyValue("cooldown", env.getMirrorCooldown())
+               .log("package index endpoint failing, skipping it for a while");
+        } else if (endpoint.unhealthyUntilNanos != 0) {
+            // a cooled down endpoint that failed its first request goes straight back out
+            endpoint.unhealthyUntilNanos = System.nanoTime() + env.getMirrorCooldown().toNanos();
+        }
+    }
+
+
+    /**
+     *
+     * @param packageType
+     * @return how long to wait on a request before hedging it. the recent p95, never less than
+     *         package-index.hedging.min-delay
+     */
+    public Duration hedgeDelay(String packageType) {
+        var window = latencies.get(packageType);
+        var p95 = window == null ? 0 : window.p95Nanos;
+        var min = env.getHedgingMinDelay();
+        return p95 < min.toNanos() ? min : Duration.ofNanos(p95);
+    }
+
+
+    public static boolean isFailure(int statusCode) {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private void recordLatency(String packageType, long elapsedNanos) {
+        var window = latencies.computeIfAbsent(packageType, type -> new LatencyWindow());
+        window.lock.lock();
+        try {
+            window.samples[window.next] = elapsedNanos;
+            window.next = (window.next + 1) % LATENCY_SAMPLES;
+            window.count = Math.min(window.count + 1, LATENCY_SAMPLES);
+            if (window.count == 1 || window.next % HEDGE_DELAY_REFRESH == 0) {
+                var sorted = Arrays.copyOf(window.samples, window.count);
+                Arrays.sort(sorted);
+                window.p95Nanos = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+            }
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+}
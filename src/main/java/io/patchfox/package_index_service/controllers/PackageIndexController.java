@@ -1,22 +1,42 @@
 package io.patchfox.package_index_service.controllers;
 
 import com.github.packageurl.MalformedPackageURLException;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.helpers.TxidDebugTurboFilter;
+import io.patchfox.package_index_service.interceptors.RequestEnrichmentInterceptor;
 import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
-import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.EnrichmentJobService;
+import io.patchfox.package_index_service.services.EnrichmentProgressService;
+import io.patchfox.package_index_service.services.PackageLookupService;
+import io.patchfox.package_utils.json.ApiRequest;
 import io.patchfox.package_utils.json.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.connector.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @Slf4j
@@ -26,15 +46,28 @@ public class PackageIndexController {
     public static final String API_PATH_PREFIX = "/api/v1";
     public static final String ENRICH_PACKAGES_PATH = API_PATH_PREFIX + "/enrichPackages";
     public static final String POST_ENRICH_PACKAGES_SIGNATURE = "POST_" + ENRICH_PACKAGES_PATH;
+    public static final String ENRICH_PACKAGES_JOBS_PATH = ENRICH_PACKAGES_PATH + "/jobs";
+    public static final String ENRICH_PACKAGES_JOB_PATH = ENRICH_PACKAGES_JOBS_PATH + "/{jobId}";
+    public static final String GET_ENRICH_PACKAGES_JOB_SIGNATURE = "GET_" + ENRICH_PACKAGES_JOB_PATH;
+    public static final String ENRICH_PACKAGES_PROGRESS_PATH = ENRICH_PACKAGES_PATH + "/progress";
+    public static final String PACKAGES_LOOKUP_PATH = API_PATH_PREFIX + "/packages/lookup";
+    public static final String POST_PACKAGES_LOOKUP_SIGNATURE = "POST_" + PACKAGES_LOOKUP_PATH;
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
 
     @Autowired
-    PackageIndexService packageIndexService;
+    EnvironmentComponent env;
+
+    @Autowired
+    EnrichmentJobService enrichmentJobService;
+
+    @Autowired
+    EnrichmentProgressService enrichmentProgressService;
 
     @Autowired
     DatasourceEventRepository datasourceEventRepository;
 
     @Autowired
-    JdbcTemplate jdbcTemplate;
+    PackageLookupService packageLookupService;
 
     @PostMapping(
             value = ENRICH_PACKAGES_PATH,
@@ -43,46 +76,253 @@ public class PackageIndexController {
     ResponseEntity<ApiResponse> packageIndexServiceHandler(
             @RequestAttribute UUID txid,
             @RequestAttribute ZonedDateTime requestReceivedAt,
-            @RequestParam Long datasourceEventRecordId
+            @RequestParam Long datasourceEventRecordId,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestParam(defaultValue = "false") boolean debug,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) String dataset
     ) throws URISyntaxException, MalformedPackageURLException {
-        // Set the flag FIRST using JDBC before any JPA calls start a transaction
-        log.info("Setting package_index_enriched flag via JDBC for datasourceEvent id: {}", datasourceEventRecordId);
-        jdbcTemplate.update(
-            "UPDATE datasource_event SET package_index_enriched = true, status = 'READY_FOR_NEXT_PROCESSING' WHERE id = ?",
-            datasourceEventRecordId
+        // only the id is needed from here on, so don't load the event (or anything hanging off it) just to check it's 
+        // there 
+        if ( !datasourceEventRepository.existsById(datasourceEventRecordId)) {
+            var apiResponse = ApiResponse.builder()
+                                         .txid(txid)
+                                         .requestReceivedAt(requestReceivedAt)
+                                         .code(Response.SC_BAD_REQUEST)
+                                         .serverMessage("datasourceEvent record does not exist")
+                                         .build();
+
+            return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+        }
+
+        // switched back off when the enrichment finishes. see PackageIndexService.enrichRecord
+        if (debug) { TxidDebugTurboFilter.enable(txid); }
+
+        if ( !async) {
+            var apiResponse = enrichmentJobService.enrich(
+                txid, 
+                requestReceivedAt, 
+                datasourceEventRecordId, 
+                dataset, 
+                priority
+            );
+            return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+        }
+
+        var jobOptional = enrichmentJobService.submit(
+            txid, 
+            requestReceivedAt, 
+            datasourceEventRecordId, 
+            dataset, 
+            priority
         );
+        if (jobOptional.isEmpty()) {
+            TxidDebugTurboFilter.disable(txid);
+            var apiResponse = ApiResponse.builder()
+                                         .txid(txid)
+                                         .requestReceivedAt(requestReceivedAt)
+                                         .code(Response.SC_SERVICE_UNAVAILABLE)
+                                         .serverMessage("enrichment job queue is full - try again later")
+                                         .build();
+
+            return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+        }
 
-        var datasourceEventRecordOptional = datasourceEventRepository.findById(datasourceEventRecordId);
+        var jobId = jobOptional.get().getJobId();
+        var apiResponse = ApiResponse.builder()
+                                     .txid(txid)
+                                     .requestReceivedAt(requestReceivedAt)
+                                     .code(Response.SC_ACCEPTED)
+                                     .data(Map.of(
+                                        "jobId", jobId.toString(),
+                                        "statusPath", ENRICH_PACKAGES_JOBS_PATH + "/" + jobId
+                                     ))
+                                     .build();
 
-        if (datasourceEventRecordOptional.isEmpty()) {
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+
+    @GetMapping(
+            value = ENRICH_PACKAGES_JOB_PATH,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> enrichmentJobStatusHandler(
+            @RequestAttribute UUID txid,
+            @RequestAttribute ZonedDateTime requestReceivedAt,
+            @PathVariable UUID jobId
+    ) {
+        var jobOptional = enrichmentJobService.getJob(jobId);
+        if (jobOptional.isEmpty()) {
             var apiResponse = ApiResponse.builder()
                                          .txid(txid)
                                          .requestReceivedAt(requestReceivedAt)
-                                         .code(Response.SC_BAD_REQUEST)
-                                         .serverMessage("datasourceEvent record does not exist")
+                                         .code(Response.SC_NOT_FOUND)
+                                         .serverMessage("no enrichment job with that id on this instance")
                                          .build();
 
             return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
         }
 
-        var datasourceEventRecord = datasourceEventRecordOptional.get();
+        var apiResponse = ApiResponse.builder()
+                                     .txid(txid)
+                                     .requestReceivedAt(requestReceivedAt)
+                                     .code(Response.SC_OK)
+                                     .data(jobOptional.get().toMap())
+                                     .build();
+
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
 
-        // TODO don't know why this doesn't work but it doesn't and we got a deadline so ...
-        //Hibernate.initialize(datasourceEventRecord.getPackages());
 
-        ApiResponse apiResponse = null;
+    /*
+     * server-sent events only so there's no kafka equivalent. sends a "progress" event whenever the numbers change 
+     * and a "complete" event when the enrichment is done. 
+     */
+    @GetMapping(
+            value = ENRICH_PACKAGES_PROGRESS_PATH,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    ResponseEntity<SseEmitter> enrichmentProgressHandler(
+            @RequestParam(name = "txid", required = false) UUID progressTxid,
+            @RequestParam(required = false) Long datasourceEventRecordId
+    ) {
+        Optional<SseEmitter> emitterOptional;
+        if (progressTxid != null) {
+            emitterOptional = enrichmentProgressService.subscribeToTxid(progressTxid);
+        } else if (datasourceEventRecordId != null) {
+            emitterOptional = enrichmentProgressService.subscribeToDatasourceEvent(datasourceEventRecordId);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return emitterOptional.map(ResponseEntity::ok)
+                              .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+
+    /*
+     * body is a json array of purls, or an object with them under "purls". answers with one json line per purl as 
+     * each one is done, in no particular order. see PackageLookupService 
+     */
+    @PostMapping(
+            value = PACKAGES_LOOKUP_PATH,
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = { NDJSON_MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE }
+    )
+    ResponseEntity<?> packageLookupHandler(
+            @RequestAttribute UUID txid,
+            @RequestAttribute ZonedDateTime requestReceivedAt,
+            @RequestBody String body,
+            @RequestParam(defaultValue = "false") boolean history
+    ) {
+        List<String> purls;
         try {
-            apiResponse = packageIndexService.enrichRecord(txid, requestReceivedAt, datasourceEventRecord);
-        } catch (Exception e) {
-            log.error("unexpected error gathering package metadata from index: {}", e.toString());
-            apiResponse = ApiResponse.builder()
+            purls = parsePurls(body);
+        } catch (JSONException e) {
+            return lookupRejected(txid, requestReceivedAt, "body must be a json array of purls or {\"purls\": [...]}");
+        }
+        if (purls.size() > env.getLookupMaxPurls()) {
+            return lookupRejected(
+                txid, 
+                requestReceivedAt, 
+                "at most " + env.getLookupMaxPurls() + " purls can be looked up at once"
+            );
+        }
+
+        StreamingResponseBody stream = out -> {
+            try {
+                packageLookupService.lookup(txid, purls, history, result -> {
+                    try {
+                        out.write((new JSONObject(result).toString() + "\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (UncheckedIOException e) {
+                log.debug("lookup txid: {} caller went away: {}", txid, e.getCause().toString());
+            }
+        };
+        return ResponseEntity.ok()
+                             .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                             .header(ApiRequest.TXID_KEY, txid.toString())
+                             .body(stream);
+    }
+
+
+    /**
+     * the kafka flavour of packageLookupHandler. a kafka response can't be streamed so every result is collected 
+     * into one ApiResponse under "results" 
+     * 
+     * @param txid
+     * @param requestReceivedAt
+     * @param purls
+     * @param history
+     * @return
+     * @throws InterruptedException
+     */
+    public ResponseEntity<ApiResponse> packageLookupCollectedHandler(
+            UUID txid,
+            ZonedDateTime requestReceivedAt,
+            List<String> purls,
+            boolean history
+    ) throws InterruptedException {
+        if (purls.size() > env.getLookupMaxPurls()) {
+            return lookupRejected(
+                txid, 
+                requestReceivedAt, 
+                "at most " + env.getLookupMaxPurls() + " purls can be looked up at once"
+            );
+        }
+
+        var results = new ArrayList<Map<String, Object>>();
+        packageLookupService.lookup(txid, purls, history, results::add);
+        var apiResponse = ApiResponse.builder()
                                      .txid(txid)
                                      .requestReceivedAt(requestReceivedAt)
-                                     .code(Response.SC_INTERNAL_SERVER_ERROR)
-                                     .serverMessage("Error during package enrichment: " + e.getMessage())
+                                     .code(Response.SC_OK)
+                                     .data(Map.of("results", results))
                                      .build();
-        }
+
         return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
     }
-}
 
+
+    /**
+     * 
+     * @param json array of purls or an object with them under "purls"
+     * @return
+     * @throws JSONException
+     */
+    public static List<String> parsePurls(String json) throws JSONException {
+        var trimmed = json == null ? "" : json.trim();
+        var array = trimmed.startsWith("[") 
+                ? new JSONArray(trimmed) 
+                : new JSONObject(trimmed).getJSONArray(RequestEnrichmentInterceptor.PURL_LIST_KEY);
+        var rv = new ArrayList<String>();
+        for (int i = 0; i < array.length(); i++) { rv.add(array.getString(i)); }
+        return rv;
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private ResponseEntity<ApiResponse> lookupRejected(UUID txid, ZonedDateTime requestReceivedAt, String message) {
+        var apiResponse = ApiResponse.builder()
+                                     .txid(txid)
+                                     .requestReceivedAt(requestReceivedAt)
+                                     .code(Response.SC_BAD_REQUEST)
+                                     .serverMessage(message)
+                                     .build();
+
+        return ResponseEntity.status(apiResponse.getCode())
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(apiResponse);
+    }
+}
@@ -0,0 +1,104 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * follows updates to the crates.io index by way of the commit history of the index git repository. crates.io makes one 
+ * commit per publish/yank with a message like "Update crate `serde#1.0.200`". 
+ * see: https://github.com/rust-lang/crates.io-index
+ */
+@Slf4j
+@Component
+public class CargoChangeFeed implements RegistryChangeFeed {
+
+    private static final int PAGE_SIZE = 100;
+
+    private static final Pattern CRATE_PATTERN = Pattern.compile("crate `([^`#]+)");
+
+    private final RestClient restClient;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    // commit date of the newest index commit we've read. null until the first poll 
+    private Instant since;
+
+    public CargoChangeFeed(RestClient.Builder restClientBuilder) {
+        this.restClient = restClientBuilder.build();
+    }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.RUST_PACKAGE_TYPE; }
+
+    @Override
+    public boolean isEnabled() { return env.isCargoChangeFeedEnabled(); }
+
+    @Override
+    public ChangeBatch poll() throws Exception {
+        if (since == null) {
+            since = Instant.now();
+            log.info("cargo change feed starting from: {}", since);
+            return ChangeBatch.reset();
+        }
+
+        var newest = since;
+        Set<PackageCoordinate> changed = new HashSet<>();
+        // the commits api lists newest first so we have to read every page before we can move the cursor 
+        for (int page = 1; page <= env.getChangeFeedMaxPages(); page++) {
+            var body = restClient.get()
+                                 .uri(
+                                    env.getCargoChangeFeedBaseUrl() + "/repos/{repository}/commits?since={since}&per_page={pageSize}&page={page}", 
+                                    env.getCargoChangeFeedRepository(),
+                                    since.toString(),
+                                    PAGE_SIZE,
+                                    page
+                                 )
+                                 .headers(headers -> {
+                                    headers.add("Accept", "application/vnd.github+json");
+                                    var token = env.getCargoChangeFeedToken();
+                                    if (token != null && !token.isBlank()) { headers.setBearerAuth(token); }
+                                 })
+                                 .retrieve()
+                                 .body(String.class);
+
+            var commits = new JSONArray(body);
+            for (int i = 0; i < commits.length(); i++) {
+                var commit = commits.getJSONObject(i).getJSONObject("commit");
+                var matcher = CRATE_PATTERN.matcher(commit.getString("message"));
+                while (matcher.find()) { changed.add(toCoordinate(matcher.group(1))); }
+
+                var committedAt = Instant.parse(commit.getJSONObject("committer").getString("date"));
+                if (committedAt.isAfter(newest)) { newest = committedAt; }
+            }
+
+            if (commits.length() < PAGE_SIZE) {
+                since = newest;
+                return new ChangeBatch(changed, true, false);
+            }
+        }
+
+        // more commits than we're willing to page through. stale what we've seen but leave the cursor alone so the 
+        // older commits we didn't get to are read next time 
+        log.warn("cargo change feed hit the page limit. leaving cursor at: {}", since);
+        return new ChangeBatch(changed, false, false);
+    }
+
+    static PackageCoordinate toCoordinate(String crateName) {
+        return new PackageCoordinate(PackageIndexService.RUST_PACKAGE_TYPE, null, crateName);
+    }
+
+}
@@ -0,0 +1,98 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * consumes the go module index, a feed of every module version the module proxy has seen in the order it saw them.
+ * see: https://index.golang.org
+ */
+@Slf4j
+@Component
+public class GolangChangeFeed implements RegistryChangeFeed {
+
+    // max the index will return in one go 
+    private static final int PAGE_SIZE = 2000;
+
+    private final RestClient restClient;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    // RFC3339 timestamp of the last entry we've read. null until the first poll 
+    private String since;
+
+    public GolangChangeFeed(RestClient.Builder restClientBuilder) {
+        this.restClient = restClientBuilder.build();
+    }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.GOLANG_PACKAGE_TYPE; }
+
+    @Override
+    public boolean isEnabled() { return env.isGolangChangeFeedEnabled(); }
+
+    @Override
+    public ChangeBatch poll() throws Exception {
+        if (since == null) {
+            since = Instant.now().toString();
+            log.info("golang change feed starting from: {}", since);
+            return ChangeBatch.reset();
+        }
+
+        var cursor = since;
+        Set<PackageCoordinate> changed = new HashSet<>();
+        for (int page = 0; page < env.getChangeFeedMaxPages(); page++) {
+            var body = restClient.get()
+                                 .uri(env.getGolangChangeFeedBaseUrl() + "/index?since={since}&limit={limit}", cursor, PAGE_SIZE)
+                                 .retrieve()
+                                 .body(String.class);
+
+            // the response is newline delimited json, one module version per line 
+            var entries = 0;
+            for (var line : (body == null ? "" : body).split("\\R")) {
+                if (line.isBlank()) { continue; }
+                var entry = new JSONObject(line);
+                changed.add(toCoordinate(entry.getString("Path")));
+                cursor = entry.getString("Timestamp");
+                entries++;
+            }
+
+            if (entries < PAGE_SIZE) {
+                since = cursor;
+                return new ChangeBatch(changed, true, false);
+            }
+        }
+
+        since = cursor;
+        return new ChangeBatch(changed, false, false);
+    }
+
+    /**
+     * 
+     * @param modulePath eg: "github.com/google/uuid"
+     * @return coordinate split the same way GolangProxyAdapter.LOOKUP_TEMPLATE puts it back together 
+     */
+    public static PackageCoordinate toCoordinate(String modulePath) {
+        var slash = modulePath.lastIndexOf('/');
+        if (slash < 0) { return new PackageCoordinate(PackageIndexService.GOLANG_PACKAGE_TYPE, null, modulePath); }
+        return new PackageCoordinate(
+            PackageIndexService.GOLANG_PACKAGE_TYPE, 
+            modulePath.substring(0, slash), 
+            modulePath.substring(slash + 1)
+        );
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * consumes the npm replication database's CouchDB style _changes feed. 
+ * see: https://github.com/npm/registry-follower-tutorial
+ */
+@Slf4j
+@Component
+public class NpmChangeFeed implements RegistryChangeFeed {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final RestClient restClient;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    // CouchDB sequence of the last change we've read. null until the first poll 
+    private String since;
+
+    public NpmChangeFeed(RestClient.Builder restClientBuilder) {
+        this.restClient = restClientBuilder.build();
+    }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.NPM_PACKAGE_TYPE; }
+
+    @Override
+    public boolean isEnabled() { return env.isNpmChangeFeedEnabled(); }
+
+    @Override
+    public ChangeBatch poll() throws Exception {
+        var baseUrl = env.getNpmChangeFeedBaseUrl();
+        if (since == null) {
+            var dbInfo = new JSONObject(restClient.get().uri(baseUrl + "/").retrieve().body(String.class));
+            since = dbInfo.get("update_seq").toString();
+            log.info("npm change feed starting from sequence: {}", since);
+            return ChangeBatch.reset();
+        }
+
+        var cursor = since;
+        Set<PackageCoordinate> changed = new HashSet<>();
+        for (int page = 0; page < env.getChangeFeedMaxPages(); page++) {
+            var body = restClient.get()
+                                 .uri(baseUrl + "/_changes?since={since}&limit={limit}", cursor, PAGE_SIZE)
+                                 .retrieve()
+                                 .body(String.class);
+
+            var changes = new JSONObject(body);
+            var results = changes.getJSONArray("results");
+            for (int i = 0; i < results.length(); i++) {
+                var id = results.getJSONObject(i).getString("id");
+                if (id.startsWith("_design/")) { continue; }
+                changed.add(toCoordinate(id));
+            }
+            cursor = changes.get("last_seq").toString();
+
+            if (results.length() < PAGE_SIZE) {
+                since = cursor;
+                return new ChangeBatch(changed, true, false);
+            }
+        }
+
+        since = cursor;
+        return new ChangeBatch(changed, false, false);
+    }
+
+    /**
+     * 
+     * @param id npm document id, eg: "left-pad" or "@babel/core"
+     * @return
+     */
+    static PackageCoordinate toCoordinate(String id) {
+        var slash = id.indexOf('/');
+        if (id.startsWith("@") && slash > 0) {
+            return new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, id.substring(0, slash), id.substring(slash + 1));
+        }
+        return new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, null, id);
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * consumes PyPI's serial changelog by way of its XML-RPC api. every change to the index bumps a global serial number 
+ * so as long as we keep track of the last one we've seen we can't miss anything. 
+ * see: https://warehouse.pypa.io/api-reference/xml-rpc.html#mirroring-support
+ */
+@Slf4j
+@Component
+public class PypiChangeFeed implements RegistryChangeFeed {
+
+    private final RestClient restClient;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    // last changelog serial we've read. null until the first poll 
+    private Long serial;
+
+    public PypiChangeFeed(RestClient.Builder restClientBuilder) {
+        this.restClient = restClientBuilder.build();
+    }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.PYPI_PACKAGE_TYPE; }
+
+    @Override
+    public boolean isEnabled() { return env.isPypiChangeFeedEnabled(); }
+
+    @Override
+    public ChangeBatch poll() throws Exception {
+        if (serial == null) {
+            var response = call("<methodName>changelog_last_serial</methodName><params/>");
+            serial = Long.valueOf(response.getElementsByTagName("int").item(0).getTextContent().trim());
+            log.info("pypi change feed starting from serial: {}", serial);
+            return ChangeBatch.reset();
+        }
+
+        var response = call(
+            "<methodName>changelog_since_serial</methodName>" +
+            "<params><param><value><int>" + serial + "</int></value></param></params>"
+        );
+
+        // response is an array of [name, version, timestamp, action, serial] arrays 
+        var cursor = serial;
+        Set<PackageCoordinate> changed = new HashSet<>();
+        var outerData = firstChild(firstChild(firstChild(response, "params"), "param"), "value");
+        for (var entry : childElements(firstChild(firstChild(outerData, "array"), "data"), "value")) {
+            var fields = childElements(firstChild(firstChild(entry, "array"), "data"), "value");
+            if (fields.size() < 5) { continue; }
+            changed.add(toCoordinate(fields.get(0).getTextContent().trim()));
+            cursor = Math.max(cursor, Long.parseLong(fields.get(4).getTextContent().trim()));
+        }
+
+        serial = cursor;
+        return new ChangeBatch(changed, true, false);
+    }
+
+    /**
+     * 
+     * @param name project name as it appears in the changelog
+     * @return coordinate with the name normalized the way pypi purls are 
+     */
+    static PackageCoordinate toCoordinate(String name) {
+        return new PackageCoordinate(
+            PackageIndexService.PYPI_PACKAGE_TYPE, 
+            null, 
+            name.toLowerCase().replace('_', '-')
+        );
+    }
+
+
+    //
+    // helpers
+    //
+
+    private Element call(String methodCall) throws Exception {
+        var body = restClient.post()
+                             .uri(env.getPypiChangeFeedBaseUrl() + "/pypi")
+                             .contentType(MediaType.TEXT_XML)
+                             .body("<?xml version=\"1.0\"?><methodCall>" + methodCall + "</methodCall>")
+                             .retrieve()
+                             .body(String.class);
+
+        var factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        var document = factory.newDocumentBuilder()
+                              .parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        var root = document.getDocumentElement();
+        if (root.getElementsByTagName("fault").getLength() > 0) {
+            throw new IllegalStateException("pypi xml-rpc call returned a fault: " + root.getTextContent().trim());
+        }
+        return root;
+    }
+
+    private static Element firstChild(Element parent, String tagName) {
+        var children = childElements(parent, tagName);
+        if (children.isEmpty()) { 
+            throw new IllegalStateException("malformed xml-rpc response. missing element: " + tagName); 
+        }
+        return children.get(0);
+    }
+
+    private static List<Element> childElements(Element parent, String tagName) {
+        List<Element> rv = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element element && element.getTagName().equals(tagName)) { rv.add(element); }
+        }
+        return rv;
+    }
+
+}
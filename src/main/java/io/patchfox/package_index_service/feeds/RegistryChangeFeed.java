@@ -0,0 +1,44 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.util.Set;
+
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+/**
+ * a consumer of a package index's change feed. implementations keep their own position in the feed and only advance 
+ * it once a poll has been read successfully, so a failed poll is simply retried next time. 
+ */
+public interface RegistryChangeFeed {
+
+    /**
+     * 
+     * @param changed coordinates that published something since the previous poll
+     * @param caughtUp true if the poll read everything the feed had to offer. false if it stopped early (eg: it hit 
+     *                 the page limit) and more changes are waiting 
+     * @param positionReset true if the feed had no usable position and started over from "now". changes that 
+     *                      happened before this point are unknown
+     */
+    public record ChangeBatch(Set<PackageCoordinate> changed, boolean caughtUp, boolean positionReset) {
+
+        public static ChangeBatch reset() { return new ChangeBatch(Set.of(), true, true); }
+
+    }
+
+    /**
+     * 
+     * @return the purl package type this feed reports on 
+     */
+    String getPackageType();
+
+    boolean isEnabled();
+
+    /**
+     * reads the changes published since the previous call. the first call only establishes the position in the feed. 
+     * 
+     * @return
+     * @throws Exception if the feed could not be read. the position is left where it was 
+     */
+    ChangeBatch poll() throws Exception;
+
+}
@@ -0,0 +1,219 @@
+package io.patchfox.package_index_service.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.catalina.connector.Response;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * records every package index exchange (request headers, status, response headers, body and how long it took) to a
+ * gzipped ndjson archive, or serves package index requests back out of one. this is how a production event gets rerun
+ * offline against the exact payloads it saw so throughput can be compared across builds.
+ *
+ * an exchange is what the adapter asked for and what it ended up with. the uri is the one built from the adapter's
+ * *_TEMPLATE, not the mirror or registry-base-url it was sent to, and a hedged request is recorded once with the
+ * answer that won. the time taken covers failing over and hedging too. so a replay doesn't depend on how mirrors were
+ * configured when it was recorded.
+ *
+ * exchanges are matched on verb + uri. a uri that was requested more than once is answered in the order it was
+ * recorded (so a recorded 429 then 200 replays as a 429 then 200) and the last answer sticks once they run out.
+ */
+@Slf4j
+@Component
+public class RegistryTrafficArchive {
+
+    public static final String MODE_OFF = "off";
+    public static final String MODE_RECORD = "record";
+    public static final String MODE_REPLAY = "replay";
+
+    @Autowired
+    EnvironmentComponent env;
+
+    private String mode = MODE_OFF;
+
+    // record mode. a lock rather than synchronized because the write blocks and this runs on virtual threads
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Writer writer;
+
+    // replay mode. verb + uri -> exchanges in the order they were recorded, taken off under replayLock
+    private final Map<String, Deque<JSONObject>> exchanges = new ConcurrentHashMap<>();
+    private final ReentrantLock replayLock = new ReentrantLock();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    @PostConstruct
+    void open() throws IOException {
+        mode = env.getRegistryTrafficMode() == null ? MODE_OFF : env.getRegistryTrafficMode().trim().toLowerCase();
+        var path = Path.of(env.getRegistryTrafficPath());
+        switch (mode) {
+            case MODE_RECORD -> {
+                // sync flush so whatever was recorded up to a crash is still readable
+                var out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                writer = new OutputStreamWriter(new GZIPOutputStream(out, true), StandardCharsets.UTF_8);
+                log.info("recording package index traffic to: {}", path.toAbsolutePath());
+            }
+            case MODE_REPLAY -> {
+                var count = 0;
+                try (var reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(Files.newInputStream(path)),
+                        StandardCharsets.UTF_8
+                ))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) { continue; }
+                        var exchange = new JSONObject(line);
+                        exchanges.computeIfAbsent(key(exchange.getString("verb"), exchange.getString("uri")),
+                                                  k -> new ArrayDeque<>())
+                                 .add(exchange);
+                        count++;
+                    }
+                }
+                log.info("replaying {} package index exchanges from: {}", count, path.toAbsolutePath());
+            }
+            case MODE_OFF -> {}
+            default -> throw new IllegalArgumentException("unknown package-index.registry-traffic.mode: " + mode);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (writer != null) {
+            writeLock.lock();
+            try {
+                writer.close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        if (misses.get() > 0) { log.warn("{} package index requests weren't in the replay archive", misses.get()); }
+    }
+
+    public boolean isRecording() { return MODE_RECORD.equals(mode); }
+
+    public boolean isReplaying() { return MODE_REPLAY.equals(mode); }
+
+    /**
+     * appends one exchange to the archive
+     *
+     * @param packageType
+     * @param apiRequest with the uri the adapter built, before any mirror rewrite
+     * @param apiResponse
+     * @param elapsedNanos how long it took to get the answer, failover and hedging included
+     */
+    public void record(String packageType, ApiRequest apiRequest, ApiResponse apiResponse, long elapsedNanos) {
+        Map<String, Object> data = new HashMap<>();
+        if (apiResponse.getData() != null) { data.putAll(apiResponse.getData()); }
+        var responseHeaders = data.remove(RestHelper.RESPONSE_HEADERS_KEY);
+        var line = new JSONObject()
+            .put("packageType", packageType)
+            .put("verb", apiRequest.getVerb().toString())
+            .put("uri", apiRequest.getUri().toString())
+            .put("requestHeaders", apiRequest.getHeaders() == null ? Map.of() : apiRequest.getHeaders())
+            .put("code", apiResponse.getCode())
+            .put("responseHeaders", responseHeaders == null ? Map.of() : responseHeaders)
+            .put("data", data)
+            .put("elapsedNanos", elapsedNanos)
+            .toString();
+
+        writeLock.lock();
+        try {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * answers a request from the archive, after waiting as long as the original took times
+     * package-index.registry-traffic.time-scale. requests that were never recorded get a 504
+     *
+     * @param apiRequest
+     * @return
+     * @throws InterruptedException
+     */
+    public ApiResponse replay(ApiRequest apiRequest) throws InterruptedException {
+        var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        var recorded = exchanges.get(key(apiRequest.getVerb().toString(), apiRequest.getUri().toString()));
+        JSONObject exchange = null;
+        if (recorded != null) {
+            replayLock.lock();
+            try {
+                exchange = recorded.size() > 1 ? recorded.poll() : recorded.peek();
+            } finally {
+                replayLock.unlock();
+            }
+        }
+
+        if (exchange == null) {
+            misses.incrementAndGet();
+            log.warn("no recorded exchange for: {} {}", apiRequest.getVerb(), apiRequest.getUri());
+            return ApiResponse.builder()
+                              .responderName(env.getServiceName())
+                              .code(Response.SC_GATEWAY_TIMEOUT)
+                              .txid(apiRequest.getTxid())
+                              .requestReceivedAt(now.toString())
+                              .build();
+        }
+
+        var waitNanos = (long) (exchange.getLong("elapsedNanos") * env.getRegistryTrafficTimeScale());
+        if (waitNanos > 0) { Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000)); }
+
+        Map<String, Object> data = new HashMap<>(exchange.getJSONObject("data").toMap());
+        // archives recorded before response headers were kept don't have them
+        var responseHeaders = exchange.optJSONObject("responseHeaders");
+        if (responseHeaders != null && !responseHeaders.isEmpty()) {
+            data.put(RestHelper.RESPONSE_HEADERS_KEY, responseHeaders.toMap());
+        }
+        if (data.isEmpty()) { data = null; }
+        return ApiResponse.builder()
+                          .responderName(env.getServiceName())
+                          .code(exchange.getInt("code"))
+                          .txid(apiRequest.getTxid())
+                          .requestReceivedAt(now.toString())
+                          .data(data)
+                          .build();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static String key(String verb, String uri) { return verb + " " + uri; }
+
+}
@@ -3,12 +3,14 @@ package io.patchfox.package_index_service.helpers;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.catalina.connector.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientResponseException;
@@ -24,6 +26,13 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 public class RestHelper {
 
+    // keys in ApiResponse.data for the response body and the http validators that came with it 
+    public static final String RESPONSE_KEY = "response";
+    public static final String ETAG_KEY = "etag";
+    public static final String LAST_MODIFIED_KEY = "lastModified";
+    public static final String RESPONSE_BYTES_KEY = "responseBytes";
+    public static final String RESPONSE_HEADERS_KEY = "responseHeaders";
+
     private final RestClient restClient; 
 
     @Autowired
@@ -50,7 +59,8 @@ public class RestHelper {
      * @throws IllegalArgumentException if ApiRequest.isValid() for argument reports false. 
      */
     public ApiResponse makeRequest(ApiRequest apiRequest) throws IllegalArgumentException {
-        log.info("servicing apiRequest as REST call: {}", apiRequest);
+        // once per package index request so this stays at debug
+        log.debug("servicing apiRequest as REST call: {}", apiRequest);
 
         if ( !apiRequest.isValidForRest() ) { 
             log.error("request obj failed validity check - rejecting and throwing exception");
@@ -60,7 +70,7 @@ public class RestHelper {
         var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
         var verb = apiRequest.getVerb();
         try {
-            String rBody = this.restClient.method(HttpMethod.valueOf(verb.toString()))                               
+            ResponseEntity<String> rEntity = this.restClient.method(HttpMethod.valueOf(verb.toString()))                               
                                .uri(apiRequest.getUriWithQueryStringParameters())
                                .headers( headers -> { 
                                     for (var e : apiRequest.getHeaders().entrySet()) { 
@@ -70,26 +80,45 @@ public class RestHelper {
                                .retrieve()
                                // if you have a json class that can catch the json response put that here 
                                // instead of String.class
-                               .body(String.class); 
+                               .toEntity(String.class); 
     
-            // we're assuming the response was 200 if an error didn't get thrown 
+            // anything that isn't 4xx or 5xx lands here. that includes 304 in response to a conditional request
             // again - desired behavior is to map the response to an appropriate json pojo. don't leave this as a string
+            Map<String, Object> data = new HashMap<>();
+            if (rEntity.getBody() != null) { data.put(RESPONSE_KEY, rEntity.getBody()); }
+            // content length when the server sends it, otherwise the body length which is close enough for the mostly 
+            // ascii json package indexes send back
+            var contentLength = rEntity.getHeaders().getContentLength();
+            var bodyLength = rEntity.getBody() == null ? 0 : rEntity.getBody().length();
+            data.put(RESPONSE_BYTES_KEY, contentLength >= 0 ? contentLength : bodyLength);
+            var etag = rEntity.getHeaders().getETag();
+            if (etag != null) { data.put(ETAG_KEY, etag); }
+            var lastModified = rEntity.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+            if (lastModified != null) { data.put(LAST_MODIFIED_KEY, lastModified); }
+            data.put(RESPONSE_HEADERS_KEY, rEntity.getHeaders().toSingleValueMap());
+
             return ApiResponse.builder()
                               .responderName(env.getServiceName())
-                              .code(Response.SC_OK)
+                              .code(rEntity.getStatusCode().value())
                               .txid(apiRequest.getTxid())
                               .requestReceivedAt(now.toString())
-                              .data(Map.of("response", rBody))
+                              .data(data)
                               .build();
 
         } catch (RestClientResponseException e) {
             log.warn("caught http response error making request: {}", e.getStatusText());
             HttpStatus status = HttpStatus.valueOf(e.getStatusCode().value());
+            // no body, but the headers are worth keeping. a 429's Retry-After for one 
+            Map<String, Object> data = new HashMap<>();
+            if (e.getResponseHeaders() != null) { 
+                data.put(RESPONSE_HEADERS_KEY, e.getResponseHeaders().toSingleValueMap()); 
+            }
             return ApiResponse.builder()
                               .responderName(env.getServiceName())
                               .code(status.value())
                               .txid(apiRequest.getTxid())
                               .requestReceivedAt(now.toString())
+                              .data(data)
                               .build();
         }
 
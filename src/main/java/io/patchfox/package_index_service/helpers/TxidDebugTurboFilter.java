@@ -0,0 +1,49 @@
+package io.patchfox.package_index_service.helpers;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+
+/*
+ * the per txid debug switch. while a txid is switched on, debug lines from our own loggers are let through for any
+ * thread whose MDC carries that txid, regardless of the configured level. everyone else stays at info.
+ *
+ * registered in logback-spring.xml. POST /api/v1/enrichPackages?debug=true switches the request's txid on until the
+ * enrichment is done
+ */
+public class TxidDebugTurboFilter extends TurboFilter {
+
+    public static final String MDC_TXID = "txid";
+    public static final String MDC_DATASOURCE_EVENT_ID = "datasourceEventId";
+
+    private static final String OUR_LOGGERS = "io.patchfox";
+
+    private static final Set<String> debugTxids = ConcurrentHashMap.newKeySet();
+
+
+    public static void enable(UUID txid) { debugTxids.add(txid.toString()); }
+
+    public static void disable(UUID txid) { debugTxids.remove(txid.toString()); }
+
+    public static boolean isEnabled(UUID txid) { return debugTxids.contains(txid.toString()); }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // the common case, and the only one on the hot path, is nobody debugging anything
+        if (debugTxids.isEmpty() || level.isGreaterOrEqual(Level.INFO)) { return FilterReply.NEUTRAL; }
+        if ( !logger.getName().startsWith(OUR_LOGGERS) ) { return FilterReply.NEUTRAL; }
+
+        var txid = MDC.get(MDC_TXID);
+        return txid != null && debugTxids.contains(txid) ? FilterReply.ACCEPT : FilterReply.NEUTRAL;
+    }
+
+}
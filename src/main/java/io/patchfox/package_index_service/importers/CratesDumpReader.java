@@ -0,0 +1,112 @@
+package io.patchfox.package_index_service.importers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * reads the crates.io database dump (https://static.crates.io/db-dump.tar.gz), either as the tarball itself or as the 
+ * directory it was extracted into. only data/crates.csv and data/versions.csv are used. 
+ * see: https://crates.io/data-access
+ */
+@Slf4j
+@Component
+public class CratesDumpReader implements RegistryDumpReader {
+
+    public static final String FORMAT = "crates";
+
+    private static final String CRATES_CSV = "data/crates.csv";
+    private static final String VERSIONS_CSV = "data/versions.csv";
+
+    private static final CSVFormat CSV = CSVFormat.DEFAULT.builder()
+                                                          .setHeader()
+                                                          .setSkipHeaderRecord(true)
+                                                          .build();
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void accept(CSVRecord record);
+    }
+
+    @Override
+    public String getFormat() { return FORMAT; }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.RUST_PACKAGE_TYPE; }
+
+    @Override
+    public void read(Path path, VersionSink sink) throws IOException {
+        // versions only reference crates by id so we need the names first 
+        Map<String, String> crateNames = new HashMap<>();
+        forEachRecord(path, CRATES_CSV, record -> crateNames.put(record.get("id"), record.get("name")));
+        log.info("read {} crate names from: {}", crateNames.size(), path);
+
+        forEachRecord(path, VERSIONS_CSV, record -> {
+            var crateName = crateNames.get(record.get("crate_id"));
+            if (crateName == null) { return; }
+            sink.accept(
+                new PackageCoordinate(PackageIndexService.RUST_PACKAGE_TYPE, null, crateName),
+                record.get("num"),
+                RegistryDumpReader.parseTimestamp(record.get("created_at"))
+            );
+        });
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void forEachRecord(Path path, String fileSuffix, RecordHandler handler) throws IOException {
+        if (Files.isDirectory(path)) {
+            Path csvPath;
+            try (var paths = Files.walk(path)) {
+                csvPath = paths.filter(p -> p.toString().replace('\\', '/').endsWith(fileSuffix))
+                               .findFirst()
+                               .orElseThrow(() -> new IOException("no " + fileSuffix + " under: " + path));
+            }
+            try (var reader = Files.newBufferedReader(csvPath, StandardCharsets.UTF_8)) {
+                parse(reader, handler);
+            }
+            return;
+        }
+
+        try (var tar = new TarArchiveInputStream(RegistryDumpReader.open(path))) {
+            for (var entry = tar.getNextEntry(); entry != null; entry = tar.getNextEntry()) {
+                if ( !entry.getName().endsWith(fileSuffix) ) { continue; }
+                // the csv parser closes its reader when done and we don't want that to close the tarball 
+                InputStream unclosable = new FilterInputStream(tar) {
+                    @Override
+                    public void close() {}
+                };
+                parse(new InputStreamReader(unclosable, StandardCharsets.UTF_8), handler);
+                return;
+            }
+        }
+        throw new IOException("no " + fileSuffix + " in: " + path);
+    }
+
+    private void parse(Reader reader, RecordHandler handler) throws IOException {
+        try (var parser = CSV.parse(reader)) {
+            for (var record : parser) { handler.accept(record); }
+        }
+    }
+
+}
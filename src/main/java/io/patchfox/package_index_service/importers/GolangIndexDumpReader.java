@@ -0,0 +1,47 @@
+package io.patchfox.package_index_service.importers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.feeds.GolangChangeFeed;
+import io.patchfox.package_index_service.services.PackageIndexService;
+
+
+/*
+ * reads a dump of the go module index (https://index.golang.org/index) - newline delimited json with one 
+ * {"Path", "Version", "Timestamp"} object per module version, exactly as the index serves it. the file may be gzipped. 
+ */
+@Component
+public class GolangIndexDumpReader implements RegistryDumpReader {
+
+    public static final String FORMAT = "golang";
+
+    @Override
+    public String getFormat() { return FORMAT; }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.GOLANG_PACKAGE_TYPE; }
+
+    @Override
+    public void read(Path path, VersionSink sink) throws IOException {
+        var in = new InputStreamReader(RegistryDumpReader.open(path), StandardCharsets.UTF_8);
+        try (var reader = new BufferedReader(in, 1 << 16)) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank()) { continue; }
+                var entry = new JSONObject(line);
+                sink.accept(
+                    GolangChangeFeed.toCoordinate(entry.getString("Path")),
+                    entry.getString("Version"),
+                    RegistryDumpReader.parseTimestamp(entry.getString("Timestamp"))
+                );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package io.patchfox.package_index_service.importers;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.apache.commons.csv.CSVFormat;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+/*
+ * reads a csv export of the Maven Central index with the header "groupId,artifactId,version,lastModified" where 
+ * lastModified is epoch millis or an ISO 8601 timestamp. the index itself ships as a lucene segment 
+ * (nexus-maven-repository-index.gz) so it has to be exported to this shape first, eg: with maven-indexer-cli. the file 
+ * may be gzipped. 
+ */
+@Component
+public class MavenIndexExportReader implements RegistryDumpReader {
+
+    public static final String FORMAT = "maven";
+
+    private static final CSVFormat CSV = CSVFormat.DEFAULT.builder()
+                                                          .setHeader()
+                                                          .setSkipHeaderRecord(true)
+                                                          .setIgnoreSurroundingSpaces(true)
+                                                          .build();
+
+    @Override
+    public String getFormat() { return FORMAT; }
+
+    @Override
+    public String getPackageType() { return PackageIndexService.MAVEN_PACKAGE_TYPE; }
+
+    @Override
+    public void read(Path path, VersionSink sink) throws IOException {
+        try (var parser = CSV.parse(new InputStreamReader(RegistryDumpReader.open(path), StandardCharsets.UTF_8))) {
+            for (var record : parser) {
+                var lastModified = record.get("lastModified");
+                if (lastModified == null || lastModified.isBlank()) { continue; }
+                sink.accept(
+                    new PackageCoordinate(
+                        PackageIndexService.MAVEN_PACKAGE_TYPE, 
+                        record.get("groupId"), 
+                        record.get("artifactId")
+                    ),
+                    record.get("version"),
+                    RegistryDumpReader.parseTimestamp(lastModified)
+                );
+            }
+        }
+    }
+
+}
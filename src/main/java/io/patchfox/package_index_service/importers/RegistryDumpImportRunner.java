@@ -0,0 +1,79 @@
+package io.patchfox.package_index_service.importers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.RegistryDumpImportService;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * runs a bulk import as a one off process under the "import" profile, then exits. a replica never imports on boot, 
+ * the import can take a long time and a replica that's busy importing isn't ready to serve. eg: 
+ * 
+ * mvn spring-boot:run -Dspring-boot.run.profiles=import -Dspring-boot.run.arguments="--package-index.import.format=crates --package-index.import.path=/data/db-dump.tar.gz"
+ * 
+ * see application-import.properties for what the profile turns off. 
+ */
+@Slf4j
+@Component
+@Profile(RegistryDumpImportRunner.IMPORT_PROFILE)
+public class RegistryDumpImportRunner implements ApplicationRunner {
+
+    public static final String IMPORT_PROFILE = "import";
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    RegistryDumpImportService importService;
+
+    @Autowired
+    ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        var exitCode = importDump();
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private int importDump() {
+        var format = env.getImportFormat();
+        var pathString = env.getImportPath();
+        if (format == null || format.isBlank() || pathString == null || pathString.isBlank()) { 
+            log.error("not importing because package-index.import.format and package-index.import.path aren't both set");
+            return 1;
+        }
+
+        var path = Path.of(pathString);
+        if ( !Files.exists(path) ) {
+            log.error("not importing {} dump because: {} does not exist", format, path);
+            return 1;
+        }
+
+        try {
+            // dumps don't reliably say when they were taken. the file's mtime is the best we've got 
+            var snapshotTime = Files.getLastModifiedTime(path).toInstant();
+            importService.importDump(format, path, snapshotTime);
+            return 0;
+        } catch (Exception e) {
+            log.error("{} import of: {} failed", format, path, e);
+            return 1;
+        }
+    }
+
+}
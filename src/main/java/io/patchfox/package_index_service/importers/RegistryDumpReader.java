@@ -0,0 +1,78 @@
+package io.patchfox.package_index_service.importers;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.zip.GZIPInputStream;
+
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+/**
+ * reads a package index bulk artifact from local disk and streams every (coordinate, version, published at) tuple in 
+ * it to a sink. readers make no assumptions about ordering - grouping is up to the sink. 
+ */
+public interface RegistryDumpReader {
+
+    @FunctionalInterface
+    interface VersionSink {
+        void accept(PackageCoordinate coordinate, String version, ZonedDateTime publishedAt);
+    }
+
+    /**
+     * 
+     * @return name used to select this reader, eg: "crates" 
+     */
+    String getFormat();
+
+    /**
+     * 
+     * @return the purl package type of the coordinates this reader produces 
+     */
+    String getPackageType();
+
+    void read(Path path, VersionSink sink) throws IOException;
+
+
+    /**
+     * 
+     * @param path
+     * @return stream over the file, transparently un-gzipped if the file name ends in ".gz"
+     * @throws IOException
+     */
+    static InputStream open(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+        return path.toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    /**
+     * dumps come out of all sorts of tools. this copes with epoch millis, ISO 8601 with or without an offset, postgres 
+     * style "2017-01-20 17:50:29.614297+00" and the same without an offset (assumed UTC).
+     * 
+     * @param value
+     * @return
+     */
+    static ZonedDateTime parseTimestamp(String value) {
+        var timestamp = value.trim();
+        if ( !timestamp.isEmpty() && timestamp.chars().allMatch(Character::isDigit) ) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(timestamp)), ZoneOffset.UTC);
+        }
+
+        timestamp = timestamp.replace(' ', 'T');
+        if (timestamp.indexOf('T') > 0 && timestamp.matches(".*[+-]\\d\\d$")) { timestamp = timestamp + ":00"; }
+        try {
+            return OffsetDateTime.parse(timestamp).atZoneSameInstant(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(timestamp).atZone(ZoneOffset.UTC);
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package io.patchfox.package_index_service.importers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * turns the unordered (coordinate, version, published at) tuples a RegistryDumpReader produces into one version list
+ * per coordinate without holding the whole dump in memory. tuples are buffered up to maxBufferedVersions, then sorted
+ * by coordinate and spilled to a run file. drain merges the runs so each coordinate's versions come out together. a
+ * dump that fits in the buffer never touches the disk.
+ *
+ * not thread safe, a reader feeds it from one thread.
+ */
+@Slf4j
+public class SpillingCoordinateSorter implements RegistryDumpReader.VersionSink, AutoCloseable {
+
+    @FunctionalInterface
+    public interface CoordinateSink {
+        /**
+         *
+         * @param coordinate
+         * @param versions every version of the coordinate in the dump, in no particular order
+         * @throws Exception
+         */
+        void accept(PackageCoordinate coordinate, List<VersionMetadata> versions) throws Exception;
+    }
+
+    private record Entry(PackageCoordinate coordinate, String version, ZonedDateTime publishedAt) {}
+
+    private static final Comparator<PackageCoordinate> COORDINATE_ORDER =
+        Comparator.comparing(PackageCoordinate::type)
+                  .thenComparing(PackageCoordinate::namespace, Comparator.nullsFirst(Comparator.naturalOrder()))
+                  .thenComparing(PackageCoordinate::name);
+
+    private final int maxBufferedVersions;
+    private final Path spillDirectory;
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long versionCount = 0;
+
+
+    /**
+     *
+     * @param maxBufferedVersions
+     * @param spillDirectory where run files are written. they're deleted on close
+     */
+    public SpillingCoordinateSorter(int maxBufferedVersions, Path spillDirectory) {
+        this.maxBufferedVersions = maxBufferedVersions;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public void accept(PackageCoordinate coordinate, String version, ZonedDateTime publishedAt) {
+        buffer.add(new Entry(coordinate, version, publishedAt));
+        versionCount++;
+        if (buffer.size() >= maxBufferedVersions) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public long getVersionCount() { return versionCount; }
+
+    /**
+     * hands every coordinate to the sink once, in coordinate order. call after the reader is done
+     *
+     * @param sink
+     * @return number of coordinates
+     * @throws Exception
+     */
+    public int drain(CoordinateSink sink) throws Exception {
+        if (runs.isEmpty()) {
+            buffer.sort(Comparator.comparing(Entry::coordinate, COORDINATE_ORDER));
+            var rv = emitGroups(buffer.iterator(), sink);
+            buffer.clear();
+            return rv;
+        }
+
+        spill();
+        log.info("merging {} sorted runs of {} versions", runs.size(), versionCount);
+        List<RunCursor> cursors = new ArrayList<>();
+        try {
+            var heap = new PriorityQueue<RunCursor>(Comparator.comparing(c -> c.head.coordinate(), COORDINATE_ORDER));
+            for (var run : runs) {
+                var cursor = new RunCursor(run);
+                cursors.add(cursor);
+                if (cursor.advance()) { heap.add(cursor); }
+            }
+
+            var merged = new Iterator<Entry>() {
+                @Override
+                public boolean hasNext() { return !heap.isEmpty(); }
+
+                @Override
+                public Entry next() {
+                    var cursor = heap.poll();
+                    var rv = cursor.head;
+                    try {
+                        if (cursor.advance()) { heap.add(cursor); }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return rv;
+                }
+            };
+            return emitGroups(merged, sink);
+        } finally {
+            for (var cursor : cursors) { cursor.in.close(); }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var run : runs) { Files.deleteIfExists(run); }
+        runs.clear();
+        buffer.clear();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) { return; }
+        buffer.sort(Comparator.comparing(Entry::coordinate, COORDINATE_ORDER));
+        var run = Files.createTempFile(spillDirectory, "package-index-import-", ".run");
+        runs.add(run);
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (var entry : buffer) {
+                var coordinate = entry.coordinate();
+                out.writeUTF(coordinate.type());
+                out.writeBoolean(coordinate.namespace() != null);
+                if (coordinate.namespace() != null) { out.writeUTF(coordinate.namespace()); }
+                out.writeUTF(coordinate.name());
+                out.writeUTF(entry.version());
+                var publishedAt = entry.publishedAt().toInstant();
+                out.writeLong(publishedAt.getEpochSecond());
+                out.writeInt(publishedAt.getNano());
+            }
+        }
+        log.debug("spilled {} versions to: {}", buffer.size(), run);
+        buffer.clear();
+    }
+
+    private static int emitGroups(Iterator<Entry> entries, CoordinateSink sink) throws Exception {
+        var rv = 0;
+        PackageCoordinate current = null;
+        List<VersionMetadata> versions = new ArrayList<>();
+        while (entries.hasNext()) {
+            var entry = entries.next();
+            if (current != null && !current.equals(entry.coordinate())) {
+                sink.accept(current, versions);
+                versions = new ArrayList<>();
+                rv++;
+            }
+            current = entry.coordinate();
+            versions.add(new VersionMetadata(entry.version(), entry.publishedAt()));
+        }
+        if (current != null) {
+            sink.accept(current, versions);
+            rv++;
+        }
+        return rv;
+    }
+
+    private static class RunCursor {
+        final DataInputStream in;
+        Entry head;
+
+        RunCursor(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            String type;
+            try {
+                type = in.readUTF();
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+            var namespace = in.readBoolean() ? in.readUTF() : null;
+            var name = in.readUTF();
+            var version = in.readUTF();
+            var publishedAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            head = new Entry(
+                new PackageCoordinate(type, namespace, name),
+                version,
+                ZonedDateTime.ofInstant(publishedAt, ZoneOffset.UTC)
+            );
+            return true;
+        }
+    }
+
+}
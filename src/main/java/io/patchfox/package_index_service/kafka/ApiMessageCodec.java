@@ -0,0 +1,75 @@
+package io.patchfox.package_index_service.kafka;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+
+/**
+ * wire formats this service understands for ApiRequest/ApiResponse values on Kafka. 
+ * 
+ * JSON is what every PatchFox service speaks. SMILE is the binary encoding of the exact same Jackson data model, so 
+ * the ApiRequest/ApiResponse classes themselves act as the schema and nothing has to be kept in sync by hand. The 
+ * format of a given record is declared in the CODEC_HEADER record header. Records without that header are treated as 
+ * JSON so producers that don't know about any of this keep working. 
+ */
+public enum ApiMessageCodec {
+    JSON,
+    SMILE;
+
+    // record header naming the codec used to write the record value 
+    public static final String CODEC_HEADER = "patchfox_codec";
+
+    // producer config key used to select the outbound codec. see "spring.kafka.producer.properties.patchfox.codec"
+    public static final String CODEC_CONFIG = "patchfox.codec";
+
+
+    /**
+     * 
+     * @param headers
+     * @return the codec declared on the record or JSON if the record doesn't declare one
+     */
+    public static ApiMessageCodec fromHeaders(Headers headers) {
+        if (headers == null) { return JSON; }
+        Header header = headers.lastHeader(CODEC_HEADER);
+        if (header == null || header.value() == null) { return JSON; }
+        return fromName(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 
+     * @param value
+     * @return the codec named by the supplied config value or JSON if it's missing or unknown 
+     */
+    public static ApiMessageCodec fromName(Object value) {
+        if (value == null) { return JSON; }
+        try {
+            return ApiMessageCodec.valueOf(value.toString().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return JSON;
+        }
+    }
+
+    public byte[] headerValue() { return name().getBytes(StandardCharsets.UTF_8); }
+
+    /**
+     * mirrors the settings spring-kafka applies to the mapper behind JsonSerializer/JsonDeserializer so that both 
+     * codecs read and write the same data model.
+     * 
+     * @return 
+     */
+    public static ObjectMapper smileMapper() {
+        return SmileMapper.builder()
+                          .configure(MapperFeature.DEFAULT_VIEW_INCLUSION, false)
+                          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                          .findAndAddModules()
+                          .build();
+    }
+
+}
@@ -0,0 +1,46 @@
+package io.patchfox.package_index_service.kafka;
+
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+
+/**
+ * value deserializer for ApiRequest/ApiResponse objects. picks the codec named in the record's codec header and falls 
+ * back to JSON when there isn't one. both delegates receive the same consumer configs so things like 
+ * "spring.json.value.default.type" on the listeners behave exactly as they do with a plain JsonDeserializer. 
+ */
+public class ApiMessageDeserializer implements Deserializer<Object> {
+
+    private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+
+    private final JsonDeserializer<Object> smileDeserializer = new JsonDeserializer<>(ApiMessageCodec.smileMapper());
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+        smileDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        return switch (ApiMessageCodec.fromHeaders(headers)) {
+            case SMILE -> smileDeserializer.deserialize(topic, headers, data);
+            default -> jsonDeserializer.deserialize(topic, headers, data);
+        };
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+        smileDeserializer.close();
+    }
+
+}
@@ -0,0 +1,52 @@
+package io.patchfox.package_index_service.kafka;
+
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+
+/**
+ * value serializer for ApiRequest/ApiResponse objects. writes JSON unless the producer is configured with 
+ * "patchfox.codec=smile", in which case it writes SMILE and tags the record with the codec header so the consumer 
+ * knows how to read it back. 
+ */
+public class ApiMessageSerializer implements Serializer<Object> {
+
+    private final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+
+    private final JsonSerializer<Object> smileSerializer = new JsonSerializer<>(ApiMessageCodec.smileMapper());
+
+    private ApiMessageCodec codec = ApiMessageCodec.JSON;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonSerializer.configure(configs, isKey);
+        smileSerializer.configure(configs, isKey);
+        codec = ApiMessageCodec.fromName(configs.get(ApiMessageCodec.CODEC_CONFIG));
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        // without headers there's no way to tell the consumer what we did so stick to what everyone understands
+        return jsonSerializer.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null) { return null; }
+        if (codec == ApiMessageCodec.JSON || headers == null) { return jsonSerializer.serialize(topic, headers, data); }
+
+        headers.remove(ApiMessageCodec.CODEC_HEADER);
+        headers.add(ApiMessageCodec.CODEC_HEADER, codec.headerValue());
+        return smileSerializer.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+        smileSerializer.close();
+    }
+
+}
@@ -0,0 +1,72 @@
+package io.patchfox.package_index_service.kafka;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+
+/**
+ * the "response" entry of an enrichment ApiResponse's data.
+ *
+ * everyone reading JSON (REST callers and JSON Kafka consumers) has always been handed a JSON document in a string,
+ * eg: "{\"updatedRecordIds\":[1,2,3]}", and still is. when the record is written as SMILE the ids go out as a
+ * structured object instead, so the codec actually gets to encode them as numbers rather than wrapping one big string.
+ * consumers only ever see the structured form if they asked for SMILE by reading the codec header.
+ *
+ * @param updatedRecordIds null if no package record was updated
+ * @param createdRecordId null if no package record was created
+ */
+@JsonSerialize(using = EnrichmentResponseBody.CodecAwareSerializer.class)
+public record EnrichmentResponseBody(List<Long> updatedRecordIds, Long createdRecordId) {
+
+    public static final String UPDATED_RECORD_IDS_KEY = "updatedRecordIds";
+    public static final String CREATED_RECORD_ID_KEY = "createdRecordId";
+
+    /**
+     *
+     * @return the string JSON consumers have always been given
+     */
+    public String toLegacyJson() {
+        var rv = new JSONObject();
+        if (updatedRecordIds != null) { rv.put(UPDATED_RECORD_IDS_KEY, updatedRecordIds); }
+        if (createdRecordId != null) { rv.put(CREATED_RECORD_ID_KEY, createdRecordId); }
+        return rv.toString();
+    }
+
+    @Override
+    public String toString() { return toLegacyJson(); }
+
+
+    static class CodecAwareSerializer extends JsonSerializer<EnrichmentResponseBody> {
+
+        @Override
+        public void serialize(
+                EnrichmentResponseBody value,
+                JsonGenerator gen,
+                SerializerProvider serializers
+        ) throws IOException {
+            if ( !(gen instanceof SmileGenerator)) {
+                gen.writeString(value.toLegacyJson());
+                return;
+            }
+
+            gen.writeStartObject();
+            if (value.updatedRecordIds() != null) {
+                gen.writeArrayFieldStart(UPDATED_RECORD_IDS_KEY);
+                for (var id : value.updatedRecordIds()) { gen.writeNumber(id); }
+                gen.writeEndArray();
+            }
+            if (value.createdRecordId() != null) { gen.writeNumberField(CREATED_RECORD_ID_KEY, value.createdRecordId()); }
+            gen.writeEndObject();
+        }
+
+    }
+
+}
@@ -8,6 +8,7 @@ import java.util.UUID;
 
 import org.apache.catalina.connector.Response;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.json.JSONException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -18,6 +19,7 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
 import io.patchfox.package_index_service.components.EnvironmentComponent;
 import io.patchfox.package_index_service.controllers.HealthCheckController;
 import io.patchfox.package_index_service.controllers.PackageIndexController;
@@ -47,6 +49,9 @@ public class KafkaBeans {
     @Autowired
     EnvironmentComponent env;
 
+    @Autowired
+    EnrichmentMetrics metrics;
+
     //
     // create topics for other services to send and receive messages on 
     //
@@ -93,6 +98,7 @@ public class KafkaBeans {
         var verb = apiRequest.getVerb();
         var resource = apiRequest.getUri();
         var resourceSignature = verb + "_" + resource.toString();
+        metrics.kafkaListenerStarted();
         try {
             var requestPair = new Pair<>(verb, resource);
             var handlerMethod = restInfoService.getHandlerFor(requestPair);
@@ -119,6 +125,8 @@ public class KafkaBeans {
                                               .build();
 
             kafkaResponseTemplate.send(responseTopicName, serverErrorResponse);
+        } finally {
+            metrics.kafkaListenerFinished();
         }
     }
 
@@ -214,9 +222,48 @@ public class KafkaBeans {
                 break;
             case PackageIndexController.POST_ENRICH_PACKAGES_SIGNATURE:
                 var datasourceEventRecordId = Long.valueOf(apiRequest.getQueryStringParameters().get("datasourceEventRecordId"));
-                re = (ResponseEntity<ApiResponse>)beanMethod.invoke(bean, txid, requestReceivedAt, datasourceEventRecordId);
+                var async = Boolean.parseBoolean(apiRequest.getQueryStringParameters().get("async"));
+                var debug = Boolean.parseBoolean(apiRequest.getQueryStringParameters().get("debug"));
+                // scheduling hints. see EnrichmentScheduler
+                var priority = apiRequest.getQueryStringParameters().get("priority");
+                var dataset = apiRequest.getQueryStringParameters().get("dataset");
+                re = (ResponseEntity<ApiResponse>)beanMethod.invoke(
+                    bean, 
+                    txid, 
+                    requestReceivedAt, 
+                    datasourceEventRecordId, 
+                    async, 
+                    debug,
+                    priority,
+                    dataset
+                );
                 rv = re.getBody();
                 break;
+            case PackageIndexController.POST_PACKAGES_LOOKUP_SIGNATURE:
+                // the rest handler streams its answer, which a kafka response can't do. purls come in as a json array 
+                // in the "purls" parameter
+                try {
+                    var purls = PackageIndexController.parsePurls(apiRequest.getQueryStringParameters().get("purls"));
+                    var history = Boolean.parseBoolean(apiRequest.getQueryStringParameters().get("history"));
+                    rv = ((PackageIndexController) bean).packageLookupCollectedHandler(
+                        txid, 
+                        requestReceivedAt, 
+                        purls, 
+                        history
+                    ).getBody();
+                } catch (JSONException e) {
+                    rv = ApiResponse.builder()
+                                    .responderName(env.getServiceName())
+                                    .code(Response.SC_BAD_REQUEST)
+                                    .txid(txid)
+                                    .requestReceivedAt(requestReceivedAt.toString())
+                                    .serverMessage("purls parameter must be a json array of purls")
+                                    .build();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InvocationTargetException(e);
+                }
+                break;
         }
         return rv;
     }
@@ -21,4 +21,22 @@ public interface DatasourceEventRepository extends JpaRepository<DatasourceEvent
     )
     void setStatusFlagsFor(Long id);
 
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(
+        value = "UPDATE datasource_event " +
+	            "SET status = 'PROCESSING_ERROR' " +
+	            "WHERE id = ?1 ",
+        nativeQuery = true
+    )
+    void setProcessingErrorFor(Long id);
+
+
+    @Query(
+        value = "SELECT datasource_id FROM datasource_event WHERE id = ?1 ",
+        nativeQuery = true
+    )
+    Long getDatasourceIdFor(Long id);
+
  }
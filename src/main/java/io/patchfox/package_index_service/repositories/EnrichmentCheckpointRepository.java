@@ -0,0 +1,98 @@
+package io.patchfox.package_index_service.repositories;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+
+/*
+ * where a datasource event enrichment got to. see migration V3 and PackageIndexService.enrichPackages
+ */
+@Repository
+public class EnrichmentCheckpointRepository {
+
+    public record EnrichmentCheckpoint(
+        long datasourceEventId,
+        UUID txid,
+        // counts coordinates, not purls, and so does nextOffset. see PackageIndexService.groupByCoordinate
+        int coordinatesPlanned,
+        // see PackageIndexService.coordinateDigest
+        String coordinateDigest,
+        int nextOffset,
+        List<String> failedPurls,
+        boolean recordCreated,
+        Instant updatedAt
+    ) {}
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+
+    public Optional<EnrichmentCheckpoint> find(long datasourceEventId) {
+        var rows = jdbcTemplate.query(
+            "SELECT txid, coordinates_planned, coordinate_digest, next_offset, failed_purls, record_created, " +
+            "updated_at FROM enrichment_checkpoint WHERE datasource_event_id = ?",
+            (rs, rowNum) -> new EnrichmentCheckpoint(
+                datasourceEventId,
+                rs.getObject("txid", UUID.class),
+                rs.getInt("coordinates_planned"),
+                rs.getString("coordinate_digest"),
+                rs.getInt("next_offset"),
+                Arrays.asList((String[]) rs.getArray("failed_purls").getArray()),
+                rs.getBoolean("record_created"),
+                rs.getTimestamp("updated_at").toInstant()
+            ),
+            datasourceEventId
+        );
+        return rows.stream().findFirst();
+    }
+
+    public void save(EnrichmentCheckpoint checkpoint) {
+        jdbcTemplate.update(
+            connection -> {
+                var ps = connection.prepareStatement(
+                    "INSERT INTO enrichment_checkpoint " +
+                    "(datasource_event_id, txid, coordinates_planned, coordinate_digest, next_offset, failed_purls, " +
+                    "record_created, updated_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (datasource_event_id) DO UPDATE SET " +
+                    "txid = EXCLUDED.txid, coordinates_planned = EXCLUDED.coordinates_planned, " +
+                    "coordinate_digest = EXCLUDED.coordinate_digest, " +
+                    "next_offset = EXCLUDED.next_offset, failed_purls = EXCLUDED.failed_purls, " +
+                    "record_created = EXCLUDED.record_created, updated_at = EXCLUDED.updated_at"
+                );
+                ps.setLong(1, checkpoint.datasourceEventId());
+                ps.setObject(2, checkpoint.txid());
+                ps.setInt(3, checkpoint.coordinatesPlanned());
+                ps.setString(4, checkpoint.coordinateDigest());
+                ps.setInt(5, checkpoint.nextOffset());
+                ps.setArray(6, connection.createArrayOf("text", checkpoint.failedPurls().toArray()));
+                ps.setBoolean(7, checkpoint.recordCreated());
+                ps.setTimestamp(8, Timestamp.from(checkpoint.updatedAt()));
+                return ps;
+            }
+        );
+    }
+
+    public void delete(long datasourceEventId) {
+        jdbcTemplate.update("DELETE FROM enrichment_checkpoint WHERE datasource_event_id = ?", datasourceEventId);
+    }
+
+    /**
+     * drops checkpoints for events nobody came back for
+     *
+     * @param cutoff
+     * @return how many were dropped
+     */
+    public int deleteOlderThan(Instant cutoff) {
+        return jdbcTemplate.update("DELETE FROM enrichment_checkpoint WHERE updated_at < ?", Timestamp.from(cutoff));
+    }
+
+}
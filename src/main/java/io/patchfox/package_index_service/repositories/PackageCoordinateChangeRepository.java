@@ -0,0 +1,175 @@
+package io.patchfox.package_index_service.repositories;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+/*
+ * package coordinates a change feed reported as changed, and when. see migration V4 and ChangeFeedService. a package
+ * record or version history from before a coordinate's changed_at is stale no matter what its own timestamps say.
+ *
+ * feeds report every package the index has, so only coordinates we hold package records or a version history for are
+ * kept. a row goes away once the coordinate has been enriched again, see clear
+ */
+@Repository
+public class PackageCoordinateChangeRepository {
+
+    private static final String UPSERT =
+        "ON CONFLICT (type, namespace, name) DO UPDATE SET " +
+        "changed_at = GREATEST(package_coordinate_change.changed_at, EXCLUDED.changed_at)";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+
+    /**
+     *
+     * @param coordinates
+     * @param changedAt
+     */
+    public void recordChanges(Collection<PackageCoordinate> coordinates, Instant changedAt) {
+        if (coordinates.isEmpty()) { return; }
+        List<PackageCoordinate> withNamespace = new ArrayList<>();
+        List<PackageCoordinate> withoutNamespace = new ArrayList<>();
+        for (var coordinate : coordinates) {
+            (coordinate.namespace() == null ? withoutNamespace : withNamespace).add(coordinate);
+        }
+
+        // package keeps a missing namespace as NULL, matched separately so both lookups can use
+        // package_type_namespace_name_idx
+        recordChanges(withNamespace, changedAt, "namespace = ?");
+        recordChanges(withoutNamespace, changedAt, "namespace IS NULL AND ? = ''");
+    }
+
+
+    /**
+     *
+     * @param coordinate
+     * @return when a change feed last reported the coordinate as changed, if it has and we haven't caught up since
+     */
+    public Optional<Instant> lastChangedAt(PackageCoordinate coordinate) {
+        var rows = jdbcTemplate.query(
+            "SELECT changed_at FROM package_coordinate_change WHERE type = ? AND namespace = ? AND name = ?",
+            (rs, rowNum) -> rs.getTimestamp("changed_at").toInstant(),
+            coordinate.type(),
+            toColumn(coordinate.namespace()),
+            coordinate.name()
+        );
+        return rows.stream().findFirst();
+    }
+
+
+    /**
+     * lastChangedAt for many coordinates of one package type in one query 
+     * 
+     * @param type
+     * @param coordinates
+     * @return the coordinates that have a change, and when it was 
+     */
+    public Map<PackageCoordinate, Instant> lastChangedAt(String type, Collection<PackageCoordinate> coordinates) {
+        Map<PackageCoordinate, Instant> rv = new HashMap<>();
+        if (coordinates.isEmpty()) { return rv; }
+        var namespaces = coordinates.stream().map(c -> toColumn(c.namespace())).toArray();
+        var names = coordinates.stream().map(PackageCoordinate::name).toArray();
+        jdbcTemplate.query(
+            connection -> {
+                var ps = connection.prepareStatement(
+                    "SELECT c.namespace, c.name, c.changed_at FROM package_coordinate_change c " +
+                    "JOIN unnest(?, ?) AS wanted(namespace, name) " + 
+                    "ON c.namespace = wanted.namespace AND c.name = wanted.name " +
+                    "WHERE c.type = ?"
+                );
+                ps.setArray(1, connection.createArrayOf("text", namespaces));
+                ps.setArray(2, connection.createArrayOf("text", names));
+                ps.setString(3, type);
+                return ps;
+            },
+            rs -> {
+                var namespace = rs.getString("namespace");
+                rv.put(
+                    new PackageCoordinate(type, namespace.isEmpty() ? null : namespace, rs.getString("name")),
+                    rs.getTimestamp("changed_at").toInstant()
+                );
+            }
+        );
+        return rv;
+    }
+
+
+    /**
+     * forgets a change once the coordinate has been enriched after it. a newer change recorded in the meantime is kept
+     *
+     * @param coordinate
+     * @param changedAt what lastChangedAt said before the enrichment
+     */
+    public void clear(PackageCoordinate coordinate, Instant changedAt) {
+        jdbcTemplate.update(
+            "DELETE FROM package_coordinate_change " +
+            "WHERE type = ? AND namespace = ? AND name = ? AND changed_at <= ?",
+            coordinate.type(),
+            toColumn(coordinate.namespace()),
+            coordinate.name(),
+            Timestamp.from(changedAt)
+        );
+    }
+
+
+    /**
+     *
+     * @param cutoff
+     * @return how many changes older than cutoff were dropped
+     */
+    public int deleteOlderThan(Instant cutoff) {
+        return jdbcTemplate.update(
+            "DELETE FROM package_coordinate_change WHERE changed_at < ?",
+            Timestamp.from(cutoff)
+        );
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void recordChanges(List<PackageCoordinate> coordinates, Instant changedAt, String packageNamespaceMatch) {
+        if (coordinates.isEmpty()) { return; }
+        var changedAtTimestamp = Timestamp.from(changedAt);
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO package_coordinate_change (type, namespace, name, changed_at) " +
+            "SELECT ?, ?, ?, ? " +
+            "WHERE EXISTS (SELECT 1 FROM package WHERE type = ? AND " + packageNamespaceMatch + " AND name = ?) " +
+            "OR EXISTS (SELECT 1 FROM package_version_history WHERE type = ? AND namespace = ? AND name = ?) " +
+            UPSERT,
+            coordinates,
+            500,
+            (ps, coordinate) -> {
+                var namespace = toColumn(coordinate.namespace());
+                ps.setString(1, coordinate.type());
+                ps.setString(2, namespace);
+                ps.setString(3, coordinate.name());
+                ps.setTimestamp(4, changedAtTimestamp);
+                ps.setString(5, coordinate.type());
+                ps.setString(6, namespace);
+                ps.setString(7, coordinate.name());
+                ps.setString(8, coordinate.type());
+                ps.setString(9, namespace);
+                ps.setString(10, coordinate.name());
+            }
+        );
+    }
+
+    private static String toColumn(String namespace) { return namespace == null ? "" : namespace; }
+
+}
@@ -1,24 +1,231 @@
 package io.patchfox.package_index_service.repositories;
 
 import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.github.packageurl.PackageURL;
 
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface PackageRepository extends JpaRepository<Package, Long> {
-    List<Package> findByNamespaceAndName(String namespace, String name);
+    // enrichment only ever reads a handful of columns and writes the version history derived ones. it does both 
+    // through the PackageRow projection and applyUpdates, never through Package entities. loading those for a 
+    // coordinate with thousands of records fills the persistence context with entities hibernate then has to dirty 
+    // check on every flush. new records are still created with save, there's at most one of those per coordinate and 
+    // the entity knows how to fill in the rest of the row 
+
+    /*
+     * what enrichment needs to know about an existing package record 
+     */
+    interface PackageRow {
+        Long getId();
+        String getPurl();
+        String getType();
+        String getNamespace();
+        String getName();
+        String getVersion();
+        String getMostRecentVersion();
+        ZonedDateTime getUpdatedAt();
+    }
+
+    /*
+     * the columns an enrichment writes to an existing package record 
+     */
+    record PackageRowUpdate(
+        long id,
+        String purl,
+        String mostRecentVersion,
+        int numberMajorVersionsBehindHead,
+        int numberMinorVersionsBehindHead,
+        int numberPatchVersionsBehindHead,
+        int numberVersionsBehindHead,
+        ZonedDateTime mostRecentVersionPublishedAt,
+        ZonedDateTime thisVersionPublishedAt,
+        ZonedDateTime updatedAt
+    ) {}
+
+    // how many ids go in one findRowsByIds IN list 
+    int ROWS_BY_IDS_CHUNK_SIZE = 1000;
+
+    String SELECT_PACKAGE_ROW = "SELECT p.id AS id, p.purl AS purl, p.type AS type, p.namespace AS namespace, " +
+                                "p.name AS name, p.version AS version, p.mostRecentVersion AS mostRecentVersion, " + 
+                                "p.updatedAt AS updatedAt " +
+                                "FROM Package p ";
+
+    // served by package_type_namespace_name_idx, see PackageLookupIndexRunner 
+    @Query(SELECT_PACKAGE_ROW + "WHERE p.type = :type AND p.namespace = :namespace AND p.name = :name")
+    List<PackageRow> findRows(
+        @Param("type") String type, 
+        @Param("namespace") String namespace, 
+        @Param("name") String name
+    );
+
+    @Query(SELECT_PACKAGE_ROW + "WHERE p.type = :type AND p.namespace IS NULL AND p.name = :name")
+    List<PackageRow> findRowsWithoutNamespace(@Param("type") String type, @Param("name") String name);
+
+    @Query(SELECT_PACKAGE_ROW + "WHERE p.id IN :ids")
+    List<PackageRow> findRowsByIds(@Param("ids") Collection<Long> ids);
 
     @Query(
-        value = "SELECT p.purl " +
+        // jpql has no unnest, so the coordinates are matched natively and the rows read by id 
+        value = "SELECT p.id " +
+                "FROM package p " +
+                "JOIN unnest(CAST(:namespaces AS text[]), CAST(:names AS text[])) AS c(namespace, name) " + 
+                "ON p.namespace = c.namespace AND p.name = c.name " +
+                "WHERE p.type = :type",
+        nativeQuery = true
+    )
+    List<Long> findIdsByCoordinates(
+        @Param("type") String type, 
+        @Param("namespaces") String[] namespaces, 
+        @Param("names") String[] names
+    );
+
+    @Query(
+        value = "SELECT p.id " +
                 "FROM package p " +
-                "INNER JOIN datasource_event_package dep " +
-                "ON dep.datasource_event_id  = :datasourceEventId " +
-                "AND dep.package_id = p.id; ",
+                "WHERE p.type = :type AND p.namespace IS NULL AND p.name = ANY(CAST(:names AS text[]))",
+        nativeQuery = true
+    )
+    List<Long> findIdsByNamesWithoutNamespace(@Param("type") String type, @Param("names") String[] names);
+
+    @Modifying
+    @Transactional
+    @Query(
+        "UPDATE Package p SET " +
+        "p.mostRecentVersion = :mostRecentVersion, " +
+        "p.numberMajorVersionsBehindHead = :numberMajorVersionsBehindHead, " +
+        "p.numberMinorVersionsBehindHead = :numberMinorVersionsBehindHead, " +
+        "p.numberPatchVersionsBehindHead = :numberPatchVersionsBehindHead, " +
+        "p.numberVersionsBehindHead = :numberVersionsBehindHead, " +
+        "p.mostRecentVersionPublishedAt = :mostRecentVersionPublishedAt, " +
+        "p.thisVersionPublishedAt = :thisVersionPublishedAt, " +
+        "p.updatedAt = :updatedAt " +
+        "WHERE p.id = :id"
+    )
+    int applyUpdate(
+        @Param("id") long id,
+        @Param("mostRecentVersion") String mostRecentVersion,
+        @Param("numberMajorVersionsBehindHead") int numberMajorVersionsBehindHead,
+        @Param("numberMinorVersionsBehindHead") int numberMinorVersionsBehindHead,
+        @Param("numberPatchVersionsBehindHead") int numberPatchVersionsBehindHead,
+        @Param("numberVersionsBehindHead") int numberVersionsBehindHead,
+        @Param("mostRecentVersionPublishedAt") ZonedDateTime mostRecentVersionPublishedAt,
+        @Param("thisVersionPublishedAt") ZonedDateTime thisVersionPublishedAt,
+        @Param("updatedAt") ZonedDateTime updatedAt
+    );
+
+
+    /**
+     * a null namespace is matched with IS NULL rather than IS NOT DISTINCT FROM, which can't use the index 
+     *
+     * @param type
+     * @param namespace
+     * @param name
+     * @return every package record for the coordinate
+     */
+    default List<PackageRow> findByCoordinate(String type, String namespace, String name) {
+        return namespace == null ? findRowsWithoutNamespace(type, name) : findRows(type, namespace, name);
+    }
+
+    /**
+     * findByCoordinate for many coordinates of one package type. the ids come from one query for the coordinates 
+     * with a namespace and one for those without, both still answered through package_type_namespace_name_idx 
+     * 
+     * @param type
+     * @param coordinates
+     * @return the package records of every coordinate that has any 
+     */
+    default Map<PackageCoordinate, List<PackageRow>> findByCoordinates(
+            String type, 
+            Collection<PackageCoordinate> coordinates
+    ) {
+        List<String> namespaces = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> namesWithoutNamespace = new ArrayList<>();
+        for (var coordinate : coordinates) {
+            if (coordinate.namespace() == null) {
+                namesWithoutNamespace.add(coordinate.name());
+            } else {
+                namespaces.add(coordinate.namespace());
+                names.add(coordinate.name());
+            }
+        }
+
+        List<Long> ids = new ArrayList<>();
+        if ( !names.isEmpty()) {
+            ids.addAll(findIdsByCoordinates(type, namespaces.toArray(String[]::new), names.toArray(String[]::new)));
+        }
+        if ( !namesWithoutNamespace.isEmpty()) {
+            ids.addAll(findIdsByNamesWithoutNamespace(type, namesWithoutNamespace.toArray(String[]::new)));
+        }
+
+        Map<PackageCoordinate, List<PackageRow>> rv = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += ROWS_BY_IDS_CHUNK_SIZE) {
+            var chunk = ids.subList(i, Math.min(i + ROWS_BY_IDS_CHUNK_SIZE, ids.size()));
+            for (var row : findRowsByIds(chunk)) {
+                rv.computeIfAbsent(
+                    new PackageCoordinate(type, row.getNamespace(), row.getName()), 
+                    k -> new ArrayList<>()
+                ).add(row);
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * writes the derived columns of every record in one transaction. the UPDATE goes straight to the table, nothing 
+     * passes through the persistence context 
+     *
+     * @param updates
+     */
+    @Transactional
+    default void applyUpdates(List<PackageRowUpdate> updates) {
+        for (var update : updates) {
+            applyUpdate(
+                update.id(),
+                update.mostRecentVersion(),
+                update.numberMajorVersionsBehindHead(),
+                update.numberMinorVersionsBehindHead(),
+                update.numberPatchVersionsBehindHead(),
+                update.numberVersionsBehindHead(),
+                update.mostRecentVersionPublishedAt(),
+                update.thisVersionPublishedAt(),
+                update.updatedAt()
+            );
+        }
+    }
+
+    @Query(
+        // driven from datasource_event_package_event_idx, see PackageLookupIndexRunner. the package rows come off the 
+        // primary key
+        value = "SELECT p.purl " +
+                "FROM datasource_event_package dep " +
+                "INNER JOIN package p " +
+                "ON p.id = dep.package_id " +
+                "WHERE dep.datasource_event_id = :datasourceEventId " +
+                // a stable order is what lets an interrupted enrichment resume from an offset 
+                "ORDER BY p.id",
         nativeQuery = true
     )
     List<String> getPackagesByDatasourceEventId(@Param("datasourceEventId") long datasourceEventId);
+
+    @Query(
+        value = "SELECT count(*) " +
+                "FROM datasource_event_package dep " +
+                "WHERE dep.datasource_event_id = :datasourceEventId",
+        nativeQuery = true
+    )
+    int countPackagesByDatasourceEventId(@Param("datasourceEventId") long datasourceEventId);
 }
@@ -0,0 +1,212 @@
+package io.patchfox.package_index_service.repositories;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageMetadata;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+
+
+/*
+ * store of parsed package version histories keyed by package coordinate. see migrations V1 and V2. histories are kept 
+ * as gzipped "version<TAB>epoch millis" lines, newest first, which is a fraction of the size of the index responses 
+ * they were parsed from. 
+ * 
+ * every replica reads through and writes through this table, so a package index response fetched by one replica is 
+ * reused by all of them and survives restarts.
+ */
+@Repository
+public class PackageVersionHistoryRepository {
+
+    public static final String SOURCE_REGISTRY = "registry";
+    public static final String SOURCE_IMPORT = "import";
+
+    public record StoredVersionHistory(
+        PackageCoordinate coordinate, 
+        List<VersionMetadata> packageHistory, 
+        Instant fetchedAt,
+        String source,
+        String etag,
+        String lastModified
+    ) {
+        public PackageMetadata toPackageMetadata() {
+            return new PackageMetadata(packageHistory.get(0), packageHistory);
+        }
+    }
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    EnrichmentMetrics metrics;
+
+
+    public Optional<StoredVersionHistory> find(PackageCoordinate coordinate) {
+        var rows = jdbcTemplate.query(
+            "SELECT history, fetched_at, source, etag, last_modified FROM package_version_history " +
+            "WHERE type = ? AND namespace = ? AND name = ?",
+            (rs, rowNum) -> new StoredVersionHistory(
+                coordinate, 
+                decode(rs.getBytes("history")), 
+                rs.getTimestamp("fetched_at").toInstant(),
+                rs.getString("source"),
+                rs.getString("etag"),
+                rs.getString("last_modified")
+            ),
+            coordinate.type(),
+            toColumn(coordinate.namespace()),
+            coordinate.name()
+        );
+        return rows.stream().filter(h -> !h.packageHistory().isEmpty()).findFirst();
+    }
+
+    /**
+     * inserts or replaces histories. an existing history is only replaced by one that was fetched at the same time or 
+     * later, so replaying an old dump can't clobber newer data.
+     * 
+     * @param histories
+     */
+    public void saveAll(List<StoredVersionHistory> histories) {
+        if (histories.isEmpty()) { return; }
+        var startNanos = System.nanoTime();
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO package_version_history " + 
+            "(type, namespace, name, history, version_count, source, fetched_at, etag, last_modified) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (type, namespace, name) DO UPDATE SET " +
+            "history = EXCLUDED.history, version_count = EXCLUDED.version_count, " +
+            "source = EXCLUDED.source, fetched_at = EXCLUDED.fetched_at, " +
+            "etag = EXCLUDED.etag, last_modified = EXCLUDED.last_modified " +
+            "WHERE package_version_history.fetched_at <= EXCLUDED.fetched_at",
+            histories,
+            500,
+            (ps, history) -> {
+                ps.setString(1, history.coordinate().type());
+                ps.setString(2, toColumn(history.coordinate().namespace()));
+                ps.setString(3, history.coordinate().name());
+                ps.setBytes(4, encode(history.packageHistory()));
+                ps.setInt(5, history.packageHistory().size());
+                ps.setString(6, history.source());
+                ps.setTimestamp(7, Timestamp.from(history.fetchedAt()));
+                ps.setString(8, history.etag());
+                ps.setString(9, history.lastModified());
+            }
+        );
+
+        // batches from a dump import are all one package type. anything else is a live write of a single history
+        var ecosystem = histories.get(0).coordinate().type();
+        metrics.databaseWrite(
+            EnrichmentMetrics.TABLE_PACKAGE_VERSION_HISTORY, 
+            ecosystem, 
+            histories.size(), 
+            System.nanoTime() - startNanos
+        );
+    }
+
+    public void save(StoredVersionHistory history) { saveAll(List.of(history)); }
+
+    /**
+     * records that the package index confirmed the stored history is unchanged as of the given time. 
+     * 
+     * @param coordinate
+     * @param fetchedAt
+     */
+    public void touch(PackageCoordinate coordinate, Instant fetchedAt) {
+        jdbcTemplate.update(
+            "UPDATE package_version_history SET fetched_at = ? " +
+            "WHERE type = ? AND namespace = ? AND name = ? AND fetched_at < ?",
+            Timestamp.from(fetchedAt),
+            coordinate.type(),
+            toColumn(coordinate.namespace()),
+            coordinate.name(),
+            Timestamp.from(fetchedAt)
+        );
+    }
+
+
+    /**
+     * moves the fetch time of the given coordinates' histories back to staleAt, so they're no longer current. 
+     * histories that are already older are left alone 
+     * 
+     * @param coordinates
+     * @param staleAt
+     */
+    public void expire(Collection<PackageCoordinate> coordinates, Instant staleAt) {
+        if (coordinates.isEmpty()) { return; }
+        jdbcTemplate.batchUpdate(
+            "UPDATE package_version_history SET fetched_at = ? " +
+            "WHERE type = ? AND namespace = ? AND name = ? AND fetched_at > ?",
+            coordinates,
+            500,
+            (ps, coordinate) -> {
+                ps.setTimestamp(1, Timestamp.from(staleAt));
+                ps.setString(2, coordinate.type());
+                ps.setString(3, toColumn(coordinate.namespace()));
+                ps.setString(4, coordinate.name());
+                ps.setTimestamp(5, Timestamp.from(staleAt));
+            }
+        );
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static String toColumn(String namespace) { return namespace == null ? "" : namespace; }
+
+    static byte[] encode(List<VersionMetadata> packageHistory) {
+        var out = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(out)) {
+            for (var versionMetadata : packageHistory) {
+                var line = versionMetadata.version 
+                         + "\t" 
+                         + versionMetadata.releaseTimestamp.toInstant().toEpochMilli() 
+                         + "\n";
+                gzip.write(line.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static List<VersionMetadata> decode(byte[] history) {
+        List<VersionMetadata> rv = new ArrayList<>();
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(history))) {
+            var lines = new String(gzip.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            for (var line : lines) {
+                var tab = line.lastIndexOf('\t');
+                if (tab < 0) { continue; }
+                var releaseTimestamp = ZonedDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(line.substring(tab + 1))), 
+                    ZoneOffset.UTC
+                );
+                rv.add(new VersionMetadata(line.substring(0, tab), releaseTimestamp));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv;
+    }
+
+}
@@ -0,0 +1,210 @@
+package io.patchfox.package_index_service.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.RegistryChangeFeed;
+import io.patchfox.package_index_service.repositories.PackageCoordinateChangeRepository;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * polls the package index change feeds and uses them to decide which package records actually need re-querying. 
+ * 
+ * while a feed has been read continuously since time T, a record enriched at or after T is known to be current 
+ * unless its coordinate shows up in the feed. so instead of re-querying every record once the freshness window has 
+ * passed we only re-query coordinates that changed. changed coordinates are recorded in package_coordinate_change 
+ * (see PackageCoordinateChangeRepository), and anything enriched before a coordinate's change is stale whether it's 
+ * inside the freshness window or not. package.updated_at is left alone, it isn't ours to rewrite. stored version 
+ * histories are ours, so theirs are just moved back. 
+ * 
+ * coverage is tracked per replica in memory. a replica that restarts, or whose feed falls behind by more than 
+ * "package-index.change-feeds.max-lag", falls back to the plain freshness window. changes are only kept for 
+ * "package-index.change-feeds.change-retention", so the feed only vouches for records enriched within that long.
+ */
+@Slf4j
+@Component
+public class ChangeFeedService {
+
+    static class Coverage {
+        // feed has been read without gaps since this point 
+        final Instant since;
+        // time of the most recent poll that read everything the feed had 
+        volatile Instant verifiedThrough;
+
+        Coverage(Instant since) {
+            this.since = since;
+            this.verifiedThrough = since;
+        }
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    List<RegistryChangeFeed> feeds;
+
+    @Autowired
+    PackageCoordinateChangeRepository changeRepository;
+
+    @Autowired
+    PackageVersionHistoryRepository versionHistoryRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    private final Map<String, Coverage> coverageByType = new ConcurrentHashMap<>();
+
+
+    /**
+     * 
+     * @param packageType
+     * @param enrichedAt when the package record was last enriched 
+     * @return true if a change feed vouches for the record still being current 
+     */
+    public boolean isKnownCurrent(String packageType, ZonedDateTime enrichedAt) {
+        if (packageType == null || enrichedAt == null) { return false; }
+        var coverage = coverageByType.get(packageType);
+        if (coverage == null) { return false; }
+
+        var now = Instant.now();
+        var lag = Duration.between(coverage.verifiedThrough, now);
+        if (lag.compareTo(env.getChangeFeedMaxLag()) > 0) { return false; }
+
+        // changes older than the retention are gone, so the feed can't speak for anything enriched before them 
+        var retainedSince = now.minus(env.getChangeFeedChangeRetention());
+        var vouchedSince = coverage.since.isAfter(retainedSince) ? coverage.since : retainedSince;
+        return !enrichedAt.toInstant().isBefore(vouchedSince);
+    }
+
+    /**
+     * 
+     * @param coordinate
+     * @return when a change feed last reported the coordinate as changed, or null if it hasn't since the coordinate 
+     *         was last enriched or no feed is enabled for its package type 
+     */
+    public Instant lastChangedAt(PackageCoordinate coordinate) {
+        if ( !isFeedEnabled(coordinate.type())) { return null; }
+        return changeRepository.lastChangedAt(coordinate).orElse(null);
+    }
+
+    /**
+     * 
+     * @param packageType
+     * @param coordinates
+     * @return lastChangedAt of every coordinate that has one 
+     */
+    public Map<PackageCoordinate, Instant> lastChangedAt(String packageType, Collection<PackageCoordinate> coordinates) {
+        if ( !isFeedEnabled(packageType)) { return Map.of(); }
+        return changeRepository.lastChangedAt(packageType, coordinates);
+    }
+
+    /**
+     * 
+     * @param lastChangedAt from lastChangedAt, may be null
+     * @param enrichedAt
+     * @return true if the coordinate changed at or after the record was enriched 
+     */
+    public static boolean changedSince(Instant lastChangedAt, ZonedDateTime enrichedAt) {
+        return lastChangedAt != null && !enrichedAt.toInstant().isAfter(lastChangedAt);
+    }
+
+    /**
+     * call once every package record for the coordinate has been enriched after lastChangedAt 
+     * 
+     * @param coordinate
+     * @param lastChangedAt what lastChangedAt returned before the enrichment, may be null
+     */
+    public void changeHandled(PackageCoordinate coordinate, Instant lastChangedAt) {
+        if (lastChangedAt == null) { return; }
+        changeRepository.clear(coordinate, lastChangedAt);
+    }
+
+    @Scheduled(fixedDelayString = "PT1H")
+    public void evictOldChanges() {
+        var evicted = changeRepository.deleteOlderThan(Instant.now().minus(env.getChangeFeedChangeRetention()));
+        if (evicted > 0) { log.info("dropped {} change feed changes past retention", evicted); }
+    }
+
+    @Scheduled(
+        initialDelayString = "${package-index.change-feeds.interval}",
+        fixedDelayString = "${package-index.change-feeds.interval}"
+    )
+    public void pollChangeFeeds() {
+        for (var feed : feeds) {
+            if ( !feed.isEnabled() ) { continue; }
+            var packageType = feed.getPackageType();
+            var polledAt = Instant.now();
+
+            RegistryChangeFeed.ChangeBatch batch;
+            try {
+                batch = feed.poll();
+            } catch (Exception e) {
+                // the feed didn't move so nothing was missed. coverage just ages until a poll succeeds 
+                log.warn("failed to poll {} change feed: {}", packageType, e.toString());
+                continue;
+            }
+
+            var coverage = coverageByType.get(packageType);
+            if (batch.positionReset() || coverage == null) {
+                coverageByType.put(packageType, new Coverage(polledAt));
+                continue;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> markStale(batch.changed(), coverage, polledAt));
+            } catch (Exception e) {
+                // the feed has moved past these changes and we failed to record them. only records enriched from here 
+                // on out can be vouched for 
+                log.error("failed to apply {} change feed batch. restarting coverage: {}", packageType, e.toString());
+                coverageByType.put(packageType, new Coverage(polledAt));
+                continue;
+            }
+
+            if (batch.caughtUp()) { coverage.verifiedThrough = polledAt; }
+            log.info(
+                "{} change feed reported {} changed coordinates. caught up: {}", 
+                packageType, 
+                batch.changed().size(), 
+                batch.caughtUp()
+            );
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void markStale(Set<PackageCoordinate> changed, Coverage coverage, Instant polledAt) {
+        if (changed.isEmpty()) { return; }
+        changeRepository.recordChanges(changed, polledAt);
+
+        // a stored history has to land outside the freshness window as well as outside what the feed vouches for 
+        var windowStart = polledAt.minus(env.getFreshnessWindow());
+        var staleAt = (windowStart.isBefore(coverage.since) ? windowStart : coverage.since).minusMillis(1);
+        versionHistoryRepository.expire(changed, staleAt);
+    }
+
+    private boolean isFeedEnabled(String packageType) {
+        for (var feed : feeds) {
+            if (feed.getPackageType().equals(packageType) && feed.isEnabled()) { return true; }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,250 @@
+package io.patchfox.package_index_service.services;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.catalina.connector.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository;
+import io.patchfox.package_utils.json.ApiResponse;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * runs datasource event enrichment either inline or as a background job and owns setting the datasource event status 
+ * flags once the work is done. either way the EnrichmentScheduler decides when it starts. 
+ * 
+ * job state is kept in memory so a status request has to land on the same instance that accepted the job. 
+ */
+@Slf4j
+@Service
+public class EnrichmentJobService {
+
+    public enum JobState { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    @Getter
+    public static class EnrichmentJob {
+        private final UUID jobId = UUID.randomUUID();
+        private final UUID txid;
+        private final Long datasourceEventRecordId;
+        private final EnrichmentProgress progress = new EnrichmentProgress();
+        private final ZonedDateTime submittedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        private volatile JobState state = JobState.QUEUED;
+        private volatile ZonedDateTime startedAt;
+        private volatile ZonedDateTime finishedAt;
+        private volatile ApiResponse result;
+
+        EnrichmentJob(UUID txid, Long datasourceEventRecordId) {
+            this.txid = txid;
+            this.datasourceEventRecordId = datasourceEventRecordId;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> rv = new LinkedHashMap<>();
+            rv.put("jobId", jobId.toString());
+            rv.put("txid", txid.toString());
+            rv.put("datasourceEventRecordId", datasourceEventRecordId);
+            rv.put("state", state.toString());
+            rv.put("submittedAt", submittedAt.toString());
+            rv.put("startedAt", startedAt == null ? null : startedAt.toString());
+            rv.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
+            rv.put("progress", progress.toMap());
+            if (result != null) {
+                rv.put("resultCode", result.getCode());
+                rv.put("result", result.getData());
+            }
+            return rv;
+        }
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    PackageIndexService packageIndexService;
+
+    @Autowired
+    DatasourceEventRepository datasourceEventRepository;
+
+    @Autowired
+    EnrichmentCheckpointRepository checkpointRepository;
+
+    @Autowired
+    EnrichmentScheduler scheduler;
+
+    private final Map<UUID, EnrichmentJob> jobs = new ConcurrentHashMap<>();
+
+
+    /**
+     * enrich on the calling thread once the scheduler says it's this event's turn
+     * 
+     * @param txid
+     * @param requestReceivedAt
+     * @param datasourceEventId
+     * @param datasetHint ?dataset from the request, may be null
+     * @param priorityHint ?priority from the request, may be null
+     * @return
+     */
+    public ApiResponse enrich(
+            UUID txid, 
+            ZonedDateTime requestReceivedAt, 
+            long datasourceEventId,
+            String datasetHint,
+            String priorityHint
+    ) {
+        var ticket = scheduler.ticketFor(datasourceEventId, datasetHint, priorityHint);
+        try {
+            scheduler.acquire(ticket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResponse.builder()
+                              .txid(txid)
+                              .requestReceivedAt(requestReceivedAt)
+                              .code(Response.SC_SERVICE_UNAVAILABLE)
+                              .serverMessage("interrupted waiting to be scheduled - try again later")
+                              .build();
+        }
+
+        try {
+            return enrich(txid, requestReceivedAt, datasourceEventId, new EnrichmentProgress());
+        } finally {
+            scheduler.release(ticket);
+        }
+    }
+
+
+    /**
+     * queue enrichment with the scheduler. it runs on the job executor when its turn comes up
+     * 
+     * @param txid
+     * @param requestReceivedAt
+     * @param datasourceEventId
+     * @param datasetHint ?dataset from the request, may be null
+     * @param priorityHint ?priority from the request, may be null
+     * @return the job, or empty if the queue is full 
+     */
+    public Optional<EnrichmentJob> submit(
+            UUID txid, 
+            ZonedDateTime requestReceivedAt, 
+            long datasourceEventId,
+            String datasetHint,
+            String priorityHint
+    ) {
+        var job = new EnrichmentJob(txid, datasourceEventId);
+        var ticket = scheduler.ticketFor(datasourceEventId, datasetHint, priorityHint);
+        jobs.put(job.getJobId(), job);
+        var queued = scheduler.submit(
+            ticket, 
+            () -> run(job, requestReceivedAt, datasourceEventId), 
+            () -> rejected(job, requestReceivedAt, datasourceEventId)
+        );
+        if ( !queued) {
+            log.warn("job queue is full - rejecting enrichment of datasourceEvent id: {}", job.getDatasourceEventRecordId());
+            jobs.remove(job.getJobId());
+            return Optional.empty();
+        }
+        log.info(
+            "queued enrichment job: {} for datasourceEvent id: {} in the {} lane", 
+            job.getJobId(), 
+            job.getDatasourceEventRecordId(), 
+            ticket.getLane()
+        );
+        return Optional.of(job);
+    }
+
+
+    public Optional<EnrichmentJob> getJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+
+    @Scheduled(fixedDelayString = "PT5M")
+    public void evictFinishedJobs() {
+        var cutoff = ZonedDateTime.now(ZoneOffset.UTC).minus(env.getJobRetention());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    @Scheduled(fixedDelayString = "PT1H")
+    public void evictStaleCheckpoints() {
+        var evicted = checkpointRepository.deleteOlderThan(Instant.now().minus(env.getCheckpointRetention()));
+        if (evicted > 0) { log.info("dropped {} enrichment checkpoints nobody came back for", evicted); }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private void run(EnrichmentJob job, ZonedDateTime requestReceivedAt, long datasourceEventId) {
+        job.startedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        job.state = JobState.RUNNING;
+        var result = enrich(job.getTxid(), requestReceivedAt, datasourceEventId, job.getProgress());
+        job.result = result;
+        job.state = result.getCode() < Response.SC_BAD_REQUEST ? JobState.SUCCEEDED : JobState.FAILED;
+        job.finishedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        log.info("enrichment job: {} finished with state: {}", job.getJobId(), job.getState());
+    }
+
+
+    /**
+     * the scheduler got to the job but the executor wouldn't run it. the job and the event are failed the same way an 
+     * enrichment error would fail them, so neither is left looking queued forever 
+     */
+    void rejected(EnrichmentJob job, ZonedDateTime requestReceivedAt, long datasourceEventId) {
+        job.result = ApiResponse.builder()
+                                .txid(job.getTxid())
+                                .requestReceivedAt(requestReceivedAt)
+                                .code(Response.SC_SERVICE_UNAVAILABLE)
+                                .serverMessage("enrichment job executor rejected the job - try again later")
+                                .build();
+        job.state = JobState.FAILED;
+        job.finishedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        datasourceEventRepository.setProcessingErrorFor(datasourceEventId);
+        log.warn("enrichment job: {} was rejected by the executor", job.getJobId());
+    }
+
+
+    private ApiResponse enrich(
+            UUID txid, 
+            ZonedDateTime requestReceivedAt, 
+            long datasourceEventId, 
+            EnrichmentProgress progress
+    ) {
+        ApiResponse apiResponse = null;
+        try {
+            apiResponse = packageIndexService.enrichRecord(txid, requestReceivedAt, datasourceEventId, progress);
+        } catch (Exception e) {
+            log.error("unexpected error gathering package metadata from index: {}", e.toString());
+            apiResponse = ApiResponse.builder()
+                                     .txid(txid)
+                                     .requestReceivedAt(requestReceivedAt)
+                                     .code(Response.SC_INTERNAL_SERVER_ERROR)
+                                     .serverMessage("Error during package enrichment: " + e.getMessage())
+                                     .build();
+        }
+
+        // only mark the event enriched once the work is actually done so a crash or failure part way through leaves 
+        // it eligible to be picked up again
+        if (apiResponse.getCode() < Response.SC_BAD_REQUEST) {
+            datasourceEventRepository.setStatusFlagsFor(datasourceEventId);
+        } else {
+            datasourceEventRepository.setProcessingErrorFor(datasourceEventId);
+        }
+
+        return apiResponse;
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.patchfox.package_index_service.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/*
+ * running counts for a single datasource event enrichment. safe to read from other threads while the enrichment is 
+ * in flight.
+ */
+public class EnrichmentProgress {
+
+    static class RegistryLatency {
+        final LongAdder requests = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final AtomicLong maxMillis = new AtomicLong();
+    }
+
+    // purls in the datasource event
+    private final AtomicInteger purlsPlanned = new AtomicInteger();
+
+    // purls we're done with, one way or another
+    private final AtomicInteger purlsProcessed = new AtomicInteger();
+
+    // purls whose version history came from a package index
+    private final AtomicInteger purlsFetched = new AtomicInteger();
+
+    // purls whose version history came from the version history store, including ones revalidated with a 304
+    private final AtomicInteger purlsCached = new AtomicInteger();
+
+    // purls we couldn't get version history for (unsupported type, index error, etc)
+    private final AtomicInteger purlsFailed = new AtomicInteger();
+
+    private final AtomicInteger recordsUpdated = new AtomicInteger();
+
+    private final AtomicInteger recordsCreated = new AtomicInteger();
+
+    // purls an earlier, interrupted attempt at the event already got through. counted in purlsProcessed too
+    private final AtomicInteger purlsResumed = new AtomicInteger();
+
+    // keyed on package type 
+    private final Map<String, RegistryLatency> registryLatency = new ConcurrentHashMap<>();
+
+
+    public void planned(int purls) { purlsPlanned.set(purls); }
+
+    public void processed(int purls) { purlsProcessed.addAndGet(purls); }
+
+    public void fetched() { purlsFetched.incrementAndGet(); }
+
+    public void cached() { purlsCached.incrementAndGet(); }
+
+    public void failed(int purls) { purlsFailed.addAndGet(purls); }
+
+    public void recordsUpdated(int records) { recordsUpdated.addAndGet(records); }
+
+    public void recordCreated() { recordsCreated.incrementAndGet(); }
+
+    public void resumed(int purlsAlreadyProcessed, int purlsAlreadyFailed) {
+        purlsResumed.set(purlsAlreadyProcessed);
+        purlsProcessed.addAndGet(purlsAlreadyProcessed);
+        purlsFailed.addAndGet(purlsAlreadyFailed);
+    }
+
+    public void registryLatency(String packageType, long millis) {
+        var latency = registryLatency.computeIfAbsent(packageType, k -> new RegistryLatency());
+        latency.requests.increment();
+        latency.totalMillis.add(millis);
+        latency.maxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> rv = new LinkedHashMap<>();
+        rv.put("purlsPlanned", purlsPlanned.get());
+        rv.put("purlsProcessed", purlsProcessed.get());
+        rv.put("purlsFetched", purlsFetched.get());
+        rv.put("purlsCached", purlsCached.get());
+        rv.put("purlsFailed", purlsFailed.get());
+        rv.put("purlsResumed", purlsResumed.get());
+        rv.put("recordsUpdated", recordsUpdated.get());
+        rv.put("recordsCreated", recordsCreated.get());
+        rv.put("rowsWritten", recordsUpdated.get() + recordsCreated.get());
+
+        Map<String, Object> latencies = new TreeMap<>();
+        registryLatency.forEach((packageType, latency) -> {
+            long requests = latency.requests.sum();
+            latencies.put(packageType, Map.of(
+                "requests", requests,
+                "meanMillis", requests == 0 ? 0 : latency.totalMillis.sum() / requests,
+                "maxMillis", latency.maxMillis.get()
+            ));
+        });
+        rv.put("registryLatency", latencies);
+        return rv;
+    }
+
+}
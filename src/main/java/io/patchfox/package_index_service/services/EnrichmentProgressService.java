@@ -0,0 +1,156 @@
+package io.patchfox.package_index_service.services;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * keeps the progress of in-flight enrichments, keyed on both txid and datasource event id, and streams it to anyone 
+ * subscribed as server-sent events. a "progress" event goes out every package-index.progress.interval while something 
+ * changed, and a final "complete" event goes out when the enrichment finishes. finished enrichments hang around for 
+ * package-index.progress.retention so a late subscriber still gets the final numbers. 
+ */
+@Slf4j
+@Service
+public class EnrichmentProgressService {
+
+    public static final String PROGRESS_EVENT = "progress";
+    public static final String COMPLETE_EVENT = "complete";
+
+    static class TrackedEnrichment {
+        final UUID txid;
+        final Long datasourceEventRecordId;
+        final EnrichmentProgress progress;
+        final ZonedDateTime startedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        volatile ZonedDateTime finishedAt;
+        volatile Map<String, Object> lastSent;
+
+        TrackedEnrichment(UUID txid, Long datasourceEventRecordId, EnrichmentProgress progress) {
+            this.txid = txid;
+            this.datasourceEventRecordId = datasourceEventRecordId;
+            this.progress = progress;
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> rv = new LinkedHashMap<>();
+            rv.put("txid", txid.toString());
+            rv.put("datasourceEventRecordId", datasourceEventRecordId);
+            rv.put("startedAt", startedAt.toString());
+            rv.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
+            rv.putAll(progress.toMap());
+            return rv;
+        }
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    private final Map<UUID, TrackedEnrichment> byTxid = new ConcurrentHashMap<>();
+
+    private final Map<Long, TrackedEnrichment> byDatasourceEvent = new ConcurrentHashMap<>();
+
+
+    public void started(UUID txid, Long datasourceEventRecordId, EnrichmentProgress progress) {
+        var tracked = new TrackedEnrichment(txid, datasourceEventRecordId, progress);
+        byTxid.put(txid, tracked);
+        byDatasourceEvent.put(datasourceEventRecordId, tracked);
+    }
+
+    public void finished(UUID txid) {
+        var tracked = byTxid.get(txid);
+        if (tracked == null) { return; }
+        tracked.finishedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        var snapshot = tracked.snapshot();
+        for (var emitter : tracked.emitters) { complete(tracked, emitter, snapshot); }
+    }
+
+    /**
+     * 
+     * @param txid
+     * @return an emitter streaming progress for the enrichment with the given txid or empty if we don't know about it
+     */
+    public Optional<SseEmitter> subscribeToTxid(UUID txid) {
+        return Optional.ofNullable(byTxid.get(txid)).map(this::subscribe);
+    }
+
+    /**
+     * 
+     * @param datasourceEventRecordId
+     * @return an emitter streaming progress for the given datasource event or empty if we don't know about it
+     */
+    public Optional<SseEmitter> subscribeToDatasourceEvent(Long datasourceEventRecordId) {
+        return Optional.ofNullable(byDatasourceEvent.get(datasourceEventRecordId)).map(this::subscribe);
+    }
+
+    @Scheduled(fixedDelayString = "${package-index.progress.interval}")
+    public void pushProgress() {
+        var cutoff = ZonedDateTime.now(ZoneOffset.UTC).minus(env.getProgressRetention());
+        byTxid.values().removeIf(tracked -> tracked.finishedAt != null && tracked.finishedAt.isBefore(cutoff));
+        byDatasourceEvent.values().removeIf(tracked -> tracked.finishedAt != null && tracked.finishedAt.isBefore(cutoff));
+
+        for (var tracked : byTxid.values()) {
+            if (tracked.finishedAt != null || tracked.emitters.isEmpty()) { continue; }
+            var snapshot = tracked.snapshot();
+            if (snapshot.equals(tracked.lastSent)) { continue; }
+            tracked.lastSent = snapshot;
+            for (var emitter : tracked.emitters) { send(tracked, emitter, PROGRESS_EVENT, snapshot); }
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private SseEmitter subscribe(TrackedEnrichment tracked) {
+        var emitter = new SseEmitter(env.getProgressEmitterTimeout().toMillis());
+        emitter.onCompletion(() -> tracked.emitters.remove(emitter));
+        emitter.onTimeout(() -> tracked.emitters.remove(emitter));
+        emitter.onError(e -> tracked.emitters.remove(emitter));
+
+        var snapshot = tracked.snapshot();
+        if (tracked.finishedAt != null) {
+            complete(tracked, emitter, snapshot);
+            return emitter;
+        }
+
+        tracked.emitters.add(emitter);
+        send(tracked, emitter, PROGRESS_EVENT, snapshot);
+        return emitter;
+    }
+
+    private void complete(TrackedEnrichment tracked, SseEmitter emitter, Map<String, Object> snapshot) {
+        send(tracked, emitter, COMPLETE_EVENT, snapshot);
+        tracked.emitters.remove(emitter);
+        emitter.complete();
+    }
+
+    private void send(TrackedEnrichment tracked, SseEmitter emitter, String eventName, Map<String, Object> snapshot) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(snapshot));
+        } catch (IOException | IllegalStateException e) {
+            // subscriber went away. the container takes care of closing out the request
+            log.debug("dropping progress subscriber for txid: {} because: {}", tracked.txid, e.toString());
+            tracked.emitters.remove(emitter);
+        }
+    }
+
+}
@@ -0,0 +1,394 @@
+package io.patchfox.package_index_service.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import io.patchfox.package_index_service.ExecutorConfig;
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.LogSampler;
+import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.repositories.PackageRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * decides which datasource event gets enriched next. every enrichment, sync or async, REST or kafka, takes a slot
+ * here before it starts and gives it back when it's done.
+ *
+ * events no bigger than package-index.scheduler.fast-lane.max-purls go in the fast lane. it's served first come first
+ * served and has package-index.scheduler.fast-lane.reserved-workers slots big events can never take, so a small
+ * interactive scan only ever waits behind other small scans.
+ *
+ * everything else goes in the bulk lane, which is weighted fair queued (start-time fair queuing) per dataset with the
+ * event's purl count as its cost. a dataset with an 80k package backfill queued gets the same share of the bulk slots
+ * as one with a single 2k package event, rather than everyone waiting for the backfill to drain.
+ *
+ * callers can pass ?priority=interactive|normal|backfill and ?dataset=<name> on the request. backfill keeps an event
+ * out of the fast lane and cuts its dataset's weight. interactive raises it. without a dataset name events are grouped
+ * by their datasource.
+ *
+ * none of this reorders kafka partitions. it orders whatever this instance has already taken in, ie: the listener
+ * threads plus the async job queue
+ */
+@Slf4j
+@Service
+public class EnrichmentScheduler {
+
+    public enum Lane { FAST, BULK }
+
+    public enum Priority {
+        INTERACTIVE(4.0),
+        NORMAL(1.0),
+        BACKFILL(0.25);
+
+        final double weight;
+
+        Priority(double weight) { this.weight = weight; }
+
+        public static Priority parse(String hint) {
+            if (hint == null || hint.isBlank()) { return NORMAL; }
+            try {
+                return valueOf(hint.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return NORMAL;
+            }
+        }
+    }
+
+    @Getter
+    public static class Ticket {
+        private final long datasourceEventId;
+        private final String flow;
+        private final int purls;
+        private final Lane lane;
+        private final double weight;
+        private final long enqueuedAtNanos = System.nanoTime();
+
+        // bulk lane virtual times. see enqueueLocked
+        private double virtualStart;
+        private double virtualFinish;
+        private long sequence;
+
+        private boolean granted;
+        private Condition grantedCondition;
+        private Runnable onGrant;
+        private Runnable onRejected;
+
+        Ticket(long datasourceEventId, String flow, int purls, Lane lane, double weight) {
+            this.datasourceEventId = datasourceEventId;
+            this.flow = flow;
+            this.purls = purls;
+            this.lane = lane;
+            this.weight = weight;
+        }
+    }
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    EnrichmentMetrics metrics;
+
+    @Autowired
+    LogSampler logSampler;
+
+    @Autowired
+    PackageRepository packageRepository;
+
+    @Autowired
+    DatasourceEventRepository datasourceEventRepository;
+
+    @Autowired
+    @Qualifier(ExecutorConfig.ENRICHMENT_JOB_EXECUTOR)
+    ThreadPoolTaskExecutor executor;
+
+    // a lock rather than synchronized because callers park on it and they're virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Deque<Ticket> fastLane = new ArrayDeque<>();
+    private final PriorityQueue<Ticket> bulkLane = new PriorityQueue<>(
+        Comparator.comparingDouble(Ticket::getVirtualFinish).thenComparingLong(Ticket::getSequence)
+    );
+
+    // virtual finish time of the last bulk ticket queued for each flow. dropped once a flow has nothing queued
+    private final Map<String, Double> flowFinish = new HashMap<>();
+    private final Map<String, Integer> flowQueued = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+
+    private int running;
+    private int runningBulk;
+    private int queuedAsync;
+
+    // async tickets the executor turned away. their onRejected is run once the lock has been let go, see unlock
+    private final List<Ticket> rejected = new ArrayList<>();
+
+
+    @PostConstruct
+    void registerGauges() {
+        for (var lane : Lane.values()) {
+            metrics.schedulerQueued(lane.toString().toLowerCase(), () -> queued(lane));
+        }
+    }
+
+
+    /**
+     * works out which lane and flow an event belongs in
+     *
+     * @param datasourceEventId
+     * @param datasetHint ?dataset from the request, may be null
+     * @param priorityHint ?priority from the request, may be null
+     * @return
+     */
+    public Ticket ticketFor(long datasourceEventId, String datasetHint, String priorityHint) {
+        var priority = Priority.parse(priorityHint);
+        var purls = packageRepository.countPackagesByDatasourceEventId(datasourceEventId);
+        var lane = purls <= env.getSchedulerFastLaneMaxPurls() && priority != Priority.BACKFILL ? Lane.FAST : Lane.BULK;
+        return new Ticket(datasourceEventId, flowFor(datasourceEventId, datasetHint), purls, lane, priority.weight);
+    }
+
+
+    /**
+     * blocks until the ticket's turn comes up. the caller runs the enrichment itself and must release() after
+     *
+     * @param ticket
+     * @throws InterruptedException
+     */
+    public void acquire(Ticket ticket) throws InterruptedException {
+        lock.lock();
+        try {
+            ticket.grantedCondition = lock.newCondition();
+            enqueueLocked(ticket);
+            dispatchLocked();
+            while ( !ticket.granted) {
+                try {
+                    ticket.grantedCondition.await();
+                } catch (InterruptedException e) {
+                    // granted at the same time we were interrupted means we hold a slot that has to go back
+                    if (ticket.granted) {
+                        releaseLocked(ticket);
+                    } else {
+                        dequeueLocked(ticket);
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+
+    /**
+     * queues the ticket and returns straight away. task is run on the enrichment job executor once the ticket's turn
+     * comes up and the slot is released when it finishes
+     *
+     * @param ticket
+     * @param task
+     * @param onRejected run instead of task if the executor won't take it when the ticket's turn comes up. the slot
+     *                   has already gone back by then
+     * @return false if package-index.jobs.queue-capacity async enrichments are already waiting
+     */
+    public boolean submit(Ticket ticket, Runnable task, Runnable onRejected) {
+        lock.lock();
+        try {
+            if (queuedAsync >= env.getJobQueueCapacity()) { return false; }
+            queuedAsync++;
+            // the job is started by whichever thread frees up a slot, so carry the submitter's trace over ourselves
+            var context = ContextSnapshotFactory.builder().build().captureAll();
+            ticket.onGrant = context.wrap(task);
+            ticket.onRejected = context.wrap(onRejected);
+            enqueueLocked(ticket);
+            dispatchLocked();
+            return true;
+        } finally {
+            unlock();
+        }
+    }
+
+
+    public void release(Ticket ticket) {
+        lock.lock();
+        try {
+            releaseLocked(ticket);
+        } finally {
+            unlock();
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private String flowFor(long datasourceEventId, String datasetHint) {
+        if (datasetHint != null && !datasetHint.isBlank()) { return "dataset:" + datasetHint.trim(); }
+        try {
+            var datasourceId = datasourceEventRepository.getDatasourceIdFor(datasourceEventId);
+            if (datasourceId != null) { return "datasource:" + datasourceId; }
+        } catch (DataAccessException e) {
+            var suppressed = logSampler.sample("scheduler-flow");
+            if (suppressed != LogSampler.SUPPRESSED) {
+                log.atWarn()
+                   .addKeyValue("datasourceEventId", datasourceEventId)
+                   .addKeyValue("suppressed", suppressed)
+                   .log("couldn't look up datasource for scheduling, scheduling event on its own: {}", e.toString());
+            }
+        }
+        return "datasourceEvent:" + datasourceEventId;
+    }
+
+
+    private void enqueueLocked(Ticket ticket) {
+        if (ticket.lane == Lane.FAST) {
+            fastLane.add(ticket);
+            return;
+        }
+
+        // start-time fair queuing. a flow's next ticket starts where its last one finished, or now if it has been idle,
+        // and finishes cost/weight later. the lowest finish time goes next
+        ticket.virtualStart = Math.max(virtualTime, flowFinish.getOrDefault(ticket.flow, 0.0));
+        ticket.virtualFinish = ticket.virtualStart + Math.max(1, ticket.purls) / ticket.weight;
+        ticket.sequence = sequence++;
+        flowFinish.put(ticket.flow, ticket.virtualFinish);
+        flowQueued.merge(ticket.flow, 1, Integer::sum);
+        bulkLane.add(ticket);
+    }
+
+
+    private void dequeueLocked(Ticket ticket) {
+        if (ticket.lane == Lane.FAST) {
+            fastLane.remove(ticket);
+        } else if (bulkLane.remove(ticket)) {
+            forgetFlowLocked(ticket.flow);
+        }
+    }
+
+
+    private void forgetFlowLocked(String flow) {
+        if (flowQueued.merge(flow, -1, Integer::sum) <= 0) {
+            flowQueued.remove(flow);
+            flowFinish.remove(flow);
+        }
+    }
+
+
+    private void dispatchLocked() {
+        var bulkWorkers = Math.max(1, env.getSchedulerWorkers() - env.getSchedulerFastLaneReservedWorkers());
+        while (running < env.getSchedulerWorkers()) {
+            Ticket next;
+            if ( !fastLane.isEmpty()) {
+                next = fastLane.poll();
+            } else if ( !bulkLane.isEmpty() && runningBulk < bulkWorkers) {
+                next = bulkLane.poll();
+                virtualTime = next.virtualStart;
+                forgetFlowLocked(next.flow);
+                runningBulk++;
+            } else {
+                return;
+            }
+            running++;
+            // a rejected ticket gives its slot straight back and the loop carries on with whoever is next. going back 
+            // through releaseLocked would recurse once per rejected ticket
+            if ( !grantLocked(next)) { freeSlotLocked(next); }
+        }
+    }
+
+
+    /**
+     * 
+     * @param ticket
+     * @return false if the executor wouldn't take an async ticket's task
+     */
+    private boolean grantLocked(Ticket ticket) {
+        ticket.granted = true;
+        metrics.schedulerWait(ticket.lane.toString().toLowerCase(), System.nanoTime() - ticket.enqueuedAtNanos);
+        if (ticket.onGrant == null) {
+            ticket.grantedCondition.signal();
+            return true;
+        }
+
+        queuedAsync--;
+        var task = ticket.onGrant;
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(ticket);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            // the executor queue only fills if it's sized below package-index.scheduler.workers
+            log.error("enrichment job executor rejected datasourceEvent id: {}", ticket.datasourceEventId);
+            rejected.add(ticket);
+            return false;
+        }
+    }
+
+
+    private void releaseLocked(Ticket ticket) {
+        freeSlotLocked(ticket);
+        dispatchLocked();
+    }
+
+
+    private void freeSlotLocked(Ticket ticket) {
+        running--;
+        if (ticket.lane == Lane.BULK) { runningBulk--; }
+    }
+
+
+    /**
+     * lets go of the lock, then tells the owners of any tickets the executor rejected. that's database work (see 
+     * EnrichmentJobService) and nobody should be waiting on the lock while it happens
+     */
+    private void unlock() {
+        List<Ticket> toNotify = List.of();
+        if ( !rejected.isEmpty()) {
+            toNotify = new ArrayList<>(rejected);
+            rejected.clear();
+        }
+        lock.unlock();
+
+        for (var ticket : toNotify) {
+            try {
+                ticket.onRejected.run();
+            } catch (RuntimeException e) {
+                log.error("failed to handle rejection of datasourceEvent id: {}", ticket.datasourceEventId, e);
+            }
+        }
+    }
+
+
+    private int queued(Lane lane) {
+        lock.lock();
+        try {
+            return lane == Lane.FAST ? fastLane.size() : bulkLane.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
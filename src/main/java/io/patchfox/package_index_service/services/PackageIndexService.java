@@ -2,33 +2,64 @@ package io.patchfox.package_index_service.services;
 
 import com.github.packageurl.MalformedPackageURLException;
 import com.github.packageurl.PackageURL;
-import io.patchfox.db_entities.entities.DatasourceEvent;
 import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_index_service.adapters.HeadOnlyRegistryAdapter;
+import io.patchfox.package_index_service.adapters.RegistryAdapter;
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
 import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.LogSampler;
+import io.patchfox.package_index_service.components.NegativeCache;
+import io.patchfox.package_index_service.components.PackageAccessTracker;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter;
+import io.patchfox.package_index_service.components.RegistryEndpoints;
+import io.patchfox.package_index_service.helpers.RegistryTrafficArchive;
 import io.patchfox.package_index_service.helpers.RestHelper;
+import io.patchfox.package_index_service.helpers.TxidDebugTurboFilter;
+import io.patchfox.package_index_service.kafka.EnrichmentResponseBody;
 import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository;
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository.EnrichmentCheckpoint;
 import io.patchfox.package_index_service.repositories.PackageRepository;
+import io.patchfox.package_index_service.repositories.PackageRepository.PackageRow;
+import io.patchfox.package_index_service.repositories.PackageRepository.PackageRowUpdate;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
 import io.patchfox.package_utils.json.ApiRequest;
 import io.patchfox.package_utils.json.ApiResponse;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.connector.Response;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.json.JSONException;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.client.RestClientException;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Component
 @Slf4j
@@ -45,9 +76,75 @@ public class PackageIndexService {
     @Autowired
     RestHelper restHelper;
 
+    @Autowired
+    RegistryTrafficArchive registryTraffic;
+
+    @Autowired
+    LogSampler logSampler;
+
+    @Autowired
+    RegistryConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    RegistryEndpoints registryEndpoints;
+
+    @Autowired
+    NegativeCache negativeCache;
+
+    @Autowired
+    EnrichmentCheckpointRepository checkpointRepository;
+
     @Autowired
     JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    PackageAccessTracker accessTracker;
+
+    @Autowired
+    ChangeFeedService changeFeedService;
+
+    @Autowired
+    PackageVersionHistoryRepository versionHistoryRepository;
+
+    @Autowired
+    EnrichmentProgressService progressService;
+
+    @Autowired
+    EnrichmentMetrics metrics;
+
+    @Autowired
+    ObservationRegistry observationRegistry;
+
+    @Autowired
+    List<RegistryAdapter> registryAdapters;
+
+    // one per package type. see RegistryAdapter
+    private final Map<String, RegistryAdapter> adaptersByType = new HashMap<>();
+
+    // hedged package index requests each get their own virtual thread 
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    void indexAdapters() {
+        for (var adapter : registryAdapters) {
+            var previous = adaptersByType.put(adapter.packageType(), adapter);
+            if (previous != null) {
+                throw new IllegalStateException(
+                    "two registry adapters for package type: " + adapter.packageType() + 
+                    " " + previous.getClass().getSimpleName() + " and " + adapter.getClass().getSimpleName()
+                );
+            }
+        }
+        log.info("registry adapters: {}", adaptersByType.keySet());
+    }
+
+    /**
+     * 
+     * @param packageType
+     * @return true if there's a RegistryAdapter for the package type
+     */
+    public boolean supports(String packageType) { return adaptersByType.containsKey(packageType); }
+
     public static final String SERVICE_VERSION = "@project.version@";
     public static final String SEMVER_REGEX = "^(0|[1-9]\\d*)\\.(0|[1-9]\\d*)\\.(0|[1-9]\\d*)"
             + "(?:-([0-9A-Za-z-]+(?:\\.[0-9A-Za-z-]+)*))?"
@@ -61,16 +158,17 @@ public class PackageIndexService {
     public static final String RUST_PACKAGE_TYPE = "cargo";
     public static final String DOTNET_PACKAGE_TYPE = "nuget";
 
-    // rows=200 is max for that argument. any higher and it reverts to default of 20
-    public static final String MAVEN_API_TEMPLATE = "https://search.maven.org/solrsearch/select?q=g:%s+AND+a:%s&rows=200&wt=json&core=gav";
-    public static final String NPM_API_TEMPLATE = "https://registry.npmjs.org/%s";
-    public static final String PYPI_API_TEMPLATE = "https://pypi.org/pypi/%s/json";
-    public static final String RUBY_API_TEMPLATE = "https://rubygems.org/api/v1/versions/%s.json";
-    public static final String GOLANG_API_TEMPLATE_VERSION_LIST = "https://proxy.golang.org/%s/%s/@v/list";
-    public static final String GOLANG_API_TEMPLATE_VERSION_INFO = "https://proxy.golang.org/%s/%s/@v/%s.info";
-    public static final String PHP_API_TEMPLATE = "https://repo.packagist.org/p2/%s/%s.json";
-    public static final String RUST_API_TEMPLATE = "https://crates.io/api/v1/crates/%s";
-    public static final String DOTNET_API_TEMPLATE = "https://api.nuget.org/v3/registration5-gz-semver2/%s/index.json";
+    // observation names. with tracing on each one is a span, see TracingConfig 
+    public static final String EVENT_OBSERVATION = "enrichment.event";
+    public static final String COORDINATE_OBSERVATION = "enrichment.coordinate";
+    public static final String PHASE_OBSERVATION = "enrichment.phase";
+
+    public static final String PHASE_PLAN = "plan";
+    public static final String PHASE_FETCH = "fetch";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_COMPUTE = "compute";
+    public static final String PHASE_PERSIST = "persist";
+
     @ToString
     public static class VersionMetadata {
         public String version;
@@ -106,666 +204,1219 @@ public class PackageIndexService {
         }
     }
 
-    interface PackageOperator<T> {
-        ZonedDateTime constructTimestamp(T timestamp);
-        PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) throws Exception;
+    /**
+     * identifies a package independent of version. this is the unit the package indexes answer questions about. 
+     */
+    public record PackageCoordinate(String type, String namespace, String name) {}
+
+    public static class PackageUpdateResult {
+        public final List<Long> updatedIds = new ArrayList<>();
+        // set when the records were worked out against a change feed change. see ChangeFeedService.changeHandled
+        PackageCoordinate coordinate;
+        Instant lastChangedAt;
+        // records with new values that haven't been written yet. see persistPackageUpdates
+        public final List<PackageRowUpdate> updatedRecords = new ArrayList<>();
+        public boolean latestVersionFound = false;
+        public boolean skipped = false;
     }
 
-    class MavenOperator implements PackageOperator<Long> {
-        @Override
-        public ZonedDateTime constructTimestamp(Long timestamp) {
-            return ZonedDateTime.ofInstant(
-                    (timestamp > 100000000000L)
-                            ? Instant.ofEpochMilli(timestamp)  // Likely milliseconds
-                            : Instant.ofEpochSecond(timestamp), // Likely seconds
-                    ZoneOffset.UTC
-            );
-        }
+    public ApiResponse enrichRecord(
+            UUID txid,
+            ZonedDateTime requestReceivedAt,
+            long datasourceEventId
+    ) throws Exception {
+        return enrichRecord(txid, requestReceivedAt, datasourceEventId, new EnrichmentProgress());
+    }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONObject responseObj = responseData.getJSONObject("response");
-            JSONArray metadataArray = responseObj.getJSONArray("docs");
-
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < metadataArray.length(); i ++) {
-                JSONObject versionMetadata = metadataArray.getJSONObject(i);
-                if (versionMetadata.has("v") && versionMetadata.has("timestamp")) {
-                    String version = versionMetadata.getString("v");
-                    ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getLong("timestamp"));
-                    packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-                }
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED MAVEN", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
-            }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
+    public ApiResponse enrichRecord(
+            UUID txid,
+            ZonedDateTime requestReceivedAt,
+            long datasourceEventId,
+            EnrichmentProgress progress
+    ) throws Exception {
+        accessTracker.liveEventStarted();
+        progressService.started(txid, datasourceEventId, progress);
+        MDC.put(TxidDebugTurboFilter.MDC_TXID, txid.toString());
+        MDC.put(TxidDebugTurboFilter.MDC_DATASOURCE_EVENT_ID, String.valueOf(datasourceEventId));
+        var startNanos = System.nanoTime();
+        var outcome = "error";
+        try {
+            var apiResponse = Observation.createNotStarted(EVENT_OBSERVATION, observationRegistry)
+                                         .contextualName("enrich datasource event")
+                                         .highCardinalityKeyValue("txid", txid.toString())
+                                         .highCardinalityKeyValue(
+                                            "datasource.event.id", 
+                                            String.valueOf(datasourceEventId)
+                                         )
+                                         .observeChecked(() -> enrichPackages(
+                                            txid, 
+                                            requestReceivedAt, 
+                                            datasourceEventId, 
+                                            progress
+                                         ));
+            outcome = EnrichmentMetrics.statusClass(apiResponse.getCode());
+            return apiResponse;
+        } finally {
+            var elapsedNanos = System.nanoTime() - startNanos;
+            metrics.eventEnriched(outcome, elapsedNanos);
+            logEnrichmentSummary(txid, datasourceEventId, outcome, elapsedNanos, progress);
+            progressService.finished(txid);
+            accessTracker.liveEventFinished();
+            TxidDebugTurboFilter.disable(txid);
+            MDC.remove(TxidDebugTurboFilter.MDC_TXID);
+            MDC.remove(TxidDebugTurboFilter.MDC_DATASOURCE_EVENT_ID);
         }
     }
 
-    class NpmOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
+    /**
+     * the one INFO line an enrichment leaves behind. per purl detail is at DEBUG 
+     * 
+     * @param txid
+     * @param datasourceEventId
+     * @param outcome
+     * @param elapsedNanos
+     * @param progress
+     */
+    private void logEnrichmentSummary(
+            UUID txid, 
+            long datasourceEventId, 
+            String outcome, 
+            long elapsedNanos, 
+            EnrichmentProgress progress
+    ) {
+        var summary = log.atInfo()
+                         .addKeyValue("txid", txid)
+                         .addKeyValue("datasourceEventId", datasourceEventId)
+                         .addKeyValue("outcome", outcome)
+                         .addKeyValue("durationMs", elapsedNanos / 1_000_000);
+        for (var e : progress.toMap().entrySet()) { summary = summary.addKeyValue(e.getKey(), e.getValue()); }
+        summary.log("enrichment finished");
+    }
+
+    private ApiResponse enrichPackages(
+            UUID txid,
+            ZonedDateTime requestReceivedAt,
+            long datasourceEventId,
+            EnrichmentProgress progress
+    ) throws Exception {
+
+        // what goes in the response. see EnrichmentResponseBody for how it's put on the wire 
+        List<Long> updatedRecordIds = null;
+        Long createdRecordId = null;
+
+        boolean httpCreatedCodeFlag = false;
+        var desPackagePurls = observePhase(PHASE_PLAN, null, () -> {
+            var desPackagePurlStrings = packageRepository.getPackagesByDatasourceEventId(datasourceEventId);
+            log.debug("desPackagePurlStrings for dse id: {} is: {}", datasourceEventId, desPackagePurlStrings);
+            // because PackageURL throws an exception and it is crunch time 
+            var purls = new ArrayList<PackageURL>();
+            for (var purlString : desPackagePurlStrings) { purls.add(new PackageURL(purlString)); }
+            return purls;
+        });
+        progress.planned(desPackagePurls.size());
+
+        // several versions of the same package share one version history and one set of package records, so the 
+        // work is done once per coordinate however many of its versions are in the event 
+        var coordinateGroups = groupByCoordinate(desPackagePurls);
+
+        // pick up where an earlier attempt at this event left off, so long as it would work through the same purls in 
+        // the same order 
+        var coordinateDigest = coordinateDigest(coordinateGroups);
+        var checkpoint = findResumableCheckpoint(datasourceEventId, coordinateGroups.size(), coordinateDigest);
+        var failedPurls = new ArrayList<String>();
+        var startOffset = 0;
+        if (checkpoint.isPresent()) {
+            startOffset = checkpoint.get().nextOffset();
+            failedPurls.addAll(checkpoint.get().failedPurls());
+            httpCreatedCodeFlag = checkpoint.get().recordCreated();
+            var purlsAlreadyProcessed = 0;
+            for (var group : coordinateGroups.subList(0, startOffset)) { purlsAlreadyProcessed += group.size(); }
+            progress.resumed(purlsAlreadyProcessed, failedPurls.size());
+            log.atInfo()
+               .addKeyValue("txid", txid)
+               .addKeyValue("datasourceEventId", datasourceEventId)
+               .addKeyValue("nextOffset", startOffset)
+               .addKeyValue("checkpointTxid", checkpoint.get().txid())
+               .log("resuming enrichment from checkpoint");
         }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONObject versionDict = responseData.getJSONObject("time");
+        // observations live in a thread local so the per purl work has to be told who its parent is
+        var eventObservation = observationRegistry.getCurrentObservation();
+
+        // each coordinate gets its own virtual thread. nearly all the time is spent waiting on a package index or the 
+        // database so the semaphore, not the thread count, is what bounds the work in flight. coordinates are worked 
+        // through in chunks and a checkpoint is written once every coordinate in a chunk is done
+        var chunkSize = env.getCheckpointChunkSize();
+        var permits = new Semaphore(env.getEnrichmentConcurrency());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int chunkStart = startOffset; chunkStart < coordinateGroups.size(); chunkStart += chunkSize) {
+                var chunkEnd = Math.min(chunkStart + chunkSize, coordinateGroups.size());
+                var chunk = coordinateGroups.subList(chunkStart, chunkEnd);
+                var futures = new ArrayList<Future<PurlOutcome>>();
+                for (var group : chunk) {
+                    var packagePurl = group.get(0);
+                    futures.add(executor.submit(() -> {
+                        permits.acquire();
+                        // a new thread starts with an empty MDC. the txid is what the per txid debug switch keys on
+                        MDC.put(TxidDebugTurboFilter.MDC_TXID, txid.toString());
+                        try {
+                            return Observation.createNotStarted(COORDINATE_OBSERVATION, observationRegistry)
+                                              .parentObservation(eventObservation)
+                                              .contextualName("enrich coordinate")
+                                              .lowCardinalityKeyValue(
+                                                  EnrichmentMetrics.ECOSYSTEM_TAG, 
+                                                  packagePurl.getType()
+                                              )
+                                              .highCardinalityKeyValue("purl", packagePurl.toString())
+                                              .observeChecked(() -> enrichCoordinate(txid, group, progress));
+                        } finally {
+                            MDC.remove(TxidDebugTurboFilter.MDC_TXID);
+                            permits.release();
+                        }
+                    }));
+                }
 
-            // identify and trim all non-version keys from dictionary
-            Pattern validVersionPattern = Pattern.compile(SEMVER_REGEX);
-            List<String> extraKeys = new ArrayList<>();
-            for (String key : versionDict.keySet()) {
-                if (!validVersionPattern.matcher(key).matches()) {
-                    extraKeys.add(key);
+                var outcomes = new ArrayList<PurlOutcome>();
+                for (var future : futures) {
+                    try {
+                        outcomes.add(future.get());
+                    } catch (ExecutionException e) {
+                        // the checkpoint from the last complete chunk stays put for whoever tries this event next
+                        futures.forEach(f -> f.cancel(true));
+                        throw e.getCause() instanceof Exception cause ? cause : e;
+                    }
                 }
-            }
 
-            for (String key : extraKeys) {
-                versionDict.remove(key);
-            }
+                // fold the outcomes back together in coordinate order so the response looks the same as it did when 
+                // this was a plain loop
+                for (int i = 0; i < outcomes.size(); i++) {
+                    var outcome = outcomes.get(i);
+                    if (outcome.malformed) {
+                        checkpointRepository.delete(datasourceEventId);
+                        datasourceEventRepository.setProcessingErrorFor(datasourceEventId);
+
+                        return ApiResponse.builder()
+                                          .code(Response.SC_INTERNAL_SERVER_ERROR)
+                                          .txid(txid)
+                                          .requestReceivedAt(requestReceivedAt.toString())
+                                          .build();
+                    }
 
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (String version : versionDict.keySet()) {
-                ZonedDateTime releaseTimestamp = constructTimestamp(versionDict.getString(version));
-                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED NPM", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+                    if (outcome.updatedIds != null) { 
+                        updatedRecordIds = outcome.updatedIds; 
+                    } else {
+                        for (var purl : chunk.get(i)) { failedPurls.add(purl.toString()); }
+                    }
+                    if (outcome.createdRecordId != null) {
+                        createdRecordId = outcome.createdRecordId;
+                        httpCreatedCodeFlag = true;
+                    }
+                }
+
+                if (chunkEnd < coordinateGroups.size()) {
+                    checkpointRepository.save(new EnrichmentCheckpoint(
+                        datasourceEventId, 
+                        txid, 
+                        coordinateGroups.size(), 
+                        coordinateDigest,
+                        chunkEnd, 
+                        failedPurls, 
+                        httpCreatedCodeFlag, 
+                        Instant.now()
+                    ));
+                }
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
         }
+
+        // only events bigger than a chunk ever get one
+        if (checkpoint.isPresent() || coordinateGroups.size() > chunkSize) { 
+            checkpointRepository.delete(datasourceEventId); 
+        }
+        if ( !failedPurls.isEmpty()) { log.debug("purls without a version history: {}", failedPurls); }
+
+        // status flags are set by the caller once we're done. see EnrichmentJobService 
+
+        var code = httpCreatedCodeFlag ? Response.SC_CREATED : Response.SC_OK;
+        return ApiResponse.builder()
+                          .code(code)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(Map.of("response", new EnrichmentResponseBody(updatedRecordIds, createdRecordId)))
+                          .build();
     }
 
-    class PypiOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
+    /**
+     * purls grouped by coordinate, in the order each coordinate first shows up in the event 
+     * 
+     * @param purls
+     * @return
+     */
+    static List<List<PackageURL>> groupByCoordinate(List<PackageURL> purls) {
+        var groups = new LinkedHashMap<PackageCoordinate, List<PackageURL>>();
+        for (var purl : purls) {
+            var coordinate = new PackageCoordinate(purl.getType(), purl.getNamespace(), purl.getName());
+            groups.computeIfAbsent(coordinate, c -> new ArrayList<>()).add(purl);
         }
+        return new ArrayList<>(groups.values());
+    }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONObject versionDict = responseData.getJSONObject("releases");
+    /**
+     * an earlier attempt's checkpoint, if it's safe to carry on from. the offset in a checkpoint only means something 
+     * for the exact coordinate list it was written against, so anything else (a purl added or removed, the same 
+     * number of different coordinates, a different order) starts the event over 
+     * 
+     * @param datasourceEventId
+     * @param coordinatesPlanned
+     * @param coordinateDigest see coordinateDigest
+     * @return
+     */
+    Optional<EnrichmentCheckpoint> findResumableCheckpoint(
+            long datasourceEventId, 
+            int coordinatesPlanned, 
+            String coordinateDigest
+    ) {
+        var checkpoint = checkpointRepository.find(datasourceEventId);
+        if (checkpoint.isEmpty()) { return checkpoint; }
+        if (checkpoint.get().coordinatesPlanned() == coordinatesPlanned 
+                && checkpoint.get().coordinateDigest().equals(coordinateDigest)) { 
+            return checkpoint; 
+        }
 
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (String version : versionDict.keySet()) {
-                JSONArray metadataArr = versionDict.getJSONArray(version);
-                // skip any versions that do not have associated metadata info
-                if (!metadataArr.isEmpty()) {
-                    JSONObject versionMetadata = metadataArr.getJSONObject(0);
-                    ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("upload_time_iso_8601"));
-                    packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-                }
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED PYPI", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+        log.atInfo()
+           .addKeyValue("datasourceEventId", datasourceEventId)
+           .addKeyValue("checkpointTxid", checkpoint.get().txid())
+           .log("event's purls changed since its checkpoint was written. starting over");
+        return Optional.empty();
+    }
+
+    /**
+     * 
+     * @param coordinateGroups see groupByCoordinate
+     * @return hex SHA-256 of every purl in the order they're worked through, one coordinate per line 
+     */
+    static String coordinateDigest(List<List<PackageURL>> coordinateGroups) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE has to provide it 
+            throw new IllegalStateException(e);
+        }
+        for (var group : coordinateGroups) {
+            for (var purl : group) {
+                digest.update(purl.canonicalize().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ' ');
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
+            digest.update((byte) '\n');
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /*
+     * what happened to a single coordinate. updatedIds is null when we couldn't get a version history for it 
+     */
+    private record PurlOutcome(List<Long> updatedIds, Long createdRecordId, boolean malformed) {
+        static PurlOutcome unresolved() { return new PurlOutcome(null, null, false); }
     }
 
-    class RubyGemOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
+    /**
+     * updates the package records for a single coordinate and creates a record for the latest version if we don't have 
+     * one. every package record for the coordinate is updated, so this only has to happen once for all of its purls 
+     * 
+     * @param txid
+     * @param purls every purl in the event for one coordinate
+     * @param progress
+     * @return
+     * @throws Exception
+     */
+    private PurlOutcome enrichCoordinate(
+            UUID txid, 
+            List<PackageURL> purls, 
+            EnrichmentProgress progress
+    ) throws Exception {
+        var packagePurl = purls.get(0);
+        String packageType = packagePurl.getType();
+        String packageNamespace = packagePurl.getNamespace();
+        String packageName = packagePurl.getName();
+        accessTracker.recordAccess(new PackageCoordinate(packageType, packageNamespace, packageName));
+        progress.processed(purls.size());
+
+        PackageMetadata metadata;
+        try {
+            metadata = observePhase(
+                PHASE_FETCH, 
+                packageType, 
+                () -> loadPackageMetadata(txid, packageType, packageNamespace, packageName, progress)
+            );
+        } catch (Exception e) {
+            progress.failed(purls.size());
+            metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_FAILED);
+            throw e;
+        }
+        if (metadata == null) { 
+            progress.failed(purls.size());
+            metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_FAILED);
+            return PurlOutcome.unresolved(); 
         }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONArray responseData = new JSONArray(response.get("response").toString());
+        log.debug("metadata is: {}", metadata);
+        log.debug("number of package versions tracked is: {}", metadata.packageHistory.size());
+        if (metadata.packageHistory.isEmpty()) { 
+            progress.failed(purls.size());
+            metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_FAILED);
+            return PurlOutcome.unresolved(); 
+        }
 
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < responseData.length(); i++) {
-                JSONObject versionMetadata = responseData.getJSONObject(i);
-                if (versionMetadata.has("number") && versionMetadata.has("created_at")) {
-                    String version = versionMetadata.getString("number");
-                    ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("created_at"));
-                    packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-                }
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED RUBY", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+        var updateResult = observePhase(
+            PHASE_COMPUTE, 
+            packageType, 
+            () -> computePackageUpdates(packageType, packageNamespace, packageName, metadata, false)
+        );
+        var writeStartNanos = System.nanoTime();
+        observePhase(PHASE_PERSIST, packageType, () -> persistPackageUpdates(updateResult));
+        metrics.databaseWrite(
+            EnrichmentMetrics.TABLE_PACKAGE, 
+            packageType, 
+            updateResult.updatedIds.size(), 
+            System.nanoTime() - writeStartNanos
+        );
+        progress.recordsUpdated(updateResult.updatedIds.size());
+        String mostRecentVersion = metadata.latestVersion.version;
+        ZonedDateTime mostRecentVersionPublishedAt = metadata.latestVersion.releaseTimestamp;
+
+        // create a record for the latest version if it was not found in the package repository
+        Long createdRecordId = null;
+        if ( !updateResult.latestVersionFound && !updateResult.skipped) {
+            PackageURL purl = null;
+            try {
+                purl = new PackageURL(packageType, packageNamespace, packageName, mostRecentVersion, null, null);
+            } catch (MalformedPackageURLException e) {
+                log.error("caught unexpected purl parsing error for: {}", purl);
+                return new PurlOutcome(updateResult.updatedIds, null, true);
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
-        }
-    }
-
-    class GolangOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
-        }
-
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) throws Exception {
-            IndexQueryContext queryContext = args[0];
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            // retrieve list of all versions from response
-            String versionListString = response.get("response").toString();
-            String[] versionList = versionListString.split("\\R");
-
-            // retrieve individual version metadata for each version
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < versionList.length; i++) {
-                String version = versionList[i];
-                URI versionInfoURI = new URI(String.format(
-                        GOLANG_API_TEMPLATE_VERSION_INFO,
-                        queryContext.packageNamespace,
-                        queryContext.packageName,
-                        version
-                ));
-                ApiResponse versionInfoResponse = queryPackageIndex(
-                        queryContext.txid,
-                        versionInfoURI
+            log.debug("making record for latest version discovered through package index enrichment: {}", purl);
+            Package newRecord = Package.builder()
+                                       .purl(purl.toString())
+                                       .type(packageType)
+                                       .namespace(packageNamespace)
+                                       .name(packageName)
+                                       .version(mostRecentVersion)
+                                       .mostRecentVersion(mostRecentVersion)
+                                       .updatedAt(ZonedDateTime.now(ZoneOffset.UTC))
+                                       .thisVersionPublishedAt(mostRecentVersionPublishedAt)
+                                       .mostRecentVersionPublishedAt(mostRecentVersionPublishedAt)
+                                       .build();
+
+            try {
+                var latestVersionRecord = observePhase(
+                    PHASE_PERSIST, 
+                    packageType, 
+                    () -> packageRepository.save(newRecord)
                 );
-
-                var versionInfo = versionInfoResponse.getData();
-                log.debug("versionInfo is: {}", versionInfo);
-                JSONObject versionMetadata = new JSONObject(versionInfo.get("response").toString());
-                ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("Time"));
-                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED GOLANG", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+                createdRecordId = latestVersionRecord.getId();
+                progress.recordCreated();
+            } catch (DataIntegrityViolationException e) {
+                log.warn("caught unexpected exception indicating package record: {} already exists", purl);
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
         }
+
+        return new PurlOutcome(updateResult.updatedIds, createdRecordId, false);
     }
 
-    class PHPOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
+    /**
+     * returns the version history for the given coordinate from the version history store if what's stored there is 
+     * still current, otherwise queries the package index for it.
+     * 
+     * @param txid
+     * @param packageType
+     * @param packageNamespace
+     * @param packageName
+     * @return the package metadata or null if the package type isn't supported or the index returned an error 
+     * @throws Exception
+     */
+    public PackageMetadata loadPackageMetadata(
+            UUID txid, 
+            String packageType, 
+            String packageNamespace, 
+            String packageName
+    ) throws Exception {
+        return loadPackageMetadata(txid, packageType, packageNamespace, packageName, new EnrichmentProgress());
+    }
+
+    private PackageMetadata loadPackageMetadata(
+            UUID txid, 
+            String packageType, 
+            String packageNamespace, 
+            String packageName,
+            EnrichmentProgress progress
+    ) throws Exception {
+        var coordinate = new PackageCoordinate(packageType, packageNamespace, packageName);
+        var stored = versionHistoryRepository.find(coordinate);
+        if (stored.isPresent() && isCurrent(packageType, stored.get().fetchedAt())) {
+            log.debug("using stored version history for: {} fetched at: {}", coordinate, stored.get().fetchedAt());
+            progress.cached();
+            metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_STORE);
+            return stored.get().toPackageMetadata();
         }
+        // internal packages and ones a package index has recently told us it doesn't have aren't worth asking about 
+        var skipReason = negativeCache.skipReason(coordinate);
+        if (skipReason != null) {
+            log.debug("not looking up: {} because: {}", coordinate, skipReason);
+            metrics.negativeCacheHit(packageType, skipReason);
+            return null;
+        }
+        return fetchPackageMetadata(txid, coordinate, stored.orElse(null), progress);
+    }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            IndexQueryContext queryContext = args[0];
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONObject packageObject = responseData.getJSONObject("packages");
-            JSONArray versionList = packageObject.getJSONArray(queryContext.packageNamespace + "/" + queryContext.packageName);
+    /**
+     * queries the appropriate package index for the given coordinate and parses the response into version history.
+     * 
+     * @param txid
+     * @param packageType
+     * @param packageNamespace
+     * @param packageName
+     * @return the package metadata or null if the package type isn't supported or the index returned an error 
+     * @throws Exception
+     */
+    public PackageMetadata fetchPackageMetadata(
+            UUID txid, 
+            String packageType, 
+            String packageNamespace, 
+            String packageName
+    ) throws Exception {
+        var coordinate = new PackageCoordinate(packageType, packageNamespace, packageName);
+        var stored = versionHistoryRepository.find(coordinate).orElse(null);
+        return fetchPackageMetadata(txid, coordinate, stored, new EnrichmentProgress());
+    }
 
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < versionList.length(); i++) {
-                JSONObject versionMetadata = versionList.getJSONObject(i);
-                String version = versionMetadata.getString("version");
-                ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("time"));
-                packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+    /**
+     * queries the package index for the given coordinate, conditionally if we have a stored history with validators, 
+     * and writes whatever comes back through to the version history store.
+     * 
+     * @param txid
+     * @param coordinate
+     * @param stored previously stored history for the coordinate or null
+     * @param progress
+     * @return
+     * @throws Exception
+     */
+    private PackageMetadata fetchPackageMetadata(
+            UUID txid, 
+            PackageCoordinate coordinate, 
+            PackageVersionHistoryRepository.StoredVersionHistory stored,
+            EnrichmentProgress progress
+    ) throws Exception {
+        var packageType = coordinate.type();
+        var packageNamespace = coordinate.namespace();
+        var packageName = coordinate.name();
+        var adapter = adaptersByType.get(packageType);
+        if (adapter == null) {
+            log.warn("skipping packageType {} because it's not yet supported", packageType);
+            return null;
+        }
+        var capabilities = adapter.capabilities();
+        var indexName = adapter.indexName();
+
+        // an index we can't revalidate against might still be able to tell us cheaply that nothing was published 
+        var hasValidators = stored != null && (stored.etag() != null || stored.lastModified() != null);
+        var canRevalidate = capabilities.contains(RegistryAdapter.Capability.CONDITIONAL_GET) && hasValidators;
+        URI headUri = null;
+        ApiResponse headResponse = null;
+        if (stored != null && !canRevalidate && adapter instanceof HeadOnlyRegistryAdapter headOnly) {
+            headUri = headOnly.headUri(packageNamespace, packageName);
+            headResponse = queryHead(txid, headOnly, headUri, progress);
+            if (headResponse != null && isUnchanged(headOnly, headResponse, stored)) {
+                log.debug("{} reports nothing new for: {}", indexName, coordinate);
+                versionHistoryRepository.touch(coordinate, Instant.now());
+                progress.cached();
+                metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_STORE);
+                return stored.toPackageMetadata();
             }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED PHP", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+        }
+
+        // if we've got validators from a previous fetch, an unchanged package costs us a 304 and nothing else 
+        Map<String, String> conditionalHeaders = new HashMap<>();
+        if (canRevalidate && stored.etag() != null) { conditionalHeaders.put("If-None-Match", stored.etag()); }
+        if (canRevalidate && stored.lastModified() != null) { 
+            conditionalHeaders.put("If-Modified-Since", stored.lastModified()); 
+        }
+
+        var queryURI = adapter.lookupUri(packageNamespace, packageName);
+        ApiResponse apiResponse;
+        if (headResponse != null && queryURI.equals(headUri)) {
+            // the head check was the full lookup already, eg: go's version list. no need to ask twice 
+            apiResponse = headResponse;
+        } else {
+            var queryStartNanos = System.nanoTime();
+            apiResponse = queryPackageIndex(txid, packageType, queryURI, conditionalHeaders);
+            progress.registryLatency(packageType, (System.nanoTime() - queryStartNanos) / 1_000_000);
+        }
+        var fetchedAt = Instant.now();
+        if (apiResponse.getCode() == Response.SC_NOT_MODIFIED && stored != null) {
+            log.debug("{} reports no change for: {}", indexName, coordinate);
+            versionHistoryRepository.touch(coordinate, fetchedAt);
+            progress.cached();
+            metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_STORE);
+            return stored.toPackageMetadata();
+        }
+        if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
+            if (apiResponse.getCode() == Response.SC_NOT_FOUND || apiResponse.getCode() == Response.SC_GONE) {
+                log.debug("{} doesn't have: {}", indexName, coordinate);
+                negativeCache.recordMissing(coordinate);
+                return null;
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
+            logIndexError(txid, packageType, indexName, apiResponse.getCode());
+            return null;
+        }
+
+        var queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
+        var parseStartNanos = System.nanoTime();
+        List<VersionMetadata> packageHistory = observePhase(
+            PHASE_PARSE, 
+            packageType, 
+            () -> adapter.parseVersionHistory(apiResponse, queryContext, this::queryPackageIndex)
+        );
+        sortNewestFirst(packageHistory);
+        metrics.operatorParse(packageType, System.nanoTime() - parseStartNanos);
+        // an index that answers with no usable versions doesn't have the package, as far as we're concerned 
+        if (packageHistory.isEmpty()) {
+            logEmptyHistory(packageType, queryContext, apiResponse.getData());
+            negativeCache.recordMissing(coordinate);
+            return null;
         }
+        var metadata = new PackageMetadata(packageHistory.get(0), packageHistory);
+
+        var data = apiResponse.getData();
+        versionHistoryRepository.save(new PackageVersionHistoryRepository.StoredVersionHistory(
+            coordinate,
+            metadata.packageHistory,
+            fetchedAt,
+            PackageVersionHistoryRepository.SOURCE_REGISTRY,
+            (String) data.get(RestHelper.ETAG_KEY),
+            (String) data.get(RestHelper.LAST_MODIFIED_KEY)
+        ));
+        progress.fetched();
+        metrics.packageEnriched(packageType, EnrichmentMetrics.SOURCE_REGISTRY);
+        return metadata;
     }
 
-    class RustOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
+    /**
+     * writes version history derived values to every package record for the given type, namespace and name. 
+     * 
+     * @param packageType
+     * @param packageNamespace
+     * @param packageName
+     * @param metadata
+     * @param ignoreFreshness when true records are updated even if they were enriched within the freshness window
+     * @return
+     */
+    public PackageUpdateResult updatePackageRecords(
+            String packageType, 
+            String packageNamespace, 
+            String packageName, 
+            PackageMetadata metadata,
+            boolean ignoreFreshness
+    ) {
+        return persistPackageUpdates(
+            computePackageUpdates(packageType, packageNamespace, packageName, metadata, ignoreFreshness)
+        );
+    }
+
+    /**
+     * updatePackageRecords for many coordinates of one package type at once. their package records are read in a
+     * handful of queries and every update is written in one transaction. change feed changes are left alone, the metadata may
+     * well be older than they are (eg: a registry dump) so they're for live enrichment to clear.
+     *
+     * @param packageType
+     * @param metadataByCoordinate
+     * @param ignoreFreshness
+     * @return number of coordinates that had package records updated
+     */
+    public int updatePackageRecords(
+            String packageType,
+            Map<PackageCoordinate, PackageMetadata> metadataByCoordinate,
+            boolean ignoreFreshness
+    ) {
+        var recordsByCoordinate = packageRepository.findByCoordinates(packageType, metadataByCoordinate.keySet());
+        var lastChangedAtByCoordinate = changeFeedService.lastChangedAt(packageType, recordsByCoordinate.keySet());
+        List<PackageRowUpdate> updates = new ArrayList<>();
+        var rv = 0;
+        for (var entry : recordsByCoordinate.entrySet()) {
+            var metadata = metadataByCoordinate.get(entry.getKey());
+            var lastChangedAt = lastChangedAtByCoordinate.get(entry.getKey());
+            var updateResult = computePackageUpdates(entry.getValue(), metadata, lastChangedAt, ignoreFreshness);
+            if (updateResult.updatedRecords.isEmpty()) { continue; }
+            updates.addAll(updateResult.updatedRecords);
+            rv++;
         }
+        packageRepository.applyUpdates(updates);
+        return rv;
+    }
 
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONArray versionList = responseData.getJSONArray("versions");
+    /**
+     * works out the version history derived values for every package record with the given type, namespace and name 
+     * without writing anything. 
+     * 
+     * @param packageType
+     * @param packageNamespace
+     * @param packageName
+     * @param metadata
+     * @param ignoreFreshness
+     * @return
+     */
+    PackageUpdateResult computePackageUpdates(
+            String packageType, 
+            String packageNamespace, 
+            String packageName, 
+            PackageMetadata metadata,
+            boolean ignoreFreshness
+    ) {
+        // retrieve all instances of the package from the DB so we can update values. the type matters, an npm yaml and 
+        // a pypi yaml have nothing to do with each other. only the columns we read come back, not entities 
+        List<PackageRow> relevantPackageRecords = packageRepository.findByCoordinate(
+            packageType, 
+            packageNamespace, 
+            packageName
+        );
+        log.debug("relevantPackageRecords is: {}", relevantPackageRecords);
+        var coordinate = new PackageCoordinate(packageType, packageNamespace, packageName);
+        var lastChangedAt = changeFeedService.lastChangedAt(coordinate);
+        var rv = computePackageUpdates(relevantPackageRecords, metadata, lastChangedAt, ignoreFreshness);
+        rv.coordinate = coordinate;
+        rv.lastChangedAt = lastChangedAt;
+        return rv;
+    }
 
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < versionList.length(); i++) {
-                JSONObject versionMetadata = versionList.getJSONObject(i);
-                if (versionMetadata.has("num") && versionMetadata.has("created_at")) {
-                    String version = versionMetadata.getString("num");
-                    ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("created_at"));
-                    packageHistory.add(new VersionMetadata(version, releaseTimestamp));
-                }
-            }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED RUST", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+    /**
+     * the database free part of computePackageUpdates. split out so the version arithmetic can be benchmarked on its 
+     * own, see PackageUpdateComputeBenchmark 
+     * 
+     * @param relevantPackageRecords every package record for one coordinate 
+     * @param metadata
+     * @param lastChangedAt when a change feed last reported the coordinate as changed, may be null
+     * @param ignoreFreshness
+     * @return
+     */
+    PackageUpdateResult computePackageUpdates(
+            List<PackageRow> relevantPackageRecords, 
+            PackageMetadata metadata,
+            Instant lastChangedAt,
+            boolean ignoreFreshness
+    ) {
+        var rv = new PackageUpdateResult();
+        String mostRecentVersion = metadata.latestVersion.version;
+        ZonedDateTime mostRecentVersionPublishedAt = metadata.latestVersion.releaseTimestamp;
+        log.debug("mostRecentVersion is: {}", mostRecentVersion);
+        log.debug("mostRecentVersionPublishedAt: {}", mostRecentVersionPublishedAt);
+
+        for (PackageRow currPackageRecord : relevantPackageRecords) {
+            log.debug("currPackageRecord: {}", currPackageRecord.getPurl());
+            log.debug("mostRecentVersion: {}", mostRecentVersion);
+
+            if (currPackageRecord.getVersion() == null || currPackageRecord.getVersion().isEmpty()) {
+                rv.skipped = true;
+                continue;
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
-        }
-    }
-
-    class DotnetOperator implements PackageOperator<String> {
-        @Override
-        public ZonedDateTime constructTimestamp(String timestamp) {
-            // timestamp string is already in ISO 8601 UTC format
-            return ZonedDateTime.parse(timestamp);
-        }
-
-        @Override
-        public PackageMetadata getPackageMetadata(ApiResponse apiResponse, IndexQueryContext... args) throws Exception {
-            var response = apiResponse.getData();
-            log.debug("response is: {}", response);
-            JSONObject responseData = new JSONObject(response.get("response").toString());
-            JSONArray versionDictBlocks = responseData.getJSONArray("items");
-
-            // iterate over partitioned list of versions
-            List<VersionMetadata> packageHistory = new ArrayList<>();
-            for (int i = 0; i < versionDictBlocks.length(); i++) {
-                JSONObject versionDictBlock = versionDictBlocks.getJSONObject(i);
-                JSONArray versionDictList = versionDictBlock.getJSONArray("items");
-                // iterate through version dictionaries within the selected block
-                for (int j = 0; j < versionDictList.length(); j++) {
-                    JSONObject versionDict = versionDictList.getJSONObject(j);
-                    JSONObject versionMetadata = versionDict.getJSONObject("catalogEntry");
-                    String version = versionMetadata.getString("version");
-                    ZonedDateTime releaseTimestamp = constructTimestamp(versionMetadata.getString("published"));
-                    packageHistory.add(new VersionMetadata(version, releaseTimestamp));
+
+            String currPackageVersion = currPackageRecord.getVersion();
+            ZonedDateTime currPackagePublishedAt = null;
+            for (var e : metadata.packageHistory) {
+                    if (e.version.equals(currPackageVersion)) {
+                    currPackagePublishedAt = e.releaseTimestamp;
                 }
             }
-            // Sort newest to oldest based on releaseTimestamp
-            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
-
-            // If packageHistory is empty, there was likely an issue with the query to the index
-            if (packageHistory.isEmpty()) {
-                IndexQueryContext queryContext = args[0];
-                String debugID = UUID.randomUUID().toString();
-                log.info("{} | NO PACKAGE VERSION HISTORY RECEIVED DOTNET", debugID);
-                log.info("{} | txid: {}", debugID, queryContext.txid);
-                log.info("{} | queried endpoint: {}", debugID, queryContext.queryURI.toString());
-                log.info("{} | packageNamespace: {}", debugID, queryContext.packageNamespace);
-                log.info("{} | packageName: {}", debugID, queryContext.packageName);
-                log.info("{} | response from endpoint: {}", debugID, response);
-                throw new NoSuchElementException("No package version history received");
+            
+
+            // check to see if we've successfully enriched this record within the freshness window or if the package 
+            // index change feed vouches for it, and the change feed hasn't reported a change since. if so - no need to 
+            // do it again
+            var currentDateTime = ZonedDateTime.now(ZoneOffset.UTC);
+            var recordUpdatedAt = currPackageRecord.getUpdatedAt();
+            var recordUpdatedRecently = recordUpdatedAt != null 
+                    && !ChangeFeedService.changedSince(lastChangedAt, recordUpdatedAt) 
+                    && (
+                    currentDateTime.minus(env.getFreshnessWindow()).isBefore(recordUpdatedAt)
+                    || changeFeedService.isKnownCurrent(currPackageRecord.getType(), recordUpdatedAt)
+            );
+            var recordPreviouslyPackageEnriched = !(currPackageRecord.getMostRecentVersion() == null);
+            if (recordUpdatedRecently && recordPreviouslyPackageEnriched && !ignoreFreshness) { 
+                log.debug(
+                    "skipping record: {} because it's already been enriched recently", 
+                    currPackageRecord.getPurl()
+                );
+                rv.skipped = true;
+                continue; 
             }
-            return new PackageMetadata(packageHistory.get(0), packageHistory);
+
+            // check if a record for the most recent version of the package already exists in the table
+            if (Objects.equals(currPackageVersion, mostRecentVersion)) { rv.latestVersionFound = true; }
+
+            // set version differences in package entry
+            log.debug(
+                "determining version differences for: {} currPackageVersion: {} mostRecentVersion: {}", 
+                currPackageRecord.getPurl(), 
+                currPackageVersion, 
+                mostRecentVersion
+            );
+            int[] versionDiffs = getVersionDifferences(currPackageVersion, mostRecentVersion, metadata.packageHistory);
+
+            var numberVersionsBehind = versionsBehind(currPackageVersion, metadata.packageHistory);
+
+            // now that we've checked already to see if this record has been previously package enriched we can set 
+            // the mostRecentVersion value along with everything else derived from the history 
+            rv.updatedIds.add(currPackageRecord.getId());
+            rv.updatedRecords.add(new PackageRowUpdate(
+                currPackageRecord.getId(),
+                currPackageRecord.getPurl(),
+                mostRecentVersion,
+                versionDiffs[0],
+                versionDiffs[1],
+                versionDiffs[2],
+                numberVersionsBehind,
+                mostRecentVersionPublishedAt,
+                currPackagePublishedAt,
+                currentDateTime
+            ));
         }
+
+        return rv;
     }
 
-    public ApiResponse enrichRecord(
-            UUID txid,
-            ZonedDateTime requestReceivedAt,
-            DatasourceEvent datasourceEventRecord
+    /**
+     * writes the records computePackageUpdates changed. an UPDATE of just the changed columns per record, nothing goes 
+     * through the persistence context 
+     * 
+     * @param updateResult
+     * @return
+     */
+    PackageUpdateResult persistPackageUpdates(PackageUpdateResult updateResult) {
+        if ( !updateResult.updatedRecords.isEmpty()) { 
+            packageRepository.applyUpdates(updateResult.updatedRecords);
+            for (var record : updateResult.updatedRecords) { log.debug("updated packageRecord: {}", record.purl()); }
+        }
+        // every record from before the change has just been rewritten, the rest were enriched after it 
+        if (updateResult.coordinate != null) { 
+            changeFeedService.changeHandled(updateResult.coordinate, updateResult.lastChangedAt); 
+        }
+        return updateResult;
+    }
+
+    private boolean isCurrent(String packageType, Instant fetchedAt) {
+        var fetchedAtUtc = ZonedDateTime.ofInstant(fetchedAt, ZoneOffset.UTC);
+        return ZonedDateTime.now(ZoneOffset.UTC).minus(env.getFreshnessWindow()).isBefore(fetchedAtUtc)
+                || changeFeedService.isKnownCurrent(packageType, fetchedAtUtc);
+    }
+
+    /**
+     * runs one phase of an enrichment inside its own observation. phases are only observed as part of an enrichment, 
+     * background work (refresh-ahead, imports) calls the same code without starting a trace per coordinate.
+     * 
+     * @param phase
+     * @param packageType or null if the phase isn't about a single coordinate
+     * @param work
+     * @return
+     * @throws Exception
+     */
+    private <T> T observePhase(
+            String phase, 
+            String packageType, 
+            Observation.CheckedCallable<T, Exception> work
     ) throws Exception {
+        if (observationRegistry.getCurrentObservation() == null) { return work.call(); }
 
-        // construct initial response JSON object
-        JSONObject response = new JSONObject();
+        var observation = Observation.createNotStarted(PHASE_OBSERVATION, observationRegistry)
+                                     .contextualName(phase)
+                                     .lowCardinalityKeyValue("phase", phase);
+        if (packageType != null) { observation.lowCardinalityKeyValue(EnrichmentMetrics.ECOSYSTEM_TAG, packageType); }
+        return observation.observeChecked(work);
+    }
 
-        boolean httpCreatedCodeFlag = false;
-        var desPackagePurlStrings = packageRepository.getPackagesByDatasourceEventId(datasourceEventRecord.getId());
-        log.info("desPackagePurlStrings for dse id: {} is: {}", datasourceEventRecord.getId(), desPackagePurlStrings);
-        // because PackageURL throws an exception and it is crunch time 
-        var desPackagePurls = new ArrayList<PackageURL>();
-        for (var purlString : desPackagePurlStrings) { desPackagePurls.add(new PackageURL(purlString)); }
-        for (var packagePurl : desPackagePurls) {
-            String packageType = packagePurl.getType();
-            String packageNamespace = packagePurl.getNamespace();
-            String packageName = packagePurl.getName();
-            ApiResponse apiResponse = null;
-            PackageMetadata metadata = null;
-            IndexQueryContext queryContext = null;
-            URI queryURI = null;
-            PackageOperator operator;
-    
-            switch (packageType) {
-                case MAVEN_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(MAVEN_API_TEMPLATE, packageNamespace, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to Maven Central resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new MavenOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case NPM_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(NPM_API_TEMPLATE, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to npm registry resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new NpmOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case PYPI_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(PYPI_API_TEMPLATE, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to pypi registry resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new PypiOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case RUBY_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(RUBY_API_TEMPLATE, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to Ruby Gem registry resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new RubyGemOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case GOLANG_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(GOLANG_API_TEMPLATE_VERSION_LIST, packageNamespace, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to Golang module proxy resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new GolangOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case PHP_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(PHP_API_TEMPLATE, packageNamespace, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to PHP Composer registry resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new PHPOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case RUST_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(RUST_API_TEMPLATE, packageName));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to Rust Crates registry resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new RustOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                case DOTNET_PACKAGE_TYPE:
-                    queryURI = new URI(String.format(DOTNET_API_TEMPLATE, packageName.toLowerCase()));
-                    apiResponse = queryPackageIndex(txid, queryURI);
-                    if ( !HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ) {
-                        log.warn("request to Golang module proxy resulted in error code: {}", apiResponse.getCode());
-                        continue;
-                    }
-                    queryContext = new IndexQueryContext(txid, packageNamespace, packageName, queryURI);
-                    operator = new DotnetOperator();
-                    metadata = operator.getPackageMetadata(apiResponse, queryContext);
-                    break;
-                default:
-                    log.warn("skipping packageType {} because it's not yet supported", packageType);
-                    continue;
+    public ApiResponse queryPackageIndex(
+            UUID txid, 
+            String packageType, 
+            URI uri
+    ) throws URISyntaxException, InterruptedException {
+        return queryPackageIndex(txid, packageType, uri, Map.of());
+    }
+
+    public ApiResponse queryPackageIndex(
+            UUID txid, 
+            String packageType, 
+            URI uri, 
+            Map<String, String> extraHeaders
+    ) throws URISyntaxException, InterruptedException {
+        Map<String, String> headers = new HashMap<>(extraHeaders);
+        headers.put("User-Agent", "PatchfoxPackageIndex/" + SERVICE_VERSION);
+
+        var apiResponse = archivedRequest(txid, packageType, uri, headers);
+
+        // retry the request with jittered exponential backoff if we get throttled by the package index
+        long baseDelay = 1000;
+        int attempt = 1;
+        while (apiResponse.getCode() == 429) {
+            long backoff = (long) (baseDelay * Math.pow(2, attempt - 1));
+            long jitter = ThreadLocalRandom.current().nextLong(backoff / 2, backoff);
+
+            var suppressed = logSampler.sample("throttled:" + packageType);
+            if (suppressed != LogSampler.SUPPRESSED) {
+                log.atWarn()
+                   .addKeyValue("txid", txid)
+                   .addKeyValue("packageType", packageType)
+                   .addKeyValue("attempt", attempt)
+                   .addKeyValue("retryInMs", jitter)
+                   .addKeyValue("suppressed", suppressed)
+                   .log("request to {} was throttled", uri);
             }
+            Thread.sleep(jitter);
 
+            metrics.registryRetry(packageType);
+            apiResponse = archivedRequest(txid, packageType, uri, headers);
+            attempt++;
+        }
 
-            log.debug("metadata is: {}", metadata);
-            log.debug("number of package versions tracked is: {}", metadata.packageHistory.size());
-            if (metadata.packageHistory.isEmpty()) { continue; }
-    
-            // retrieve all instances of the package from the DB so we can update values
-            List<Package> relevantPackageRecords = packageRepository.findByNamespaceAndName(packageNamespace, packageName);
-            log.debug("relevantPackageRecords is: {}", relevantPackageRecords);
-            boolean latestVersionFound = false;
-            boolean skipped = false;
-            String mostRecentVersion = metadata.latestVersion.version;
-            ZonedDateTime mostRecentVersionPublishedAt = metadata.latestVersion.releaseTimestamp;
-            log.debug("mostRecentVersion is: {}", mostRecentVersion);
-            log.debug("mostRecentVersionPublishedAt: {}", mostRecentVersionPublishedAt);
-            List<Long> updatedIds = new ArrayList<>();
-
-            for (Package currPackageRecord : relevantPackageRecords) {
-                log.debug("currPackageRecord: {}", currPackageRecord.getPurl());
-                log.debug("mostRecentVersion: {}", mostRecentVersion);
-
-                if (currPackageRecord.getVersion() == null || currPackageRecord.getVersion().isEmpty()) {
-                    skipped = true;
-                    continue;
-                }
+        return apiResponse;
+    }
 
-                String currPackageVersion = currPackageRecord.getVersion();
-                ZonedDateTime currPackagePublishedAt = null;
-                for (var e : metadata.packageHistory) {
-                        if (e.version.equals(currPackageVersion)) {
-                        currPackagePublishedAt = e.releaseTimestamp;
-                    }
-                }
-                
-
-                // check to see if we've successfully enriched this record within the last 24 hours.
-                // if we have - no need to do it again until it's been at least a day
-                var currentDateTime = ZonedDateTime.now(ZoneOffset.UTC);
-                var recordUpdatedRecently = currentDateTime.minusDays(1).isBefore(currPackageRecord.getUpdatedAt());
-                var recordPreviouslyPackageEnriched = !(currPackageRecord.getMostRecentVersion() == null);
-                if (recordUpdatedRecently && recordPreviouslyPackageEnriched) { 
-                    log.info("skipping record: {} because it's already been enriched recently", currPackageRecord.getPurl());
-                    skipped = true;
-                    continue; 
-                }
-    
-                // check if a record for the most recent version of the package already exists in the table
-                if (Objects.equals(currPackageVersion, mostRecentVersion)) { latestVersionFound = true; }
-
-                // now that we've checked already to see if this record has been previously package enriched
-                // we can set the mostRecentVersion value 
-                currPackageRecord.setMostRecentVersion(mostRecentVersion);
-
-                // set version differences in package entry
-                log.info("Determining version differences for {}", currPackageRecord.getPurl());
-                log.info("currPackageVersion: {}", currPackageVersion);
-                log.info("mostRecentVersion: {}", mostRecentVersion);
-                int[] versionDiffs = getVersionDifferences(currPackageVersion, mostRecentVersion, metadata.packageHistory);
-                currPackageRecord.setNumberMajorVersionsBehindHead(versionDiffs[0]);
-                currPackageRecord.setNumberMinorVersionsBehindHead(versionDiffs[1]);
-                currPackageRecord.setNumberPatchVersionsBehindHead(versionDiffs[2]);
-
-                var numberVersionsBehind = 0;
-                for (int i = 0; i < metadata.packageHistory.size(); i ++) {
-                    if (metadata.packageHistory.get(i).version.equals(currPackageRecord.getVersion())){
-                        numberVersionsBehind = i;
-                        break;
-                    }
-                }
-                currPackageRecord.setNumberVersionsBehindHead(numberVersionsBehind);
-    
-                // update datetime columns
-                currPackageRecord.setMostRecentVersionPublishedAt(mostRecentVersionPublishedAt);
-                currPackageRecord.setThisVersionPublishedAt(currPackagePublishedAt);
-                currPackageRecord.setUpdatedAt(currentDateTime);
-    
-                // save entry to package repository
-                updatedIds.add(currPackageRecord.getId());
-                currPackageRecord = packageRepository.save(currPackageRecord);
-                log.info("updated packageRecord: {}", currPackageRecord.getPurl());
+    /**
+     * one logical package index request, replayed from or recorded to RegistryTrafficArchive when that's switched on. 
+     * the archive is keyed on the uri the adapter built and holds whatever the request ended up with, so it doesn't 
+     * matter which mirror answered or whether the request was hedged. a replay still waits on the concurrency limit 
+     * and is metered like a real request 
+     * 
+     * @param txid
+     * @param packageType
+     * @param uri built from one of the adapters' *_TEMPLATE constants
+     * @param headers
+     * @return
+     * @throws InterruptedException
+     */
+    private ApiResponse archivedRequest(
+            UUID txid, 
+            String packageType, 
+            URI uri, 
+            Map<String, String> headers
+    ) throws InterruptedException {
+        if (registryTraffic.isReplaying()) { return makeMeteredRequest(packageType, getRequest(txid, uri, headers)); }
+
+        var startNanos = System.nanoTime();
+        var apiResponse = requestWithFailover(txid, packageType, uri, headers);
+        if (registryTraffic.isRecording()) {
+            registryTraffic.record(
+                packageType, 
+                getRequest(txid, uri, headers), 
+                apiResponse, 
+                System.nanoTime() - startNanos
+            );
+        }
+        return apiResponse;
+    }
+
+    /**
+     * tries each endpoint for the package type in turn (mirrors first, see RegistryEndpoints) until one of them 
+     * answers with something other than a 429 or 5xx. with hedging on, each attempt is hedged against the endpoint 
+     * after it
+     * 
+     * @param txid
+     * @param packageType
+     * @param uri built from one of the adapters' *_TEMPLATE constants
+     * @param headers
+     * @return the first good response, otherwise the last one
+     * @throws InterruptedException
+     */
+    private ApiResponse requestWithFailover(
+            UUID txid, 
+            String packageType, 
+            URI uri, 
+            Map<String, String> headers
+    ) throws InterruptedException {
+        var candidates = registryEndpoints.candidates(packageType, uri);
+        ApiResponse apiResponse = null;
+        RuntimeException lastException = null;
+        int i = 0;
+        while (i < candidates.size()) {
+            var hedge = env.isHedgingEnabled() && i + 1 < candidates.size();
+            try {
+                apiResponse = hedge
+                        ? makeHedgedRequest(txid, packageType, candidates.get(i), candidates.get(i + 1), uri, headers)
+                        : requestFrom(txid, packageType, candidates.get(i), uri, headers);
+                if ( !RegistryEndpoints.isFailure(apiResponse.getCode())) { return apiResponse; }
+            } catch (RestClientException e) {
+                lastException = e;
             }
-    
-            response.put("updatedRecordIds", updatedIds);
-    
-            // create a record for the latest version if it was not found in the package repository
-            if ( !latestVersionFound && !skipped) {
-                PackageURL purl = null;
+            i += hedge ? 2 : 1;
+        }
+
+        if (apiResponse == null) { throw lastException; }
+        return apiResponse;
+    }
+
+    /**
+     * sends the request to primary and, if it hasn't answered within the recent p95 for the package type (or answered 
+     * with a failure), the same request to secondary. the first good answer wins and the slower one is cancelled. a 
+     * cancelled request isn't reported, so losing a hedge counts against neither the endpoint's health nor the 
+     * concurrency limit 
+     * 
+     * @param txid
+     * @param packageType
+     * @param primary
+     * @param secondary
+     * @param uri
+     * @param headers
+     * @return
+     * @throws InterruptedException
+     */
+    private ApiResponse makeHedgedRequest(
+            UUID txid, 
+            String packageType, 
+            RegistryEndpoints.Endpoint primary,
+            RegistryEndpoints.Endpoint secondary,
+            URI uri, 
+            Map<String, String> headers
+    ) throws InterruptedException {
+        // requests run on their own virtual threads so carry the trace and the debug switch over with them 
+        var snapshot = ContextSnapshotFactory.builder().build().captureAll();
+        var completion = new ExecutorCompletionService<ApiResponse>(hedgeExecutor);
+        Function<RegistryEndpoints.Endpoint, Callable<ApiResponse>> task = endpoint -> snapshot.wrap(() -> {
+            MDC.put(TxidDebugTurboFilter.MDC_TXID, txid.toString());
+            try {
+                return requestFrom(txid, packageType, endpoint, uri, headers);
+            } finally {
+                MDC.remove(TxidDebugTurboFilter.MDC_TXID);
+            }
+        });
+
+        var submitted = new ArrayList<Future<ApiResponse>>(2);
+        try {
+            submitted.add(completion.submit(task.apply(primary)));
+            var outstanding = 1;
+            var first = completion.poll(registryEndpoints.hedgeDelay(packageType).toNanos(), TimeUnit.NANOSECONDS);
+            if (first == null) {
+                metrics.registryHedge(packageType);
+            } else {
+                // primary answered in time. only bother the secondary if the answer was no good 
+                outstanding = 0;
                 try {
-                    purl = new PackageURL(packageType, packageNamespace, packageName, mostRecentVersion, null, null);
-                } catch (MalformedPackageURLException e) {
-                    log.error("caught unexpected purl parsing error for: {}", purl);
-
-                    datasourceEventRecord.setStatus(DatasourceEvent.Status.PROCESSING_ERROR);
-                    datasourceEventRepository.save(datasourceEventRecord);
-
-                    return ApiResponse.builder()
-                                      .code(Response.SC_INTERNAL_SERVER_ERROR)
-                                      .txid(txid)
-                                      .requestReceivedAt(requestReceivedAt.toString())
-                                      .build();
+                    var apiResponse = hedgeResult(first);
+                    if ( !RegistryEndpoints.isFailure(apiResponse.getCode())) { return apiResponse; }
+                } catch (RestClientException e) {
+                    log.debug("request to primary endpoint: {} failed: {}", primary.getBaseUrl(), e.toString());
                 }
-                log.info("making record for latest version discovered through package index enrichment: {}", purl);
-                Package latestVersionRecord = Package.builder()
-                                                     .purl(purl.toString())
-                                                     .type(packageType)
-                                                     .namespace(packageNamespace)
-                                                     .name(packageName)
-                                                     .version(mostRecentVersion)
-                                                     .mostRecentVersion(mostRecentVersion)
-                                                     .updatedAt(ZonedDateTime.now(ZoneOffset.UTC))
-                                                     .thisVersionPublishedAt(mostRecentVersionPublishedAt)
-                                                     .mostRecentVersionPublishedAt(mostRecentVersionPublishedAt)
-                                                     .build();
+            }
 
+            submitted.add(completion.submit(task.apply(secondary)));
+            outstanding++;
+            ApiResponse apiResponse = null;
+            RestClientException lastException = null;
+            for (; outstanding > 0; outstanding--) {
                 try {
-                    latestVersionRecord = packageRepository.save(latestVersionRecord);
-                    response.put("createdRecordId", latestVersionRecord.getId());
-                    httpCreatedCodeFlag = true;
-                } catch (DataIntegrityViolationException e) {
-                    log.warn("caught unexpected exception indicating package record: {} already exists", purl);
+                    apiResponse = hedgeResult(completion.take());
+                    if ( !RegistryEndpoints.isFailure(apiResponse.getCode())) { return apiResponse; }
+                } catch (RestClientException e) {
+                    lastException = e;
                 }
-
             }
+
+            if (apiResponse == null) { throw lastException; }
+            return apiResponse;
+        } finally {
+            // whichever is still going lost. a finished future ignores the cancel 
+            submitted.forEach(future -> future.cancel(true));
         }
+    }
 
-        // Flag already set at the beginning of method
-        // datasourceEventRecord.setPackageIndexEnriched(true);
-        // datasourceEventRecord.setStatus(DatasourceEvent.Status.READY_FOR_NEXT_PROCESSING);
-        // datasourceEventRepository.save(datasourceEventRecord);
-        // datasourceEventRepository.flush();
+    private static ApiResponse hedgeResult(Future<ApiResponse> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) { throw cause; }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-        var code = httpCreatedCodeFlag ? Response.SC_CREATED : Response.SC_OK;
-        return ApiResponse.builder()
-                          .code(code)
-                          .txid(txid)
-                          .requestReceivedAt(requestReceivedAt.toString())
-                          .data(Map.of("response", response.toString()))
-                          .build();
+    /**
+     * one request to one endpoint. the outcome is reported back to RegistryEndpoints for failover and hedging 
+     * 
+     * @param txid
+     * @param packageType
+     * @param endpoint
+     * @param uri built from one of the adapters' *_TEMPLATE constants
+     * @param headers
+     * @return
+     * @throws InterruptedException
+     */
+    private ApiResponse requestFrom(
+            UUID txid, 
+            String packageType, 
+            RegistryEndpoints.Endpoint endpoint, 
+            URI uri, 
+            Map<String, String> headers
+    ) throws InterruptedException {
+        var apiRequest = getRequest(txid, withRegistryBaseUrl(endpoint.rewrite(uri)), headers);
+
+        var startNanos = System.nanoTime();
+        try {
+            var apiResponse = makeMeteredRequest(packageType, apiRequest);
+            registryEndpoints.report(packageType, endpoint, apiResponse.getCode(), System.nanoTime() - startNanos);
+            return apiResponse;
+        } catch (RestClientException e) {
+            // a cancelled hedge fails on the way out, that isn't the endpoint's fault 
+            if ( !Thread.currentThread().isInterrupted()) {
+                registryEndpoints.report(packageType, endpoint, 0, System.nanoTime() - startNanos);
+            }
+            throw e;
+        }
     }
 
-    public ApiResponse queryPackageIndex(UUID txid, URI uri) throws URISyntaxException, InterruptedException {
-        var apiRequest = ApiRequest.builder()
-                .headers(Map.of("User-Agent", "PatchfoxPackageIndex/" + SERVICE_VERSION))
-                .uri(uri)
-                .verb(ApiRequest.httpVerb.GET)
-                .txid(txid)
-                .build();
+    private static ApiRequest getRequest(UUID txid, URI uri, Map<String, String> headers) {
+        return ApiRequest.builder()
+                         .headers(headers)
+                         .uri(uri)
+                         .verb(ApiRequest.httpVerb.GET)
+                         .txid(txid)
+                         .build();
+    }
 
-        var apiResponse = restHelper.makeRequest(apiRequest);
+    /**
+     * reroutes a package index request to package-index.registry-base-url when one is set. the real host becomes the 
+     * first path segment so whatever answers there can tell the package indexes apart. 
+     * 
+     * @param uri
+     * @return
+     */
+    private URI withRegistryBaseUrl(URI uri) {
+        var baseUrl = env.getRegistryBaseUrl();
+        if (baseUrl == null || baseUrl.isBlank()) { return uri; }
+        if (baseUrl.endsWith("/")) { baseUrl = baseUrl.substring(0, baseUrl.length() - 1); }
+        var query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+        return URI.create(baseUrl + "/" + uri.getHost() + uri.getRawPath() + query);
+    }
 
-        // retry the request with jittered exponential backoff if we get throttled by the package index
-        long baseDelay = 1000;
-        int attempt = 1;
-        while (apiResponse.getCode() == 429) {
-            long backoff = (long) (baseDelay * Math.pow(2, attempt - 1));
-            long jitter = ThreadLocalRandom.current().nextLong(backoff / 2, backoff);
+    private ApiResponse makeMeteredRequest(String packageType, ApiRequest apiRequest) throws InterruptedException {
+        // waiting for a slot under the package index's limit isn't the package index's latency so it's not metered 
+        concurrencyLimiter.acquire(packageType);
+        var startNanos = System.nanoTime();
+        ApiResponse apiResponse = null;
+        var cancelled = false;
+        try {
+            apiResponse = registryTraffic.isReplaying() 
+                    ? registryTraffic.replay(apiRequest) 
+                    : restHelper.makeRequest(apiRequest);
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        } finally {
+            if (cancelled || (apiResponse == null && Thread.currentThread().isInterrupted())) {
+                // we stopped waiting on it, eg: the slower half of a hedge 
+                concurrencyLimiter.abandon(packageType);
+            } else {
+                concurrencyLimiter.release(
+                    packageType, 
+                    apiResponse == null ? 0 : apiResponse.getCode(), 
+                    System.nanoTime() - startNanos
+                );
+            }
+        }
+        var responseBytes = apiResponse.getData() == null 
+                ? 0 
+                : ((Number) apiResponse.getData().getOrDefault(RestHelper.RESPONSE_BYTES_KEY, 0)).longValue();
+        metrics.registryRequest(packageType, apiResponse.getCode(), System.nanoTime() - startNanos, responseBytes);
+        return apiResponse;
+    }
 
-            log.warn("Attempt {} to {} returned HTTP 429. Retrying in {} ms...", attempt, uri, jitter);
-            Thread.sleep(jitter);
+    /**
+     * the HeadOnlyRegistryAdapter check 
+     * 
+     * @param txid
+     * @param adapter
+     * @param headUri
+     * @param progress
+     * @return the response, or null if the package index didn't answer with a 2xx 
+     * @throws Exception
+     */
+    private ApiResponse queryHead(
+            UUID txid, 
+            HeadOnlyRegistryAdapter adapter, 
+            URI headUri,
+            EnrichmentProgress progress
+    ) throws Exception {
+        var startNanos = System.nanoTime();
+        var apiResponse = queryPackageIndex(txid, adapter.packageType(), headUri);
+        progress.registryLatency(adapter.packageType(), (System.nanoTime() - startNanos) / 1_000_000);
+        return HttpStatusCode.valueOf(apiResponse.getCode()).is2xxSuccessful() ? apiResponse : null;
+    }
 
-            apiResponse = restHelper.makeRequest(apiRequest);
-            attempt++;
+    private boolean isUnchanged(
+            HeadOnlyRegistryAdapter adapter, 
+            ApiResponse headResponse, 
+            PackageVersionHistoryRepository.StoredVersionHistory stored
+    ) {
+        try {
+            return adapter.isUnchanged(headResponse, stored.packageHistory());
+        } catch (JSONException e) {
+            log.debug("couldn't read head check from {}: {}", adapter.indexName(), e.toString());
+            return false;
         }
+    }
 
-        return apiResponse;
+    private void logIndexError(UUID txid, String packageType, String indexName, int code) {
+        var suppressed = logSampler.sample("index-error:" + packageType);
+        if (suppressed == LogSampler.SUPPRESSED) { return; }
+        log.atWarn()
+           .addKeyValue("txid", txid)
+           .addKeyValue("packageType", packageType)
+           .addKeyValue("code", code)
+           .addKeyValue("suppressed", suppressed)
+           .log("request to {} resulted in an error", indexName);
+    }
+
+    /**
+     * one sampled line when a package index hands back no usable versions. the response itself is only logged at 
+     * debug, see TxidDebugTurboFilter
+     * 
+     * @param packageType
+     * @param queryContext
+     * @param response
+     */
+    private void logEmptyHistory(String packageType, IndexQueryContext queryContext, Map<String, Object> response) {
+        log.debug("response from endpoint: {} was: {}", queryContext.queryURI, response);
+        var suppressed = logSampler.sample("empty-history:" + packageType);
+        if (suppressed == LogSampler.SUPPRESSED) { return; }
+        log.atWarn()
+           .addKeyValue("txid", queryContext.txid)
+           .addKeyValue("packageType", packageType)
+           .addKeyValue("packageNamespace", queryContext.packageNamespace)
+           .addKeyValue("packageName", queryContext.packageName)
+           .addKeyValue("endpoint", queryContext.queryURI)
+           .addKeyValue("suppressed", suppressed)
+           .log("no package version history received");
+    }
+
+    /**
+     * adapters hand back history in whatever order the index gave it, this is the one place that order is decided 
+     * 
+     * @param packageHistory
+     */
+    public static void sortNewestFirst(List<VersionMetadata> packageHistory) {
+        packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
+    }
+
+    /**
+     * 
+     * @param version
+     * @param packageHistory newest first
+     * @return how many versions were published after the given one, or -1 if the history doesn't have it, same as 
+     *         the counts from getVersionDifferences 
+     */
+    static int versionsBehind(String version, List<VersionMetadata> packageHistory) {
+        for (int i = 0; i < packageHistory.size(); i++) {
+            if (packageHistory.get(i).version.equals(version)) { return i; }
+        }
+        return -1;
     }
 
     //TODO: need to add error handling for the weird edge cases that should never pop up in practice
     // (latest version somehow being older than provided version)
-    private static int[] getVersionDifferences(String providedVersion, String latestVersion, List<VersionMetadata> packageHistory) {
+    static int[] getVersionDifferences(String providedVersion, String latestVersion, List<VersionMetadata> packageHistory) {
         // initialize all version discrepancy counts to -1
         // if the function returns all counts as -1, this indicates the provided version was not found
         int patchVersionsBehind = -1;
@@ -797,8 +1448,9 @@ public class PackageIndexService {
         if (patchVersionsBehind != -1) {
             int[] latestVersionComponents = parseVersion(latestVersion);
             int[] providedVersionComponents = parseVersion(providedVersion);
-            log.info("latestVersionComponents for mostRecentVersion: {}", Arrays.toString(latestVersionComponents));
-            log.info("providedVersionComponents for currPackageVersion: {}", Arrays.toString(providedVersionComponents));
+            // slf4j only formats the arrays if the line is actually logged
+            log.debug("latestVersionComponents for mostRecentVersion: {}", latestVersionComponents);
+            log.debug("providedVersionComponents for currPackageVersion: {}", providedVersionComponents);
             // single out each component difference to make the upcoming comparison more legible
             majorVersionsBehind = latestVersionComponents[0] - providedVersionComponents[0];
             minorVersionsBehind = latestVersionComponents[1] - providedVersionComponents[1];
@@ -807,9 +1459,9 @@ public class PackageIndexService {
         return new int[]{majorVersionsBehind, minorVersionsBehind, patchVersionsBehind};
     }
 
-    private static int[] parseVersion(String version) {
+    static int[] parseVersion(String version) {
         String[] parts = version.split("\\.");
-        log.info("version regex split: {}", Arrays.toString(parts));
+        log.debug("version regex split: {}", (Object) parts);
         int[] components = new int[3];
 
         // Ensure each version component exists. Default to 0 if component is missing
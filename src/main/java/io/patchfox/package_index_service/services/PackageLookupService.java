@@ -0,0 +1,215 @@
+package io.patchfox.package_index_service.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.github.packageurl.MalformedPackageURLException;
+import com.github.packageurl.PackageURL;
+
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.PackageAccessTracker;
+import io.patchfox.package_index_service.helpers.TxidDebugTurboFilter;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageMetadata;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * read-through version history for a list of purls, for callers that want versions behind without creating a
+ * datasource event and waiting on the pipeline. nothing here writes package or datasource_event records. histories
+ * come out of the version history store when they're current and from the package index when they aren't, exactly
+ * as they would for an enrichment, and a fetched history is stored for whoever asks next.
+ *
+ * purls that share a coordinate are answered from one lookup. results are handed over as each coordinate finishes,
+ * not in request order, so a slow package index doesn't hold up everything behind it
+ */
+@Slf4j
+@Service
+public class PackageLookupService {
+
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_NOT_FOUND = "not_found";
+    public static final String STATUS_UNSUPPORTED = "unsupported";
+    public static final String STATUS_MALFORMED = "malformed";
+    public static final String STATUS_ERROR = "error";
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    PackageIndexService packageIndexService;
+
+    @Autowired
+    PackageAccessTracker accessTracker;
+
+    @Autowired
+    EnrichmentMetrics metrics;
+
+    private record CoordinateOutcome(PackageCoordinate coordinate, PackageMetadata metadata, Exception error) {}
+
+
+    /**
+     *
+     * @param txid
+     * @param purls at most package-index.lookup.max-purls of them
+     * @param includeHistory add every known version to each result
+     * @param sink gets one result per purl, always on the calling thread
+     * @throws InterruptedException
+     */
+    public void lookup(
+            UUID txid,
+            List<String> purls,
+            boolean includeHistory,
+            Consumer<Map<String, Object>> sink
+    ) throws InterruptedException {
+        if (purls.size() > env.getLookupMaxPurls()) {
+            throw new IllegalArgumentException(
+                "at most " + env.getLookupMaxPurls() + " purls can be looked up at once, got " + purls.size()
+            );
+        }
+
+        // malformed and unsupported purls are answered straight away, everything else is grouped by coordinate
+        var wanted = new LinkedHashMap<PackageCoordinate, List<PackageURL>>();
+        for (var purlString : purls) {
+            PackageURL purl;
+            try {
+                purl = new PackageURL(purlString);
+            } catch (MalformedPackageURLException | NullPointerException e) {
+                sink.accept(result(purlString, STATUS_MALFORMED));
+                continue;
+            }
+            if ( !packageIndexService.supports(purl.getType())) {
+                metrics.packageLookedUp(purl.getType(), STATUS_UNSUPPORTED);
+                sink.accept(result(purlString, STATUS_UNSUPPORTED));
+                continue;
+            }
+            var coordinate = new PackageCoordinate(purl.getType(), purl.getNamespace(), purl.getName());
+            wanted.computeIfAbsent(coordinate, c -> new ArrayList<>()).add(purl);
+        }
+
+        var permits = new Semaphore(env.getLookupConcurrency());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var completionService = new ExecutorCompletionService<CoordinateOutcome>(executor);
+            var futures = new ArrayList<Future<CoordinateOutcome>>();
+            for (var coordinate : wanted.keySet()) {
+                futures.add(completionService.submit(() -> {
+                    permits.acquire();
+                    MDC.put(TxidDebugTurboFilter.MDC_TXID, txid.toString());
+                    try {
+                        accessTracker.recordAccess(coordinate);
+                        var metadata = packageIndexService.loadPackageMetadata(
+                            txid,
+                            coordinate.type(),
+                            coordinate.namespace(),
+                            coordinate.name()
+                        );
+                        return new CoordinateOutcome(coordinate, metadata, null);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        return new CoordinateOutcome(coordinate, null, e);
+                    } finally {
+                        MDC.remove(TxidDebugTurboFilter.MDC_TXID);
+                        permits.release();
+                    }
+                }));
+            }
+
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    var outcome = completionService.take().resultNow();
+                    for (var purl : wanted.get(outcome.coordinate())) {
+                        var status = statusOf(outcome);
+                        metrics.packageLookedUp(purl.getType(), status);
+                        sink.accept(toResult(purl, status, outcome, includeHistory));
+                    }
+                }
+            } catch (RuntimeException | InterruptedException e) {
+                // most likely the caller went away. whatever hasn't been looked up yet isn't wanted any more
+                futures.forEach(f -> f.cancel(true));
+                throw e;
+            }
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+
+    private String statusOf(CoordinateOutcome outcome) {
+        if (outcome.metadata() != null) { return STATUS_OK; }
+        // no history and no error means the package index doesn't have it, or we already know it doesn't
+        if (outcome.error() == null) { return STATUS_NOT_FOUND; }
+        log.debug("lookup failed for: {} - {}", outcome.coordinate(), outcome.error().toString());
+        return STATUS_ERROR;
+    }
+
+
+    private Map<String, Object> result(String purl, String status) {
+        Map<String, Object> rv = new HashMap<>();
+        rv.put("purl", purl);
+        rv.put("status", status);
+        return rv;
+    }
+
+
+    private Map<String, Object> toResult(
+            PackageURL purl,
+            String status,
+            CoordinateOutcome outcome,
+            boolean includeHistory
+    ) {
+        var rv = result(purl.toString(), status);
+        if (outcome.error() != null && status.equals(STATUS_ERROR)) { rv.put("error", outcome.error().toString()); }
+        var metadata = outcome.metadata();
+        if (metadata == null) { return rv; }
+
+        rv.put("latestVersion", metadata.latestVersion.version);
+        rv.put("latestVersionPublishedAt", metadata.latestVersion.releaseTimestamp.toString());
+
+        // same numbers an enrichment writes to the package record, -1 for a version the history doesn't have. see 
+        // PackageIndexService.computePackageUpdates
+        var version = purl.getVersion();
+        if (version != null && !version.isEmpty()) {
+            var versionsBehind = PackageIndexService.versionsBehind(version, metadata.packageHistory);
+            if (versionsBehind != -1) {
+                rv.put("versionPublishedAt", metadata.packageHistory.get(versionsBehind).releaseTimestamp.toString());
+            }
+            var versionDiffs = PackageIndexService.getVersionDifferences(
+                version,
+                metadata.latestVersion.version,
+                metadata.packageHistory
+            );
+            rv.put("versionsBehind", versionsBehind);
+            rv.put("majorVersionsBehind", versionDiffs[0]);
+            rv.put("minorVersionsBehind", versionDiffs[1]);
+            rv.put("patchVersionsBehind", versionDiffs[2]);
+        }
+
+        if (includeHistory) {
+            var versions = new ArrayList<Map<String, String>>();
+            for (var entry : metadata.packageHistory) {
+                versions.add(Map.of("version", entry.version, "publishedAt", entry.releaseTimestamp.toString()));
+            }
+            rv.put("versions", versions);
+        }
+        return rv;
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.patchfox.package_index_service.services;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.PackageAccessTracker;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter.BackgroundBudget;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter.BackgroundBudgetExhaustedException;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * re-fetches frequently requested package coordinates shortly before their package records fall out of the 
+ * freshness window so that live events don't have to pay the package index latency for them. 
+ * 
+ * this is strictly background work. every request a run sends is charged to a per-registry request budget, and 
+ * RegistryConcurrencyLimiter only gives those requests a capped share of each package index's limit, behind any live 
+ * request that's waiting. so a run keeps going alongside live events instead of stopping whenever one is in flight.
+ */
+@Slf4j
+@Component
+public class RefreshAheadService {
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    PackageAccessTracker accessTracker;
+
+    @Autowired
+    PackageIndexService packageIndexService;
+
+    @Autowired
+    ChangeFeedService changeFeedService;
+
+    @Autowired
+    RegistryConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+
+    @Scheduled(
+        initialDelayString = "${package-index.refresh-ahead.interval}",
+        fixedDelayString = "${package-index.refresh-ahead.interval}"
+    )
+    public void refreshHotCoordinates() {
+        if ( !env.isRefreshAheadEnabled() ) { return; }
+
+        var hotCoordinates = accessTracker.decayAndRank(
+            env.getRefreshAheadHalfLife(), 
+            env.getRefreshAheadMinScore()
+        );
+        log.debug(
+            "{} of {} tracked coordinates are hot", 
+            hotCoordinates.size(), 
+            accessTracker.getTrackedCoordinateCount()
+        );
+        if (hotCoordinates.isEmpty()) { return; }
+
+        // anything last enriched before this point will expire before the next run gets a chance to look at it
+        var refreshBefore = Instant.now()
+                                   .minus(env.getFreshnessWindow())
+                                   .plus(env.getRefreshAheadLeadTime());
+
+        var txid = UUID.randomUUID();
+        var budget = new BackgroundBudget(env.getRefreshAheadRegistryBudget());
+        var refreshed = 0;
+        for (var coordinate : hotCoordinates) {
+            if (budget.isExhausted(coordinate.type())) { continue; }
+
+            var lastEnrichedAt = getOldestEnrichmentTime(coordinate);
+            if (lastEnrichedAt == null) { continue; }
+            // a coordinate the change feed reported since it was enriched is already stale, however recently that was 
+            var lastEnrichedAtUtc = lastEnrichedAt.atZone(ZoneOffset.UTC);
+            var changed = ChangeFeedService.changedSince(changeFeedService.lastChangedAt(coordinate), lastEnrichedAtUtc);
+            if ( !changed && lastEnrichedAt.isAfter(refreshBefore)) { continue; }
+            // nothing to get ahead of if the change feed says the package hasn't changed 
+            if ( !changed && changeFeedService.isKnownCurrent(coordinate.type(), lastEnrichedAtUtc)) { continue; }
+
+            if (refresh(txid, coordinate, budget)) { refreshed++; }
+        }
+
+        log.info(
+            "refresh-ahead run complete. refreshed {} coordinates. registry requests spent: {}", 
+            refreshed, 
+            budget.toMap()
+        );
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     * 
+     * @param txid
+     * @param coordinate
+     * @param budget every request the refresh sends is charged to this
+     * @return true if the package records for the coordinate were updated 
+     */
+    private boolean refresh(UUID txid, PackageCoordinate coordinate, BackgroundBudget budget) {
+        try {
+            var metadata = concurrencyLimiter.runInBackground(budget, () -> packageIndexService.fetchPackageMetadata(
+                txid, 
+                coordinate.type(), 
+                coordinate.namespace(), 
+                coordinate.name()
+            ));
+            if (metadata == null || metadata.packageHistory.isEmpty()) { return false; }
+
+            var result = packageIndexService.updatePackageRecords(
+                coordinate.type(), 
+                coordinate.namespace(), 
+                coordinate.name(), 
+                metadata, 
+                true
+            );
+            log.info("refreshed {} package records for hot coordinate: {}", result.updatedIds.size(), coordinate);
+            return true;
+        } catch (BackgroundBudgetExhaustedException e) {
+            log.debug("refresh-ahead ran out of budget part way through coordinate: {}", coordinate);
+            return false;
+        } catch (Exception e) {
+            log.warn("refresh-ahead failed for coordinate: {} because: {}", coordinate, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * 
+     * @param coordinate
+     * @return when the least recently enriched package record for the coordinate was enriched, or null if none has 
+     *         been enriched yet 
+     */
+    private Instant getOldestEnrichmentTime(PackageCoordinate coordinate) {
+        var oldest = jdbcTemplate.queryForObject(
+            "SELECT MIN(updated_at) FROM package " +
+            "WHERE type = ? AND namespace IS NOT DISTINCT FROM ? AND name = ? AND most_recent_version IS NOT NULL",
+            Timestamp.class,
+            coordinate.type(),
+            coordinate.namespace(),
+            coordinate.name()
+        );
+        return oldest == null ? null : oldest.toInstant();
+    }
+
+}
@@ -0,0 +1,175 @@
+package io.patchfox.package_index_service.services;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.importers.RegistryDumpReader;
+import io.patchfox.package_index_service.importers.SpillingCoordinateSorter;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository.StoredVersionHistory;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageMetadata;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * loads a package index bulk artifact from local disk into the version history store and updates the package records 
+ * of every coordinate in it we already know about. this is how a new tenant gets backfilled without making hundreds 
+ * of thousands of rate limited package index requests. 
+ * 
+ * dumps aren't ordered by coordinate, so the reader's output goes through a SpillingCoordinateSorter that keeps at most 
+ * "package-index.import.sort-buffer-versions" versions in memory and spills sorted runs to disk beyond that. each 
+ * coordinate's history comes out of the merge in one piece and goes straight into a batch. batches are written by 
+ * "package-index.import.parallelism" workers with only a couple of batches per worker queued, so memory stays flat 
+ * no matter how big the dump is. 
+ * 
+ * see RegistryDumpImportRunner for how an import is run. 
+ */
+@Slf4j
+@Component
+public class RegistryDumpImportService {
+
+    public record ImportSummary(
+        String format, 
+        int coordinates, 
+        long versions, 
+        int packageCoordinatesUpdated, 
+        Duration elapsed
+    ) {}
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    List<RegistryDumpReader> readers;
+
+    @Autowired
+    PackageVersionHistoryRepository versionHistoryRepository;
+
+    @Autowired
+    PackageIndexService packageIndexService;
+
+
+    /**
+     * 
+     * @param format one of the formats supported by the registered RegistryDumpReaders, eg: "crates"
+     * @param path
+     * @param snapshotTime when the dump was taken. stored as the fetch time of every history in it 
+     * @return
+     * @throws Exception
+     */
+    public ImportSummary importDump(String format, Path path, Instant snapshotTime) throws Exception {
+        var reader = readers.stream()
+                            .filter(r -> r.getFormat().equals(format))
+                            .findFirst()
+                            .orElseThrow(() -> new IllegalArgumentException("unsupported dump format: " + format));
+
+        var startedAt = System.nanoTime();
+        log.info("importing {} dump: {} taken at: {}", format, path, snapshotTime);
+
+        var spillDirectory = env.getImportSpillDirectory() == null || env.getImportSpillDirectory().isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"))
+                : Path.of(env.getImportSpillDirectory());
+        var batchSize = env.getImportBatchSize();
+        var parallelism = env.getImportParallelism();
+        var inFlight = new Semaphore(parallelism * 2);
+        var batchesDone = new AtomicInteger();
+        var updated = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        var executor = Executors.newFixedThreadPool(parallelism);
+        try (var sorter = new SpillingCoordinateSorter(env.getImportSortBufferVersions(), spillDirectory)) {
+            reader.read(path, sorter);
+            log.info("read {} versions from: {}", sorter.getVersionCount(), path);
+
+            Map<PackageCoordinate, List<VersionMetadata>> batch = new HashMap<>();
+            Runnable submitBatch = () -> {
+                var toImport = Map.copyOf(batch);
+                batch.clear();
+                inFlight.acquireUninterruptibly();
+                futures.add(executor.submit(() -> {
+                    try {
+                        updated.addAndGet(importBatch(reader.getPackageType(), toImport, snapshotTime));
+                        var done = batchesDone.incrementAndGet();
+                        if (done % 100 == 0) { log.info("imported {} batches", done); }
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            };
+
+            var coordinates = sorter.drain((coordinate, versions) -> {
+                batch.put(coordinate, versions);
+                if (batch.size() >= batchSize) { submitBatch.run(); }
+            });
+            if ( !batch.isEmpty()) { submitBatch.run(); }
+            for (var future : futures) { future.get(); }
+
+            var summary = new ImportSummary(
+                format, 
+                coordinates, 
+                sorter.getVersionCount(), 
+                updated.get(), 
+                Duration.ofNanos(System.nanoTime() - startedAt)
+            );
+            log.info("import complete: {}", summary);
+            return summary;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     * 
+     * @return number of coordinates whose package records were updated 
+     */
+    private int importBatch(
+            String packageType,
+            Map<PackageCoordinate, List<VersionMetadata>> histories,
+            Instant snapshotTime
+    ) {
+        List<StoredVersionHistory> stored = new ArrayList<>(histories.size());
+        Map<PackageCoordinate, PackageMetadata> metadataByCoordinate = new HashMap<>();
+        for (var entry : histories.entrySet()) {
+            var packageHistory = entry.getValue();
+            // newest to oldest, same as the operators produce 
+            packageHistory.sort((a, b) -> b.releaseTimestamp.compareTo(a.releaseTimestamp));
+            var history = new StoredVersionHistory(
+                entry.getKey(), 
+                packageHistory, 
+                snapshotTime, 
+                PackageVersionHistoryRepository.SOURCE_IMPORT,
+                null,
+                null
+            );
+            stored.add(history);
+            metadataByCoordinate.put(entry.getKey(), history.toPackageMetadata());
+        }
+        versionHistoryRepository.saveAll(stored);
+
+        // one read of the batch's package records and one transaction of UPDATEs. coordinates we have no records for 
+        // just don't come back 
+        return packageIndexService.updatePackageRecords(packageType, metadataByCoordinate, false);
+    }
+
+}
@@ -10,6 +10,7 @@ import java.util.stream.Collectors;
 
 import org.apache.catalina.connector.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Component;
@@ -35,8 +36,9 @@ public class RestInfoService {
     @Autowired
     private Jackson2ObjectMapperBuilder mapperBuilder;
 
+    // actuator registers its own RequestMappingHandlerMapping so we have to ask for the one serving our controllers 
     @Autowired
-    public RestInfoService(RequestMappingHandlerMapping handlerMapping) {
+    public RestInfoService(@Qualifier("requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping) {
         this.handlerMapping = handlerMapping;
     }
 
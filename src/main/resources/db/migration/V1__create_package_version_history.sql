@@ -0,0 +1,12 @@
+-- parsed version history per package coordinate, newest version first. namespace is '' rather than NULL for 
+-- packages without one so it can be part of the primary key 
+CREATE TABLE IF NOT EXISTS package_version_history (
+    type            VARCHAR(64)   NOT NULL,
+    namespace       VARCHAR(512)  NOT NULL DEFAULT '',
+    name            VARCHAR(512)  NOT NULL,
+    history         BYTEA         NOT NULL,
+    version_count   INTEGER       NOT NULL,
+    source          VARCHAR(32)   NOT NULL,
+    fetched_at      TIMESTAMPTZ   NOT NULL,
+    PRIMARY KEY (type, namespace, name)
+);
@@ -0,0 +1,4 @@
+-- http validators returned with the index response a history was parsed from. sent back as If-None-Match / 
+-- If-Modified-Since so an unchanged package costs a 304 instead of a full download and re-parse 
+ALTER TABLE package_version_history ADD COLUMN IF NOT EXISTS etag VARCHAR(512);
+ALTER TABLE package_version_history ADD COLUMN IF NOT EXISTS last_modified VARCHAR(64);
@@ -0,0 +1,16 @@
+-- how far a datasource event enrichment got. an event's purls are grouped by package coordinate and the coordinates 
+-- are worked through in package id order. a row is written after each chunk of coordinates is committed, so a 
+-- redelivered event picks up at next_offset instead of starting over. coordinates_planned and next_offset both count 
+-- coordinates, not purls. the row is deleted once the event is done. coordinate_digest is a hash of the event's 
+-- coordinates in the order they're worked through, a checkpoint is only resumed by an attempt that would work through 
+-- exactly the same list
+CREATE TABLE IF NOT EXISTS enrichment_checkpoint (
+    datasource_event_id  BIGINT        PRIMARY KEY,
+    txid                 UUID          NOT NULL,
+    coordinates_planned  INTEGER       NOT NULL,
+    coordinate_digest    TEXT          NOT NULL,
+    next_offset          INTEGER       NOT NULL,
+    failed_purls         TEXT[]        NOT NULL DEFAULT '{}',
+    record_created       BOOLEAN       NOT NULL DEFAULT false,
+    updated_at           TIMESTAMPTZ   NOT NULL
+);
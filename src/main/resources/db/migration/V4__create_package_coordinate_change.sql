@@ -0,0 +1,13 @@
+-- package coordinates a change feed reported as changed and when it did. records and version histories for a 
+-- coordinate from before its changed_at are stale. this is how change feeds mark things stale without touching 
+-- package.updated_at, which belongs to db-entities and is read by other services. namespace is '' rather than NULL 
+-- for packages without one, the same as package_version_history 
+CREATE TABLE IF NOT EXISTS package_coordinate_change (
+    type        VARCHAR(64)   NOT NULL,
+    namespace   VARCHAR(512)  NOT NULL DEFAULT '',
+    name        VARCHAR(512)  NOT NULL,
+    changed_at  TIMESTAMPTZ   NOT NULL,
+    PRIMARY KEY (type, namespace, name)
+);
+
+CREATE INDEX IF NOT EXISTS package_coordinate_change_changed_at_idx ON package_coordinate_change (changed_at);
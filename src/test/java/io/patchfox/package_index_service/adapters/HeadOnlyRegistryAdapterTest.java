@@ -0,0 +1,109 @@
+package io.patchfox.package_index_service.adapters;
+
+import static io.patchfox.package_index_service.adapters.RegistryAdapterParseTest.ok;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+class HeadOnlyRegistryAdapterTest {
+
+    private final GolangProxyAdapter golang = new GolangProxyAdapter();
+    private final MavenCentralAdapter maven = new MavenCentralAdapter();
+
+    @Test
+    void golangHeadCheckIsTheVersionList() throws Exception {
+        assertThat(golang.headUri("github.com/spf13", "cobra")).isEqualTo(golang.lookupUri("github.com/spf13", "cobra"));
+    }
+
+    @Test
+    void golangNoticesABackport() {
+        // 1.2.10 came out after 2.0.0 and the latest by semver is still 2.0.0
+        var stored = history("v2.0.0", "v1.2.9", "v1.2.8");
+
+        assertThat(golang.isUnchanged(ok("v1.2.8\nv1.2.9\nv1.2.10\nv2.0.0\n"), stored)).isFalse();
+    }
+
+    @Test
+    void golangIgnoresWhichVersionIsNewest() {
+        // newest by time first, which isn't the highest version. the list is the same so nothing was published
+        var stored = history("v1.2.10", "v2.0.0", "v1.2.9");
+
+        assertThat(golang.isUnchanged(ok("v1.2.9\nv1.2.10\nv2.0.0\n"), stored)).isTrue();
+    }
+
+    @Test
+    void golangAnEmptyListVouchesForNothing() {
+        assertThat(golang.isUnchanged(ok("\n"), history("v1.0.0"))).isFalse();
+    }
+
+    @Test
+    void mavenHeadCheckIsTheSummaryQuery() throws Exception {
+        assertThat(maven.headUri("com.fasterxml.jackson.core", "jackson-databind")).isEqualTo(URI.create(
+            "https://search.maven.org/solrsearch/select?q=g:com.fasterxml.jackson.core+AND+a:jackson-databind" +
+            "&rows=1&wt=json"
+        ));
+    }
+
+    @Test
+    void mavenNoticesABackport() {
+        // the latest version stays 2.0.0, only the count moves
+        var stored = history("2.0.0", "1.2.9", "1.2.8");
+
+        assertThat(maven.isUnchanged(summary("2.0.0", 4), stored)).isFalse();
+    }
+
+    @Test
+    void mavenMatchesOnCountAndLatestVersion() {
+        var stored = history("1.2.10", "2.0.0", "1.2.9");
+
+        assertThat(maven.isUnchanged(summary("2.0.0", 3), stored)).isTrue();
+        assertThat(maven.isUnchanged(summary("2.0.1", 3), stored)).isFalse();
+    }
+
+    @Test
+    void mavenACappedHistoryIsNeverVouchedFor() {
+        var versions = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) { versions.add("1.0." + i); }
+
+        assertThat(maven.isUnchanged(summary("1.0.199", 250), history(versions.toArray(String[]::new)))).isFalse();
+    }
+
+    @Test
+    void mavenNoDocsVouchesForNothing() {
+        assertThat(maven.isUnchanged(ok("{\"response\":{\"numFound\":0,\"docs\":[]}}"), history("1.0.0"))).isFalse();
+        assertThat(maven.isUnchanged(ok("{\"response\":{\"docs\":[{\"id\":\"a:b\"}]}}"), history("1.0.0"))).isFalse();
+    }
+
+
+    //
+    // helpers
+    //
+
+    static ApiResponse summary(String latestVersion, int versionCount) {
+        return ok(
+            "{\"response\":{\"numFound\":1,\"docs\":[{\"id\":\"a:b\",\"latestVersion\":\"" + latestVersion + "\"," +
+            "\"versionCount\":" + versionCount + "}]}}"
+        );
+    }
+
+    // newest first, a day apart
+    static List<VersionMetadata> history(String... versions) {
+        var rv = new ArrayList<VersionMetadata>();
+        var publishedAt = ZonedDateTime.parse("2024-01-01T00:00:00Z");
+        for (var version : versions) {
+            rv.add(new VersionMetadata(version, publishedAt));
+            publishedAt = publishedAt.minusDays(1);
+        }
+        return rv;
+    }
+
+}
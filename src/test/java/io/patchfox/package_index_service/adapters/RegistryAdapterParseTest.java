@@ -0,0 +1,202 @@
+package io.patchfox.package_index_service.adapters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.catalina.connector.Response;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.IndexQueryContext;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * every adapter against its sample in src/jmh/resources/corpus, the same files RegistryAdapterBenchmark parses. read
+ * from the source tree because the corpus is only on the classpath under the benchmarks profile
+ */
+class RegistryAdapterParseTest {
+
+    private static final Path CORPUS = Path.of("src/jmh/resources/corpus");
+
+    @Test
+    void mavenCentral() throws Exception {
+        var history = parse(new MavenCentralAdapter(), "com.fasterxml.jackson.core", "jackson-databind", "maven.json");
+
+        assertThat(versions(history)).containsExactly("2.17.1", "2.17.0", "2.16.2", "2.16.1", "2.16.0");
+        assertThat(history.get(0).releaseTimestamp.toInstant()).isEqualTo(Instant.ofEpochMilli(1715269523000L));
+    }
+
+    @Test
+    void npm() throws Exception {
+        var history = parse(new NpmRegistryAdapter(), null, "left-pad", "npm.json");
+
+        // created and modified live in "time" too, they aren't versions
+        assertThat(versions(history)).containsExactly("1.3.0", "1.2.0", "1.1.3", "1.1.2", "1.1.1", "1.1.0", "1.0.0");
+        assertThat(history.get(0).releaseTimestamp.toInstant()).isEqualTo(Instant.parse("2018-04-09T06:38:40.062Z"));
+        assertThat(history.get(6).releaseTimestamp.toInstant()).isEqualTo(Instant.parse("2016-03-25T17:37:54.526Z"));
+    }
+
+    @Test
+    void pypi() throws Exception {
+        var history = parse(new PypiAdapter(), null, "requests", "pypi.json");
+
+        // 2.32.4.dev0 has no files so there's nothing to date it by
+        assertThat(versions(history)).containsExactly("2.32.3", "2.32.2", "2.32.1", "2.32.0", "2.31.0");
+        assertThat(history.get(0).releaseTimestamp.toInstant())
+            .isEqualTo(Instant.parse("2024-05-29T15:37:47.027372Z"));
+    }
+
+    @Test
+    void rubyGems() throws Exception {
+        var history = parse(new RubyGemsAdapter(), null, "rails", "gem.json");
+
+        assertThat(versions(history)).containsExactly("7.1.3.4", "7.1.3.3", "7.1.3.2", "7.1.3", "7.1.2");
+        assertThat(history.get(0).releaseTimestamp.toInstant()).isEqualTo(Instant.parse("2024-06-04T18:56:09.818Z"));
+    }
+
+    @Test
+    void packagist() throws Exception {
+        var history = parse(new PackagistAdapter(), "symfony", "console", "composer.json");
+
+        assertThat(versions(history)).containsExactly("v7.0.8", "v7.0.7", "v7.0.6", "v7.0.4", "v7.0.3");
+        assertThat(history.get(0).releaseTimestamp.toInstant())
+            .isEqualTo(ZonedDateTime.parse("2024-05-31T14:57:53+00:00").toInstant());
+    }
+
+    @Test
+    void cratesIo() throws Exception {
+        var history = parse(new CratesIoAdapter(), null, "serde", "cargo.json");
+
+        assertThat(versions(history)).containsExactly("1.0.203", "1.0.202", "1.0.201", "1.0.200", "1.0.199");
+        assertThat(history.get(0).releaseTimestamp.toInstant())
+            .isEqualTo(ZonedDateTime.parse("2024-05-25T20:04:16.563432+00:00").toInstant());
+    }
+
+    @Test
+    void nuget() throws Exception {
+        var history = parse(new NugetAdapter(), null, "Newtonsoft.Json", "nuget.json");
+
+        assertThat(versions(history)).containsExactly("13.0.3", "13.0.2", "13.0.1");
+        assertThat(history.get(0).releaseTimestamp.toInstant())
+            .isEqualTo(ZonedDateTime.parse("2023-03-08T07:42:54.647+00:00").toInstant());
+        assertThat(history.get(2).releaseTimestamp.toInstant())
+            .isEqualTo(ZonedDateTime.parse("2021-03-22T20:10:30.15+00:00").toInstant());
+    }
+
+    @Test
+    void golangProxy() throws Exception {
+        var infos = new JSONObject(read("golang.info.json"));
+        var requested = new ArrayList<URI>();
+        RegistryAdapter.RegistryClient client = (txid, type, uri) -> {
+            requested.add(uri);
+            var path = uri.getPath();
+            var version = path.substring(path.lastIndexOf('/') + 1, path.length() - ".info".length());
+            return ok(infos.getJSONObject(version).toString());
+        };
+
+        var adapter = new GolangProxyAdapter();
+        var queryContext = context("github.com/spf13", "cobra");
+        var history = adapter.parseVersionHistory(ok(read("golang.list")), queryContext, client);
+        PackageIndexService.sortNewestFirst(history);
+
+        assertThat(versions(history)).containsExactly("v1.9.0", "v1.8.1", "v1.8.0", "v1.7.2", "v1.7.1", "v1.7.0");
+        assertThat(history.get(0).releaseTimestamp.toInstant()).isEqualTo(Instant.parse("2022-01-10T20:03:28Z"));
+        assertThat(requested).hasSize(6)
+                             .contains(URI.create("https://proxy.golang.org/github.com/spf13/cobra/@v/v1.9.0.info"));
+    }
+
+    @Test
+    void golangSkipsVersionsWithoutInfo() throws Exception {
+        RegistryAdapter.RegistryClient client = (txid, type, uri) -> {
+            if (uri.getPath().endsWith("v1.0.1.info")) { return status(Response.SC_GONE); }
+            return ok("{\"Version\":\"v1.0.0\",\"Time\":\"2020-01-01T00:00:00Z\"}");
+        };
+
+        var history = new GolangProxyAdapter().parseVersionHistory(
+            ok("v1.0.0\nv1.0.1\n\n"),
+            context("github.com/example", "mod"),
+            client
+        );
+
+        assertThat(versions(history)).containsExactly("v1.0.0");
+    }
+
+    @Test
+    void anEmptyResponseParsesToNothing() throws Exception {
+        var client = (RegistryAdapter.RegistryClient) (txid, type, uri) -> { throw new AssertionError(uri); };
+
+        assertThat(new GolangProxyAdapter().parseVersionHistory(ok(""), context("github.com/a", "b"), client))
+            .isEmpty();
+        assertThat(new MavenCentralAdapter().parseVersionHistory(
+            ok("{\"response\":{\"numFound\":0,\"docs\":[]}}"),
+            context("com.example", "missing"),
+            client
+        )).isEmpty();
+    }
+
+
+    //
+    // helpers
+    //
+
+    static ApiResponse ok(String body) {
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(Map.of("response", body))
+                          .build();
+    }
+
+    static ApiResponse status(int code) {
+        return ApiResponse.builder()
+                          .code(code)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(Map.of())
+                          .build();
+    }
+
+    static String read(String fileName) {
+        try {
+            return Files.readString(CORPUS.resolve(fileName));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<String> versions(List<VersionMetadata> history) {
+        return history.stream().map(v -> v.version).toList();
+    }
+
+    private static IndexQueryContext context(String namespace, String name) {
+        return new IndexQueryContext(UUID.randomUUID(), namespace, name, URI.create("http://localhost/test"));
+    }
+
+    private static List<VersionMetadata> parse(
+            RegistryAdapter adapter,
+            String namespace,
+            String name,
+            String fileName
+    ) throws Exception {
+        var client = (RegistryAdapter.RegistryClient) (txid, type, uri) -> { throw new AssertionError(uri); };
+        var history = adapter.parseVersionHistory(ok(read(fileName)), context(namespace, name), client);
+        PackageIndexService.sortNewestFirst(history);
+        return history;
+    }
+
+}
@@ -0,0 +1,224 @@
+package io.patchfox.package_index_service.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class NegativeCacheTest {
+
+    private NegativeCache cache;
+    private SimpleMeterRegistry meterRegistry;
+    private boolean enabled = true;
+    private List<String> skipPatterns = List.of();
+    private Duration ttl = Duration.ofHours(1);
+    private int maxEntries = 1000;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new NegativeCache();
+        cache.meterRegistry = meterRegistry;
+        cache.logSampler = mock(LogSampler.class);
+        cache.env = new EnvironmentComponent() {
+            @Override
+            public boolean isNegativeCacheEnabled() { return enabled; }
+
+            @Override
+            public List<String> getNegativeCacheSkipPatterns() { return skipPatterns; }
+
+            @Override
+            public Duration getNegativeCacheTtl() { return ttl; }
+
+            @Override
+            public int getNegativeCacheMaxEntries() { return maxEntries; }
+
+            @Override
+            public double getNegativeCacheFalsePositiveRate() { return 0.01; }
+        };
+    }
+
+    @Test
+    void theBloomFilterNeverForgetsAFingerprint() {
+        var filter = new NegativeCache.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) { filter.put(NegativeCache.fingerprint(npm(null, "present-" + i))); }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(NegativeCache.fingerprint(npm(null, "present-" + i)))).isTrue();
+        }
+
+        // sized for 1%, allow some slack so this never flakes
+        var falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(NegativeCache.fingerprint(npm(null, "absent-" + i)))) { falsePositives++; }
+        }
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    void aMissingCoordinateIsSkippedUntilItExpires() {
+        cache.init();
+        var missing = npm(null, "left-pad-but-private");
+        var other = npm(null, "left-pad");
+
+        assertThat(cache.skipReason(missing)).isNull();
+        cache.recordMissing(missing);
+        assertThat(cache.skipReason(missing)).isEqualTo(NegativeCache.REASON_MISSING);
+        assertThat(cache.skipReason(other)).isNull();
+    }
+
+    @Test
+    void anExpiredCoordinateIsLookedUpAgain() {
+        cache.init();
+        var missing = npm(null, "left-pad-but-private");
+
+        // already expired when it's recorded, so there's no sleeping for a ttl to run out
+        ttl = Duration.ofSeconds(-1);
+        cache.recordMissing(missing);
+
+        assertThat(cache.skipReason(missing)).isNull();
+        assertThat(entriesGauge()).isZero();
+    }
+
+    @Test
+    void sweepingRebuildsTheFilterFromWhatsLeft() {
+        cache.init();
+        var expired = new ArrayList<PackageCoordinate>();
+        ttl = Duration.ofSeconds(-1);
+        for (int i = 0; i < 100; i++) {
+            var coordinate = npm(null, "expired-" + i);
+            expired.add(coordinate);
+            cache.recordMissing(coordinate);
+        }
+        ttl = Duration.ofHours(1);
+        var kept = npm(null, "kept");
+        cache.recordMissing(kept);
+        assertThat(entriesGauge()).isEqualTo(101);
+
+        var before = cache.filter;
+        cache.sweep();
+
+        assertThat(cache.filter).isNotSameAs(before);
+        assertThat(entriesGauge()).isEqualTo(1);
+        assertThat(cache.filter.mightContain(NegativeCache.fingerprint(kept))).isTrue();
+        assertThat(cache.skipReason(kept)).isEqualTo(NegativeCache.REASON_MISSING);
+
+        // the old filter had every one of these, the rebuilt one is sized for 1000 and only holds one fingerprint
+        var stillInFilter = expired.stream()
+                                   .filter(c -> cache.filter.mightContain(NegativeCache.fingerprint(c)))
+                                   .count();
+        assertThat(stillInFilter).isLessThan(5);
+        for (var coordinate : expired) { assertThat(cache.skipReason(coordinate)).isNull(); }
+    }
+
+    @Test
+    void sweepingWithNothingExpiredKeepsTheFilter() {
+        cache.init();
+        cache.recordMissing(npm(null, "kept"));
+
+        var before = cache.filter;
+        cache.sweep();
+
+        assertThat(cache.filter).isSameAs(before);
+    }
+
+    @Test
+    void skipPatternsMatchNpmScopes() {
+        skipPatterns = List.of("npm:@ourco/*", " maven : com.ourco*/* ", "");
+        cache.init();
+
+        assertThat(cache.skipReason(npm("@ourco", "widgets"))).isEqualTo(NegativeCache.REASON_PATTERN);
+        assertThat(cache.skipReason(npm("@ourco", "ui-kit"))).isEqualTo(NegativeCache.REASON_PATTERN);
+        assertThat(cache.skipReason(npm("@ourcompany", "widgets"))).isNull();
+        assertThat(cache.skipReason(npm("@other", "widgets"))).isNull();
+        assertThat(cache.skipReason(npm(null, "ourco"))).isNull();
+
+        assertThat(cache.skipReason(maven("com.ourco", "billing"))).isEqualTo(NegativeCache.REASON_PATTERN);
+        assertThat(cache.skipReason(maven("com.ourco.payments", "ledger"))).isEqualTo(NegativeCache.REASON_PATTERN);
+        assertThat(cache.skipReason(maven("org.apache.commons", "commons-lang3"))).isNull();
+
+        // a pattern only applies to its own package type
+        assertThat(cache.skipReason(new PackageCoordinate("cargo", "@ourco", "widgets"))).isNull();
+    }
+
+    @Test
+    void globCharactersAreTheOnlyWildcards() {
+        skipPatterns = List.of("npm:@our.co/pkg-?");
+        cache.init();
+
+        assertThat(cache.skipReason(npm("@our.co", "pkg-a"))).isEqualTo(NegativeCache.REASON_PATTERN);
+        assertThat(cache.skipReason(npm("@ourXco", "pkg-a"))).isNull();
+        assertThat(cache.skipReason(npm("@our.co", "pkg-ab"))).isNull();
+    }
+
+    @Test
+    void aSkipPatternWithoutAPackageTypeIsRejected() {
+        skipPatterns = List.of("@ourco/*");
+
+        assertThatThrownBy(cache::init).isInstanceOf(IllegalStateException.class)
+                                       .hasMessageContaining("@ourco/*");
+    }
+
+    @Test
+    void aFullCacheStopsRememberingNewCoordinates() {
+        maxEntries = 2;
+        cache.init();
+        var first = npm(null, "first");
+        var second = npm(null, "second");
+        var third = npm(null, "third");
+
+        cache.recordMissing(first);
+        cache.recordMissing(second);
+        cache.recordMissing(third);
+
+        assertThat(entriesGauge()).isEqualTo(2);
+        assertThat(cache.skipReason(first)).isEqualTo(NegativeCache.REASON_MISSING);
+        assertThat(cache.skipReason(second)).isEqualTo(NegativeCache.REASON_MISSING);
+        assertThat(cache.skipReason(third)).isNull();
+
+        // a coordinate already held can still be refreshed
+        cache.recordMissing(first);
+        assertThat(entriesGauge()).isEqualTo(2);
+        assertThat(cache.skipReason(first)).isEqualTo(NegativeCache.REASON_MISSING);
+    }
+
+    @Test
+    void nothingIsSkippedWhenDisabled() {
+        skipPatterns = List.of("npm:@ourco/*");
+        cache.init();
+        var missing = npm(null, "left-pad-but-private");
+        cache.recordMissing(missing);
+
+        enabled = false;
+        assertThat(cache.skipReason(missing)).isNull();
+        assertThat(cache.skipReason(npm("@ourco", "widgets"))).isNull();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static PackageCoordinate npm(String namespace, String name) {
+        return new PackageCoordinate("npm", namespace, name);
+    }
+
+    private static PackageCoordinate maven(String namespace, String name) {
+        return new PackageCoordinate("maven", namespace, name);
+    }
+
+    private double entriesGauge() {
+        return meterRegistry.get("patchfox.negative_cache.entries").gauge().value();
+    }
+
+}
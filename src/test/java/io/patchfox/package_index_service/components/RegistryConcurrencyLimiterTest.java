@@ -0,0 +1,284 @@
+package io.patchfox.package_index_service.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter.BackgroundBudget;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter.BackgroundBudgetExhaustedException;
+
+
+class RegistryConcurrencyLimiterTest {
+
+    private static final String NPM = "npm";
+    private static final long FAST = Duration.ofMillis(20).toNanos();
+
+    private RegistryConcurrencyLimiter limiter;
+    private SimpleMeterRegistry meterRegistry;
+    private int initial = 4;
+    private int max = 8;
+    private double registryShare = 0.5;
+    private final List<Thread> threads = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new RegistryConcurrencyLimiter();
+        limiter.meterRegistry = meterRegistry;
+        limiter.registryAdapters = List.of();
+        limiter.env = new EnvironmentComponent() {
+            @Override
+            public boolean isRegistryLimitsEnabled() { return true; }
+
+            @Override
+            public int getRegistryLimitInitial() { return initial; }
+
+            @Override
+            public int getRegistryLimitMin() { return 1; }
+
+            @Override
+            public int getRegistryLimitMax() { return max; }
+
+            @Override
+            public double getRegistryLimitBackoffRatio() { return 0.5; }
+
+            @Override
+            public double getRegistryLimitLatencyTolerance() { return 2.0; }
+
+            @Override
+            public double getRefreshAheadRegistryShare() { return registryShare; }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    @Test
+    void growsByAboutOnePerLimitsWorthOfGoodResponses() throws Exception {
+        // each round fills the limit and drains it, which is a limit's worth of requests at full use
+        for (int round = 0; round < 3; round++) { fillAndDrain(200, FAST); }
+
+        assertThat(limit()).isBetween(5.0, 6.0);
+    }
+
+    @Test
+    void neverGrowsPastTheMax() throws Exception {
+        max = 5;
+        for (int round = 0; round < 20; round++) { fillAndDrain(200, FAST); }
+
+        assertThat(limit()).isEqualTo(5.0);
+    }
+
+    @Test
+    void anIdleIndexDoesntGrow() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire(NPM);
+            limiter.release(NPM, 200, FAST);
+        }
+
+        assertThat(limit()).isEqualTo(4.0);
+    }
+
+    @Test
+    void aThrottleHalvesTheLimitOncePerRoundTrip() throws Exception {
+        initial = 8;
+        // a slow round trip so the burst below all lands inside it
+        limiter.acquire(NPM);
+        limiter.release(NPM, 200, Duration.ofSeconds(10).toNanos());
+
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(NPM);
+            limiter.release(NPM, 429, FAST);
+        }
+
+        assertThat(limit()).isEqualTo(4.0);
+    }
+
+    @Test
+    void unavailableAndNoAnswerCountAsThrottles() throws Exception {
+        initial = 8;
+        limiter.acquire(NPM);
+        limiter.release(NPM, 503, FAST);
+        assertThat(limit()).isEqualTo(4.0);
+
+        limiter.acquire(NPM);
+        limiter.release(NPM, 0, FAST);
+        assertThat(limit()).isEqualTo(2.0);
+    }
+
+    @Test
+    void climbingLatencyShrinksTheLimitByATenth() throws Exception {
+        initial = 8;
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(NPM);
+            limiter.release(NPM, 200, FAST);
+        }
+
+        limiter.acquire(NPM);
+        limiter.release(NPM, 200, Duration.ofMillis(500).toNanos());
+
+        assertThat(limit()).isEqualTo(7.0);
+    }
+
+    @Test
+    void anAbandonedRequestFreesItsSlotWithoutMovingTheLimit() throws Exception {
+        initial = 1;
+        var acquired = new AtomicBoolean();
+        limiter.acquire(NPM);
+        var waiting = live(acquired);
+        waitUntil(() -> waiting.getState() == Thread.State.WAITING);
+
+        limiter.abandon(NPM);
+
+        waitUntil(acquired::get);
+        assertThat(limit()).isEqualTo(1.0);
+        assertThat(inFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void aSpentBudgetStopsBackgroundRequestsBeforeTheyGoOut() throws Exception {
+        var budget = new BackgroundBudget(2);
+
+        limiter.runInBackground(budget, () -> {
+            for (int i = 0; i < 2; i++) {
+                limiter.acquire(NPM);
+                limiter.release(NPM, 200, FAST);
+            }
+            return null;
+        });
+
+        assertThat(budget.spent(NPM)).isEqualTo(2);
+        assertThat(budget.isExhausted(NPM)).isTrue();
+        assertThatThrownBy(() -> limiter.runInBackground(budget, () -> {
+            limiter.acquire(NPM);
+            return null;
+        })).isInstanceOf(BackgroundBudgetExhaustedException.class);
+        assertThat(budget.spent(NPM)).isEqualTo(2);
+        assertThat(inFlight()).isZero();
+
+        // each package index has its own budget, and live requests don't spend any
+        assertThat(budget.isExhausted("pypi")).isFalse();
+        limiter.acquire(NPM);
+        limiter.release(NPM, 200, FAST);
+        assertThat(budget.spent(NPM)).isEqualTo(2);
+    }
+
+    @Test
+    void backgroundRequestsOnlyGetTheirShare() throws Exception {
+        var budget = new BackgroundBudget(100);
+        var third = new AtomicBoolean();
+
+        for (int i = 0; i < 2; i++) { background(budget, new AtomicBoolean()); }
+        waitUntil(() -> inFlight() == 2);
+        var waiting = background(budget, third);
+        waitUntil(() -> waiting.getState() == Thread.State.WAITING);
+
+        // half of 4, even though there's room under the limit
+        assertThat(third).isFalse();
+        limiter.acquire(NPM);
+        assertThat(inFlight()).isEqualTo(3);
+    }
+
+    @Test
+    void aWaitingLiveRequestGoesBeforeAWaitingBackgroundOne() throws Exception {
+        initial = 2;
+        var budget = new BackgroundBudget(100);
+        var backgroundAcquired = new AtomicBoolean();
+        var liveAcquired = new AtomicBoolean();
+
+        limiter.acquire(NPM);
+        limiter.acquire(NPM);
+        var backgroundThread = background(budget, backgroundAcquired);
+        waitUntil(() -> backgroundThread.getState() == Thread.State.WAITING);
+        var liveThread = live(liveAcquired);
+        waitUntil(() -> liveThread.getState() == Thread.State.WAITING);
+
+        // the background request was waiting first, the freed slot still goes to the live one
+        limiter.release(NPM, 200, FAST);
+        waitUntil(liveAcquired::get);
+        waitUntil(() -> backgroundThread.getState() == Thread.State.WAITING);
+        assertThat(backgroundAcquired).isFalse();
+
+        limiter.release(NPM, 200, FAST);
+        waitUntil(backgroundAcquired::get);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void fillAndDrain(int statusCode, long elapsedNanos) throws InterruptedException {
+        var slots = (int) limit();
+        for (int i = 0; i < slots; i++) { limiter.acquire(NPM); }
+        for (int i = 0; i < slots; i++) { limiter.release(NPM, statusCode, elapsedNanos); }
+    }
+
+    // takes a background slot and holds on to it
+    private Thread background(BackgroundBudget budget, AtomicBoolean acquired) {
+        return start(() -> limiter.runInBackground(budget, () -> {
+            limiter.acquire(NPM);
+            acquired.set(true);
+            return null;
+        }));
+    }
+
+    private Thread live(AtomicBoolean acquired) {
+        return start(() -> {
+            limiter.acquire(NPM);
+            acquired.set(true);
+            return null;
+        });
+    }
+
+    private Thread start(Callable<?> work) {
+        var thread = Thread.ofPlatform().daemon().start(() -> {
+            try {
+                work.call();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        threads.add(thread);
+        return thread;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while ( !condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) { throw new AssertionError("timed out waiting"); }
+            Thread.sleep(5);
+        }
+    }
+
+    private double limit() {
+        // the limit is created on first use
+        if (meterRegistry.find("patchfox.registry.concurrency.limit").gauge() == null) { return initial; }
+        return meterRegistry.get("patchfox.registry.concurrency.limit").tag(EnrichmentMetrics.ECOSYSTEM_TAG, NPM)
+                            .gauge()
+                            .value();
+    }
+
+    private double inFlight() {
+        if (meterRegistry.find("patchfox.registry.concurrency.inflight").gauge() == null) { return 0; }
+        return meterRegistry.get("patchfox.registry.concurrency.inflight").tag(EnrichmentMetrics.ECOSYSTEM_TAG, NPM)
+                            .gauge()
+                            .value();
+    }
+
+}
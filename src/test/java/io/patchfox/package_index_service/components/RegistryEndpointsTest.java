@@ -0,0 +1,132 @@
+package io.patchfox.package_index_service.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class RegistryEndpointsTest {
+
+    private static final String NPM = "npm";
+    private static final URI LEFT_PAD = URI.create("https://registry.npmjs.org/left-pad?write=true");
+    private static final String MIRROR = "https://artifactory.example.com/api/npm/npm-remote";
+    private static final String OTHER_MIRROR = "https://nexus.example.com/repository/npm";
+
+    private RegistryEndpoints registryEndpoints;
+    private List<String> mirrors = List.of(MIRROR + "/", OTHER_MIRROR);
+    private Duration cooldown = Duration.ofHours(1);
+
+    @BeforeEach
+    void setUp() {
+        registryEndpoints = new RegistryEndpoints();
+        registryEndpoints.env = new EnvironmentComponent() {
+            @Override
+            public List<String> getMirrorsFor(String packageType) { return mirrors; }
+
+            @Override
+            public int getMirrorFailureThreshold() { return 2; }
+
+            @Override
+            public Duration getMirrorCooldown() { return cooldown; }
+
+            @Override
+            public Duration getHedgingMinDelay() { return Duration.ofMillis(200); }
+        };
+    }
+
+    @Test
+    void mirrorsComeFirstAndThePublicEndpointLast() {
+        var candidates = registryEndpoints.candidates(NPM, LEFT_PAD);
+
+        assertThat(candidates).extracting(RegistryEndpoints.Endpoint::getBaseUrl)
+                              .containsExactly(MIRROR, OTHER_MIRROR, "https://registry.npmjs.org");
+        assertThat(candidates.get(0).rewrite(LEFT_PAD))
+            .isEqualTo(URI.create(MIRROR + "/left-pad?write=true"));
+        assertThat(candidates.get(2).rewrite(LEFT_PAD)).isSameAs(LEFT_PAD);
+    }
+
+    @Test
+    void aFailingMirrorIsSkippedWhileItCoolsDown() {
+        var mirror = registryEndpoints.candidates(NPM, LEFT_PAD).get(0);
+
+        registryEndpoints.report(NPM, mirror, 503, 1_000);
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD)).contains(mirror);
+
+        registryEndpoints.report(NPM, mirror, 0, 1_000);
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD))
+            .extracting(RegistryEndpoints.Endpoint::getBaseUrl)
+            .containsExactly(OTHER_MIRROR, "https://registry.npmjs.org");
+    }
+
+    @Test
+    void aCooledDownMirrorIsTriedAgain() throws Exception {
+        cooldown = Duration.ofMillis(20);
+        var mirror = registryEndpoints.candidates(NPM, LEFT_PAD).get(0);
+        registryEndpoints.report(NPM, mirror, 429, 1_000);
+        registryEndpoints.report(NPM, mirror, 429, 1_000);
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD)).doesNotContain(mirror);
+
+        Thread.sleep(50);
+
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD).get(0)).isSameAs(mirror);
+    }
+
+    @Test
+    void notFoundIsAnAnswerNotAFailure() {
+        var mirror = registryEndpoints.candidates(NPM, LEFT_PAD).get(0);
+
+        for (int i = 0; i < 5; i++) { registryEndpoints.report(NPM, mirror, 404, 1_000); }
+
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD).get(0)).isSameAs(mirror);
+    }
+
+    @Test
+    void aGoodAnswerResetsTheFailureCount() {
+        var mirror = registryEndpoints.candidates(NPM, LEFT_PAD).get(0);
+
+        registryEndpoints.report(NPM, mirror, 503, 1_000);
+        registryEndpoints.report(NPM, mirror, 200, 1_000);
+        registryEndpoints.report(NPM, mirror, 503, 1_000);
+
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD).get(0)).isSameAs(mirror);
+    }
+
+    @Test
+    void whenEverythingIsCoolingDownTheOneOutLongestGoesFirst() throws Exception {
+        mirrors = List.of(MIRROR);
+        var candidates = registryEndpoints.candidates(NPM, LEFT_PAD);
+        var mirror = candidates.get(0);
+        var publicEndpoint = candidates.get(1);
+
+        registryEndpoints.report(NPM, mirror, 503, 1_000);
+        registryEndpoints.report(NPM, mirror, 503, 1_000);
+        Thread.sleep(5);
+        registryEndpoints.report(NPM, publicEndpoint, 503, 1_000);
+        registryEndpoints.report(NPM, publicEndpoint, 503, 1_000);
+
+        assertThat(registryEndpoints.candidates(NPM, LEFT_PAD)).containsExactly(mirror, publicEndpoint);
+    }
+
+    @Test
+    void theHedgeDelayIsTheRecentP95ButNeverLessThanTheMinimum() {
+        var mirror = registryEndpoints.candidates(NPM, LEFT_PAD).get(0);
+        assertThat(registryEndpoints.hedgeDelay(NPM)).isEqualTo(Duration.ofMillis(200));
+
+        // the p95 is worked out on the first sample and then every 32
+        for (int i = 1; i <= 32; i++) {
+            registryEndpoints.report(NPM, mirror, 200, Duration.ofMillis(i < 30 ? 10 : 900).toNanos());
+        }
+        assertThat(registryEndpoints.hedgeDelay(NPM)).isEqualTo(Duration.ofMillis(900));
+
+        // failures aren't latencies
+        registryEndpoints.report(NPM, mirror, 503, Duration.ofSeconds(30).toNanos());
+        assertThat(registryEndpoints.hedgeDelay(NPM)).isEqualTo(Duration.ofMillis(900));
+        assertThat(registryEndpoints.hedgeDelay("pypi")).isEqualTo(Duration.ofMillis(200));
+    }
+
+}
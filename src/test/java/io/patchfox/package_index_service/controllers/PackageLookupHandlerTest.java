@@ -0,0 +1,149 @@
+package io.patchfox.package_index_service.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.apache.catalina.connector.Response;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.PackageLookupService;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+class PackageLookupHandlerTest {
+
+    private PackageIndexController controller;
+    private PackageLookupService packageLookupService;
+    private int maxPurls = 10;
+
+    @BeforeEach
+    void setUp() {
+        packageLookupService = mock(PackageLookupService.class);
+        controller = new PackageIndexController();
+        controller.packageLookupService = packageLookupService;
+        controller.env = new EnvironmentComponent() {
+            @Override
+            public int getLookupMaxPurls() { return maxPurls; }
+        };
+    }
+
+    @Test
+    void purlsComeAsAnArrayOrUnderPurls() {
+        assertThat(PackageIndexController.parsePurls("[\"pkg:npm/left-pad@1.1.0\"]"))
+            .containsExactly("pkg:npm/left-pad@1.1.0");
+        assertThat(PackageIndexController.parsePurls(" {\"purls\": [\"pkg:npm/a@1\", \"pkg:npm/b@2\"]} "))
+            .containsExactly("pkg:npm/a@1", "pkg:npm/b@2");
+        assertThat(PackageIndexController.parsePurls("[]")).isEmpty();
+    }
+
+    @Test
+    void anythingElseIsNotAPurlList() {
+        assertThatThrownBy(() -> PackageIndexController.parsePurls("{\"purl\": []}")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> PackageIndexController.parsePurls("pkg:npm/a@1")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> PackageIndexController.parsePurls(null)).isInstanceOf(JSONException.class);
+    }
+
+    @Test
+    void resultsAreStreamedOneLinePerPurl() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> sink = invocation.getArgument(3);
+            sink.accept(Map.of("purl", "pkg:npm/b@2", "status", PackageLookupService.STATUS_NOT_FOUND));
+            sink.accept(Map.of("purl", "pkg:npm/a@1", "status", PackageLookupService.STATUS_OK));
+            return null;
+        }).when(packageLookupService).lookup(any(), eq(List.of("pkg:npm/a@1", "pkg:npm/b@2")), eq(true), any());
+
+        var response = controller.packageLookupHandler(
+            UUID.randomUUID(),
+            ZonedDateTime.now(ZoneOffset.UTC),
+            "{\"purls\": [\"pkg:npm/a@1\", \"pkg:npm/b@2\"]}",
+            true
+        );
+
+        assertThat(response.getStatusCode().value()).isEqualTo(Response.SC_OK);
+        assertThat(response.getHeaders().getContentType().toString())
+            .isEqualTo(PackageIndexController.NDJSON_MEDIA_TYPE);
+        var out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+        var lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(new JSONObject(lines[0]).getString("status")).isEqualTo(PackageLookupService.STATUS_NOT_FOUND);
+        assertThat(new JSONObject(lines[1]).getString("purl")).isEqualTo("pkg:npm/a@1");
+    }
+
+    @Test
+    void aBodyThatIsntAPurlListIsRejected() {
+        var response = controller.packageLookupHandler(
+            UUID.randomUUID(),
+            ZonedDateTime.now(ZoneOffset.UTC),
+            "{\"packages\": []}",
+            false
+        );
+
+        assertThat(response.getStatusCode().value()).isEqualTo(Response.SC_BAD_REQUEST);
+        verifyNoInteractions(packageLookupService);
+    }
+
+    @Test
+    void tooManyPurlsAreRejected() throws Exception {
+        maxPurls = 2;
+
+        var response = controller.packageLookupHandler(
+            UUID.randomUUID(),
+            ZonedDateTime.now(ZoneOffset.UTC),
+            "[\"pkg:npm/a@1\", \"pkg:npm/b@1\", \"pkg:npm/c@1\"]",
+            false
+        );
+        var collected = controller.packageLookupCollectedHandler(
+            UUID.randomUUID(),
+            ZonedDateTime.now(ZoneOffset.UTC),
+            List.of("pkg:npm/a@1", "pkg:npm/b@1", "pkg:npm/c@1"),
+            false
+        );
+
+        assertThat(response.getStatusCode().value()).isEqualTo(Response.SC_BAD_REQUEST);
+        assertThat(((ApiResponse) response.getBody()).getServerMessage()).contains("at most 2");
+        assertThat(collected.getStatusCode().value()).isEqualTo(Response.SC_BAD_REQUEST);
+        verifyNoInteractions(packageLookupService);
+    }
+
+    @Test
+    void collectedResultsComeBackTogether() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> sink = invocation.getArgument(3);
+            sink.accept(Map.of("purl", "pkg:npm/a@1", "status", PackageLookupService.STATUS_OK));
+            return null;
+        }).when(packageLookupService).lookup(any(), any(), anyBoolean(), any());
+
+        var response = controller.packageLookupCollectedHandler(
+            UUID.randomUUID(),
+            ZonedDateTime.now(ZoneOffset.UTC),
+            List.of("pkg:npm/a@1"),
+            false
+        );
+
+        assertThat(response.getStatusCode().value()).isEqualTo(Response.SC_OK);
+        assertThat(response.getBody().getData().get("results"))
+            .isEqualTo(List.of(Map.of("purl", "pkg:npm/a@1", "status", PackageLookupService.STATUS_OK)));
+    }
+
+}
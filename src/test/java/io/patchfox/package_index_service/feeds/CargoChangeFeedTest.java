@@ -0,0 +1,122 @@
+package io.patchfox.package_index_service.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.StubChangeFeedServer.Response;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class CargoChangeFeedTest {
+
+    private static final String COMMITS_PATH = "/repos/rust-lang/crates.io-index/commits";
+
+    private StubChangeFeedServer stub;
+    private CargoChangeFeed feed;
+    private String token = "";
+    private int maxPages = 50;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubChangeFeedServer().start();
+        feed = new CargoChangeFeed(RestClient.builder());
+        feed.env = new EnvironmentComponent() {
+            @Override
+            public String getCargoChangeFeedBaseUrl() { return stub.baseUrl(); }
+
+            @Override
+            public String getCargoChangeFeedRepository() { return "rust-lang/crates.io-index"; }
+
+            @Override
+            public String getCargoChangeFeedToken() { return token; }
+
+            @Override
+            public int getChangeFeedMaxPages() { return maxPages; }
+        };
+    }
+
+    @AfterEach
+    void tearDown() { stub.close(); }
+
+    @Test
+    void readsCratesOutOfCommitMessagesAndMovesTheCursorToTheNewestCommit() throws Exception {
+        var newest = Instant.now().plusSeconds(60);
+        stub.on(COMMITS_PATH, request -> Response.json(commits(
+            commit("Update crate `serde#1.0.200`", newest),
+            commit("Yanking crate `tokio#1.37.0`", newest.minusSeconds(30)),
+            commit("Merge pull request #1 from somewhere", newest.minusSeconds(40))
+        )));
+
+        assertThat(feed.poll().positionReset()).isTrue();
+        var batch = feed.poll();
+
+        assertThat(batch.caughtUp()).isTrue();
+        assertThat(batch.changed()).isEqualTo(Set.of(
+            new PackageCoordinate(PackageIndexService.RUST_PACKAGE_TYPE, null, "serde"),
+            new PackageCoordinate(PackageIndexService.RUST_PACKAGE_TYPE, null, "tokio")
+        ));
+
+        feed.poll();
+        assertThat(stub.requestsTo(COMMITS_PATH).get(1).query()).containsEntry("since", newest.toString());
+    }
+
+    @Test
+    void sendsTheTokenWhenThereIsOne() throws Exception {
+        token = "secret";
+        stub.on(COMMITS_PATH, request -> Response.json("[]"));
+
+        feed.poll();
+        feed.poll();
+
+        assertThat(stub.requestsTo(COMMITS_PATH).get(0).headers()).containsEntry("authorization", "Bearer secret");
+    }
+
+    @Test
+    void leavesTheCursorAloneWhenItHitsThePageLimit() throws Exception {
+        maxPages = 1;
+        var committedAt = Instant.now().plusSeconds(60);
+        var page = new JSONArray();
+        for (int i = 0; i < 100; i++) { page.put(commit("Update crate `crate-" + i + "#0.1.0`", committedAt)); }
+        stub.on(COMMITS_PATH, request -> Response.json(page.toString()));
+
+        feed.poll();
+        var batch = feed.poll();
+        assertThat(batch.caughtUp()).isFalse();
+        assertThat(batch.changed()).hasSize(100);
+
+        // the older commits that weren't read yet get asked for again 
+        feed.poll();
+        var requests = stub.requestsTo(COMMITS_PATH);
+        assertThat(requests.get(1).query().get("since")).isEqualTo(requests.get(0).query().get("since"));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static JSONObject commit(String message, Instant committedAt) {
+        return new JSONObject().put("commit", new JSONObject()
+            .put("message", message)
+            .put("committer", new JSONObject().put("date", committedAt.toString()))
+        );
+    }
+
+    private static String commits(JSONObject... commits) {
+        var rv = new JSONArray();
+        for (var commit : commits) { rv.put(commit); }
+        return rv.toString();
+    }
+
+}
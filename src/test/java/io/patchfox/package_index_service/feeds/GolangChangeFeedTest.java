@@ -0,0 +1,81 @@
+package io.patchfox.package_index_service.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.StubChangeFeedServer.Response;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class GolangChangeFeedTest {
+
+    private StubChangeFeedServer stub;
+    private GolangChangeFeed feed;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubChangeFeedServer().start();
+        feed = new GolangChangeFeed(RestClient.builder());
+        feed.env = new EnvironmentComponent() {
+            @Override
+            public String getGolangChangeFeedBaseUrl() { return stub.baseUrl(); }
+
+            @Override
+            public int getChangeFeedMaxPages() { return 50; }
+        };
+    }
+
+    @AfterEach
+    void tearDown() { stub.close(); }
+
+    @Test
+    void firstPollStartsFromNowWithoutAsking() throws Exception {
+        var before = Instant.now();
+        var batch = feed.poll();
+
+        assertThat(batch.positionReset()).isTrue();
+        assertThat(stub.requests()).isEmpty();
+
+        stub.on("/index", request -> Response.ndjson(""));
+        feed.poll();
+        var since = Instant.parse(stub.requestsTo("/index").get(0).query().get("since"));
+        assertThat(since).isAfterOrEqualTo(before);
+    }
+
+    @Test
+    void readsModulesAndMovesTheCursorToTheLastTimestamp() throws Exception {
+        stub.on("/index", request -> Response.ndjson(
+            "{\"Path\":\"github.com/google/uuid\",\"Version\":\"v1.6.0\",\"Timestamp\":\"2024-05-01T10:00:00.1Z\"}\n" +
+            "{\"Path\":\"golang.org/x/text\",\"Version\":\"v0.15.0\",\"Timestamp\":\"2024-05-01T10:00:02.5Z\"}\n" +
+            "{\"Path\":\"github.com/google/uuid\",\"Version\":\"v1.6.1\",\"Timestamp\":\"2024-05-01T10:00:03Z\"}\n"
+        ));
+
+        feed.poll();
+        var batch = feed.poll();
+
+        assertThat(batch.caughtUp()).isTrue();
+        assertThat(batch.changed()).isEqualTo(Set.of(
+            new PackageCoordinate(PackageIndexService.GOLANG_PACKAGE_TYPE, "github.com/google", "uuid"),
+            new PackageCoordinate(PackageIndexService.GOLANG_PACKAGE_TYPE, "golang.org/x", "text")
+        ));
+
+        feed.poll();
+        assertThat(stub.requestsTo("/index").get(1).query()).containsEntry("since", "2024-05-01T10:00:03Z");
+    }
+
+    @Test
+    void modulePathsWithoutASlashHaveNoNamespace() {
+        assertThat(GolangChangeFeed.toCoordinate("gopkg"))
+            .isEqualTo(new PackageCoordinate(PackageIndexService.GOLANG_PACKAGE_TYPE, null, "gopkg"));
+    }
+
+}
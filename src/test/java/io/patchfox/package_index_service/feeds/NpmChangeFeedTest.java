@@ -0,0 +1,108 @@
+package io.patchfox.package_index_service.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.StubChangeFeedServer.Response;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class NpmChangeFeedTest {
+
+    private StubChangeFeedServer stub;
+    private NpmChangeFeed feed;
+    private int maxPages = 50;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubChangeFeedServer().start();
+        feed = new NpmChangeFeed(RestClient.builder());
+        feed.env = new EnvironmentComponent() {
+            @Override
+            public String getNpmChangeFeedBaseUrl() { return stub.baseUrl(); }
+
+            @Override
+            public int getChangeFeedMaxPages() { return maxPages; }
+        };
+        stub.on("/", request -> Response.json("{\"db_name\":\"registry\",\"update_seq\":100}"));
+    }
+
+    @AfterEach
+    void tearDown() { stub.close(); }
+
+    @Test
+    void firstPollOnlyEstablishesThePosition() throws Exception {
+        var batch = feed.poll();
+
+        assertThat(batch.positionReset()).isTrue();
+        assertThat(batch.changed()).isEmpty();
+        assertThat(stub.requestsTo("/_changes")).isEmpty();
+    }
+
+    @Test
+    void readsChangedPackagesSinceTheLastSequence() throws Exception {
+        stub.on("/_changes", request -> Response.json(changes(103, "left-pad", "@babel/core", "_design/scratch")));
+
+        feed.poll();
+        var batch = feed.poll();
+
+        assertThat(batch.positionReset()).isFalse();
+        assertThat(batch.caughtUp()).isTrue();
+        assertThat(batch.changed()).isEqualTo(Set.of(
+            new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, null, "left-pad"),
+            new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, "@babel", "core")
+        ));
+        assertThat(stub.requestsTo("/_changes").get(0).query()).containsEntry("since", "100");
+
+        // the next poll carries on from where this one stopped
+        feed.poll();
+        assertThat(stub.requestsTo("/_changes").get(1).query()).containsEntry("since", "103");
+    }
+
+    @Test
+    void stopsAtThePageLimitWithoutClaimingToBeCaughtUp() throws Exception {
+        maxPages = 1;
+        var names = new String[1000];
+        for (int i = 0; i < names.length; i++) { names[i] = "package-" + i; }
+        stub.on("/_changes", request -> Response.json(changes(1100, names)));
+
+        feed.poll();
+        var batch = feed.poll();
+
+        assertThat(batch.caughtUp()).isFalse();
+        assertThat(batch.changed()).hasSize(1000);
+        assertThat(stub.requestsTo("/_changes")).hasSize(1);
+    }
+
+    @Test
+    void splitsScopedPackageIds() {
+        assertThat(NpmChangeFeed.toCoordinate("@ourco/widgets"))
+            .isEqualTo(new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, "@ourco", "widgets"));
+        assertThat(NpmChangeFeed.toCoordinate("yaml"))
+            .isEqualTo(new PackageCoordinate(PackageIndexService.NPM_PACKAGE_TYPE, null, "yaml"));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static String changes(long lastSeq, String... ids) {
+        var results = new JSONArray();
+        for (int i = 0; i < ids.length; i++) {
+            results.put(new JSONObject().put("seq", i).put("id", ids[i]).put("changes", new JSONArray()));
+        }
+        return new JSONObject().put("results", results).put("last_seq", lastSeq).toString();
+    }
+
+}
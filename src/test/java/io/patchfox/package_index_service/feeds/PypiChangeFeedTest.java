@@ -0,0 +1,119 @@
+package io.patchfox.package_index_service.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.StubChangeFeedServer.Request;
+import io.patchfox.package_index_service.feeds.StubChangeFeedServer.Response;
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class PypiChangeFeedTest {
+
+    private StubChangeFeedServer stub;
+    private PypiChangeFeed feed;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubChangeFeedServer().start();
+        feed = new PypiChangeFeed(RestClient.builder());
+        feed.env = new EnvironmentComponent() {
+            @Override
+            public String getPypiChangeFeedBaseUrl() { return stub.baseUrl(); }
+        };
+    }
+
+    @AfterEach
+    void tearDown() { stub.close(); }
+
+    @Test
+    void firstPollReadsTheLastSerial() throws Exception {
+        stub.on("/pypi", this::answer);
+
+        var batch = feed.poll();
+
+        assertThat(batch.positionReset()).isTrue();
+        assertThat(stub.requestsTo("/pypi").get(0).body()).contains("changelog_last_serial");
+    }
+
+    @Test
+    void readsChangedProjectsAndCarriesOnFromTheHighestSerial() throws Exception {
+        stub.on("/pypi", this::answer);
+
+        feed.poll();
+        var batch = feed.poll();
+
+        assertThat(batch.caughtUp()).isTrue();
+        assertThat(batch.changed()).isEqualTo(Set.of(
+            new PackageCoordinate(PackageIndexService.PYPI_PACKAGE_TYPE, null, "django-rest"),
+            new PackageCoordinate(PackageIndexService.PYPI_PACKAGE_TYPE, null, "requests")
+        ));
+        assertThat(stub.requestsTo("/pypi").get(1).body()).contains("<int>500</int>");
+
+        feed.poll();
+        assertThat(stub.requestsTo("/pypi").get(2).body()).contains("<int>503</int>");
+    }
+
+    @Test
+    void aFaultLeavesThePositionAlone() throws Exception {
+        stub.on("/pypi", this::answer);
+        feed.poll();
+
+        stub.on("/pypi", request -> Response.xml(
+            "<?xml version=\"1.0\"?><methodResponse><fault><value><struct><member><name>faultString</name>" +
+            "<value><string>too many requests</string></value></member></struct></value></fault></methodResponse>"
+        ));
+        assertThatThrownBy(feed::poll).isInstanceOf(IllegalStateException.class).hasMessageContaining("fault");
+
+        stub.on("/pypi", this::answer);
+        feed.poll();
+        assertThat(stub.requestsTo("/pypi").get(2).body()).contains("<int>500</int>");
+    }
+
+
+    //
+    // helpers
+    //
+
+    private Response answer(Request request) {
+        if (request.body().contains("changelog_last_serial")) {
+            return Response.xml(
+                "<?xml version=\"1.0\"?><methodResponse><params><param><value><int>500</int></value></param>" +
+                "</params></methodResponse>"
+            );
+        }
+        if ( !request.body().contains("<int>500</int>")) {
+            return Response.xml(
+                "<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data>" +
+                "</data></array></value></param></params></methodResponse>"
+            );
+        }
+        return Response.xml(
+            "<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data>" +
+            entry("Django_Rest", "1.0", "new release", 501) +
+            entry("requests", "2.32.0", "add py3 file", 503) +
+            entry("requests", "2.32.0", "new release", 502) +
+            "</data></array></value></param></params></methodResponse>"
+        );
+    }
+
+    private static String entry(String name, String version, String action, long serial) {
+        return "<value><array><data>" +
+               "<value><string>" + name + "</string></value>" +
+               "<value><string>" + version + "</string></value>" +
+               "<value><int>1714557600</int></value>" +
+               "<value><string>" + action + "</string></value>" +
+               "<value><int>" + serial + "</int></value>" +
+               "</data></array></value>";
+    }
+
+}
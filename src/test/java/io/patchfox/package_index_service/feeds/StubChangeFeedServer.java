@@ -0,0 +1,115 @@
+package io.patchfox.package_index_service.feeds;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/*
+ * a local http server the change feeds can be pointed at through their base-url properties. each test scripts the
+ * answers it needs per path:
+ *
+ *   npm     GET  /                   and  GET /_changes?since=&limit=
+ *   golang  GET  /index?since=&limit=
+ *   pypi    POST /pypi               xml-rpc, look at the body to tell the methods apart
+ *   cargo   GET  /repos/<owner>/<repository>/commits?since=&per_page=&page=
+ *
+ * every request is kept so tests can check what the feed asked for. a path nobody scripted gets a 404
+ */
+public class StubChangeFeedServer implements AutoCloseable {
+
+    public record Request(
+        String method, 
+        String path, 
+        Map<String, String> query, 
+        Map<String, String> headers, 
+        String body
+    ) {}
+
+    public record Response(int status, String contentType, String body) {
+        public static Response json(String body) { return new Response(200, "application/json", body); }
+        public static Response ndjson(String body) { return new Response(200, "application/x-ndjson", body); }
+        public static Response xml(String body) { return new Response(200, "text/xml", body); }
+    }
+
+    private final HttpServer server;
+    private final Map<String, Function<Request, Response>> handlers = new ConcurrentHashMap<>();
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+
+    public StubChangeFeedServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+    }
+
+    public StubChangeFeedServer start() {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() { server.stop(0); }
+
+    public String baseUrl() { return "http://localhost:" + server.getAddress().getPort(); }
+
+    public StubChangeFeedServer on(String path, Function<Request, Response> handler) {
+        handlers.put(path, handler);
+        return this;
+    }
+
+    public List<Request> requests() { return requests; }
+
+    public List<Request> requestsTo(String path) {
+        return requests.stream().filter(r -> r.path().equals(path)).toList();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var headers = new HashMap<String, String>();
+            exchange.getRequestHeaders().forEach((name, values) -> headers.put(name.toLowerCase(), values.get(0)));
+            var request = new Request(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                parseQuery(exchange.getRequestURI().getRawQuery()),
+                headers,
+                new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)
+            );
+            requests.add(request);
+
+            var handler = handlers.get(request.path());
+            var response = handler == null ? new Response(404, "text/plain", "not found") : handler.apply(request);
+            var body = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", response.contentType());
+            exchange.sendResponseHeaders(response.status(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) { exchange.getResponseBody().write(body); }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var rv = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) { return rv; }
+        for (var pair : rawQuery.split("&")) {
+            var equals = pair.indexOf('=');
+            var key = equals < 0 ? pair : pair.substring(0, equals);
+            var value = equals < 0 ? "" : pair.substring(equals + 1);
+            rv.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return rv;
+    }
+
+}
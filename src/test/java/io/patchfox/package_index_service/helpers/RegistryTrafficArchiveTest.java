@@ -0,0 +1,125 @@
+package io.patchfox.package_index_service.helpers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.catalina.connector.Response;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+class RegistryTrafficArchiveTest {
+
+    private static final URI LEFT_PAD = URI.create("https://registry.npmjs.org/left-pad");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysWhatWasRecordedInOrder() throws Exception {
+        var path = dir.resolve("traffic.ndjson.gz");
+        var recorder = archive(RegistryTrafficArchive.MODE_RECORD, path);
+        recorder.record("npm", request(LEFT_PAD), response(429, null, Map.of("Retry-After", "1")), 1_000);
+        var body = "{\"name\":\"left-pad\"}";
+        recorder.record("npm", request(LEFT_PAD), response(200, body, Map.of("ETag", "\"abc\"")), 2_000);
+        recorder.close();
+
+        var replayer = archive(RegistryTrafficArchive.MODE_REPLAY, path);
+
+        var throttled = replayer.replay(request(LEFT_PAD));
+        assertThat(throttled.getCode()).isEqualTo(429);
+        assertThat(throttled.getData()).containsEntry(RestHelper.RESPONSE_HEADERS_KEY, Map.of("Retry-After", "1"));
+
+        var ok = replayer.replay(request(LEFT_PAD));
+        assertThat(ok.getCode()).isEqualTo(200);
+        assertThat(ok.getData()).containsEntry(RestHelper.RESPONSE_KEY, body)
+                                .containsEntry(RestHelper.RESPONSE_HEADERS_KEY, Map.of("ETag", "\"abc\""));
+
+        // the last answer sticks
+        assertThat(replayer.replay(request(LEFT_PAD)).getCode()).isEqualTo(200);
+        assertThat(replayer.replay(request(URI.create("https://registry.npmjs.org/is-odd"))).getCode())
+            .isEqualTo(Response.SC_GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    void responseHeadersAreKeptApartFromTheBody() throws Exception {
+        var path = dir.resolve("traffic.ndjson.gz");
+        var recorder = archive(RegistryTrafficArchive.MODE_RECORD, path);
+        recorder.record("npm", request(LEFT_PAD), response(200, "{}", Map.of("Content-Type", "application/json")), 5);
+        recorder.close();
+
+        try (var reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)),
+                StandardCharsets.UTF_8
+        ))) {
+            var exchange = new JSONObject(reader.readLine());
+            assertThat(exchange.getString("uri")).isEqualTo(LEFT_PAD.toString());
+            assertThat(exchange.getJSONObject("responseHeaders").getString("Content-Type"))
+                .isEqualTo("application/json");
+            assertThat(exchange.getJSONObject("data").has(RestHelper.RESPONSE_HEADERS_KEY)).isFalse();
+            assertThat(exchange.getJSONObject("requestHeaders").getString("User-Agent")).isEqualTo("test");
+            assertThat(exchange.getLong("elapsedNanos")).isEqualTo(5);
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static RegistryTrafficArchive archive(String mode, Path path) throws Exception {
+        var archive = new RegistryTrafficArchive();
+        archive.env = new EnvironmentComponent() {
+            @Override
+            public String getRegistryTrafficMode() { return mode; }
+
+            @Override
+            public String getRegistryTrafficPath() { return path.toString(); }
+
+            @Override
+            public double getRegistryTrafficTimeScale() { return 0; }
+
+            @Override
+            public String getServiceName() { return "package-index-service"; }
+        };
+        archive.open();
+        return archive;
+    }
+
+    private static ApiRequest request(URI uri) {
+        return ApiRequest.builder()
+                         .headers(Map.of("User-Agent", "test"))
+                         .uri(uri)
+                         .verb(ApiRequest.httpVerb.GET)
+                         .txid(UUID.randomUUID())
+                         .build();
+    }
+
+    private static ApiResponse response(int code, String body, Map<String, String> headers) {
+        Map<String, Object> data = body == null
+                ? Map.of(RestHelper.RESPONSE_HEADERS_KEY, headers)
+                : Map.of(RestHelper.RESPONSE_KEY, body, RestHelper.RESPONSE_HEADERS_KEY, headers);
+        return ApiResponse.builder()
+                          .code(code)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(data)
+                          .build();
+    }
+
+}
@@ -0,0 +1,110 @@
+package io.patchfox.package_index_service.importers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.patchfox.package_index_service.services.PackageIndexService;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class SpillingCoordinateSorterTest {
+
+    private static final String GOLANG = PackageIndexService.GOLANG_PACKAGE_TYPE;
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void groupsInMemoryWhenEverythingFits() throws Exception {
+        try (var sorter = new SpillingCoordinateSorter(100, spillDirectory)) {
+            feed(sorter);
+            var groups = drain(sorter);
+
+            assertGrouped(groups);
+            assertThat(sorter.getVersionCount()).isEqualTo(6);
+            try (var files = Files.list(spillDirectory)) { assertThat(files).isEmpty(); }
+        }
+    }
+
+    @Test
+    void spillsAndMergesRunsWhenTheBufferFillsUp() throws Exception {
+        try (var sorter = new SpillingCoordinateSorter(2, spillDirectory)) {
+            feed(sorter);
+            try (var files = Files.list(spillDirectory)) { assertThat(files).hasSize(3); }
+
+            assertGrouped(drain(sorter));
+        }
+        try (var files = Files.list(spillDirectory)) { assertThat(files).isEmpty(); }
+    }
+
+    @Test
+    void keepsTimestampsExactThroughASpill() throws Exception {
+        var publishedAt = ZonedDateTime.of(2024, 5, 1, 10, 0, 0, 123456789, ZoneOffset.UTC);
+        try (var sorter = new SpillingCoordinateSorter(1, spillDirectory)) {
+            sorter.accept(coordinate("golang.org/x", "text"), "v0.15.0", publishedAt);
+            sorter.accept(coordinate("golang.org/x", "text"), "v0.14.0", publishedAt.minusDays(1));
+
+            var groups = drain(sorter);
+            var versions = groups.get(coordinate("golang.org/x", "text"));
+            assertThat(versions).extracting(v -> v.releaseTimestamp).contains(publishedAt);
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static void feed(SpillingCoordinateSorter sorter) {
+        var at = ZonedDateTime.ofInstant(Instant.parse("2024-05-01T10:00:00Z"), ZoneOffset.UTC);
+        sorter.accept(coordinate("github.com/google", "uuid"), "v1.6.0", at);
+        sorter.accept(coordinate(null, "gopkg"), "v1.0.0", at);
+        sorter.accept(coordinate("golang.org/x", "text"), "v0.15.0", at);
+        sorter.accept(coordinate("github.com/google", "uuid"), "v1.5.0", at.minusDays(30));
+        sorter.accept(coordinate(null, "gopkg"), "v1.1.0", at.plusDays(1));
+        sorter.accept(coordinate("github.com/google", "uuid"), "v1.6.1", at.plusDays(1));
+    }
+
+    private static Map<PackageCoordinate, List<PackageIndexService.VersionMetadata>> drain(
+            SpillingCoordinateSorter sorter
+    ) throws Exception {
+        Map<PackageCoordinate, List<PackageIndexService.VersionMetadata>> rv = new LinkedHashMap<>();
+        var coordinates = sorter.drain((coordinate, versions) -> {
+            assertThat(rv).doesNotContainKey(coordinate);
+            rv.put(coordinate, new ArrayList<>(versions));
+        });
+        assertThat(coordinates).isEqualTo(rv.size());
+        return rv;
+    }
+
+    private static void assertGrouped(Map<PackageCoordinate, List<PackageIndexService.VersionMetadata>> groups) {
+        assertThat(groups.keySet()).containsExactly(
+            coordinate(null, "gopkg"),
+            coordinate("github.com/google", "uuid"),
+            coordinate("golang.org/x", "text")
+        );
+        assertThat(groups.get(coordinate("github.com/google", "uuid")))
+            .extracting(v -> v.version)
+            .containsExactlyInAnyOrder("v1.6.0", "v1.5.0", "v1.6.1");
+        assertThat(groups.get(coordinate(null, "gopkg")))
+            .extracting(v -> v.version)
+            .containsExactlyInAnyOrder("v1.0.0", "v1.1.0");
+    }
+
+    private static PackageCoordinate coordinate(String namespace, String name) {
+        return new PackageCoordinate(GOLANG, namespace, name);
+    }
+
+}
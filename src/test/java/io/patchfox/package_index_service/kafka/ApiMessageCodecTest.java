@@ -0,0 +1,187 @@
+package io.patchfox.package_index_service.kafka;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.catalina.connector.Response;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+class ApiMessageCodecTest {
+
+    private static final String TOPIC = "package-index-service_RESPONSE";
+
+    // every SMILE document starts with ":)\n"
+    private static final byte[] SMILE_MAGIC = {':', ')', '\n'};
+
+    @Test
+    void aRequestRoundTripsAsJson() {
+        var apiRequest = request();
+        var headers = new RecordHeaders();
+
+        var bytes = serializer(ApiMessageCodec.JSON).serialize(TOPIC, headers, apiRequest);
+
+        assertThat(bytes[0]).isEqualTo((byte) '{');
+        assertThat(headers.lastHeader(ApiMessageCodec.CODEC_HEADER)).isNull();
+        var read = (ApiRequest) deserializer(ApiRequest.class).deserialize(TOPIC, headers, bytes);
+        assertRequest(read, apiRequest);
+    }
+
+    @Test
+    void aRequestRoundTripsAsSmile() {
+        var apiRequest = request();
+        var headers = new RecordHeaders();
+
+        var bytes = serializer(ApiMessageCodec.SMILE).serialize(TOPIC, headers, apiRequest);
+
+        assertThat(bytes).startsWith(SMILE_MAGIC);
+        assertThat(codecHeader(headers)).isEqualTo("SMILE");
+        var read = (ApiRequest) deserializer(ApiRequest.class).deserialize(TOPIC, headers, bytes);
+        assertRequest(read, apiRequest);
+    }
+
+    @Test
+    void aResponseRoundTripsAsEitherCodec() {
+        for (var codec : ApiMessageCodec.values()) {
+            var apiResponse = response(Map.of("status", "ok", "count", 3));
+            var headers = new RecordHeaders();
+
+            var bytes = serializer(codec).serialize(TOPIC, headers, apiResponse);
+            var read = (ApiResponse) deserializer(ApiResponse.class).deserialize(TOPIC, headers, bytes);
+
+            assertThat(read.getCode()).as(codec.name()).isEqualTo(apiResponse.getCode());
+            assertThat(read.getTxid()).as(codec.name()).isEqualTo(apiResponse.getTxid());
+            assertThat(read.getRequestReceivedAt()).as(codec.name()).isEqualTo(apiResponse.getRequestReceivedAt());
+            assertThat(read.getData()).as(codec.name()).isEqualTo(Map.of("status", "ok", "count", 3));
+        }
+    }
+
+    @Test
+    void theCodecHeaderPicksHowARecordIsRead() {
+        var apiResponse = response(Map.of());
+        var smile = serializer(ApiMessageCodec.SMILE).serialize(TOPIC, new RecordHeaders(), apiResponse);
+        var json = serializer(ApiMessageCodec.JSON).serialize(TOPIC, new RecordHeaders(), apiResponse);
+        var deserializer = deserializer(ApiResponse.class);
+
+        // the same SMILE bytes only make sense with the header that says so
+        assertThat(deserializer.deserialize(TOPIC, codecHeaders("smile"), smile)).isInstanceOf(ApiResponse.class);
+        // no header, or one naming a codec we don't know, is JSON
+        assertThat(deserializer.deserialize(TOPIC, new RecordHeaders(), json)).isInstanceOf(ApiResponse.class);
+        assertThat(deserializer.deserialize(TOPIC, codecHeaders("avro"), json)).isInstanceOf(ApiResponse.class);
+        assertThat(deserializer.deserialize(TOPIC, json)).isInstanceOf(ApiResponse.class);
+
+        assertThat(ApiMessageCodec.fromHeaders(null)).isEqualTo(ApiMessageCodec.JSON);
+        assertThat(ApiMessageCodec.fromName(" Smile ")).isEqualTo(ApiMessageCodec.SMILE);
+        assertThat(ApiMessageCodec.fromName(null)).isEqualTo(ApiMessageCodec.JSON);
+    }
+
+    @Test
+    void smileIsOnlyWrittenWhenTheConsumerCanBeTold() {
+        var serializer = serializer(ApiMessageCodec.SMILE);
+
+        // no headers to put the codec in
+        assertThat(serializer.serialize(TOPIC, response(Map.of()))[0]).isEqualTo((byte) '{');
+
+        // a codec header already on the record is replaced, not added to
+        var headers = codecHeaders("json");
+        serializer.serialize(TOPIC, headers, response(Map.of()));
+        assertThat(headers.headers(ApiMessageCodec.CODEC_HEADER)).hasSize(1);
+        assertThat(codecHeader(headers)).isEqualTo("SMILE");
+    }
+
+    @Test
+    void anEnrichmentResponseIsAStringUnderJson() {
+        var body = new EnrichmentResponseBody(List.of(1L, 5_000_000_000L), 7L);
+        var headers = new RecordHeaders();
+
+        var bytes = serializer(ApiMessageCodec.JSON).serialize(TOPIC, headers, response(Map.of("response", body)));
+        var read = (ApiResponse) deserializer(ApiResponse.class).deserialize(TOPIC, headers, bytes);
+
+        var legacy = read.getData().get("response");
+        assertThat(legacy).isInstanceOf(String.class).isEqualTo(body.toLegacyJson());
+        var parsed = new JSONObject((String) legacy);
+        assertThat(parsed.getJSONArray(EnrichmentResponseBody.UPDATED_RECORD_IDS_KEY).toList())
+            .containsExactly(1, 5_000_000_000L);
+        assertThat(parsed.getLong(EnrichmentResponseBody.CREATED_RECORD_ID_KEY)).isEqualTo(7L);
+    }
+
+    @Test
+    void anEnrichmentResponseIsStructuredUnderSmile() {
+        var body = new EnrichmentResponseBody(List.of(1L, 5_000_000_000L), null);
+        var headers = new RecordHeaders();
+
+        var bytes = serializer(ApiMessageCodec.SMILE).serialize(TOPIC, headers, response(Map.of("response", body)));
+        var read = (ApiResponse) deserializer(ApiResponse.class).deserialize(TOPIC, headers, bytes);
+
+        assertThat(read.getData().get("response")).isEqualTo(Map.of(
+            EnrichmentResponseBody.UPDATED_RECORD_IDS_KEY, List.of(1, 5_000_000_000L)
+        ));
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static ApiMessageSerializer serializer(ApiMessageCodec codec) {
+        var serializer = new ApiMessageSerializer();
+        serializer.configure(Map.of(ApiMessageCodec.CODEC_CONFIG, codec.name().toLowerCase()), false);
+        return serializer;
+    }
+
+    // configured the way the listeners in KafkaBeans are
+    private static ApiMessageDeserializer deserializer(Class<?> type) {
+        var deserializer = new ApiMessageDeserializer();
+        deserializer.configure(Map.of(JsonDeserializer.VALUE_DEFAULT_TYPE, type.getName()), false);
+        return deserializer;
+    }
+
+    private static Headers codecHeaders(String codec) {
+        var headers = new RecordHeaders();
+        headers.add(ApiMessageCodec.CODEC_HEADER, codec.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    private static String codecHeader(Headers headers) {
+        return new String(headers.lastHeader(ApiMessageCodec.CODEC_HEADER).value(), StandardCharsets.UTF_8);
+    }
+
+    private static ApiRequest request() {
+        return ApiRequest.builder()
+                         .headers(Map.of("Accept", "application/json"))
+                         .uri(URI.create("/api/v1/enrich?datasourceEventId=42"))
+                         .verb(ApiRequest.httpVerb.GET)
+                         .txid(UUID.randomUUID())
+                         .build();
+    }
+
+    private static void assertRequest(ApiRequest read, ApiRequest expected) {
+        assertThat(read.getTxid()).isEqualTo(expected.getTxid());
+        assertThat(read.getUri()).isEqualTo(expected.getUri());
+        assertThat(read.getVerb()).isEqualTo(expected.getVerb());
+        assertThat(read.getHeaders()).isEqualTo(expected.getHeaders());
+    }
+
+    private static ApiResponse response(Map<String, Object> data) {
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(data)
+                          .build();
+    }
+
+}
@@ -0,0 +1,225 @@
+package io.patchfox.package_index_service.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.feeds.RegistryChangeFeed;
+import io.patchfox.package_index_service.feeds.RegistryChangeFeed.ChangeBatch;
+import io.patchfox.package_index_service.repositories.PackageCoordinateChangeRepository;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+
+
+class ChangeFeedServiceTest {
+
+    private static final String NPM = PackageIndexService.NPM_PACKAGE_TYPE;
+    private static final PackageCoordinate LEFT_PAD = new PackageCoordinate(NPM, null, "left-pad");
+
+    private final ScriptedFeed feed = new ScriptedFeed();
+    private ChangeFeedService service;
+    private Duration maxLag = Duration.ofMinutes(30);
+    private Duration changeRetention = Duration.ofDays(30);
+
+    @BeforeEach
+    void setUp() {
+        service = new ChangeFeedService();
+        service.feeds = List.of(feed);
+        service.changeRepository = mock(PackageCoordinateChangeRepository.class);
+        service.versionHistoryRepository = mock(PackageVersionHistoryRepository.class);
+        // runs the callback on the calling thread, there's no database to open a transaction against 
+        service.transactionTemplate = new TransactionTemplate() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) { return action.doInTransaction(null); }
+        };
+        service.env = new EnvironmentComponent() {
+            @Override
+            public Duration getFreshnessWindow() { return Duration.ofDays(1); }
+
+            @Override
+            public Duration getChangeFeedMaxLag() { return maxLag; }
+
+            @Override
+            public Duration getChangeFeedChangeRetention() { return changeRetention; }
+        };
+    }
+
+    @Test
+    void vouchesForNothingUntilTheFeedHasAPosition() {
+        assertThat(service.isKnownCurrent(NPM, ZonedDateTime.now(ZoneOffset.UTC))).isFalse();
+
+        var before = ZonedDateTime.now(ZoneOffset.UTC).minusSeconds(1);
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+
+        assertThat(service.isKnownCurrent(NPM, before)).isFalse();
+        assertThat(service.isKnownCurrent(NPM, ZonedDateTime.now(ZoneOffset.UTC))).isTrue();
+        assertThat(service.isKnownCurrent(PackageIndexService.PYPI_PACKAGE_TYPE, ZonedDateTime.now(ZoneOffset.UTC)))
+            .isFalse();
+    }
+
+    @Test
+    void recordsChangesAndExpiresTheirHistories() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+
+        var changed = Set.of(LEFT_PAD);
+        feed.next(new ChangeBatch(changed, true, false));
+        service.pollChangeFeeds();
+
+        var changedAt = ArgumentCaptor.forClass(Instant.class);
+        verify(service.changeRepository).recordChanges(eq(changed), changedAt.capture());
+        var staleAt = ArgumentCaptor.forClass(Instant.class);
+        verify(service.versionHistoryRepository).expire(eq(changed), staleAt.capture());
+
+        // histories land outside both the freshness window and what the feed vouches for 
+        assertThat(staleAt.getValue()).isBefore(changedAt.getValue().minus(Duration.ofDays(1)));
+        assertThat(service.isKnownCurrent(NPM, ZonedDateTime.ofInstant(staleAt.getValue(), ZoneOffset.UTC))).isFalse();
+    }
+
+    @Test
+    void aResetPositionRestartsCoverage() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isFalse();
+        verify(service.changeRepository, never()).recordChanges(any(), any());
+    }
+
+    @Test
+    void aFeedThatFallsBehindStopsVouching() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isTrue();
+
+        maxLag = Duration.ofMillis(-1);
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isFalse();
+    }
+
+    @Test
+    void aFailedPollKeepsCoverage() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+
+        feed.fail();
+        service.pollChangeFeeds();
+
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isTrue();
+    }
+
+    @Test
+    void aBatchThatFailsToApplyRestartsCoverage() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+
+        doThrow(new IllegalStateException("boom")).when(service.changeRepository).recordChanges(any(), any());
+        feed.next(new ChangeBatch(Set.of(LEFT_PAD), true, false));
+        service.pollChangeFeeds();
+
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isFalse();
+    }
+
+    @Test
+    void onlyVouchesForRecordsEnrichedWithinTheRetention() {
+        feed.next(ChangeBatch.reset());
+        service.pollChangeFeeds();
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+
+        changeRetention = Duration.ZERO;
+        assertThat(service.isKnownCurrent(NPM, enrichedAt)).isFalse();
+    }
+
+    @Test
+    void lastChangedAtIgnoresTypesWithoutAnEnabledFeed() {
+        var changedAt = Instant.now();
+        when(service.changeRepository.lastChangedAt(LEFT_PAD)).thenReturn(Optional.of(changedAt));
+
+        assertThat(service.lastChangedAt(LEFT_PAD)).isEqualTo(changedAt);
+
+        feed.enabled = false;
+        assertThat(service.lastChangedAt(LEFT_PAD)).isNull();
+    }
+
+    @Test
+    void changedSinceComparesAgainstTheEnrichment() {
+        var enrichedAt = ZonedDateTime.now(ZoneOffset.UTC);
+
+        assertThat(ChangeFeedService.changedSince(null, enrichedAt)).isFalse();
+        assertThat(ChangeFeedService.changedSince(enrichedAt.toInstant(), enrichedAt)).isTrue();
+        assertThat(ChangeFeedService.changedSince(enrichedAt.toInstant().plusSeconds(1), enrichedAt)).isTrue();
+        assertThat(ChangeFeedService.changedSince(enrichedAt.toInstant().minusSeconds(1), enrichedAt)).isFalse();
+    }
+
+    @Test
+    void handledChangesAreClearedUpToWhatWasSeen() {
+        var changedAt = Instant.now();
+
+        service.changeHandled(LEFT_PAD, null);
+        verify(service.changeRepository, never()).clear(any(), any());
+
+        service.changeHandled(LEFT_PAD, changedAt);
+        verify(service.changeRepository).clear(LEFT_PAD, changedAt);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static class ScriptedFeed implements RegistryChangeFeed {
+
+        private final Deque<ChangeBatch> batches = new ArrayDeque<>();
+        private boolean failNext;
+        boolean enabled = true;
+
+        void next(ChangeBatch batch) { batches.add(batch); }
+
+        void fail() { failNext = true; }
+
+        @Override
+        public String getPackageType() { return NPM; }
+
+        @Override
+        public boolean isEnabled() { return enabled; }
+
+        @Override
+        public ChangeBatch poll() throws Exception {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("feed unavailable");
+            }
+            return batches.remove();
+        }
+
+    }
+
+}
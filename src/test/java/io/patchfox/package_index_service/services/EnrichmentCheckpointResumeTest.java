@@ -0,0 +1,108 @@
+package io.patchfox.package_index_service.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.packageurl.PackageURL;
+
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository;
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository.EnrichmentCheckpoint;
+
+
+class EnrichmentCheckpointResumeTest {
+
+    private static final long EVENT_ID = 42;
+
+    private PackageIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new PackageIndexService();
+        service.checkpointRepository = mock(EnrichmentCheckpointRepository.class);
+    }
+
+    @Test
+    void resumesWhenTheEventIsUnchanged() throws Exception {
+        var groups = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/yaml@2.0.0", "pkg:npm/left-pad@1.1.0");
+        var digest = PackageIndexService.coordinateDigest(groups);
+        checkpointWrittenFor(groups.size(), digest);
+
+        var checkpoint = service.findResumableCheckpoint(EVENT_ID, groups.size(), digest);
+
+        assertThat(checkpoint).isPresent();
+        assertThat(checkpoint.get().nextOffset()).isEqualTo(1);
+    }
+
+    @Test
+    void startsOverWhenTheSameNumberOfDifferentCoordinatesShowUp() throws Exception {
+        var before = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/yaml@2.0.0");
+        var after = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/lodash@4.17.21");
+        checkpointWrittenFor(before.size(), PackageIndexService.coordinateDigest(before));
+
+        assertThat(service.findResumableCheckpoint(EVENT_ID, after.size(), PackageIndexService.coordinateDigest(after)))
+            .isEmpty();
+    }
+
+    @Test
+    void startsOverWhenTheOrderChanged() throws Exception {
+        var before = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/yaml@2.0.0");
+        var after = groups("pkg:npm/yaml@2.0.0", "pkg:npm/left-pad@1.0.0");
+        checkpointWrittenFor(before.size(), PackageIndexService.coordinateDigest(before));
+
+        assertThat(service.findResumableCheckpoint(EVENT_ID, after.size(), PackageIndexService.coordinateDigest(after)))
+            .isEmpty();
+    }
+
+    @Test
+    void startsOverWhenACoordinateGainedAVersion() throws Exception {
+        var before = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/yaml@2.0.0");
+        var after = groups("pkg:npm/left-pad@1.0.0", "pkg:npm/yaml@2.0.0", "pkg:npm/yaml@2.1.0");
+        assertThat(after).hasSameSizeAs(before);
+        checkpointWrittenFor(before.size(), PackageIndexService.coordinateDigest(before));
+
+        assertThat(service.findResumableCheckpoint(EVENT_ID, after.size(), PackageIndexService.coordinateDigest(after)))
+            .isEmpty();
+    }
+
+    @Test
+    void nothingToResumeWithoutACheckpoint() {
+        when(service.checkpointRepository.find(EVENT_ID)).thenReturn(Optional.empty());
+
+        assertThat(service.findResumableCheckpoint(EVENT_ID, 1, "digest")).isEmpty();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void checkpointWrittenFor(int coordinatesPlanned, String digest) {
+        when(service.checkpointRepository.find(EVENT_ID)).thenReturn(Optional.of(new EnrichmentCheckpoint(
+            EVENT_ID, 
+            UUID.randomUUID(), 
+            coordinatesPlanned, 
+            digest, 
+            1, 
+            List.of(), 
+            false, 
+            Instant.now()
+        )));
+    }
+
+    private static List<List<PackageURL>> groups(String... purls) throws Exception {
+        List<PackageURL> rv = new ArrayList<>();
+        for (var purl : purls) { rv.add(new PackageURL(purl)); }
+        return PackageIndexService.groupByCoordinate(rv);
+    }
+
+}
@@ -0,0 +1,46 @@
+package io.patchfox.package_index_service.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.services.EnrichmentJobService.JobState;
+import io.patchfox.package_index_service.services.EnrichmentScheduler.Lane;
+
+
+class EnrichmentJobServiceTest {
+
+    @Test
+    void aJobTheExecutorRejectsFailsItsEvent() {
+        var service = new EnrichmentJobService();
+        service.scheduler = mock(EnrichmentScheduler.class);
+        service.datasourceEventRepository = mock(DatasourceEventRepository.class);
+        when(service.scheduler.ticketFor(anyLong(), isNull(), isNull()))
+            .thenReturn(new EnrichmentScheduler.Ticket(7, "datasource:1", 10, Lane.FAST, 1.0));
+        var onRejected = ArgumentCaptor.forClass(Runnable.class);
+        when(service.scheduler.submit(any(), any(), onRejected.capture())).thenReturn(true);
+
+        var job = service.submit(UUID.randomUUID(), ZonedDateTime.now(ZoneOffset.UTC), 7, null, null).orElseThrow();
+        assertThat(job.getState()).isEqualTo(JobState.QUEUED);
+
+        onRejected.getValue().run();
+
+        assertThat(job.getState()).isEqualTo(JobState.FAILED);
+        assertThat(job.getFinishedAt()).isNotNull();
+        assertThat(job.getResult().getCode()).isEqualTo(503);
+        verify(service.datasourceEventRepository).setProcessingErrorFor(7L);
+    }
+
+}
@@ -0,0 +1,184 @@
+package io.patchfox.package_index_service.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.services.EnrichmentScheduler.Lane;
+
+
+class EnrichmentSchedulerTest {
+
+    private EnrichmentScheduler scheduler;
+    private HeldExecutor executor;
+    private int workers = 1;
+    private int reservedWorkers = 0;
+
+    // datasource event ids in the order their tasks were started 
+    private final List<Long> started = new ArrayList<>();
+    private final List<Long> rejected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        executor = new HeldExecutor();
+        scheduler = new EnrichmentScheduler();
+        scheduler.executor = executor;
+        scheduler.metrics = mock(EnrichmentMetrics.class);
+        scheduler.env = new EnvironmentComponent() {
+            @Override
+            public int getSchedulerWorkers() { return workers; }
+
+            @Override
+            public int getSchedulerFastLaneReservedWorkers() { return reservedWorkers; }
+
+            @Override
+            public int getJobQueueCapacity() { return 100_000; }
+        };
+    }
+
+    @Test
+    void bulkEventsCantTakeTheReservedFastLaneSlots() {
+        workers = 3;
+        reservedWorkers = 1;
+
+        submit(bulk(1, "a", 1000, 1.0));
+        submit(bulk(2, "b", 1000, 1.0));
+        submit(bulk(3, "c", 1000, 1.0));
+        assertThat(executor.held).hasSize(2);
+
+        submit(fast(4));
+        assertThat(executor.held).hasSize(3);
+
+        finishEverything();
+        assertThat(started).containsExactly(1L, 2L, 4L, 3L);
+    }
+
+    @Test
+    void theFastLaneGoesFirst() {
+        submit(bulk(1, "a", 1000, 1.0));
+        submit(bulk(2, "b", 1000, 1.0));
+        submit(fast(3));
+
+        finishEverything();
+        assertThat(started).containsExactly(1L, 3L, 2L);
+    }
+
+    @Test
+    void aFlowWithABacklogDoesntHoldUpOtherFlows() {
+        submit(bulk(1, "x", 1, 1.0));
+
+        submit(bulk(10, "backfill", 1000, 1.0));
+        submit(bulk(11, "backfill", 1000, 1.0));
+        submit(bulk(12, "backfill", 1000, 1.0));
+        submit(bulk(20, "scan", 1000, 1.0));
+
+        finishEverything();
+        assertThat(started).containsExactly(1L, 10L, 20L, 11L, 12L);
+    }
+
+    @Test
+    void heavierFlowsGetAProportionallyBiggerShare() {
+        submit(bulk(1, "x", 1, 1.0));
+
+        submit(bulk(20, "normal", 1000, 1.0));
+        submit(bulk(10, "interactive", 1000, 4.0));
+        submit(bulk(11, "interactive", 1000, 4.0));
+        submit(bulk(12, "interactive", 1000, 4.0));
+        submit(bulk(13, "interactive", 1000, 4.0));
+        submit(bulk(14, "interactive", 1000, 4.0));
+
+        finishEverything();
+        // the normal flow's ticket costs as much as four of the interactive flow's. it ties with the fourth and goes 
+        // first for having been queued first 
+        assertThat(started).containsExactly(1L, 10L, 11L, 12L, 20L, 13L, 14L);
+    }
+
+    @Test
+    void aRejectedJobGivesItsSlotBackAndIsReported() throws Exception {
+        executor.rejecting = true;
+        submit(bulk(1, "a", 1000, 1.0));
+
+        assertThat(started).isEmpty();
+        assertThat(rejected).containsExactly(1L);
+
+        // the slot is free again, otherwise this would wait forever 
+        var ticket = new EnrichmentScheduler.Ticket(2, "b", 10, Lane.FAST, 1.0);
+        scheduler.acquire(ticket);
+        assertThat(ticket.isGranted()).isTrue();
+    }
+
+    @Test
+    void aLongRunOfRejectionsIsWorkedThroughWithoutRecursing() throws Exception {
+        // hold the only slot so everything queues up behind it 
+        var held = new EnrichmentScheduler.Ticket(0, "sync", 10, Lane.FAST, 1.0);
+        scheduler.acquire(held);
+        for (long i = 1; i <= 50_000; i++) { submit(bulk(i, "flow-" + (i % 7), 1000, 1.0)); }
+
+        executor.rejecting = true;
+        scheduler.release(held);
+
+        assertThat(rejected).hasSize(50_000);
+        var ticket = new EnrichmentScheduler.Ticket(50_001, "b", 10, Lane.FAST, 1.0);
+        scheduler.acquire(ticket);
+        assertThat(ticket.isGranted()).isTrue();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private EnrichmentScheduler.Ticket bulk(long datasourceEventId, String flow, int purls, double weight) {
+        return new EnrichmentScheduler.Ticket(datasourceEventId, flow, purls, Lane.BULK, weight);
+    }
+
+    private EnrichmentScheduler.Ticket fast(long datasourceEventId) {
+        return new EnrichmentScheduler.Ticket(datasourceEventId, "fast", 10, Lane.FAST, 1.0);
+    }
+
+    private void submit(EnrichmentScheduler.Ticket ticket) {
+        var id = ticket.getDatasourceEventId();
+        assertThat(scheduler.submit(ticket, () -> started.add(id), () -> rejected.add(id))).isTrue();
+    }
+
+    private void finishEverything() {
+        while (executor.finishNext()) {}
+    }
+
+    /*
+     * holds on to what it's given instead of running it, so a test decides when each job starts and finishes 
+     */
+    private class HeldExecutor extends ThreadPoolTaskExecutor {
+
+        private final List<Runnable> held = new ArrayList<>();
+        boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) { throw new TaskRejectedException("full"); }
+            held.add(task);
+        }
+
+        /**
+         * runs the oldest held job to completion, which releases its slot 
+         * 
+         * @return false if nothing was held
+         */
+        boolean finishNext() {
+            if (held.isEmpty()) { return false; }
+            held.remove(0).run();
+            return true;
+        }
+
+    }
+
+}
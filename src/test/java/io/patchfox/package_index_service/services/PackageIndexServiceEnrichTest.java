@@ -0,0 +1,177 @@
+package io.patchfox.package_index_service.services;
+
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.ok;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.github.packageurl.PackageURL;
+
+import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_index_service.adapters.NpmRegistryAdapter;
+import io.patchfox.package_index_service.repositories.PackageRepository.PackageRow;
+import io.patchfox.package_index_service.repositories.PackageRepository.PackageRowUpdate;
+
+
+/*
+ * an event's purls worked through once per coordinate (groupByCoordinate, enrichCoordinate)
+ */
+class PackageIndexServiceEnrichTest {
+
+    private static final String NPM = PackageIndexService.NPM_PACKAGE_TYPE;
+    private static final long EVENT_ID = 42;
+    private static final URI LEFT_PAD = URI.create("https://registry.npmjs.org/left-pad");
+    private static final URI IS_ODD = URI.create("https://registry.npmjs.org/is-odd");
+
+    private final StubbedPackageIndexService stub;
+
+    PackageIndexServiceEnrichTest() throws Exception {
+        stub = new StubbedPackageIndexService(new NpmRegistryAdapter());
+        stub.registry = uri -> {
+            if (uri.equals(LEFT_PAD)) { return ok(npmDocument("1.1.0", "1.2.0", "1.3.0")); }
+            if (uri.equals(IS_ODD)) { return ok(npmDocument("3.0.1")); }
+            throw new AssertionError("unexpected request to: " + uri);
+        };
+    }
+
+    @Test
+    void severalVersionsOfOneCoordinateAreFetchedAndUpdatedOnce() throws Exception {
+        event("pkg:npm/left-pad@1.1.0", "pkg:npm/is-odd@3.0.1", "pkg:npm/left-pad@1.3.0");
+        rows("left-pad", row(1, "pkg:npm/left-pad@1.1.0"), row(2, "pkg:npm/left-pad@1.3.0"));
+        rows("is-odd", row(3, "pkg:npm/is-odd@3.0.1"));
+
+        var apiResponse = stub.service.enrichRecord(UUID.randomUUID(), ZonedDateTime.now(ZoneOffset.UTC), EVENT_ID);
+
+        assertThat(apiResponse.getCode()).isEqualTo(200);
+        assertThat(stub.requestsTo(LEFT_PAD)).isEqualTo(1);
+        assertThat(stub.requestsTo(IS_ODD)).isEqualTo(1);
+        verify(stub.packageRepository, times(1)).findByCoordinate(eq(NPM), isNull(), eq("left-pad"));
+        verify(stub.packageRepository, times(1)).findByCoordinate(eq(NPM), isNull(), eq("is-odd"));
+
+        // one write per coordinate, each with every record the coordinate has
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PackageRowUpdate>> updates = ArgumentCaptor.forClass(List.class);
+        verify(stub.packageRepository, times(2)).applyUpdates(updates.capture());
+        var updatedPurls = updates.getAllValues()
+                                  .stream()
+                                  .map(u -> u.stream().map(PackageRowUpdate::purl).toList())
+                                  .toList();
+        assertThat(updatedPurls).containsExactlyInAnyOrder(
+            List.of("pkg:npm/left-pad@1.1.0", "pkg:npm/left-pad@1.3.0"),
+            List.of("pkg:npm/is-odd@3.0.1")
+        );
+        // the latest version already has a record
+        verify(stub.packageRepository, never()).save(any());
+    }
+
+    @Test
+    void aMissingLatestVersionIsCreatedOncePerCoordinate() throws Exception {
+        event("pkg:npm/left-pad@1.1.0", "pkg:npm/left-pad@1.2.0");
+        rows("left-pad", row(1, "pkg:npm/left-pad@1.1.0"), row(2, "pkg:npm/left-pad@1.2.0"));
+        when(stub.packageRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        stub.service.enrichRecord(UUID.randomUUID(), ZonedDateTime.now(ZoneOffset.UTC), EVENT_ID);
+
+        var created = ArgumentCaptor.forClass(Package.class);
+        verify(stub.packageRepository, times(1)).save(created.capture());
+        assertThat(created.getValue().getPurl()).isEqualTo("pkg:npm/left-pad@1.3.0");
+        assertThat(stub.requestsTo(LEFT_PAD)).isEqualTo(1);
+    }
+
+    @Test
+    void coordinatesKeepTheOrderTheyFirstShowUpIn() throws Exception {
+        var groups = PackageIndexService.groupByCoordinate(purls(
+            "pkg:npm/left-pad@1.1.0",
+            "pkg:npm/is-odd@3.0.1",
+            "pkg:pypi/left-pad@1.0.0",
+            "pkg:npm/left-pad@1.3.0",
+            "pkg:npm/%40scope/left-pad@2.0.0"
+        ));
+
+        assertThat(groups).extracting(g -> g.stream().map(PackageURL::canonicalize).toList()).containsExactly(
+            List.of("pkg:npm/left-pad@1.1.0", "pkg:npm/left-pad@1.3.0"),
+            List.of("pkg:npm/is-odd@3.0.1"),
+            List.of("pkg:pypi/left-pad@1.0.0"),
+            List.of("pkg:npm/%40scope/left-pad@2.0.0")
+        );
+    }
+
+    @Test
+    void theDigestOnlyMovesWhenTheWorkDoes() throws Exception {
+        var digest = digest("pkg:npm/left-pad@1.1.0", "pkg:npm/is-odd@3.0.1", "pkg:npm/left-pad@1.3.0");
+
+        // the same event grouped again, eg: on a retry
+        assertThat(digest("pkg:npm/left-pad@1.1.0", "pkg:npm/is-odd@3.0.1", "pkg:npm/left-pad@1.3.0"))
+            .isEqualTo(digest);
+        // a later version moving up doesn't change the order coordinates are worked through in
+        assertThat(digest("pkg:npm/left-pad@1.1.0", "pkg:npm/left-pad@1.3.0", "pkg:npm/is-odd@3.0.1"))
+            .isEqualTo(digest);
+        // a different coordinate first does
+        assertThat(digest("pkg:npm/is-odd@3.0.1", "pkg:npm/left-pad@1.1.0", "pkg:npm/left-pad@1.3.0"))
+            .isNotEqualTo(digest);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void event(String... purls) {
+        when(stub.packageRepository.getPackagesByDatasourceEventId(EVENT_ID)).thenReturn(List.of(purls));
+    }
+
+    private void rows(String name, PackageRow... rows) {
+        when(stub.packageRepository.findByCoordinate(eq(NPM), isNull(), eq(name))).thenReturn(List.of(rows));
+    }
+
+    // a record that's never been enriched
+    private static PackageRow row(long id, String purl) throws Exception {
+        var packageUrl = new PackageURL(purl);
+        var row = mock(PackageRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getPurl()).thenReturn(purl);
+        when(row.getType()).thenReturn(packageUrl.getType());
+        when(row.getNamespace()).thenReturn(packageUrl.getNamespace());
+        when(row.getName()).thenReturn(packageUrl.getName());
+        when(row.getVersion()).thenReturn(packageUrl.getVersion());
+        return row;
+    }
+
+    // oldest first, a day apart
+    private static String npmDocument(String... versions) {
+        var time = new JSONObject();
+        time.put("created", "2024-01-01T00:00:00.000Z");
+        for (int i = 0; i < versions.length; i++) {
+            time.put(versions[i], ZonedDateTime.parse("2024-01-01T00:00:00Z").plusDays(i + 1).toString());
+        }
+        return new JSONObject().put("name", "left-pad").put("time", time).toString();
+    }
+
+    private static List<PackageURL> purls(String... purls) throws Exception {
+        var rv = new ArrayList<PackageURL>();
+        for (var purl : purls) { rv.add(new PackageURL(purl)); }
+        return rv;
+    }
+
+    private static String digest(String... purls) throws Exception {
+        return PackageIndexService.coordinateDigest(PackageIndexService.groupByCoordinate(purls(purls)));
+    }
+
+}
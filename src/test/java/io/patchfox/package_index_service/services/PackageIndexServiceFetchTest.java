@@ -0,0 +1,219 @@
+package io.patchfox.package_index_service.services;
+
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.ok;
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.status;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.apache.catalina.connector.Response;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.patchfox.package_index_service.adapters.GolangProxyAdapter;
+import io.patchfox.package_index_service.adapters.MavenCentralAdapter;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository.StoredVersionHistory;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageCoordinate;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * the head check in front of a full fetch for indexes without validators (HeadOnlyRegistryAdapter)
+ */
+class PackageIndexServiceFetchTest {
+
+    private static final String GOLANG = PackageIndexService.GOLANG_PACKAGE_TYPE;
+    private static final String MAVEN = PackageIndexService.MAVEN_PACKAGE_TYPE;
+    private static final PackageCoordinate MODULE = new PackageCoordinate(GOLANG, "github.com/example", "mod");
+    private static final PackageCoordinate ARTIFACT = new PackageCoordinate(MAVEN, "com.example", "lib");
+    private static final URI GOLANG_LIST = URI.create("https://proxy.golang.org/github.com/example/mod/@v/list");
+    private static final URI MAVEN_SUMMARY = URI.create(
+        "https://search.maven.org/solrsearch/select?q=g:com.example+AND+a:lib&rows=1&wt=json"
+    );
+    private static final URI MAVEN_LOOKUP = URI.create(
+        "https://search.maven.org/solrsearch/select?q=g:com.example+AND+a:lib&rows=200&wt=json&core=gav"
+    );
+
+    private final StubbedPackageIndexService stub;
+
+    PackageIndexServiceFetchTest() throws Exception {
+        stub = new StubbedPackageIndexService(new GolangProxyAdapter(), new MavenCentralAdapter());
+    }
+
+    @Test
+    void aGoBackportIsFetchedEvenThoughTheLatestVersionDidntMove() throws Exception {
+        stored(MODULE, "v2.0.0", "v1.2.9");
+        stub.registry = uri -> {
+            if (uri.equals(GOLANG_LIST)) { return ok("v1.2.9\nv2.0.0\nv1.2.10\n"); }
+            return info(uri);
+        };
+
+        var metadata = fetch(MODULE);
+
+        assertThat(versions(metadata.packageHistory)).containsExactly("v1.2.10", "v2.0.0", "v1.2.9");
+        // the list from the head check is the one that got parsed
+        assertThat(stub.requestsTo(GOLANG_LIST)).isEqualTo(1);
+        assertThat(saved().packageHistory()).hasSize(3);
+        verify(stub.versionHistoryRepository, never()).touch(any(), any());
+    }
+
+    @Test
+    void anUnchangedGoListKeepsTheStoredHistory() throws Exception {
+        // newest by time isn't the highest version, which doesn't matter as long as nothing new was listed
+        stored(MODULE, "v1.2.10", "v2.0.0", "v1.2.9");
+        stub.registry = uri -> {
+            if (uri.equals(GOLANG_LIST)) { return ok("v1.2.9\nv1.2.10\nv2.0.0\n"); }
+            return info(uri);
+        };
+
+        var metadata = fetch(MODULE);
+
+        assertThat(versions(metadata.packageHistory)).containsExactly("v1.2.10", "v2.0.0", "v1.2.9");
+        assertThat(stub.requested).containsExactly(GOLANG_LIST);
+        verify(stub.versionHistoryRepository).touch(eq(MODULE), any());
+        verify(stub.versionHistoryRepository, never()).save(any());
+    }
+
+    @Test
+    void aMavenBackportMovesTheCountAndIsFetched() throws Exception {
+        stored(ARTIFACT, "2.0.0", "1.2.9");
+        stub.registry = uri -> {
+            if (uri.equals(MAVEN_SUMMARY)) { return summary("2.0.0", 3); }
+            if (uri.equals(MAVEN_LOOKUP)) { return gav("1.2.10", "2.0.0", "1.2.9"); }
+            return status(Response.SC_NOT_FOUND);
+        };
+
+        var metadata = fetch(ARTIFACT);
+
+        assertThat(versions(metadata.packageHistory)).containsExactly("1.2.10", "2.0.0", "1.2.9");
+        assertThat(stub.requested).containsExactly(MAVEN_SUMMARY, MAVEN_LOOKUP);
+        assertThat(saved().packageHistory()).hasSize(3);
+    }
+
+    @Test
+    void anUnchangedMavenCountKeepsTheStoredHistory() throws Exception {
+        stored(ARTIFACT, "1.2.10", "2.0.0", "1.2.9");
+        stub.registry = uri -> {
+            if (uri.equals(MAVEN_SUMMARY)) { return summary("2.0.0", 3); }
+            return gav("1.2.10", "2.0.0", "1.2.9");
+        };
+
+        var metadata = fetch(ARTIFACT);
+
+        assertThat(versions(metadata.packageHistory)).containsExactly("1.2.10", "2.0.0", "1.2.9");
+        assertThat(stub.requested).containsExactly(MAVEN_SUMMARY);
+        verify(stub.versionHistoryRepository).touch(eq(ARTIFACT), any());
+    }
+
+    @Test
+    void aFailedHeadCheckFallsBackToTheFullFetch() throws Exception {
+        stored(ARTIFACT, "2.0.0");
+        stub.registry = uri -> {
+            if (uri.equals(MAVEN_SUMMARY)) { return status(Response.SC_BAD_REQUEST); }
+            return gav("2.0.1", "2.0.0");
+        };
+
+        var metadata = fetch(ARTIFACT);
+
+        assertThat(versions(metadata.packageHistory)).containsExactly("2.0.1", "2.0.0");
+        assertThat(stub.requested).containsExactly(MAVEN_SUMMARY, MAVEN_LOOKUP);
+    }
+
+    @Test
+    void nothingStoredMeansNoHeadCheck() throws Exception {
+        when(stub.versionHistoryRepository.find(ARTIFACT)).thenReturn(Optional.empty());
+        stub.registry = uri -> gav("2.0.0");
+
+        fetch(ARTIFACT);
+
+        assertThat(stub.requested).containsExactly(MAVEN_LOOKUP);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private PackageIndexService.PackageMetadata fetch(PackageCoordinate coordinate) throws Exception {
+        return stub.service.fetchPackageMetadata(
+            UUID.randomUUID(),
+            coordinate.type(),
+            coordinate.namespace(),
+            coordinate.name()
+        );
+    }
+
+    // newest first, fetched long enough ago to have expired. no validators, neither index sends them
+    private void stored(PackageCoordinate coordinate, String... versions) {
+        var history = new ArrayList<VersionMetadata>();
+        for (int i = 0; i < versions.length; i++) { history.add(new VersionMetadata(versions[i], publishedAt(i))); }
+        when(stub.versionHistoryRepository.find(coordinate)).thenReturn(Optional.of(new StoredVersionHistory(
+            coordinate,
+            history,
+            Instant.now().minus(Duration.ofDays(7)),
+            PackageVersionHistoryRepository.SOURCE_REGISTRY,
+            null,
+            null
+        )));
+    }
+
+    private StoredVersionHistory saved() {
+        var captor = ArgumentCaptor.forClass(StoredVersionHistory.class);
+        verify(stub.versionHistoryRepository).save(captor.capture());
+        return captor.getValue();
+    }
+
+    // a day apart, ordered the same way stored() gets them
+    private static ZonedDateTime publishedAt(int age) {
+        return ZonedDateTime.parse("2024-06-01T00:00:00Z").minusDays(age);
+    }
+
+    private static ApiResponse info(URI uri) {
+        var path = uri.getPath();
+        var version = path.substring(path.lastIndexOf('/') + 1, path.length() - ".info".length());
+        var age = switch (version) {
+            case "v1.2.10" -> 0;
+            case "v2.0.0" -> 1;
+            default -> 2;
+        };
+        return ok("{\"Version\":\"" + version + "\",\"Time\":\"" + publishedAt(age).toInstant() + "\"}");
+    }
+
+    private static ApiResponse summary(String latestVersion, int versionCount) {
+        return ok(
+            "{\"response\":{\"numFound\":1,\"docs\":[{\"id\":\"com.example:lib\",\"latestVersion\":\"" +
+            latestVersion + "\",\"versionCount\":" + versionCount + "}]}}"
+        );
+    }
+
+    // newest first
+    private static ApiResponse gav(String... versions) {
+        var docs = new ArrayList<String>();
+        for (int i = 0; i < versions.length; i++) {
+            docs.add(
+                "{\"id\":\"com.example:lib:" + versions[i] + "\",\"v\":\"" + versions[i] + "\",\"timestamp\":" +
+                publishedAt(i).toInstant().toEpochMilli() + "}"
+            );
+        }
+        return ok("{\"response\":{\"numFound\":" + versions.length + ",\"docs\":[" + String.join(",", docs) + "]}}");
+    }
+
+    private static List<String> versions(List<VersionMetadata> history) {
+        return history.stream().map(v -> v.version).toList();
+    }
+
+}
@@ -0,0 +1,229 @@
+package io.patchfox.package_index_service.services;
+
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.endpoint;
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.ok;
+import static io.patchfox.package_index_service.services.StubbedPackageIndexService.status;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.RegistryEndpoints;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * what happens to one package index request on its way out: the traffic archive, failover and hedging
+ */
+class PackageIndexServiceRequestTest {
+
+    private static final String NPM = PackageIndexService.NPM_PACKAGE_TYPE;
+    private static final URI LEFT_PAD = URI.create("https://registry.npmjs.org/left-pad");
+    private static final URI MIRRORED_LEFT_PAD = URI.create("https://mirror.example.com/npm/left-pad");
+
+    private final StubbedPackageIndexService stub;
+
+    PackageIndexServiceRequestTest() throws Exception {
+        stub = new StubbedPackageIndexService();
+    }
+
+    @Test
+    void theArchiveIsKeyedOnTheUriTheAdapterBuilt() throws Exception {
+        when(stub.registryTraffic.isRecording()).thenReturn(true);
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> ok("{\"name\":\"left-pad\"}");
+
+        stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD);
+        var recorded = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(stub.registryTraffic).record(eq(NPM), recorded.capture(), any(), anyLong());
+        assertThat(recorded.getValue().getUri()).isEqualTo(LEFT_PAD);
+    }
+
+    @Test
+    void aFailedOverRequestIsRecordedOnceWithTheAnswerItEndedUpWith() throws Exception {
+        when(stub.registryTraffic.isRecording()).thenReturn(true);
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> uri.equals(MIRRORED_LEFT_PAD) ? status(503) : ok("{\"name\":\"left-pad\"}");
+
+        stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        var recorded = ArgumentCaptor.forClass(ApiResponse.class);
+        verify(stub.registryTraffic, times(1)).record(eq(NPM), any(), recorded.capture(), anyLong());
+        assertThat(recorded.getValue().getCode()).isEqualTo(200);
+    }
+
+    @Test
+    void onlyTheWinningHedgeIsRecorded() throws Exception {
+        when(stub.registryTraffic.isRecording()).thenReturn(true);
+        stub.hedgingEnabled = true;
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> {
+            if (uri.equals(MIRRORED_LEFT_PAD)) {
+                Thread.sleep(10_000);
+                return ok("{\"name\":\"slow\"}");
+            }
+            return ok("{\"name\":\"fast\"}");
+        };
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getData().get("response")).isEqualTo("{\"name\":\"fast\"}");
+        var recorded = ArgumentCaptor.forClass(ApiResponse.class);
+        verify(stub.registryTraffic, times(1)).record(eq(NPM), any(), recorded.capture(), anyLong());
+        assertThat(recorded.getValue()).isSameAs(apiResponse);
+    }
+
+    @Test
+    void anUnavailableMirrorFailsOverToTheNextEndpoint() throws Exception {
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> uri.equals(MIRRORED_LEFT_PAD) ? status(503) : ok("{\"name\":\"left-pad\"}");
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getCode()).isEqualTo(200);
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD, LEFT_PAD);
+        verify(stub.registryEndpoints).report(eq(NPM), eq(stub.endpoints.get(0)), eq(503), anyLong());
+        verify(stub.registryEndpoints).report(eq(NPM), eq(stub.endpoints.get(1)), eq(200), anyLong());
+    }
+
+    @Test
+    void aMirrorThatDoesntAnswerFailsOverToo() throws Exception {
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> {
+            if (uri.equals(MIRRORED_LEFT_PAD)) { throw new ResourceAccessException("connection refused"); }
+            return ok("{\"name\":\"left-pad\"}");
+        };
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getCode()).isEqualTo(200);
+        verify(stub.registryEndpoints).report(eq(NPM), eq(stub.endpoints.get(0)), eq(0), anyLong());
+    }
+
+    @Test
+    void notFoundDoesntFailOver() throws Exception {
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getCode()).isEqualTo(404);
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD);
+    }
+
+    @Test
+    void aMirrorCoolingDownIsntAsked() throws Exception {
+        var registryEndpoints = new RegistryEndpoints();
+        ReflectionTestUtils.setField(registryEndpoints, "env", new EnvironmentComponent() {
+            @Override
+            public List<String> getMirrorsFor(String packageType) { return List.of("https://mirror.example.com/npm"); }
+
+            @Override
+            public int getMirrorFailureThreshold() { return 2; }
+
+            @Override
+            public Duration getMirrorCooldown() { return Duration.ofHours(1); }
+        });
+        stub.useEndpoints(registryEndpoints);
+        stub.registry = uri -> uri.equals(MIRRORED_LEFT_PAD) ? status(502) : ok("{\"name\":\"left-pad\"}");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD).getCode()).isEqualTo(200);
+        }
+
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD, LEFT_PAD, MIRRORED_LEFT_PAD, LEFT_PAD, LEFT_PAD);
+    }
+
+    @Test
+    void aPrimaryThatAnswersInTimeIsntHedged() throws Exception {
+        stub.hedgingEnabled = true;
+        stub.hedgeDelay = Duration.ofSeconds(5);
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> ok("{\"name\":\"left-pad\"}");
+
+        stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD);
+    }
+
+    @Test
+    void theSlowerHedgeIsCancelledAndNotHeldAgainstItsEndpoint() throws Exception {
+        stub.hedgingEnabled = true;
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        var cancelled = new CountDownLatch(1);
+        stub.registry = uri -> {
+            if (uri.equals(MIRRORED_LEFT_PAD)) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw e;
+                }
+                return ok("{\"name\":\"slow\"}");
+            }
+            return ok("{\"name\":\"fast\"}");
+        };
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getData().get("response")).isEqualTo("{\"name\":\"fast\"}");
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(stub.concurrencyLimiter, timeout(5_000)).abandon(NPM);
+        verify(stub.concurrencyLimiter, times(1)).release(eq(NPM), anyInt(), anyLong());
+        verify(stub.registryEndpoints, never()).report(eq(NPM), eq(stub.endpoints.get(0)), anyInt(), anyLong());
+    }
+
+    @Test
+    void aPrimaryThatFailsFastIsHedgedRightAway() throws Exception {
+        stub.hedgingEnabled = true;
+        stub.hedgeDelay = Duration.ofSeconds(5);
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+        stub.registry = uri -> uri.equals(MIRRORED_LEFT_PAD) ? status(503) : ok("{\"name\":\"left-pad\"}");
+
+        var startNanos = System.nanoTime();
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getCode()).isEqualTo(200);
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofSeconds(5));
+        assertThat(stub.requested).containsExactly(MIRRORED_LEFT_PAD, LEFT_PAD);
+    }
+
+    @Test
+    void aReplayDoesntNeedTheMirrors() throws Exception {
+        when(stub.registryTraffic.isReplaying()).thenReturn(true);
+        when(stub.registryTraffic.replay(any())).thenReturn(ok("{\"name\":\"left-pad\"}"));
+        stub.endpoints = List.of(endpoint("https://mirror.example.com/npm"), endpoint(null));
+
+        var apiResponse = stub.service.queryPackageIndex(UUID.randomUUID(), NPM, LEFT_PAD);
+
+        assertThat(apiResponse.getCode()).isEqualTo(200);
+        var replayed = ArgumentCaptor.forClass(ApiRequest.class);
+        verify(stub.registryTraffic).replay(replayed.capture());
+        assertThat(replayed.getValue().getUri()).isEqualTo(LEFT_PAD);
+        assertThat(stub.requested).isEmpty();
+        verify(stub.registryEndpoints, never()).candidates(anyString(), any());
+    }
+
+}
@@ -0,0 +1,178 @@
+package io.patchfox.package_index_service.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.PackageAccessTracker;
+import io.patchfox.package_index_service.services.PackageIndexService.PackageMetadata;
+import io.patchfox.package_index_service.services.PackageIndexService.VersionMetadata;
+
+
+class PackageLookupServiceTest {
+
+    private static final String NPM = PackageIndexService.NPM_PACKAGE_TYPE;
+
+    private PackageLookupService service;
+    private PackageIndexService packageIndexService;
+    private int maxPurls = 10;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        packageIndexService = mock(PackageIndexService.class);
+        when(packageIndexService.supports(anyString())).thenAnswer(i -> !i.getArgument(0).equals("hex"));
+
+        service = new PackageLookupService();
+        service.packageIndexService = packageIndexService;
+        service.accessTracker = mock(PackageAccessTracker.class);
+        service.metrics = mock(EnrichmentMetrics.class);
+        service.env = new EnvironmentComponent() {
+            @Override
+            public int getLookupMaxPurls() { return maxPurls; }
+
+            @Override
+            public int getLookupConcurrency() { return 4; }
+        };
+    }
+
+    @Test
+    void purlsSharingACoordinateAreLookedUpOnce() throws Exception {
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad")))
+            .thenReturn(metadata("1.3.0", "1.2.0", "1.1.0"));
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("is-odd")))
+            .thenReturn(metadata("3.0.1"));
+
+        var results = lookup(false, "pkg:npm/left-pad@1.1.0", "pkg:npm/is-odd@3.0.1", "pkg:npm/left-pad@1.3.0");
+
+        verify(packageIndexService, times(1)).loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad"));
+        verify(packageIndexService, times(1)).loadPackageMetadata(any(), eq(NPM), isNull(), eq("is-odd"));
+        assertThat(results).hasSize(3);
+
+        var behind = results.get("pkg:npm/left-pad@1.1.0");
+        assertThat(behind).containsEntry("status", PackageLookupService.STATUS_OK)
+                          .containsEntry("latestVersion", "1.3.0")
+                          .containsEntry("versionsBehind", 2)
+                          .containsEntry("minorVersionsBehind", 2)
+                          .containsEntry("versionPublishedAt", publishedAt(2).toString())
+                          .doesNotContainKey("versions");
+        assertThat(results.get("pkg:npm/left-pad@1.3.0")).containsEntry("versionsBehind", 0);
+        assertThat(results.get("pkg:npm/is-odd@3.0.1")).containsEntry("versionsBehind", 0);
+    }
+
+    @Test
+    void aVersionMissingFromTheHistoryIsMinusOneEverywhere() throws Exception {
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad")))
+            .thenReturn(metadata("1.3.0", "1.2.0"));
+
+        var result = lookup(false, "pkg:npm/left-pad@0.0.1").get("pkg:npm/left-pad@0.0.1");
+
+        assertThat(result).containsEntry("status", PackageLookupService.STATUS_OK)
+                          .containsEntry("versionsBehind", -1)
+                          .containsEntry("majorVersionsBehind", -1)
+                          .containsEntry("minorVersionsBehind", -1)
+                          .containsEntry("patchVersionsBehind", -1)
+                          .doesNotContainKey("versionPublishedAt");
+    }
+
+    @Test
+    void everyStatus() throws Exception {
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad")))
+            .thenReturn(metadata("1.3.0"));
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad-but-private")))
+            .thenReturn(null);
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("flaky")))
+            .thenThrow(new IllegalStateException("registry fell over"));
+
+        var results = lookup(
+            false,
+            "pkg:npm/left-pad",
+            "pkg:npm/left-pad-but-private@1.0.0",
+            "pkg:npm/flaky@1.0.0",
+            "pkg:hex/phoenix@1.7.0",
+            "not a purl"
+        );
+
+        assertThat(results.get("pkg:npm/left-pad")).containsEntry("status", PackageLookupService.STATUS_OK)
+                                                   .doesNotContainKey("versionsBehind");
+        assertThat(results.get("pkg:npm/left-pad-but-private@1.0.0"))
+            .containsEntry("status", PackageLookupService.STATUS_NOT_FOUND)
+            .doesNotContainKey("error");
+        assertThat(results.get("pkg:npm/flaky@1.0.0")).containsEntry("status", PackageLookupService.STATUS_ERROR)
+                                                      .hasEntrySatisfying(
+                                                          "error",
+                                                          e -> assertThat(e.toString()).contains("registry fell over")
+                                                      );
+        assertThat(results.get("pkg:hex/phoenix@1.7.0"))
+            .containsEntry("status", PackageLookupService.STATUS_UNSUPPORTED);
+        assertThat(results.get("not a purl")).containsEntry("status", PackageLookupService.STATUS_MALFORMED);
+        verify(packageIndexService, never()).loadPackageMetadata(any(), eq("hex"), any(), any());
+    }
+
+    @Test
+    void historyIsOnlyIncludedWhenAskedFor() throws Exception {
+        when(packageIndexService.loadPackageMetadata(any(), eq(NPM), isNull(), eq("left-pad")))
+            .thenReturn(metadata("1.3.0", "1.2.0"));
+
+        var result = lookup(true, "pkg:npm/left-pad@1.2.0").get("pkg:npm/left-pad@1.2.0");
+
+        assertThat(result).containsEntry("versions", List.of(
+            Map.of("version", "1.3.0", "publishedAt", publishedAt(0).toString()),
+            Map.of("version", "1.2.0", "publishedAt", publishedAt(1).toString())
+        ));
+    }
+
+    @Test
+    void tooManyPurlsAreRejectedBeforeAnythingIsLookedUp() throws Exception {
+        maxPurls = 2;
+
+        assertThatThrownBy(() -> lookup(false, "pkg:npm/a@1", "pkg:npm/b@1", "pkg:npm/c@1"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("at most 2");
+        verify(packageIndexService, never()).loadPackageMetadata(any(), anyString(), any(), anyString());
+    }
+
+
+    //
+    // helpers
+    //
+
+    // results by purl, they come back in whatever order the coordinates finish
+    private Map<String, Map<String, Object>> lookup(boolean includeHistory, String... purls) throws Exception {
+        var results = new ArrayList<Map<String, Object>>();
+        service.lookup(UUID.randomUUID(), List.of(purls), includeHistory, results::add);
+        return results.stream().collect(Collectors.toMap(r -> (String) r.get("purl"), Function.identity()));
+    }
+
+    // newest first, a day apart
+    private static PackageMetadata metadata(String... versions) {
+        var history = new ArrayList<VersionMetadata>();
+        for (int i = 0; i < versions.length; i++) { history.add(new VersionMetadata(versions[i], publishedAt(i))); }
+        return new PackageMetadata(history.get(0), history);
+    }
+
+    private static ZonedDateTime publishedAt(int age) {
+        return ZonedDateTime.parse("2024-06-01T00:00:00Z").minusDays(age);
+    }
+
+}
@@ -0,0 +1,158 @@
+package io.patchfox.package_index_service.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.catalina.connector.Response;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.patchfox.package_index_service.adapters.RegistryAdapter;
+import io.patchfox.package_index_service.components.EnrichmentMetrics;
+import io.patchfox.package_index_service.components.EnvironmentComponent;
+import io.patchfox.package_index_service.components.LogSampler;
+import io.patchfox.package_index_service.components.NegativeCache;
+import io.patchfox.package_index_service.components.PackageAccessTracker;
+import io.patchfox.package_index_service.components.RegistryConcurrencyLimiter;
+import io.patchfox.package_index_service.components.RegistryEndpoints;
+import io.patchfox.package_index_service.helpers.RegistryTrafficArchive;
+import io.patchfox.package_index_service.helpers.RestHelper;
+import io.patchfox.package_index_service.repositories.DatasourceEventRepository;
+import io.patchfox.package_index_service.repositories.EnrichmentCheckpointRepository;
+import io.patchfox.package_index_service.repositories.PackageRepository;
+import io.patchfox.package_index_service.repositories.PackageVersionHistoryRepository;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * a PackageIndexService with everything around it mocked out. package index requests are answered by registry, every
+ * uri that actually went out is kept in requested. endpoints are mocks too, by default just the public one
+ */
+class StubbedPackageIndexService {
+
+    @FunctionalInterface
+    interface Registry {
+        ApiResponse answer(URI uri) throws Exception;
+    }
+
+    final PackageIndexService service = new PackageIndexService();
+    final List<URI> requested = new CopyOnWriteArrayList<>();
+    final PackageVersionHistoryRepository versionHistoryRepository = mock(PackageVersionHistoryRepository.class);
+    final PackageRepository packageRepository = mock(PackageRepository.class);
+    final RegistryEndpoints registryEndpoints = mock(RegistryEndpoints.class);
+    final RegistryConcurrencyLimiter concurrencyLimiter = mock(RegistryConcurrencyLimiter.class);
+    final RegistryTrafficArchive registryTraffic = mock(RegistryTrafficArchive.class);
+    final NegativeCache negativeCache = mock(NegativeCache.class);
+
+    volatile Registry registry = uri -> status(Response.SC_NOT_FOUND);
+    volatile List<RegistryEndpoints.Endpoint> endpoints = List.of(endpoint(null));
+    boolean hedgingEnabled = false;
+    Duration hedgeDelay = Duration.ofMillis(50);
+    int checkpointChunkSize = 100;
+
+    StubbedPackageIndexService(RegistryAdapter... adapters) throws Exception {
+        var restHelper = mock(RestHelper.class);
+        when(restHelper.makeRequest(any())).thenAnswer(invocation -> {
+            var uri = invocation.getArgument(0, ApiRequest.class).getUri();
+            requested.add(uri);
+            return registry.answer(uri);
+        });
+        when(registryEndpoints.candidates(anyString(), any())).thenAnswer(invocation -> endpoints);
+        when(registryEndpoints.hedgeDelay(anyString())).thenAnswer(invocation -> hedgeDelay);
+
+        service.env = new EnvironmentComponent() {
+            @Override
+            public boolean isHedgingEnabled() { return hedgingEnabled; }
+
+            @Override
+            public String getRegistryBaseUrl() { return null; }
+
+            @Override
+            public Duration getFreshnessWindow() { return Duration.ofDays(1); }
+
+            @Override
+            public int getCheckpointChunkSize() { return checkpointChunkSize; }
+
+            @Override
+            public int getEnrichmentConcurrency() { return 4; }
+        };
+        service.restHelper = restHelper;
+        service.registryEndpoints = registryEndpoints;
+        service.registryTraffic = registryTraffic;
+        service.negativeCache = negativeCache;
+        service.versionHistoryRepository = versionHistoryRepository;
+        service.packageRepository = packageRepository;
+        service.datasourceEventRepository = mock(DatasourceEventRepository.class);
+        service.checkpointRepository = mock(EnrichmentCheckpointRepository.class);
+        service.accessTracker = mock(PackageAccessTracker.class);
+        service.progressService = mock(EnrichmentProgressService.class);
+        service.concurrencyLimiter = concurrencyLimiter;
+        service.logSampler = mock(LogSampler.class);
+        service.metrics = mock(EnrichmentMetrics.class);
+        service.changeFeedService = mock(ChangeFeedService.class);
+        service.observationRegistry = ObservationRegistry.NOOP;
+        service.registryAdapters = List.of(adapters);
+        service.indexAdapters();
+    }
+
+    long requestsTo(URI uri) {
+        return requested.stream().filter(uri::equals).count();
+    }
+
+    // swaps the mocked endpoints for real ones, endpoints and hedgeDelay are ignored from then on
+    void useEndpoints(RegistryEndpoints real) {
+        service.registryEndpoints = real;
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     *
+     * @param baseUrl where the endpoint sends requests, or null for the public endpoint
+     * @return
+     */
+    static RegistryEndpoints.Endpoint endpoint(String baseUrl) {
+        var endpoint = mock(RegistryEndpoints.Endpoint.class);
+        when(endpoint.isMirror()).thenReturn(baseUrl != null);
+        when(endpoint.getBaseUrl()).thenReturn(baseUrl == null ? "public" : baseUrl);
+        when(endpoint.rewrite(any())).thenAnswer(invocation -> {
+            var uri = invocation.getArgument(0, URI.class);
+            if (baseUrl == null) { return uri; }
+            var query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+            return URI.create(baseUrl + uri.getRawPath() + query);
+        });
+        return endpoint;
+    }
+
+    static ApiResponse ok(String body) {
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(Map.of(RestHelper.RESPONSE_KEY, body))
+                          .build();
+    }
+
+    static ApiResponse status(int code) {
+        return ApiResponse.builder()
+                          .code(code)
+                          .txid(UUID.randomUUID())
+                          .requestReceivedAt(Instant.now().toString())
+                          .data(Map.of())
+                          .build();
+    }
+
+}